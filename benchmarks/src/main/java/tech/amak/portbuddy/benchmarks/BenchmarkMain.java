@@ -0,0 +1,45 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of {@code benchmarks.jar}. Runs JMH with the given command line, writing the results as JSON
+ * to {@code jmh-result.json} unless a result format is given, so runs can be compared across commits,
+ * e.g. {@code java -jar benchmarks/target/benchmarks.jar HttpRelayBenchmark -rff before.json}.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    /**
+     * Runs the selected benchmarks.
+     *
+     * @param args JMH command line options
+     * @throws Exception if the run fails
+     */
+    public static void main(final String[] args) throws Exception {
+        final var options = new ArrayList<>(List.of(args));
+        if (!options.contains("-rf")) {
+            options.addAll(0, List.of("-rf", "json"));
+        }
+        Main.main(options.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.benchmarks;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * In-memory {@link WebSocketSession} standing in for a tunnel or browser connection. Sent messages go to
+ * a sink instead of a socket, so benchmarks measure the registries rather than the network, and unlike
+ * a mock it costs nothing per call.
+ */
+public class BenchmarkSession implements WebSocketSession {
+
+    private final String id;
+    private final HttpHeaders handshakeHeaders;
+    private final Consumer<WebSocketMessage<?>> sink;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private volatile boolean open = true;
+
+    /**
+     * Creates an open session.
+     *
+     * @param id               the session id
+     * @param handshakeHeaders headers of the handshake request, e.g. the advertised tunnel features
+     * @param sink             receives every message sent on the session
+     */
+    public BenchmarkSession(final String id,
+                            final HttpHeaders handshakeHeaders,
+                            final Consumer<WebSocketMessage<?>> sink) {
+        this.id = id;
+        this.handshakeHeaders = handshakeHeaders;
+        this.sink = sink;
+    }
+
+    /**
+     * Creates an open session that discards sent messages.
+     *
+     * @param id the session id
+     */
+    public BenchmarkSession(final String id) {
+        this(id, new HttpHeaders(), message -> {
+        });
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public URI getUri() {
+        return null;
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return handshakeHeaders;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return null;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(final int messageSizeLimit) {
+        // not limited
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(final int messageSizeLimit) {
+        // not limited
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return List.of();
+    }
+
+    @Override
+    public void sendMessage(final WebSocketMessage<?> message) {
+        sink.accept(message);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public void close(final CloseStatus status) {
+        open = false;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the per-chunk cost of the original {@link BinaryWsFrame} path (id re-encoded per frame,
+ * payload copied on encode and decode) with the cached-header, read-in-place and slice-based path.
+ * Run with {@code -prof gc} to compare allocation rates, e.g. from the IDE through {@link #main}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryWsFrameBenchmark {
+
+    @Param({"64", "8192"})
+    private int payloadSize;
+
+    private String connectionId;
+    private byte[] header;
+    private byte[] payload;
+    private byte[] frame;
+    private FrameBufferPool pool;
+    private BinaryWsFrame.IdCache idCache;
+
+    @Setup
+    public void setUp() {
+        connectionId = UUID.randomUUID().toString();
+        header = BinaryWsFrame.encodeHeader(connectionId);
+        payload = new byte[payloadSize];
+        ThreadLocalRandom.current().nextBytes(payload);
+        frame = BinaryWsFrame.encodeToArray(connectionId, payload, 0, payload.length);
+        pool = new FrameBufferPool(header.length + payloadSize, 4);
+        idCache = new BinaryWsFrame.IdCache(64);
+    }
+
+    /**
+     * Original pump: encode the id per frame and copy the read buffer into the frame.
+     */
+    @Benchmark
+    public ByteBuffer encodeLegacy() {
+        return BinaryWsFrame.encodeToByteBuffer(connectionId, payload, 0, payload.length);
+    }
+
+    /**
+     * Header encoded once per connection, payload copied once.
+     */
+    @Benchmark
+    public ByteBuffer encodeCachedHeader() {
+        return BinaryWsFrame.encode(header, payload, 0, payload.length);
+    }
+
+    /**
+     * Payload read directly behind the header of a pooled direct buffer: no copy and no allocation.
+     */
+    @Benchmark
+    public void encodePooledInPlace(final Blackhole blackhole) {
+        final var buffer = BinaryWsFrame.prepare(pool.acquire(), header);
+        // Stands in for channel.read(buffer)
+        buffer.position(buffer.position() + payloadSize).flip();
+        blackhole.consume(buffer);
+        pool.release(buffer);
+    }
+
+    /**
+     * Original decode: new id string and a payload copy per frame.
+     */
+    @Benchmark
+    public byte[] decodeLegacy() {
+        return BinaryWsFrame.decode(frame).data();
+    }
+
+    /**
+     * Slice-based decode with the id resolved from the cache.
+     */
+    @Benchmark
+    public ByteBuffer decodeSlice() {
+        return BinaryWsFrame.decode(ByteBuffer.wrap(frame), idCache).payload();
+    }
+
+    /**
+     * Runs the benchmarks of this class.
+     *
+     * @param args ignored
+     * @throws RunnerException if the run fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(BinaryWsFrameBenchmark.class.getSimpleName())
+            .build())
+            .run();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Round-trips of {@link HttpTunnelMessage} and {@link WsTunnelMessage} through Jackson, as sent to clients
+ * that did not negotiate {@link TunnelFeatures#BINARY_CODEC} (bodies in base64), compared with
+ * {@link TunnelMessageCodec}. Each write or read includes the base64 step of the JSON path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TunnelMessageSerializationBenchmark {
+
+    @Param({"0", "1024", "65536"})
+    private int bodySize;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private HttpTunnelMessage request;
+    private byte[] requestJson;
+    private byte[] requestFrame;
+    private WsTunnelMessage wsMessage;
+    private byte[] wsJson;
+    private byte[] wsFrame;
+
+    @Setup
+    public void setUp() throws IOException {
+        final var body = new byte[bodySize];
+        ThreadLocalRandom.current().nextBytes(body);
+
+        request = new HttpTunnelMessage();
+        request.setId("42");
+        request.setType(HttpTunnelMessage.Type.REQUEST);
+        request.setMethod("POST");
+        request.setPath("/api/items");
+        request.setQuery("page=1&size=20");
+        request.setHeaders(Map.of(
+            "Content-Type", List.of("application/octet-stream"),
+            "Accept", List.of("*/*"),
+            "User-Agent", List.of("Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36")));
+        request.setBody(body);
+        requestJson = writeJson(request);
+        requestFrame = TunnelMessageCodec.encodeToArray(request);
+
+        wsMessage = new WsTunnelMessage();
+        wsMessage.setWsType(WsTunnelMessage.Type.BINARY);
+        wsMessage.setConnectionId(UUID.randomUUID().toString());
+        wsMessage.setData(body);
+        wsJson = writeJson(wsMessage);
+        final var frame = TunnelMessageCodec.encode(wsMessage);
+        wsFrame = new byte[frame.remaining()];
+        frame.get(wsFrame);
+    }
+
+    @Benchmark
+    public byte[] httpJsonWrite() throws IOException {
+        return writeJson(request);
+    }
+
+    @Benchmark
+    public byte[] httpJsonRead() throws IOException {
+        final var message = mapper.readValue(requestJson, HttpTunnelMessage.class);
+        return message.getBodyB64() == null ? null : Base64.getDecoder().decode(message.getBodyB64());
+    }
+
+    @Benchmark
+    public ByteBuffer httpCodecEncode() {
+        return TunnelMessageCodec.encode(request);
+    }
+
+    @Benchmark
+    public byte[] httpCodecDecode() {
+        return TunnelMessageCodec.decode(requestFrame).http().getBody();
+    }
+
+    @Benchmark
+    public byte[] wsJsonWrite() throws IOException {
+        return writeJson(wsMessage);
+    }
+
+    @Benchmark
+    public byte[] wsJsonRead() throws IOException {
+        final var message = mapper.readValue(wsJson, WsTunnelMessage.class);
+        return message.getDataB64() == null ? null : Base64.getDecoder().decode(message.getDataB64());
+    }
+
+    @Benchmark
+    public ByteBuffer wsCodecEncode() {
+        return TunnelMessageCodec.encode(wsMessage);
+    }
+
+    @Benchmark
+    public byte[] wsCodecDecode() {
+        return TunnelMessageCodec.decode(wsFrame).ws().getData();
+    }
+
+    private byte[] writeJson(final HttpTunnelMessage message) throws IOException {
+        final var body = message.getBody();
+        message.setBodyB64(body == null || body.length == 0 ? null : Base64.getEncoder().encodeToString(body));
+        return mapper.writeValueAsBytes(message);
+    }
+
+    private byte[] writeJson(final WsTunnelMessage message) throws IOException {
+        final var data = message.getData();
+        message.setDataB64(data == null || data.length == 0 ? null : Base64.getEncoder().encodeToString(data));
+        return mapper.writeValueAsBytes(message);
+    }
+
+    /**
+     * Runs the benchmarks of this class.
+     *
+     * @param args ignored
+     * @throws RunnerException if the run fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(TunnelMessageSerializationBenchmark.class.getSimpleName())
+            .build())
+            .run();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.gateway.ssl;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.ReferenceCountUtil;
+import tech.amak.portbuddy.gateway.config.AppProperties;
+
+/**
+ * Measures full TLS handshakes per second of the gateway's server contexts with the JDK and the OpenSSL engine
+ * and with an RSA 2048 and an ECDSA P-256 certificate, the cost that dominates short-lived webhook connections.
+ * Client and server engines run in memory on the benchmark thread, so the score includes the client's share; the
+ * client always uses the fastest engine available, so differences between runs come from the server engine.
+ * Clients do not resume sessions. Run e.g. from the IDE through {@link #main}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TlsHandshakeBenchmark {
+
+    // As offered by the gateway by default
+    private static final List<String> CIPHERS = List.of(
+        "TLS_AES_128_GCM_SHA256",
+        "TLS_AES_256_GCM_SHA384",
+        "TLS_CHACHA20_POLY1305_SHA256",
+        "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+        "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+        "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+        "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+        "TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256",
+        "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256");
+    private static final int MAX_FLIGHTS = 16;
+
+    @Param({"JDK", "OPENSSL"})
+    private AppProperties.TlsProvider provider;
+
+    @Param({"TLSv1.3", "TLSv1.2"})
+    private String protocol;
+
+    @Param({"RSA", "EC"})
+    private String keyAlgorithm;
+
+    private SelfSignedCertificate certificate;
+    private SslContext serverContext;
+    private SslContext clientContext;
+    private ByteBuffer clientToServer;
+    private ByteBuffer serverToClient;
+    private ByteBuffer application;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final var factory = new ServerSslContextFactory(new AppProperties.Ssl(true, provider, CIPHERS,
+            List.of("http/1.1"), null, new AppProperties.Session(20_480, Duration.ofHours(4), null)));
+        if (provider == AppProperties.TlsProvider.OPENSSL && factory.getProvider() == SslProvider.JDK) {
+            throw new IllegalStateException("OpenSSL is not available", OpenSsl.unavailabilityCause());
+        }
+        certificate = new SelfSignedCertificate("localhost", keyAlgorithm,
+            "EC".equals(keyAlgorithm) ? 256 : 2048);
+        serverContext = factory.build(SslContextBuilder.forServer(certificate.certificate(),
+            certificate.privateKey()));
+        clientContext = SslContextBuilder.forClient()
+            .sslProvider(OpenSsl.isAvailable() ? SslProvider.OPENSSL_REFCNT : SslProvider.JDK)
+            .trustManager(InsecureTrustManagerFactory.INSTANCE)
+            .protocols(protocol)
+            .build();
+        clientToServer = ByteBuffer.allocate(64 * 1024);
+        serverToClient = ByteBuffer.allocate(64 * 1024);
+        application = ByteBuffer.allocate(64 * 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ReferenceCountUtil.release(serverContext);
+        ReferenceCountUtil.release(clientContext);
+        certificate.delete();
+    }
+
+    /**
+     * One full handshake between a new client and a new server engine.
+     */
+    @Benchmark
+    public String handshake() throws SSLException {
+        final var client = clientContext.newEngine(ByteBufAllocator.DEFAULT);
+        final var server = serverContext.newEngine(ByteBufAllocator.DEFAULT);
+        try {
+            clientToServer.clear();
+            serverToClient.clear();
+            client.beginHandshake();
+            server.beginHandshake();
+            for (var flight = 0; flight < MAX_FLIGHTS; flight++) {
+                if (isFinished(client) && isFinished(server)) {
+                    return server.getSession().getCipherSuite();
+                }
+                transfer(client, clientToServer, server);
+                transfer(server, serverToClient, client);
+            }
+            throw new IllegalStateException("Handshake did not finish");
+        } finally {
+            ReferenceCountUtil.release(client);
+            ReferenceCountUtil.release(server);
+        }
+    }
+
+    private void transfer(final SSLEngine from, final ByteBuffer wire, final SSLEngine to) throws SSLException {
+        SSLEngineResult result;
+        do {
+            result = from.wrap(ByteBuffer.allocate(0), wire);
+            runDelegatedTasks(from);
+        } while (result.bytesProduced() > 0);
+
+        wire.flip();
+        while (wire.hasRemaining()) {
+            application.clear();
+            result = to.unwrap(wire, application);
+            runDelegatedTasks(to);
+            if (result.bytesConsumed() == 0) {
+                break;
+            }
+        }
+        wire.compact();
+    }
+
+    private static boolean isFinished(final SSLEngine engine) {
+        return engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    private static void runDelegatedTasks(final SSLEngine engine) {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Runs the benchmarks of this class.
+     *
+     * @param args ignored
+     * @throws RunnerException if the run fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(TlsHandshakeBenchmark.class.getSimpleName())
+            .build())
+            .run();
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.netproxy.tunnel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.TextMessage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import tech.amak.portbuddy.benchmarks.BenchmarkSession;
+import tech.amak.portbuddy.common.TunnelType;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
+import tech.amak.portbuddy.common.tunnel.WsTunnelMessage;
+import tech.amak.portbuddy.netproxy.config.AppProperties;
+
+/**
+ * Measures {@link NetTunnelRegistry#onClientBinaryBytes} (and its stream-id counterpart) for a TCP tunnel
+ * with many open public connections: the connection lookup plus the write to the public socket. The public
+ * side is made of real loopback connections drained by a single selector thread, so the socket write is
+ * part of the measurement but never blocks on a full peer buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetRelayBenchmark {
+
+    private static final int PAYLOAD_SIZE = 1024;
+
+    @Param({"BLOCKING", "NIO"})
+    private AppProperties.Tcp.Engine engine;
+
+    @Param({"1", "100", "1000"})
+    private int connections;
+
+    /**
+     * Whether the client negotiated {@link TunnelFeatures#STREAM_ID}, so frames carry a stream id.
+     */
+    @Param({"false", "true"})
+    private boolean streamIds;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<SocketChannel> publicClients = new ArrayList<>();
+    private NetTunnelRegistry registry;
+    private UUID tunnelId;
+    private String[] connectionIds;
+    private int[] streamIdsByConnection;
+    private ByteBuffer payload;
+    private Selector selector;
+    private Thread drainer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final var properties = new AppProperties(
+            "localhost",
+            new AppProperties.WebSocket(
+                DataSize.ofMegabytes(10),
+                DataSize.ofMegabytes(10),
+                Duration.ofMinutes(10),
+                Duration.ofSeconds(10),
+                DataSize.ofMegabytes(1)),
+            new AppProperties.Jwt("port-buddy", "http://localhost:8080"),
+            new AppProperties.Tcp(engine, true, null, null, null, null, DataSize.ofMegabytes(16), 2));
+        registry = new NetTunnelRegistry(mapper, properties);
+        tunnelId = UUID.randomUUID();
+
+        final BlockingQueue<WsTunnelMessage> opened = new LinkedBlockingQueue<>();
+        final var headers = new HttpHeaders();
+        if (streamIds) {
+            headers.add(TunnelFeatures.HEADER, TunnelFeatures.STREAM_ID);
+        }
+        registry.attachSession(tunnelId, new BenchmarkSession("net-tunnel", headers, message -> {
+            if (message instanceof TextMessage text) {
+                try {
+                    opened.add(mapper.readValue(text.getPayload(), WsTunnelMessage.class));
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }));
+        final var port = registry.expose(tunnelId, TunnelType.TCP, freePort()).getPort();
+
+        selector = Selector.open();
+        connectionIds = new String[connections];
+        streamIdsByConnection = new int[connections];
+        for (var i = 0; i < connections; i++) {
+            final var client = SocketChannel.open(new InetSocketAddress("localhost", port));
+            client.configureBlocking(false);
+            client.register(selector, SelectionKey.OP_READ);
+            publicClients.add(client);
+
+            final var open = opened.poll(10, TimeUnit.SECONDS);
+            if (open == null || open.getWsType() != WsTunnelMessage.Type.OPEN) {
+                throw new IllegalStateException("Public connection " + i + " was not opened");
+            }
+            connectionIds[i] = open.getConnectionId();
+            streamIdsByConnection[i] = open.getStreamId() != null ? open.getStreamId() : 0;
+            registry.onClientOpenOk(tunnelId, open.getConnectionId());
+        }
+        drainer = new Thread(this::drain, "net-relay-benchmark-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+
+        final var data = new byte[PAYLOAD_SIZE];
+        ThreadLocalRandom.current().nextBytes(data);
+        payload = ByteBuffer.wrap(data);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        drainer.interrupt();
+        selector.close();
+        for (final var client : publicClients) {
+            client.close();
+        }
+        registry.closeTunnel(tunnelId);
+        registry.shutdown();
+    }
+
+    /**
+     * Relays one data frame from the client to a random public connection.
+     */
+    @Benchmark
+    public void relay() {
+        final var index = ThreadLocalRandom.current().nextInt(connections);
+        if (streamIds) {
+            registry.onClientStreamBytes(tunnelId, streamIdsByConnection[index], payload.duplicate());
+        } else {
+            registry.onClientBinaryBytes(tunnelId, connectionIds[index], payload.duplicate());
+        }
+    }
+
+    private void drain() {
+        final var sink = ByteBuffer.allocateDirect(256 * 1024);
+        try {
+            while (!Thread.currentThread().isInterrupted() && selector.isOpen()) {
+                selector.select(100);
+                for (final var key : selector.selectedKeys()) {
+                    if (key.isValid() && key.isReadable()) {
+                        sink.clear();
+                        if (((SocketChannel) key.channel()).read(sink) < 0) {
+                            key.cancel();
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (final Exception e) {
+            // selector closed at tear down
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (final var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Runs the benchmarks of this class.
+     *
+     * @param args ignored
+     * @throws RunnerException if the run fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(NetRelayBenchmark.class.getSimpleName())
+            .build())
+            .run();
+    }
+}
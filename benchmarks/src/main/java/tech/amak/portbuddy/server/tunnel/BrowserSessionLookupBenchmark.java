@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import tech.amak.portbuddy.benchmarks.BenchmarkSession;
+import tech.amak.portbuddy.server.db.entity.DomainEntity;
+import tech.amak.portbuddy.server.db.entity.TunnelEntity;
+
+/**
+ * Measures the cost of routing one browser WebSocket frame as the number of registered tunnels grows.
+ * {@link #lookup} and {@link #forwardText} should stay flat across {@code tunnelCount}, while
+ * {@link #scanLegacy}, the per-tunnel scan used before the session index, grows linearly.
+ * Run e.g. from the IDE through {@link #main}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BrowserSessionLookupBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int tunnelCount;
+
+    private TunnelRegistry registry;
+    private PublicWebSocketProxyHandler handler;
+    private List<TunnelRegistry.Tunnel> tunnels;
+    private WebSocketSession[] browserSessions;
+    private TextMessage message;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new TunnelRegistry(new ObjectMapper());
+        handler = new PublicWebSocketProxyHandler(registry, null, null, null);
+        browserSessions = new WebSocketSession[tunnelCount];
+        for (var i = 0; i < tunnelCount; i++) {
+            final var domain = new DomainEntity();
+            domain.setSubdomain("t" + i);
+            final var tunnelEntity = new TunnelEntity();
+            tunnelEntity.setId(UUID.randomUUID());
+            tunnelEntity.setAccountId(UUID.randomUUID());
+            tunnelEntity.setDomain(domain);
+            // Closed tunnel sessions end forwarding before the hand-off to the outbound writer, which costs
+            // the same for any number of tunnels but would dominate the measurement
+            final var tunnelSession = new BenchmarkSession("tunnel-" + i);
+            tunnelSession.close();
+            registry.register(tunnelEntity, tunnelSession);
+
+            browserSessions[i] = new BenchmarkSession("browser-" + i);
+            registry.registerBrowserWs(tunnelEntity.getId(), "conn-" + i, browserSessions[i]);
+        }
+        tunnels = new ArrayList<>(registry.tunnels());
+        message = new TextMessage("{\"type\":\"chat\",\"text\":\"hello\"}");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (final var tunnel : tunnels) {
+            registry.closeTunnel(tunnel.tunnelId());
+        }
+    }
+
+    /**
+     * Resolves the tunnel and connection of a browser session through the session index.
+     */
+    @Benchmark
+    public TunnelRegistry.Ids lookup() {
+        return registry.findIdsByBrowserSession(randomSession());
+    }
+
+    /**
+     * Resolves the tunnel and connection of a browser session by scanning every tunnel.
+     */
+    @Benchmark
+    public TunnelRegistry.Ids scanLegacy() {
+        final var session = randomSession();
+        for (final var tunnel : tunnels) {
+            final var ids = tunnel.browserReverse().get(session);
+            if (ids != null) {
+                return ids;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forwarding of a text frame from a browser up to the outbound writer of the tunnel.
+     */
+    @Benchmark
+    public void forwardText() {
+        handler.handleTextMessage(randomSession(), message);
+    }
+
+    private WebSocketSession randomSession() {
+        return browserSessions[ThreadLocalRandom.current().nextInt(tunnelCount)];
+    }
+
+    /**
+     * Runs the benchmarks of this class.
+     *
+     * @param args ignored
+     * @throws RunnerException if the run fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(BrowserSessionLookupBenchmark.class.getSimpleName())
+            .build())
+            .run();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpHeaders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import tech.amak.portbuddy.benchmarks.BenchmarkSession;
+import tech.amak.portbuddy.common.tunnel.HttpTunnelMessage;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
+import tech.amak.portbuddy.server.db.entity.DomainEntity;
+import tech.amak.portbuddy.server.db.entity.TunnelEntity;
+
+/**
+ * Measures the buffered HTTP relay of one tunnel under contention: {@link TunnelRegistry#forwardRequest}
+ * (id assignment, pending-future registration, encoding and the hand-off to the outbound writer) and the
+ * {@link TunnelRegistry#onResponse} correlation that completes it, from several ingress threads at once.
+ * The tunnel session discards what the writer sends, so the network is not part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class HttpRelayBenchmark {
+
+    private static final String SUBDOMAIN = "bench";
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final Map<String, List<String>> HEADERS = Map.of(
+        "Content-Type", List.of("application/json"),
+        "Accept", List.of("application/json"),
+        "User-Agent", List.of("Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36"));
+
+    /**
+     * Protocol features advertised by the client: the binary codec, or none for JSON with base64 bodies.
+     */
+    @Param({TunnelFeatures.BINARY_CODEC, "json"})
+    private String codec;
+
+    @Param({"0", "16384"})
+    private int bodySize;
+
+    private TunnelRegistry registry;
+    private UUID tunnelId;
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new TunnelRegistry(new ObjectMapper());
+        final var domain = new DomainEntity();
+        domain.setSubdomain(SUBDOMAIN);
+        final var tunnelEntity = new TunnelEntity();
+        tunnelEntity.setId(UUID.randomUUID());
+        tunnelEntity.setAccountId(UUID.randomUUID());
+        tunnelEntity.setDomain(domain);
+        final var headers = new HttpHeaders();
+        if (TunnelFeatures.BINARY_CODEC.equals(codec)) {
+            headers.add(TunnelFeatures.HEADER, codec);
+        }
+        registry.register(tunnelEntity, new BenchmarkSession("tunnel", headers, message -> {
+        }));
+        tunnelId = tunnelEntity.getId();
+        body = new byte[bodySize];
+        ThreadLocalRandom.current().nextBytes(body);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        registry.closeTunnel(tunnelId);
+    }
+
+    /**
+     * Forwards a request and completes it with the response the client would send back.
+     */
+    @Benchmark
+    public HttpTunnelMessage roundTrip() {
+        final var request = new HttpTunnelMessage();
+        request.setMethod("POST");
+        request.setPath("/api/items");
+        request.setHeaders(HEADERS);
+        request.setBody(body);
+        final var future = registry.forwardRequest(SUBDOMAIN, request, TIMEOUT);
+
+        final var response = new HttpTunnelMessage();
+        response.setId(request.getId());
+        response.setType(HttpTunnelMessage.Type.RESPONSE);
+        response.setStatus(200);
+        response.setRespHeaders(HEADERS);
+        response.setRespBody(body);
+        registry.onResponse(tunnelId, response);
+        return future.join();
+    }
+
+    /**
+     * Runs the benchmarks of this class.
+     *
+     * @param args ignored
+     * @throws RunnerException if the run fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(HttpRelayBenchmark.class.getSimpleName())
+            .build())
+            .run();
+    }
+}
@@ -125,6 +125,50 @@ public class PortBuddy {
                 this.passcode = arg.substring("--passcode=".length());
             } else if ("-n".equals(arg) || "--no-request-log".equals(arg)) {
                 configurationService.getConfig().setLogEnabled(false);
+            } else if ("--cache".equals(arg)) {
+                configurationService.getConfig().setHttpCache(true);
+            } else if ("--h2c".equals(arg)) {
+                configurationService.getConfig().setLocalH2c(true);
+            } else if ("--unix-socket".equals(arg)) {
+                if (++i < args.length) {
+                    configurationService.getConfig().setLocalUnixSocket(args[i]);
+                } else {
+                    System.err.println("Error: Option '--unix-socket' requires an argument.");
+                    return EXIT_USAGE;
+                }
+            } else if (arg.startsWith("--unix-socket=")) {
+                configurationService.getConfig().setLocalUnixSocket(arg.substring("--unix-socket=".length()));
+            } else if (arg.startsWith("--warmup=")) {
+                final var value = arg.substring("--warmup=".length());
+                try {
+                    configurationService.getConfig().setLocalWarmupConnections(Integer.parseInt(value));
+                } catch (final NumberFormatException e) {
+                    System.err.println("Error: Invalid number of warm-up connections: " + value);
+                    return EXIT_USAGE;
+                }
+            } else if (arg.startsWith("--tcp-nodelay=")) {
+                final var value = arg.substring("--tcp-nodelay=".length());
+                if (!"true".equals(value) && !"false".equals(value)) {
+                    System.err.println("Error: Invalid TCP_NODELAY value, expected true or false: " + value);
+                    return EXIT_USAGE;
+                }
+                configurationService.getConfig().setPublicTcpNoDelay(Boolean.valueOf(value));
+            } else if (arg.startsWith("--tcp-send-buffer=")) {
+                final var value = arg.substring("--tcp-send-buffer=".length());
+                try {
+                    configurationService.getConfig().setPublicTcpSendBufferSize(Integer.parseInt(value));
+                } catch (final NumberFormatException e) {
+                    System.err.println("Error: Invalid TCP send buffer size: " + value);
+                    return EXIT_USAGE;
+                }
+            } else if (arg.startsWith("--tcp-receive-buffer=")) {
+                final var value = arg.substring("--tcp-receive-buffer=".length());
+                try {
+                    configurationService.getConfig().setPublicTcpReceiveBufferSize(Integer.parseInt(value));
+                } catch (final NumberFormatException e) {
+                    System.err.println("Error: Invalid TCP receive buffer size: " + value);
+                    return EXIT_USAGE;
+                }
             } else if ("init".equals(arg)) {
                 if (++i < args.length) {
                     return init(args[i]);
@@ -155,6 +199,15 @@ public class PortBuddy {
         System.out.println("                              Use specific port reservation host:port for TCP/UDP");
         System.out.println("  -pc, --passcode=<passcode>  Passcode to secure HTTP tunnel (temporary for this tunnel)");
         System.out.println("  -n, --no-request-log        Disable request logging");
+        System.out.println("      --cache                 Let the server cache responses marked cacheable by the app");
+        System.out.println("      --h2c                   Speak HTTP/2 without TLS to the local app");
+        System.out.println("      --unix-socket=<path>    Reach the local app through a Unix domain socket");
+        System.out.println("      --warmup=<n>            Open n connections to the local app when the tunnel starts");
+        System.out.println("      --tcp-nodelay=<bool>    TCP_NODELAY of public connections to a TCP tunnel");
+        System.out.println("      --tcp-send-buffer=<bytes>");
+        System.out.println("                              Socket send buffer of public connections to a TCP tunnel");
+        System.out.println("      --tcp-receive-buffer=<bytes>");
+        System.out.println("                              Socket receive buffer of public connections to a TCP tunnel");
         System.out.println("  -v, --verbose               Verbose logging");
         System.out.println("  -h, --help                  Show this help message and exit.");
         System.out.println("  -V, --version               Print version information and exit.");
@@ -166,6 +219,7 @@ public class PortBuddy {
         System.out.println("  portbuddy 3000");
         System.out.println("  portbuddy tcp 5432");
         System.out.println("  portbuddy --domain=my-app 8080");
+        System.out.println("  portbuddy --unix-socket=/run/app.sock");
     }
 
     private void printVersion() {
@@ -184,9 +238,19 @@ public class PortBuddy {
     }
 
     private int expose() {
+        final var config = configurationService.getConfig();
+        final var unixSocket = config.getLocalUnixSocket();
+        if (unixSocket != null && unixSocket.isBlank()) {
+            System.err.println("Error: Option '--unix-socket' requires a path.");
+            return EXIT_USAGE;
+        }
         final String modeStr;
         final String hostPortStr;
-        if (positionalArgs.isEmpty()) {
+        if (positionalArgs.isEmpty() && unixSocket != null) {
+            // The socket file is the target; the URL only carries the scheme
+            modeStr = null;
+            hostPortStr = "http://localhost";
+        } else if (positionalArgs.isEmpty()) {
             System.err.println("Usage: portbuddy [mode] [host:][port] or [schema://]host[:port]");
             return EXIT_USAGE;
         } else if (positionalArgs.size() == 1) {
@@ -206,8 +270,21 @@ public class PortBuddy {
             System.err.println("Port must be in range [1, 65535]");
             return EXIT_USAGE;
         }
-
-        final var config = configurationService.getConfig();
+        if (mode != TunnelType.HTTP && (config.isLocalH2c() || unixSocket != null)) {
+            System.err.println("Options '--h2c' and '--unix-socket' apply to HTTP tunnels only.");
+            return EXIT_USAGE;
+        }
+        if (mode != TunnelType.TCP && (config.getPublicTcpNoDelay() != null
+                                       || config.getPublicTcpSendBufferSize() != null
+                                       || config.getPublicTcpReceiveBufferSize() != null)) {
+            System.err.println("Options '--tcp-nodelay', '--tcp-send-buffer' and '--tcp-receive-buffer' "
+                               + "apply to TCP tunnels only.");
+            return EXIT_USAGE;
+        }
+        if (config.isLocalH2c() && !"http".equals(hostPort.scheme)) {
+            System.err.println("Option '--h2c' requires an http:// local target.");
+            return EXIT_USAGE;
+        }
 
         // 1) Ensure API key is present and exchange it for a JWT at startup
         if (!ensureAuthenticated(config)) {
@@ -229,7 +306,9 @@ public class PortBuddy {
                 return EXIT_ERROR;
             }
 
-            final var localInfo = String.format("%s://%s:%d", hostPort.scheme, hostPort.host, hostPort.port);
+            final var localInfo = unixSocket != null
+                ? String.format("%s+unix:%s", hostPort.scheme, unixSocket)
+                : String.format("%s://%s:%d", hostPort.scheme, hostPort.host, hostPort.port);
             final var publicInfo = expose.publicUrl();
             final var ui = new ConsoleUi(TunnelType.HTTP, localInfo, publicInfo);
             final var tunnelId = expose.tunnelId();
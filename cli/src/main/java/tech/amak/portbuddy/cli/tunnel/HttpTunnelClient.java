@@ -16,46 +16,94 @@ package tech.amak.portbuddy.cli.tunnel;
 
 import static tech.amak.portbuddy.cli.utils.JsonUtils.MAPPER;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
+import okio.BufferedSink;
 import okio.ByteString;
 import tech.amak.portbuddy.cli.config.ConfigurationService;
 import tech.amak.portbuddy.cli.ui.ConsoleUi;
 import tech.amak.portbuddy.cli.ui.HttpLogSink;
 import tech.amak.portbuddy.cli.utils.HttpUtils;
 import tech.amak.portbuddy.common.tunnel.ControlMessage;
+import tech.amak.portbuddy.common.tunnel.FrameCompression;
+import tech.amak.portbuddy.common.tunnel.HttpStreamFrame;
 import tech.amak.portbuddy.common.tunnel.HttpTunnelMessage;
 import tech.amak.portbuddy.common.tunnel.MessageEnvelope;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
+import tech.amak.portbuddy.common.tunnel.TunnelMessageCodec;
 import tech.amak.portbuddy.common.tunnel.WsTunnelMessage;
 
 @Slf4j
 @RequiredArgsConstructor
 public class HttpTunnelClient {
 
+    /**
+     * Protocol features advertised to the server at handshake.
+     */
+    private static final List<String> FEATURES = List.of(TunnelFeatures.HTTP_STREAM, TunnelFeatures.BINARY_CODEC,
+        TunnelFeatures.DEFLATE);
+
+    /**
+     * Number of request body chunks consumed before their credit is returned to the server in one frame.
+     */
+    private static final int CREDIT_BATCH = HttpStreamFrame.WINDOW_CHUNKS / 4;
+
+    /**
+     * How long a streamed response chunk may wait for credit before the server is considered stuck.
+     */
+    private static final long CREDIT_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Upper bound of bytes queued in the control WebSocket before streamed responses wait for it to drain.
+     * OkHttp fails the whole WebSocket once its outgoing queue exceeds 16 MiB. Stream credit bounds what each
+     * stream may have in flight, but not the sum over all streams in flight, nor buffered responses, which
+     * share the queue.
+     */
+    private static final long MAX_QUEUED_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * How long a streamed response chunk may wait for the control WebSocket to drain before the stream is
+     * aborted, e.g. because the connection to the server stalled.
+     */
+    private static final long SEND_QUEUE_DRAIN_TIMEOUT_SECONDS = 30;
+
+    private static final byte[] END_OF_BODY = new byte[0];
+
     private final String serverUrl; // e.g. https://portbuddy.dev
     private final UUID tunnelId;
     private final String localHost;
@@ -66,10 +114,29 @@ public class HttpTunnelClient {
     private final HttpLogSink httpLogSink;
     private final boolean verbose;
 
+    // Number of requests executed against the local target at the same time, reported to the server
+    private final int maxInFlight = Math.max(1, ConfigurationService.INSTANCE.getConfig().getMaxInFlightRequests());
+    // Largest message accepted from the server, bounding what a compressed frame may inflate to
+    private final int maxMessageSize = Math.max(1, ConfigurationService.INSTANCE.getConfig().getMaxMessageSizeMb())
+                                       * 1024 * 1024;
     // OkHttp client used exclusively for the control WebSocket connection to the server
     private final OkHttpClient http = createHttpClient();
     // Separate OkHttp client for calling the local target service (avoid any interference with WS client)
-    private final OkHttpClient localHttp = createLocalHttpClient();
+    private final OkHttpClient localHttp = createLocalHttpClient(maxInFlight);
+    // Client for WebSockets to the local target, sharing its connection settings but not its request limit
+    private final OkHttpClient localWs = createLocalWsClient(localHttp);
+
+    /**
+     * Returns the protocol features to advertise, including the response cache if the user opted in.
+     */
+    private static List<String> features() {
+        if (!ConfigurationService.INSTANCE.getConfig().isHttpCache()) {
+            return FEATURES;
+        }
+        final var features = new ArrayList<>(FEATURES);
+        features.add(TunnelFeatures.HTTP_CACHE);
+        return features;
+    }
 
     private static OkHttpClient createHttpClient() {
         final var builder = new OkHttpClient.Builder()
@@ -84,8 +151,16 @@ public class HttpTunnelClient {
         return builder.build();
     }
 
-    private static OkHttpClient createLocalHttpClient() {
+    private static OkHttpClient createLocalHttpClient(final int maxInFlight) {
+        final var config = ConfigurationService.INSTANCE.getConfig();
+        // Sized so that every request in flight can reuse a kept-alive connection to the local target
+        final var dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxInFlight);
+        dispatcher.setMaxRequestsPerHost(maxInFlight);
+        final var keepAliveSec = Math.max(1, config.getLocalKeepAliveSec());
         final var builder = new OkHttpClient.Builder()
+            .dispatcher(dispatcher)
+            .connectionPool(new ConnectionPool(maxInFlight, keepAliveSec, TimeUnit.SECONDS))
             .connectTimeout(10, TimeUnit.SECONDS)
             .readTimeout(60, TimeUnit.SECONDS)
             .writeTimeout(60, TimeUnit.SECONDS)
@@ -94,6 +169,13 @@ public class HttpTunnelClient {
             .followSslRedirects(false)
             .retryOnConnectionFailure(true);
 
+        if (config.isLocalH2c()) {
+            // Multiplexes all requests over one cleartext HTTP/2 connection
+            builder.protocols(List.of(Protocol.H2_PRIOR_KNOWLEDGE));
+        }
+        if (config.getLocalUnixSocket() != null) {
+            builder.socketFactory(new UnixDomainSocketFactory(Path.of(config.getLocalUnixSocket())));
+        }
         if (ConfigurationService.INSTANCE.isDev()) {
             HttpUtils.configureInsecureSsl(builder);
         }
@@ -101,7 +183,23 @@ public class HttpTunnelClient {
         return builder.build();
     }
 
+    private static OkHttpClient createLocalWsClient(final OkHttpClient localHttp) {
+        // A WebSocket holds its dispatcher slot for as long as it is open, so it must not count against the
+        // requests in flight
+        final var dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Integer.MAX_VALUE);
+        dispatcher.setMaxRequestsPerHost(Integer.MAX_VALUE);
+        return localHttp.newBuilder()
+            .dispatcher(dispatcher)
+            .readTimeout(0, TimeUnit.MILLISECONDS) // idle WebSockets stay open
+            .build();
+    }
+
     private WebSocket webSocket;
+    // Whether the server accepted the binary codec for the current connection
+    private volatile boolean binaryCodec;
+    // Whether the server accepted per-frame compression for the current connection
+    private volatile boolean deflate;
     private CountDownLatch closed = new CountDownLatch(1);
     private final AtomicBoolean stop = new AtomicBoolean(false);
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
@@ -110,13 +208,28 @@ public class HttpTunnelClient {
         return thread;
     });
     private volatile ScheduledFuture<?> heartbeatTask;
-    private final ExecutorService requestExecutor = Executors.newFixedThreadPool(4, runnable -> {
-        final var thread = new Thread(runnable, "port-buddy-http-worker");
-        thread.setDaemon(true);
-        return thread;
-    });
+    private final ExecutorService requestExecutor = createRequestExecutor();
+    // Fair, so that requests start in the order they arrived once the limit is reached
+    private final Semaphore inFlight = new Semaphore(maxInFlight, true);
+
+    /**
+     * Creates the executor of tunneled requests. Concurrency is bounded by {@link #inFlight} rather than by
+     * the executor, so a slow request never holds back the ones behind it while a slot is free.
+     */
+    private static ExecutorService createRequestExecutor() {
+        if (ConfigurationService.INSTANCE.getConfig().isVirtualThreads()) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newCachedThreadPool(runnable -> {
+            final var thread = new Thread(runnable, "port-buddy-http-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
     private final Map<String, WebSocket> localWebsocketMap = new ConcurrentHashMap<>();
+    // Streamed HTTP requests in flight, keyed by request id
+    private final Map<String, InboundStream> inboundStreams = new ConcurrentHashMap<>();
 
     /**
      * Establishes and maintains a blocking WebSocket connection to the server.
@@ -135,6 +248,7 @@ public class HttpTunnelClient {
      * on the latch is interrupted. Restores the interrupted thread state.
      */
     public void runBlocking() {
+        warmUpLocalConnections();
         var backoffMs = 1000L;
         final var maxBackoffMs = 30000L;
         while (!stop.get()) {
@@ -145,6 +259,8 @@ public class HttpTunnelClient {
                 if (authToken != null && !authToken.isBlank()) {
                     request.addHeader("Authorization", "Bearer " + authToken);
                 }
+                request.addHeader(TunnelFeatures.HEADER, TunnelFeatures.format(features()));
+                request.addHeader(TunnelFeatures.MAX_IN_FLIGHT_HEADER, Integer.toString(maxInFlight));
                 webSocket = http.newWebSocket(request.build(), new Listener());
 
                 // Block until this connection is closed
@@ -175,6 +291,43 @@ public class HttpTunnelClient {
         }
     }
 
+    /**
+     * Opens the configured number of connections to the local target ahead of the first requests, so that a
+     * burst of traffic finds them kept alive in the pool rather than waiting for the target to accept new
+     * ones. Each connection is opened by a {@code HEAD /} request sent concurrently with the others; failures
+     * are only logged.
+     */
+    private void warmUpLocalConnections() {
+        final var config = ConfigurationService.INSTANCE.getConfig();
+        // A single HTTP/2 connection carries every request
+        final var connections = Math.min(config.getLocalWarmupConnections(), config.isLocalH2c() ? 1 : maxInFlight);
+        if (connections <= 0) {
+            return;
+        }
+        final var request = new Request.Builder()
+            .url(localScheme + "://" + localHost + ":" + localPort + "/")
+            .head();
+        final var hostHeader = resolveLocalHostHeader(null);
+        if (hostHeader != null) {
+            request.header("Host", hostHeader);
+        }
+        final var warmUp = request.build();
+        for (var i = 0; i < connections; i++) {
+            localHttp.newCall(warmUp).enqueue(new Callback() {
+                @Override
+                public void onFailure(final Call call, final IOException e) {
+                    log.debug("Local warm-up request failed: {}", e.toString());
+                }
+
+                @Override
+                public void onResponse(final Call call, final Response response) {
+                    response.close();
+                }
+            });
+        }
+        log.debug("Warming up {} connection(s) to the local target", connections);
+    }
+
     /**
      * Closes the WebSocket connection associated with this HTTP tunnel client.
      * This method attempts to gracefully close the WebSocket connection, if it exists,
@@ -272,6 +425,10 @@ public class HttpTunnelClient {
     private class Listener extends WebSocketListener {
         @Override
         public void onOpen(final WebSocket webSocket, final Response response) {
+            // Plain messages until FEATURES tells which features the server accepted; the gateway in between does
+            // not relay headers of the handshake response
+            binaryCodec = false;
+            deflate = false;
             log.debug("Tunnel connected to server");
             // Start application-level heartbeat PINGs
             try {
@@ -302,7 +459,13 @@ public class HttpTunnelClient {
                 final var env = MAPPER.readValue(text, MessageEnvelope.class);
                 if (env.getKind() != null && env.getKind().equals("CTRL")) {
                     final var ctrl = MAPPER.readValue(text, ControlMessage.class);
-                    if (ctrl.getType() == ControlMessage.Type.EXIT) {
+                    if (ctrl.getType() == ControlMessage.Type.FEATURES) {
+                        // Precedes every request; older servers send none and get plain messages
+                        final var accepted = TunnelFeatures.parse(ctrl.getFeatures());
+                        binaryCodec = accepted.contains(TunnelFeatures.BINARY_CODEC);
+                        deflate = accepted.contains(TunnelFeatures.DEFLATE);
+                        log.debug("Tunnel features accepted (binary codec: {}, deflate: {})", binaryCodec, deflate);
+                    } else if (ctrl.getType() == ControlMessage.Type.EXIT) {
                         log.info("Received EXIT control message. Shutting down...");
                         try {
                             HttpTunnelClient.this.webSocket.close(1000, "Server requested exit");
@@ -323,22 +486,7 @@ public class HttpTunnelClient {
                 final var message = MAPPER.readValue(text, HttpTunnelMessage.class);
                 if (message.getType() == HttpTunnelMessage.Type.REQUEST) {
                     // Offload request processing to a worker thread to avoid blocking the WS listener
-                    requestExecutor.submit(() -> {
-                        try {
-                            final var resp = handleRequest(message);
-                            final var json = MAPPER.writeValueAsString(resp);
-                            HttpTunnelClient.this.webSocket.send(json);
-                            log.debug("Responded to WS request: {}", resp.getId());
-                        } catch (final Exception ex) {
-                            log.warn("Failed to handle tunneled request {}: {}", message.getId(), ex.toString());
-                            try {
-                                final var error = buildErrorMessage(message.getId(), 502, "Proxy error");
-                                HttpTunnelClient.this.webSocket.send(MAPPER.writeValueAsString(error));
-                            } catch (final Exception e) {
-                                log.error("Failed to send error response: {}", e.getMessage(), e);
-                            }
-                        }
-                    });
+                    submitRequest(() -> processRequest(message, false));
                 } else {
                     log.debug("Ignoring non-REQUEST msg");
                 }
@@ -347,6 +495,29 @@ public class HttpTunnelClient {
             }
         }
 
+        @Override
+        public void onMessage(final WebSocket webSocket, final ByteString bytes) {
+            try {
+                final var buffer = FrameCompression.unwrap(bytes.asByteBuffer(), maxMessageSize);
+                if (buffer == null) {
+                    log.debug("Ignoring malformed or oversized compressed frame");
+                    return;
+                }
+                if (TunnelMessageCodec.isCodecFrame(buffer)) {
+                    handleCodecMessage(buffer);
+                    return;
+                }
+                final var frame = HttpStreamFrame.decode(buffer);
+                if (frame == null) {
+                    log.debug("Ignoring malformed binary frame");
+                    return;
+                }
+                handleStreamFrame(frame);
+            } catch (final Exception e) {
+                log.warn("Failed to process binary WS message: {}", e.toString());
+            }
+        }
+
         @Override
         public void onClosed(final WebSocket webSocket, final int code, final String reason) {
             log.info("Tunnel closed: {} {}", code, reason);
@@ -362,6 +533,7 @@ public class HttpTunnelClient {
                 }
             });
             localWebsocketMap.clear();
+            abortInboundStreams();
             closed.countDown();
         }
 
@@ -380,10 +552,137 @@ public class HttpTunnelClient {
                 }
             });
             localWebsocketMap.clear();
+            abortInboundStreams();
             closed.countDown();
         }
     }
 
+    private void handleCodecMessage(final ByteBuffer buffer) {
+        final var data = TunnelMessageCodec.decodeWsData(buffer);
+        if (data != null) {
+            handleWsDataFromServer(data);
+            return;
+        }
+        final var decoded = TunnelMessageCodec.decode(buffer);
+        if (decoded == null) {
+            log.debug("Ignoring malformed binary message");
+            return;
+        }
+        if (decoded.ws() != null) {
+            handleWsFromServer(decoded.ws());
+        } else if (decoded.http().getType() == HttpTunnelMessage.Type.REQUEST) {
+            submitRequest(() -> processRequest(decoded.http(), true));
+        } else {
+            log.debug("Ignoring non-REQUEST msg");
+        }
+    }
+
+    /**
+     * Runs a tunneled request once one of the {@link #maxInFlight} slots is free. The server holds back
+     * requests beyond the limit it was told at handshake, so waiting here only happens with older servers.
+     */
+    private void submitRequest(final Runnable task) {
+        requestExecutor.submit(() -> {
+            try {
+                inFlight.acquire();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * Executes a buffered request and replies in the encoding the request arrived in.
+     */
+    private void processRequest(final HttpTunnelMessage message, final boolean binary) {
+        try {
+            final var resp = handleRequest(message);
+            sendResponse(resp, binary);
+            log.debug("Responded to WS request: {}", resp.getId());
+        } catch (final Exception ex) {
+            log.warn("Failed to handle tunneled request {}: {}", message.getId(), ex.toString());
+            try {
+                sendResponse(buildErrorMessage(message.getId(), 502, "Proxy error"), binary);
+            } catch (final Exception e) {
+                log.error("Failed to send error response: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void sendResponse(final HttpTunnelMessage response, final boolean binary) throws IOException {
+        if (binary) {
+            webSocket.send(outbound(TunnelMessageCodec.encode(response),
+                FrameCompression.isCompressible(response.getRespHeaders())));
+            return;
+        }
+        if (response.getRespBody() != null) {
+            response.setRespBodyB64(response.getRespBody().length == 0
+                ? null
+                : Base64.getEncoder().encodeToString(response.getRespBody()));
+            response.setRespBody(null);
+        }
+        webSocket.send(MAPPER.writeValueAsString(response));
+    }
+
+    /**
+     * Sends a WS tunneling message to the server, in binary if the server accepted the codec.
+     */
+    private void sendWs(final WsTunnelMessage message) throws IOException {
+        if (binaryCodec) {
+            webSocket.send(outbound(TunnelMessageCodec.encode(message), true));
+            return;
+        }
+        if (message.getData() != null) {
+            message.setDataB64(Base64.getEncoder().encodeToString(message.getData()));
+            message.setData(null);
+        }
+        webSocket.send(MAPPER.writeValueAsString(message));
+    }
+
+    /**
+     * Relays a browser data frame to the local WebSocket, reading the payload from the tunnel frame.
+     */
+    private void handleWsDataFromServer(final TunnelMessageCodec.WsData data) {
+        final var local = localWebsocketMap.get(data.connectionId());
+        if (local == null) {
+            return;
+        }
+        if (data.type() == WsTunnelMessage.Type.TEXT) {
+            local.send(data.text());
+        } else {
+            local.send(ByteString.of(data.payload()));
+        }
+    }
+
+    /**
+     * Sends a data frame of a local WebSocket to the server. On the binary codec the payload is copied
+     * once into the frame; otherwise it goes through {@link #sendWs} as JSON.
+     */
+    private void sendWsData(final String connectionId, final WsTunnelMessage.Type type, final ByteBuffer payload)
+        throws IOException {
+        if (binaryCodec) {
+            webSocket.send(outbound(TunnelMessageCodec.encodeWsData(type, connectionId, payload), true));
+            return;
+        }
+        final var message = new WsTunnelMessage();
+        message.setWsType(type);
+        message.setConnectionId(connectionId);
+        if (type == WsTunnelMessage.Type.TEXT) {
+            message.setText(StandardCharsets.UTF_8.decode(payload).toString());
+        } else {
+            final var data = new byte[payload.remaining()];
+            payload.get(data);
+            message.setData(data);
+        }
+        sendWs(message);
+    }
+
     private void handleWsFromServer(final WsTunnelMessage message) {
         final var connId = message.getConnectionId();
         switch (message.getWsType()) {
@@ -411,7 +710,7 @@ public class HttpTunnelClient {
                         }
                     }
                 }
-                final var local = http.newWebSocket(builder.build(), new LocalWsListener(connId));
+                final var local = localWs.newWebSocket(builder.build(), new LocalWsListener(connId));
                 localWebsocketMap.put(connId, local);
             }
             case TEXT -> {
@@ -422,7 +721,9 @@ public class HttpTunnelClient {
             }
             case BINARY -> {
                 final var local = localWebsocketMap.get(connId);
-                if (local != null && message.getDataB64() != null) {
+                if (local != null && message.getData() != null) {
+                    local.send(ByteString.of(message.getData()));
+                } else if (local != null && message.getDataB64() != null) {
                     local.send(ByteString.of(Base64.getDecoder().decode(message.getDataB64())));
                 }
             }
@@ -450,7 +751,7 @@ public class HttpTunnelClient {
                 final var ack = new WsTunnelMessage();
                 ack.setWsType(WsTunnelMessage.Type.OPEN_OK);
                 ack.setConnectionId(connectionId);
-                HttpTunnelClient.this.webSocket.send(MAPPER.writeValueAsString(ack));
+                sendWs(ack);
             } catch (final Exception ignore) {
                 log.error("Failed to send local WS open ack: {}", ignore.toString());
             }
@@ -459,11 +760,7 @@ public class HttpTunnelClient {
         @Override
         public void onMessage(final WebSocket webSocket, final String text) {
             try {
-                final var message = new WsTunnelMessage();
-                message.setWsType(WsTunnelMessage.Type.TEXT);
-                message.setConnectionId(connectionId);
-                message.setText(text);
-                HttpTunnelClient.this.webSocket.send(MAPPER.writeValueAsString(message));
+                sendWsData(connectionId, WsTunnelMessage.Type.TEXT, StandardCharsets.UTF_8.encode(text));
             } catch (final Exception e) {
                 log.debug("Failed to forward local text WS: {}", e.toString());
             }
@@ -472,11 +769,7 @@ public class HttpTunnelClient {
         @Override
         public void onMessage(final WebSocket webSocket, final ByteString bytes) {
             try {
-                final var message = new WsTunnelMessage();
-                message.setWsType(WsTunnelMessage.Type.BINARY);
-                message.setConnectionId(connectionId);
-                message.setDataB64(Base64.getEncoder().encodeToString(bytes.toByteArray()));
-                HttpTunnelClient.this.webSocket.send(MAPPER.writeValueAsString(message));
+                sendWsData(connectionId, WsTunnelMessage.Type.BINARY, bytes.asByteBuffer());
             } catch (final Exception e) {
                 log.debug("Failed to forward local binary WS: {}", e.toString());
             }
@@ -491,7 +784,7 @@ public class HttpTunnelClient {
                 message.setConnectionId(connectionId);
                 message.setCloseCode(code);
                 message.setCloseReason(reason);
-                HttpTunnelClient.this.webSocket.send(MAPPER.writeValueAsString(message));
+                sendWs(message);
             } catch (final Exception e) {
                 log.debug("Failed to notify close: {}", e.toString());
             }
@@ -505,6 +798,181 @@ public class HttpTunnelClient {
 
     private HttpTunnelMessage handleRequest(final HttpTunnelMessage requestMessage) {
         final var method = requestMessage.getMethod();
+        final var targetRequest = buildLocalRequest(requestMessage,
+            buildBody(method, requestBytes(requestMessage), requestMessage.getBodyContentType()));
+
+        try (final var targetResponse = localHttp.newCall(targetRequest).execute()) {
+            final var successMessage = new HttpTunnelMessage();
+            successMessage.setId(requestMessage.getId());
+            successMessage.setType(HttpTunnelMessage.Type.RESPONSE);
+            successMessage.setStatus(targetResponse.code());
+            successMessage.setRespHeaders(extractHeaders(targetResponse));
+            final var body = targetResponse.body();
+            if (body != null) {
+                successMessage.setRespBody(body.bytes());
+            }
+            reportHttpLog(requestMessage, targetResponse.code());
+            return successMessage;
+        } catch (final Exception e) {
+            final var errorMessage = buildErrorMessage(requestMessage.getId(), 502, "Bad Gateway: " + e.getMessage());
+            reportHttpLog(requestMessage, 502);
+            return errorMessage;
+        }
+    }
+
+    private void handleStreamFrame(final HttpStreamFrame.Decoded frame) throws IOException {
+        final var requestId = frame.requestId();
+        switch (frame.type()) {
+            case REQUEST_START -> {
+                final var binary = TunnelMessageCodec.isCodecFrame(ByteBuffer.wrap(frame.data()));
+                final var requestMessage = binary
+                    ? decodeBinaryHead(frame.data())
+                    : MAPPER.readValue(frame.data(), HttpTunnelMessage.class);
+                requestMessage.setId(requestId);
+                final var stream = new InboundStream(requestMessage, binary);
+                inboundStreams.put(requestId, stream);
+                submitRequest(() -> handleStreamedRequest(stream));
+            }
+            case REQUEST_DATA -> {
+                final var stream = inboundStreams.get(requestId);
+                if (stream != null && frame.data().length > 0 && !stream.offerBody(frame.data())) {
+                    failOverrunStream(stream);
+                }
+            }
+            case REQUEST_END -> {
+                final var stream = inboundStreams.get(requestId);
+                if (stream != null && !stream.offerBody(END_OF_BODY)) {
+                    failOverrunStream(stream);
+                }
+            }
+            case CREDIT -> {
+                final var stream = inboundStreams.get(requestId);
+                if (stream != null) {
+                    stream.onCredit(HttpStreamFrame.credit(frame));
+                }
+            }
+            case ABORT -> {
+                final var stream = inboundStreams.remove(requestId);
+                if (stream != null) {
+                    log.debug("Server aborted stream {}: {}", requestId,
+                        new String(frame.data(), StandardCharsets.UTF_8));
+                    stream.abort();
+                }
+            }
+            default -> log.debug("Ignoring unexpected stream frame {}", frame.type());
+        }
+    }
+
+    /**
+     * Fails a stream whose body chunks the server sent beyond the credited window, without holding up the
+     * reader that serves the other streams of the tunnel.
+     */
+    private void failOverrunStream(final InboundStream stream) {
+        final var requestId = stream.request.getId();
+        log.warn("Server sent request body of {} beyond its window; aborting", requestId);
+        inboundStreams.remove(requestId, stream);
+        stream.abort();
+        sendStreamFrame(HttpStreamFrame.encode(HttpStreamFrame.Type.ABORT, requestId,
+            "Flow control window exceeded".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Executes a streamed request against the local target. The request body is fed to the upstream call
+     * as its chunks arrive, and the response body is relayed in {@link HttpStreamFrame#CHUNK_SIZE} chunks
+     * as the server credits them, waiting for the control WebSocket to drain so that large downloads never
+     * buffer in memory.
+     */
+    private void handleStreamedRequest(final InboundStream stream) {
+        final var requestMessage = stream.request;
+        final var requestId = requestMessage.getId();
+        var headSent = false;
+        try {
+            final var call = localHttp.newCall(buildLocalRequest(requestMessage, buildStreamingBody(stream)));
+            stream.call = call;
+            if (stream.aborted) {
+                call.cancel();
+            }
+            try (final var targetResponse = call.execute()) {
+                final var head = new HttpTunnelMessage();
+                head.setId(requestId);
+                head.setType(HttpTunnelMessage.Type.RESPONSE);
+                head.setStatus(targetResponse.code());
+                head.setRespHeaders(extractHeaders(targetResponse));
+                sendStreamFrame(HttpStreamFrame.encode(HttpStreamFrame.Type.RESPONSE_START, requestId,
+                    encodeHead(head, stream.binary)), true);
+                headSent = true;
+                final var compressible = FrameCompression.isCompressible(head.getRespHeaders());
+
+                final var body = targetResponse.body();
+                if (body != null) {
+                    final var buffer = new byte[HttpStreamFrame.CHUNK_SIZE];
+                    try (final var in = body.byteStream()) {
+                        int read;
+                        while (!stream.aborted && (read = in.read(buffer)) != -1) {
+                            if (read > 0) {
+                                stream.awaitResponseCredit();
+                                awaitSendQueueDrained(stream);
+                                sendStreamFrame(HttpStreamFrame.encode(HttpStreamFrame.Type.RESPONSE_DATA,
+                                    requestId, buffer, 0, read), compressible);
+                            }
+                        }
+                    }
+                }
+                if (!stream.aborted) {
+                    sendStreamFrame(HttpStreamFrame.encode(HttpStreamFrame.Type.RESPONSE_END, requestId));
+                }
+                reportHttpLog(requestMessage, targetResponse.code());
+            }
+        } catch (final Exception e) {
+            if (stream.aborted) {
+                log.debug("Streamed request {} aborted: {}", requestId, e.toString());
+            } else if (headSent) {
+                log.warn("Streamed response {} failed: {}", requestId, e.toString());
+                sendStreamFrame(HttpStreamFrame.encode(HttpStreamFrame.Type.ABORT, requestId,
+                    e.toString().getBytes(StandardCharsets.UTF_8)));
+            } else {
+                final var error = buildErrorMessage(requestId, 502, "Bad Gateway: " + e.getMessage());
+                final var errorBody = error.getRespBody();
+                error.setRespBody(null);
+                try {
+                    sendStreamFrame(HttpStreamFrame.encode(HttpStreamFrame.Type.RESPONSE_START, requestId,
+                        encodeHead(error, stream.binary)));
+                    sendStreamFrame(HttpStreamFrame.encode(HttpStreamFrame.Type.RESPONSE_DATA, requestId, errorBody));
+                    sendStreamFrame(HttpStreamFrame.encode(HttpStreamFrame.Type.RESPONSE_END, requestId));
+                } catch (final Exception sendError) {
+                    log.error("Failed to send error response: {}", sendError.getMessage(), sendError);
+                }
+                reportHttpLog(requestMessage, 502);
+            }
+        } finally {
+            inboundStreams.remove(requestId, stream);
+        }
+    }
+
+    private static HttpTunnelMessage decodeBinaryHead(final byte[] data) throws IOException {
+        final var decoded = TunnelMessageCodec.decode(data);
+        if (decoded == null || decoded.http() == null) {
+            throw new IOException("Malformed binary request head");
+        }
+        return decoded.http();
+    }
+
+    private static byte[] encodeHead(final HttpTunnelMessage head, final boolean binary) throws IOException {
+        return binary ? TunnelMessageCodec.encodeToArray(head) : MAPPER.writeValueAsBytes(head);
+    }
+
+    /**
+     * Returns the buffered request body, raw from the binary codec or decoded from base64,
+     * or {@code null} if the request has no body.
+     */
+    private static byte[] requestBytes(final HttpTunnelMessage requestMessage) {
+        if (requestMessage.getBody() != null) {
+            return requestMessage.getBody().length == 0 ? null : requestMessage.getBody();
+        }
+        return requestMessage.getBodyB64() == null ? null : Base64.getDecoder().decode(requestMessage.getBodyB64());
+    }
+
+    private Request buildLocalRequest(final HttpTunnelMessage requestMessage, final RequestBody body) {
         var url = localScheme + "://" + localHost + ":" + localPort + requestMessage.getPath();
         if (requestMessage.getQuery() != null && !requestMessage.getQuery().isBlank()) {
             url += "?" + requestMessage.getQuery();
@@ -512,7 +980,7 @@ public class HttpTunnelClient {
 
         final var targetRequest = new Request.Builder()
             .url(url)
-            .method(method, buildBody(method, requestMessage.getBodyB64(), requestMessage.getBodyContentType()));
+            .method(requestMessage.getMethod(), body);
 
         final var hostHeader = resolveLocalHostHeader(extractHeaderValue(requestMessage.getHeaders(),
             "X-Forwarded-Host"));
@@ -541,53 +1009,136 @@ public class HttpTunnelClient {
                 }
             }
         }
+        return targetRequest.build();
+    }
 
-        try (final var targetResponse = localHttp.newCall(targetRequest.build()).execute()) {
-            final var successMessage = new HttpTunnelMessage();
-            successMessage.setId(requestMessage.getId());
-            successMessage.setType(HttpTunnelMessage.Type.RESPONSE);
-            successMessage.setStatus(targetResponse.code());
-            successMessage.setRespHeaders(extractHeaders(targetResponse));
-            final var body = targetResponse.body();
-            if (body != null) {
-                final var bytes = body.bytes();
-                if (bytes.length > 0) {
-                    successMessage.setRespBodyB64(Base64.getEncoder().encodeToString(bytes));
-                }
-            }
-            // Log to UI sink
+    /**
+     * Builds a one-shot request body that pulls chunks from the stream as the server sends them.
+     * Returns {@code null} or an empty body when the original request carried no body. Without
+     * Content-Length or Transfer-Encoding, as with HTTP/2 requests, whether there is a body is only known from
+     * the first chunk the server sends, which is either data or the end of the body.
+     */
+    private RequestBody buildStreamingBody(final InboundStream stream) throws IOException {
+        final var requestMessage = stream.request;
+        final var contentType = requestMessage.getBodyContentType();
+        final var mediaType = contentType != null && !contentType.isBlank() ? MediaType.parse(contentType) : null;
+        final var contentLengthHeader = extractHeaderValue(requestMessage.getHeaders(), "Content-Length");
+        final var transferEncoding = extractHeaderValue(requestMessage.getHeaders(), "Transfer-Encoding");
+        long contentLength = -1;
+        if (contentLengthHeader != null) {
             try {
-                if (httpLogSink != null) {
-                    var displayUrl = publicBaseUrl;
-                    if (requestMessage.getPath() != null) {
-                        displayUrl += requestMessage.getPath();
-                    }
-                    if (requestMessage.getQuery() != null && !requestMessage.getQuery().isBlank()) {
-                        displayUrl += "?" + requestMessage.getQuery();
-                    }
-                    httpLogSink.onHttpLog(method, displayUrl, targetResponse.code());
+                contentLength = Long.parseLong(contentLengthHeader.trim());
+            } catch (final NumberFormatException ignore) {
+                contentLength = -1;
+            }
+        }
+        final var first = contentLength < 0 && transferEncoding == null ? takeBody(stream) : null;
+        final var hasBody = contentLength > 0 || (contentLength < 0 && (transferEncoding != null || first != null));
+        if (!hasBody) {
+            return methodSupportsBody(requestMessage.getMethod())
+                ? RequestBody.create(new byte[0], mediaType)
+                : null;
+        }
+        final var length = contentLength;
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return mediaType;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public boolean isOneShot() {
+                return true;
+            }
+
+            @Override
+            public void writeTo(final BufferedSink sink) throws IOException {
+                if (first != null) {
+                    sink.write(first);
+                }
+                byte[] chunk;
+                while ((chunk = takeBody(stream)) != null) {
+                    sink.write(chunk);
                 }
-            } catch (final Exception ignore) {
-                log.debug("HTTP log sink failed: {}", ignore.toString());
             }
-            return successMessage;
-        } catch (final Exception e) {
-            final var errorMessage = buildErrorMessage(requestMessage.getId(), 502, "Bad Gateway: " + e.getMessage());
-            try {
-                if (httpLogSink != null) {
-                    var displayUrl = publicBaseUrl;
-                    if (requestMessage.getPath() != null) {
-                        displayUrl += requestMessage.getPath();
-                    }
-                    if (requestMessage.getQuery() != null && !requestMessage.getQuery().isBlank()) {
-                        displayUrl += "?" + requestMessage.getQuery();
-                    }
-                    httpLogSink.onHttpLog(method, displayUrl, 502);
+        };
+    }
+
+    /**
+     * Takes the next request body chunk of the stream and returns the credit of taken chunks to the server,
+     * batched to save frames.
+     */
+    private byte[] takeBody(final InboundStream stream) throws IOException {
+        final var chunk = stream.takeBody();
+        if (chunk != null) {
+            final var credit = stream.takeCredit();
+            if (credit > 0) {
+                sendStreamFrame(HttpStreamFrame.encodeCredit(stream.request.getId(), credit));
+            }
+        }
+        return chunk;
+    }
+
+    private void sendStreamFrame(final ByteBuffer frame) {
+        sendStreamFrame(frame, false);
+    }
+
+    private void sendStreamFrame(final ByteBuffer frame, final boolean compressible) {
+        if (!webSocket.send(outbound(frame, compressible))) {
+            throw new IllegalStateException("Tunnel WebSocket is closed");
+        }
+    }
+
+    /**
+     * Wraps a binary frame for sending, compressed if the server accepted {@link TunnelFeatures#DEFLATE}
+     * and the content is worth compressing.
+     */
+    private ByteString outbound(final ByteBuffer frame, final boolean compressible) {
+        return ByteString.of(deflate && compressible ? FrameCompression.compress(frame) : frame);
+    }
+
+    /**
+     * Waits until the control WebSocket queued no more than {@link #MAX_QUEUED_BYTES}. OkHttp offers no drain
+     * callback, so the queue size is polled; a queue that does not drain in time aborts the stream.
+     */
+    private void awaitSendQueueDrained(final InboundStream stream) throws IOException, InterruptedException {
+        final var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SEND_QUEUE_DRAIN_TIMEOUT_SECONDS);
+        while (webSocket.queueSize() > MAX_QUEUED_BYTES) {
+            if (stop.get() || stream.aborted) {
+                throw new IOException("Request aborted");
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new IOException("Tunnel WebSocket did not drain within " + SEND_QUEUE_DRAIN_TIMEOUT_SECONDS
+                    + "s");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private void abortInboundStreams() {
+        inboundStreams.values().forEach(InboundStream::abort);
+        inboundStreams.clear();
+    }
+
+    private void reportHttpLog(final HttpTunnelMessage requestMessage, final int status) {
+        try {
+            if (httpLogSink != null) {
+                var displayUrl = publicBaseUrl;
+                if (requestMessage.getPath() != null) {
+                    displayUrl += requestMessage.getPath();
                 }
-            } catch (final Exception ignore) {
-                log.debug("HTTP log sink failed: {}", ignore.toString());
+                if (requestMessage.getQuery() != null && !requestMessage.getQuery().isBlank()) {
+                    displayUrl += "?" + requestMessage.getQuery();
+                }
+                httpLogSink.onHttpLog(requestMessage.getMethod(), displayUrl, status);
             }
-            return errorMessage;
+        } catch (final Exception ignore) {
+            log.debug("HTTP log sink failed: {}", ignore.toString());
         }
     }
 
@@ -598,19 +1149,18 @@ public class HttpTunnelClient {
         error.setStatus(status);
         final var headers = Map.<String, List<String>>of("Content-Type", List.of("text/plain; charset=utf-8"));
         error.setRespHeaders(headers);
-        error.setRespBodyB64(Base64.getEncoder().encodeToString((message).getBytes(StandardCharsets.UTF_8)));
+        error.setRespBody(message.getBytes(StandardCharsets.UTF_8));
 
         return error;
     }
 
-    private RequestBody buildBody(final String method, final String bodyB64, final String contentType) {
+    private RequestBody buildBody(final String method, final byte[] bytes, final String contentType) {
         // Methods that usually don't have body
-        if (bodyB64 == null) {
+        if (bytes == null) {
             return methodSupportsBody(method)
                 ? RequestBody.create(new byte[0], contentType != null ? MediaType.parse(contentType) : null)
                 : null;
         }
-        final var bytes = Base64.getDecoder().decode(bodyB64);
         final var mediaType = contentType != null && !contentType.isBlank()
             ? MediaType.parse(contentType)
             : MediaType.parse("application/octet-stream");
@@ -637,4 +1187,92 @@ public class HttpTunnelClient {
         }
         return map;
     }
+
+    /**
+     * CLI side state of a streamed request: the request head, the window of body chunks received so far,
+     * the credit for response chunks and the upstream call, so an ABORT from the server can cancel it.
+     */
+    @RequiredArgsConstructor
+    private static class InboundStream {
+
+        private final HttpTunnelMessage request;
+        // Whether the request head arrived binary encoded; the response head is encoded the same way
+        private final boolean binary;
+        // A window of body chunks and the end marker
+        private final BlockingQueue<byte[]> body = new LinkedBlockingQueue<>(HttpStreamFrame.WINDOW_CHUNKS + 1);
+        private final Semaphore responseCredit = new Semaphore(HttpStreamFrame.WINDOW_CHUNKS);
+        // Body chunks taken and not yet credited; only touched by the thread executing the request
+        private int uncreditedChunks;
+        private volatile Call call;
+        private volatile boolean aborted;
+
+        /**
+         * Buffers a body chunk without waiting.
+         *
+         * @return {@code false} if the server sent more than its window
+         */
+        boolean offerBody(final byte[] chunk) {
+            // The last slot is kept for the end marker; only the reader thread adds chunks
+            if (chunk != END_OF_BODY && body.remainingCapacity() <= 1) {
+                return false;
+            }
+            return body.offer(chunk);
+        }
+
+        /**
+         * Counts a taken body chunk and returns the credit to send now, or 0 to keep batching.
+         */
+        int takeCredit() {
+            if (++uncreditedChunks < CREDIT_BATCH) {
+                return 0;
+            }
+            final var credit = uncreditedChunks;
+            uncreditedChunks = 0;
+            return credit;
+        }
+
+        void onCredit(final int credit) {
+            if (credit > 0) {
+                responseCredit.release(credit);
+            }
+        }
+
+        void awaitResponseCredit() throws IOException, InterruptedException {
+            if (!responseCredit.tryAcquire(CREDIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IOException("Server did not consume the response within " + CREDIT_TIMEOUT_SECONDS + "s");
+            }
+            if (aborted) {
+                throw new IOException("Request aborted");
+            }
+        }
+
+        byte[] takeBody() throws IOException {
+            final byte[] chunk;
+            try {
+                chunk = body.poll(30, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading request body", e);
+            }
+            if (aborted) {
+                throw new IOException("Request aborted");
+            }
+            if (chunk == null) {
+                throw new IOException("Timed out waiting for request body");
+            }
+            return chunk == END_OF_BODY ? null : chunk;
+        }
+
+        void abort() {
+            aborted = true;
+            body.clear();
+            body.offer(END_OF_BODY);
+            // Wakes a response chunk waiting for credit, which then sees the abort
+            responseCredit.release(HttpStreamFrame.WINDOW_CHUNKS);
+            final var current = call;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
 }
@@ -16,15 +16,19 @@ package tech.amak.portbuddy.cli.tunnel;
 
 import static tech.amak.portbuddy.cli.utils.JsonUtils.MAPPER;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -52,13 +56,19 @@ import tech.amak.portbuddy.cli.utils.HttpUtils;
 import tech.amak.portbuddy.common.TunnelType;
 import tech.amak.portbuddy.common.tunnel.BinaryWsFrame;
 import tech.amak.portbuddy.common.tunnel.ControlMessage;
+import tech.amak.portbuddy.common.tunnel.DatagramBatch;
+import tech.amak.portbuddy.common.tunnel.DatagramRelay;
 import tech.amak.portbuddy.common.tunnel.MessageEnvelope;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
 import tech.amak.portbuddy.common.tunnel.WsTunnelMessage;
 
 @Slf4j
 @RequiredArgsConstructor
 public class NetTunnelClient {
 
+    // As many UDP peers as the proxy tracks per tunnel
+    private static final int MAX_UDP_PEERS = 100;
+
     private final String serverHost;
     private final int serverPort;
     /**
@@ -81,7 +91,16 @@ public class NetTunnelClient {
     private WebSocket webSocket;
 
     private final Map<String, LocalTcp> locals = new ConcurrentHashMap<>();
-    private final Map<String, LocalUdp> udpLocals = new ConcurrentHashMap<>();
+    private final Map<String, LocalUdp> udpLocals = udpPeers();
+    // Stream-id mode: data frames carry the 4-byte stream id assigned by the proxy instead of the connection id
+    private final Map<Integer, LocalTcp> tcpStreams = new ConcurrentHashMap<>();
+    private final Map<Integer, LocalUdp> udpStreams = udpPeers();
+    private volatile boolean streamIds;
+    // UDP replies of all local sockets are drained by one relay thread and, if negotiated, batched into frames
+    private volatile boolean udpBatch;
+    private DatagramRelay<LocalUdp> udpRelay;
+    // Resolves connection ids of inbound frames without a string allocation per frame
+    private final BinaryWsFrame.IdCache connectionIds = new BinaryWsFrame.IdCache(1024);
     private CountDownLatch closed = new CountDownLatch(1);
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
         final var thread = new Thread(runnable, "pb-net-heartbeat");
@@ -120,12 +139,15 @@ public class NetTunnelClient {
                 final var path = "/api/net-tunnel/" + tunnelId
                                  + "?type=" + tunnelType.name().toLowerCase()
                                  + "&port=" + expectedPublicPort
-                                 + publicHostParam;
+                                 + publicHostParam
+                                 + tcpOptionParams();
                 final var url = toWebSocketUrl(scheme + serverHost + ":" + serverPort, path);
                 final var request = new Request.Builder().url(url);
                 if (authToken != null && !authToken.isBlank()) {
                     request.addHeader("Authorization", "Bearer " + authToken);
                 }
+                request.addHeader(TunnelFeatures.HEADER,
+                    TunnelFeatures.format(List.of(TunnelFeatures.STREAM_ID, TunnelFeatures.UDP_BATCH)));
                 webSocket = http.newWebSocket(request.build(), new Listener());
                 successfullyConnected.set(false);
 
@@ -188,10 +210,12 @@ public class NetTunnelClient {
             if (webSocket != null) {
                 webSocket.close(1000, "Client exit");
             }
-            locals.values().forEach(this::close);
-            locals.clear();
-            udpLocals.values().forEach(this::close);
-            udpLocals.clear();
+            closeLocals();
+            synchronized (this) {
+                if (udpRelay != null) {
+                    udpRelay.close();
+                }
+            }
             reportClosedSafe();
         } catch (final Exception e) {
             log.debug("TCP tunnel close error: {}", e.toString());
@@ -211,13 +235,35 @@ public class NetTunnelClient {
     private void close(final LocalUdp localUdp) {
         if (localUdp != null) {
             try {
-                localUdp.sock.close();
+                localUdp.channel.close();
             } catch (final Exception e) {
                 log.debug("Failed to close UDP local: {}", e.toString());
             }
         }
     }
 
+    /**
+     * Returns the query parameters overriding the proxy's socket options of public TCP connections, if any
+     * are configured.
+     */
+    private String tcpOptionParams() {
+        if (tunnelType != TunnelType.TCP) {
+            return "";
+        }
+        final var config = ConfigurationService.INSTANCE.getConfig();
+        final var params = new StringBuilder();
+        if (config.getPublicTcpNoDelay() != null) {
+            params.append("&noDelay=").append(config.getPublicTcpNoDelay());
+        }
+        if (config.getPublicTcpSendBufferSize() != null) {
+            params.append("&sendBufferSize=").append(config.getPublicTcpSendBufferSize());
+        }
+        if (config.getPublicTcpReceiveBufferSize() != null) {
+            params.append("&receiveBufferSize=").append(config.getPublicTcpReceiveBufferSize());
+        }
+        return params.toString();
+    }
+
     private String toWebSocketUrl(final String httpUri, final String path) {
         var uri = httpUri;
         if (uri.startsWith("http://")) {
@@ -235,6 +281,10 @@ public class NetTunnelClient {
         @Override
         public void onOpen(final WebSocket webSocket, final Response response) {
             successfullyConnected.set(true);
+            // Plain frames until EXPOSED tells which features the proxy accepted; the gateway in between does
+            // not relay headers of the handshake response
+            streamIds = false;
+            udpBatch = false;
             // Report CONNECTED and start heartbeats
             try {
                 postStatus("/api/tunnels/" + tunnelId + "/connected");
@@ -316,50 +366,37 @@ public class NetTunnelClient {
         @Override
         public void onMessage(final WebSocket webSocket, final ByteString bytes) {
             try {
-                final var decoded = BinaryWsFrame.decode(bytes.toByteArray());
+                // Decoded payloads are slices of the array copied out of the ByteString here
+                final var frame = ByteBuffer.wrap(bytes.toByteArray());
+                if (udpBatch && tunnelType == TunnelType.UDP) {
+                    DatagramBatch.forEach(frame, (streamId, datagram) -> sendToLocal(udpStream(streamId), datagram));
+                    return;
+                }
+                if (streamIds) {
+                    final var decoded = BinaryWsFrame.decodeStream(frame);
+                    if (decoded == null) {
+                        return;
+                    }
+                    if (tunnelType == TunnelType.TCP) {
+                        writeToLocal(tcpStreams.get(decoded.streamId()), decoded.payload());
+                    } else if (tunnelType == TunnelType.UDP) {
+                        sendToLocal(udpStream(decoded.streamId()), decoded.payload());
+                    }
+                    return;
+                }
+                final var decoded = BinaryWsFrame.decode(frame, connectionIds);
                 if (decoded == null) {
                     return;
                 }
                 if (tunnelType == TunnelType.TCP) {
-                    final var local = locals.get(decoded.connectionId());
-                    if (local != null) {
-                        try {
-                            local.out.write(decoded.data());
-                            local.out.flush();
-                            if (trafficSink != null) {
-                                trafficSink.onBytesIn(decoded.data().length);
-                            }
-                        } catch (final Exception e) {
-                            log.debug("Write to local TCP failed: {}", e.toString());
-                        }
-                    }
+                    writeToLocal(locals.get(decoded.connectionId()), decoded.payload());
                 } else if (tunnelType == TunnelType.UDP) {
                     // For UDP, forward the datagram to local UDP server using per-connection socket
-                    final var connId = decoded.connectionId();
-                    var localUdp = udpLocals.get(connId);
+                    var localUdp = udpLocals.get(decoded.connectionId());
                     if (localUdp == null) {
-                        try {
-                            final var sock = new DatagramSocket();
-                            localUdp = new LocalUdp(connId, sock);
-                            udpLocals.put(connId, localUdp);
-                            // start receive loop for this connection
-                            final var localUdpRef = localUdp;
-                            new Thread(() -> pumpUdpLocalToProxy(localUdpRef)).start();
-                        } catch (final Exception e) {
-                            log.debug("Failed to create local UDP socket: {}", e.toString());
-                            return;
-                        }
-                    }
-                    try {
-                        final var packet = new DatagramPacket(decoded.data(), decoded.data().length,
-                            new InetSocketAddress(localHost, localPort));
-                        localUdp.sock.send(packet);
-                        if (trafficSink != null) {
-                            trafficSink.onBytesIn(decoded.data().length);
-                        }
-                    } catch (final Exception e) {
-                        log.debug("Write to local UDP failed: {}", e.toString());
+                        localUdp = openLocalUdp(decoded.connectionId(), null);
                     }
+                    sendToLocal(localUdp, decoded.payload());
                 }
             } catch (final Exception e) {
                 log.debug("Failed to handle binary WS frame: {}", e.toString());
@@ -377,10 +414,7 @@ public class NetTunnelClient {
             if (wsTask != null) {
                 wsTask.cancel(true);
             }
-            locals.values().forEach(NetTunnelClient.this::close);
-            locals.clear();
-            udpLocals.values().forEach(NetTunnelClient.this::close);
-            udpLocals.clear();
+            closeLocals();
             reportClosedSafe();
             closed.countDown();
         }
@@ -396,10 +430,7 @@ public class NetTunnelClient {
             if (wsTask != null) {
                 wsTask.cancel(true);
             }
-            locals.values().forEach(NetTunnelClient.this::close);
-            locals.clear();
-            udpLocals.values().forEach(NetTunnelClient.this::close);
-            udpLocals.clear();
+            closeLocals();
             reportClosedSafe();
             closed.countDown();
         }
@@ -415,10 +446,117 @@ public class NetTunnelClient {
         }
     }
 
+    private void writeToLocal(final LocalTcp local, final ByteBuffer payload) {
+        if (local == null) {
+            return;
+        }
+        try {
+            local.out.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+            local.out.flush();
+            if (trafficSink != null) {
+                trafficSink.onBytesIn(payload.remaining());
+            }
+        } catch (final Exception e) {
+            log.debug("Write to local TCP failed: {}", e.toString());
+        }
+    }
+
+    private void sendToLocal(final LocalUdp local, final ByteBuffer payload) {
+        if (local == null) {
+            return;
+        }
+        try {
+            final var length = payload.remaining();
+            local.channel.write(payload);
+            if (trafficSink != null) {
+                trafficSink.onBytesIn(length);
+            }
+        } catch (final Exception e) {
+            log.debug("Write to local UDP failed: {}", e.toString());
+        }
+    }
+
+    private LocalUdp udpStream(final int streamId) {
+        final var local = udpStreams.get(streamId);
+        return local != null ? local : openLocalUdp(null, streamId);
+    }
+
+    /**
+     * Opens the local UDP socket of a remote peer, keyed by its connection id or, in stream-id mode, by its
+     * stream id, and starts relaying the replies of the local server. Each peer keeps its own source port,
+     * so the local server can tell the peers apart, but all sockets share the relay thread.
+     */
+    private LocalUdp openLocalUdp(final String connectionId, final Integer streamId) {
+        DatagramChannel channel = null;
+        try {
+            channel = DatagramChannel.open();
+            channel.connect(new InetSocketAddress(localHost, localPort));
+            final var local = new LocalUdp(connectionId, streamId, channel);
+            if (streamId != null) {
+                udpStreams.put(streamId, local);
+            } else {
+                udpLocals.put(connectionId, local);
+            }
+            udpRelay().register(channel, local);
+            return local;
+        } catch (final Exception e) {
+            log.debug("Failed to create local UDP socket: {}", e.toString());
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (final IOException ignore) {
+                    // ignore
+                }
+            }
+            return null;
+        }
+    }
+
+    private synchronized DatagramRelay<LocalUdp> udpRelay() throws IOException {
+        if (udpRelay == null) {
+            udpRelay = new DatagramRelay<>("pb-udp-relay", 64, new UdpRelayHandler());
+        }
+        return udpRelay;
+    }
+
+    /**
+     * Creates a map of the local UDP sockets of recently active peers. The proxy tracks only the last
+     * {@link #MAX_UDP_PEERS} peers of a tunnel and gives a returning peer a new id, so the socket of the
+     * least recently active peer is closed when one more arrives.
+     */
+    private <K> Map<K, LocalUdp> udpPeers() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, LocalUdp> eldest) {
+                if (size() > MAX_UDP_PEERS) {
+                    close(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
+    private void closeLocals() {
+        locals.values().forEach(this::close);
+        locals.clear();
+        tcpStreams.clear();
+        for (final var udpPeers : List.of(udpLocals, udpStreams)) {
+            synchronized (udpPeers) {
+                udpPeers.values().forEach(this::close);
+                udpPeers.clear();
+            }
+        }
+    }
+
     private void handleControl(final WsTunnelMessage message) throws Exception {
         final var connId = message.getConnectionId();
         switch (message.getWsType()) {
             case EXPOSED -> {
+                // Precedes every OPEN and data frame; older proxies send no features and use connection ids
+                final var features = TunnelFeatures.parse(message.getFeatures());
+                streamIds = features.contains(TunnelFeatures.STREAM_ID);
+                udpBatch = streamIds && features.contains(TunnelFeatures.UDP_BATCH);
                 final var actualHost = message.getPublicHost();
                 final var actualPort = message.getPublicPort();
                 if (actualHost != null && actualPort != null) {
@@ -440,8 +578,11 @@ public class NetTunnelClient {
                     // Establish local TCP
                     final var socket = new Socket();
                     socket.connect(new InetSocketAddress(localHost, localPort), 5000);
-                    final var local = new LocalTcp(connId, socket);
+                    final var local = new LocalTcp(connId, streamIds ? message.getStreamId() : null, socket);
                     locals.put(connId, local);
+                    if (local.streamId != null) {
+                        tcpStreams.put(local.streamId, local);
+                    }
                     // Ack
                     final var ack = new WsTunnelMessage();
                     ack.setWsType(WsTunnelMessage.Type.OPEN_OK);
@@ -478,25 +619,19 @@ public class NetTunnelClient {
                     if (message.getDataB64() != null) {
                         var localUdp = udpLocals.get(connId);
                         if (localUdp == null) {
-                            final var sock = new DatagramSocket();
-                            localUdp = new LocalUdp(connId, sock);
-                            udpLocals.put(connId, localUdp);
-                            final var localUdpRef = localUdp;
-                            new Thread(() -> pumpUdpLocalToProxy(localUdpRef)).start();
-                        }
-                        final var bytes = Base64.getDecoder().decode(message.getDataB64());
-                        final var packet = new DatagramPacket(bytes, bytes.length,
-                            new InetSocketAddress(localHost, localPort));
-                        localUdp.sock.send(packet);
-                        if (trafficSink != null) {
-                            trafficSink.onBytesIn(bytes.length);
+                            localUdp = openLocalUdp(connId, null);
                         }
+                        sendToLocal(localUdp, ByteBuffer.wrap(Base64.getDecoder().decode(message.getDataB64())));
                     }
                 }
             }
             case CLOSE -> {
                 if (tunnelType == TunnelType.TCP) {
-                    close(locals.remove(connId));
+                    final var local = locals.remove(connId);
+                    if (local != null && local.streamId != null) {
+                        tcpStreams.remove(local.streamId, local);
+                    }
+                    close(local);
                 } else {
                     close(udpLocals.remove(connId));
                 }
@@ -507,16 +642,16 @@ public class NetTunnelClient {
     }
 
     private void pumpLocalToProxy(final LocalTcp local) {
-        final var buffer = new byte[8192];
+        // Reads land behind the connection header, so each frame is copied once, into the ByteString
+        final var header = local.frameHeader;
+        final var frame = BinaryWsFrame.allocate(header, 8192).array();
         try {
             while (true) {
-                final var byteCount = local.in.read(buffer);
+                final var byteCount = local.in.read(frame, header.length, frame.length - header.length);
                 if (byteCount == -1) {
                     break;
                 }
-                final var frame = BinaryWsFrame.encodeToArray(local.connectionId, buffer, 0, byteCount);
-                final var byteString = ByteString.of(frame);
-                webSocket.send(byteString);
+                webSocket.send(ByteString.of(frame, 0, header.length + byteCount));
                 if (trafficSink != null) {
                     trafficSink.onBytesOut(byteCount);
                 }
@@ -533,18 +668,28 @@ public class NetTunnelClient {
                 log.error("Failed to send local WS close: {}", e.toString());
             }
             close(local);
-            locals.remove(local.connectionId);
+            locals.remove(local.connectionId, local);
+            if (local.streamId != null) {
+                tcpStreams.remove(local.streamId, local);
+            }
         }
     }
 
     private static class LocalTcp {
         final String connectionId;
+        // Assigned by the proxy in stream-id mode, otherwise null
+        final Integer streamId;
+        final byte[] frameHeader;
         final Socket sock;
         final InputStream in;
         final OutputStream out;
 
-        LocalTcp(final String connectionId, final Socket sock) throws Exception {
+        LocalTcp(final String connectionId, final Integer streamId, final Socket sock) throws Exception {
             this.connectionId = connectionId;
+            this.streamId = streamId;
+            this.frameHeader = streamId != null
+                ? BinaryWsFrame.encodeStreamHeader(streamId)
+                : BinaryWsFrame.encodeHeader(connectionId);
             this.sock = sock;
             this.in = sock.getInputStream();
             this.out = sock.getOutputStream();
@@ -553,33 +698,58 @@ public class NetTunnelClient {
 
     private static class LocalUdp {
         final String connectionId;
-        final DatagramSocket sock;
+        final Integer streamId;
+        final byte[] frameHeader;
+        // Connected to the local server
+        final DatagramChannel channel;
 
-        LocalUdp(final String connectionId, final DatagramSocket sock) {
+        LocalUdp(final String connectionId, final Integer streamId, final DatagramChannel channel) {
             this.connectionId = connectionId;
-            this.sock = sock;
+            this.streamId = streamId;
+            this.frameHeader = streamId != null
+                ? BinaryWsFrame.encodeStreamHeader(streamId)
+                : BinaryWsFrame.encodeHeader(connectionId);
+            this.channel = channel;
         }
     }
 
-    private void pumpUdpLocalToProxy(final LocalUdp local) {
-        final var buffer = new byte[65535];
-        try {
-            while (!local.sock.isClosed()) {
-                final var packet = new DatagramPacket(buffer, buffer.length);
-                local.sock.receive(packet);
-                final var frame = BinaryWsFrame
-                    .encodeToArray(local.connectionId, packet.getData(), packet.getOffset(), packet.getLength());
-                final var byteString = ByteString.of(frame);
-                webSocket.send(byteString);
-                if (trafficSink != null) {
-                    trafficSink.onBytesOut(packet.getLength());
+    /**
+     * Relays replies of the local UDP server to the proxy. Only called on the relay thread, which owns the frame.
+     */
+    private class UdpRelayHandler implements DatagramRelay.Handler<LocalUdp> {
+
+        private final byte[] frameArray = new byte[DatagramBatch.MAX_FRAME_BYTES + 64];
+        private final ByteBuffer frame = ByteBuffer.wrap(frameArray);
+
+        @Override
+        public void onDatagram(final LocalUdp local, final InetSocketAddress remote, final ByteBuffer datagram) {
+            final var length = datagram.remaining();
+            if (udpBatch && local.streamId != null) {
+                if (!DatagramBatch.append(frame, local.streamId, datagram)) {
+                    flush();
+                    DatagramBatch.append(frame, local.streamId, datagram);
                 }
+            } else {
+                frame.clear().put(local.frameHeader).put(datagram);
+                flush();
             }
-        } catch (final Exception e) {
-            // ignore normal close
-        } finally {
-            close(local);
-            udpLocals.remove(local.connectionId);
+            if (trafficSink != null) {
+                trafficSink.onBytesOut(length);
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (frame.position() > 0) {
+                webSocket.send(ByteString.of(frameArray, 0, frame.position()));
+                frame.clear();
+            }
+        }
+
+        @Override
+        public void onError(final LocalUdp local, final Exception error) {
+            // e.g. ICMP port unreachable while the local server is down; the socket stays usable
+            log.debug("Local UDP receive failed: {}", error.toString());
         }
     }
 
@@ -0,0 +1,325 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.cli.tunnel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import javax.net.SocketFactory;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Creates sockets connected to a Unix domain socket whatever address they are asked to connect to, so that
+ * OkHttp can reach a local service listening on a socket file. OkHttp relies on {@link Socket#setSoTimeout}
+ * for its read timeouts and connection health checks, which the JDK does not support on Unix domain socket
+ * channels, so reads and writes wait on a selector instead of blocking.
+ */
+@RequiredArgsConstructor
+final class UnixDomainSocketFactory extends SocketFactory {
+
+    private final Path path;
+
+    @Override
+    public Socket createSocket() {
+        return new UnixDomainSocket(path);
+    }
+
+    @Override
+    public Socket createSocket(final String host, final int port) throws IOException {
+        return connected();
+    }
+
+    @Override
+    public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort)
+        throws IOException {
+        return connected();
+    }
+
+    @Override
+    public Socket createSocket(final InetAddress host, final int port) throws IOException {
+        return connected();
+    }
+
+    @Override
+    public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress,
+                               final int localPort) throws IOException {
+        return connected();
+    }
+
+    private Socket connected() throws IOException {
+        final var socket = new UnixDomainSocket(path);
+        socket.connect(null, 0);
+        return socket;
+    }
+
+    private static final class UnixDomainSocket extends Socket {
+
+        private final Path path;
+        private SocketChannel channel;
+        private Selector readSelector;
+        private Selector writeSelector;
+        private InputStream input;
+        private OutputStream output;
+        private volatile int soTimeout;
+        private volatile boolean inputShutdown;
+        private volatile boolean outputShutdown;
+        private volatile boolean closed;
+
+        private UnixDomainSocket(final Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public void connect(final SocketAddress endpoint) throws IOException {
+            connect(endpoint, 0);
+        }
+
+        @Override
+        public synchronized void connect(final SocketAddress endpoint, final int timeout) throws IOException {
+            if (closed) {
+                throw new SocketException("Socket is closed");
+            }
+            final var socketChannel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                // Connecting to a socket file either succeeds or fails at once, there is nothing to time out
+                socketChannel.connect(UnixDomainSocketAddress.of(path));
+                socketChannel.configureBlocking(false);
+                readSelector = Selector.open();
+                writeSelector = Selector.open();
+                socketChannel.register(readSelector, SelectionKey.OP_READ);
+                socketChannel.register(writeSelector, SelectionKey.OP_WRITE);
+            } catch (final IOException e) {
+                socketChannel.close();
+                closeSelectors();
+                throw e;
+            }
+            channel = socketChannel;
+            input = new ChannelInput();
+            output = new ChannelOutput();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            ensureOpen();
+            return input;
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            ensureOpen();
+            return output;
+        }
+
+        @Override
+        public void setSoTimeout(final int timeout) {
+            soTimeout = timeout;
+        }
+
+        @Override
+        public int getSoTimeout() {
+            return soTimeout;
+        }
+
+        @Override
+        public void setTcpNoDelay(final boolean on) {
+            // Not applicable to Unix domain sockets
+        }
+
+        @Override
+        public boolean getTcpNoDelay() {
+            return true;
+        }
+
+        @Override
+        public void shutdownInput() throws IOException {
+            ensureOpen();
+            channel.shutdownInput();
+            inputShutdown = true;
+        }
+
+        @Override
+        public void shutdownOutput() throws IOException {
+            ensureOpen();
+            channel.shutdownOutput();
+            outputShutdown = true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return channel != null;
+        }
+
+        @Override
+        public boolean isBound() {
+            return channel != null;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public boolean isInputShutdown() {
+            return inputShutdown;
+        }
+
+        @Override
+        public boolean isOutputShutdown() {
+            return outputShutdown;
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        @Override
+        public SocketAddress getRemoteSocketAddress() {
+            return channel == null ? null : new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } finally {
+                // Wakes up a thread waiting to read or write, which then fails as the socket is closed
+                closeSelectors();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "UnixDomainSocket[path=" + path + "]";
+        }
+
+        private void ensureOpen() throws SocketException {
+            if (closed) {
+                throw new SocketException("Socket is closed");
+            }
+            if (channel == null) {
+                throw new SocketException("Socket is not connected");
+            }
+        }
+
+        private void closeSelectors() throws IOException {
+            try {
+                if (readSelector != null) {
+                    readSelector.close();
+                }
+            } finally {
+                if (writeSelector != null) {
+                    writeSelector.close();
+                }
+            }
+        }
+
+        /**
+         * Waits until the channel is ready for the operation of the selector or the read timeout elapses.
+         */
+        private void await(final Selector selector, final int timeout) throws IOException {
+            try {
+                final var ready = selector.select(timeout);
+                selector.selectedKeys().clear();
+                if (ready == 0 && timeout > 0 && !closed) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+            } catch (final ClosedSelectorException e) {
+                throw new SocketException("Socket closed");
+            }
+            if (closed) {
+                throw new SocketException("Socket closed");
+            }
+        }
+
+        private final class ChannelInput extends InputStream {
+
+            @Override
+            public int read() throws IOException {
+                final var single = new byte[1];
+                final var read = read(single, 0, 1);
+                return read < 0 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                final var target = ByteBuffer.wrap(buffer, offset, length);
+                while (true) {
+                    ensureOpen();
+                    final var read = channel.read(target);
+                    if (read != 0) {
+                        return read;
+                    }
+                    await(readSelector, soTimeout);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                UnixDomainSocket.this.close();
+            }
+        }
+
+        private final class ChannelOutput extends OutputStream {
+
+            @Override
+            public void write(final int value) throws IOException {
+                write(new byte[] {(byte) value}, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+                final var source = ByteBuffer.wrap(buffer, offset, length);
+                while (source.hasRemaining()) {
+                    ensureOpen();
+                    if (channel.write(source) == 0) {
+                        // OkHttp times writes out on its own by closing the socket
+                        await(writeSelector, 0);
+                    }
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                UnixDomainSocket.this.close();
+            }
+        }
+    }
+}
@@ -39,4 +39,70 @@ public class ClientConfig {
 
     @JsonProperty("healthcheckIntervalSec")
     private int healthcheckIntervalSec = 5;
+
+    /**
+     * Number of tunneled HTTP requests executed against the local app at the same time.
+     */
+    @JsonProperty("maxInFlightRequests")
+    private int maxInFlightRequests = 64;
+
+    /**
+     * Whether tunneled HTTP requests run on virtual threads rather than on a pool of platform threads.
+     */
+    @JsonProperty("virtualThreads")
+    private boolean virtualThreads = true;
+
+    /**
+     * Whether the server may cache responses the local app marks as cacheable.
+     */
+    @JsonProperty("httpCache")
+    private boolean httpCache = false;
+
+    /**
+     * Seconds an idle connection to the local app is kept open for reuse.
+     */
+    @JsonProperty("localKeepAliveSec")
+    private int localKeepAliveSec = 300;
+
+    /**
+     * Number of connections to the local app opened when the tunnel starts, before the first request.
+     */
+    @JsonProperty("localWarmupConnections")
+    private int localWarmupConnections = 0;
+
+    /**
+     * Whether the local app is spoken to in HTTP/2 without TLS (h2c with prior knowledge).
+     */
+    @JsonProperty("localH2c")
+    private boolean localH2c = false;
+
+    /**
+     * Path of the Unix domain socket the local app listens on, instead of a TCP port.
+     */
+    @JsonProperty("localUnixSocket")
+    private String localUnixSocket;
+
+    /**
+     * Largest tunnel message accepted from the server, in megabytes; compressed frames are checked once inflated.
+     */
+    @JsonProperty("maxMessageSizeMb")
+    private int maxMessageSizeMb = 16;
+
+    /**
+     * TCP_NODELAY of public connections to a TCP tunnel, or null for the default of the proxy.
+     */
+    @JsonProperty("publicTcpNoDelay")
+    private Boolean publicTcpNoDelay;
+
+    /**
+     * SO_SNDBUF of public connections to a TCP tunnel in bytes, or null for the default of the proxy.
+     */
+    @JsonProperty("publicTcpSendBufferSize")
+    private Integer publicTcpSendBufferSize;
+
+    /**
+     * SO_RCVBUF of public connections to a TCP tunnel in bytes, or null for the default of the proxy.
+     */
+    @JsonProperty("publicTcpReceiveBufferSize")
+    private Integer publicTcpReceiveBufferSize;
 }
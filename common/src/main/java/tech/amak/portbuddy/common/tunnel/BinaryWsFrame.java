@@ -23,12 +23,124 @@ import java.nio.charset.StandardCharsets;
  * - 2 bytes: unsigned short representing the byte length of the UTF-8 encoded connectionId (N)
  * - N bytes: connectionId UTF-8 bytes
  * - R bytes: raw payload data
+ *
+ * <p>The hot data path avoids per-frame work on the connection id: the header is encoded once per
+ * connection with {@link #encodeHeader(String)}, payloads are read straight into a frame buffer
+ * prepared by {@link #allocate(byte[], int)} or {@link #prepare(ByteBuffer, byte[])}, and decoding
+ * returns a slice of the received buffer with the id resolved through an {@link IdCache}.
+ *
+ * <p>When {@link TunnelFeatures#STREAM_ID} is negotiated, the header is instead a 4-byte big-endian
+ * stream id assigned at OPEN (see {@link #encodeStreamHeader(int)} and {@link #decodeStream(ByteBuffer)}),
+ * which keeps the per-frame overhead of small packets low.
  */
 public final class BinaryWsFrame {
 
+    private static final int LENGTH_BYTES = 2;
+
+    /**
+     * Size of the header of a frame in stream-id mode.
+     */
+    public static final int STREAM_HEADER_BYTES = 4;
+
     private BinaryWsFrame() {
     }
 
+    /**
+     * Encodes the header of the frames of a connection: the id length and the UTF-8 encoded id.
+     * The result can be kept for the lifetime of the connection and reused for every frame.
+     *
+     * @param connectionId the connection identifier (expected to be non-null)
+     * @return the encoded header
+     */
+    public static byte[] encodeHeader(final String connectionId) {
+        final var idBytes = connectionId.getBytes(StandardCharsets.UTF_8);
+        final var header = new byte[LENGTH_BYTES + idBytes.length];
+        header[0] = (byte) (idBytes.length >>> 8);
+        header[1] = (byte) idBytes.length;
+        System.arraycopy(idBytes, 0, header, LENGTH_BYTES, idBytes.length);
+        return header;
+    }
+
+    /**
+     * Encodes the header of the frames of a stream in stream-id mode.
+     *
+     * @param streamId the stream id assigned at OPEN
+     * @return the 4-byte header
+     */
+    public static byte[] encodeStreamHeader(final int streamId) {
+        return new byte[] {(byte) (streamId >>> 24), (byte) (streamId >>> 16), (byte) (streamId >>> 8),
+            (byte) streamId};
+    }
+
+    /**
+     * Decodes a frame in stream-id mode without copying its payload. The buffer is consumed.
+     *
+     * @param buffer the buffer holding the frame
+     * @return the decoded frame, or {@code null} if the buffer is too short to hold a stream id
+     */
+    public static StreamDecoded decodeStream(final ByteBuffer buffer) {
+        if (buffer.remaining() < STREAM_HEADER_BYTES) {
+            return null;
+        }
+        final var streamId = buffer.getInt(buffer.position());
+        final var payloadStart = buffer.position() + STREAM_HEADER_BYTES;
+        final var payload = buffer.slice(payloadStart, buffer.limit() - payloadStart);
+        buffer.position(buffer.limit());
+        return new StreamDecoded(streamId, payload);
+    }
+
+    /**
+     * Allocates a heap frame buffer with the header already written, positioned at the start of the
+     * payload. The caller reads the payload directly into the buffer (e.g. at
+     * {@code array()[arrayOffset() + position()]}) and flips it to obtain the complete frame, so the
+     * payload is never copied.
+     *
+     * @param header     the connection header, see {@link #encodeHeader(String)}
+     * @param maxPayload the maximum payload size
+     * @return the frame buffer, positioned after the header with {@code maxPayload} bytes remaining
+     */
+    public static ByteBuffer allocate(final byte[] header, final int maxPayload) {
+        return ByteBuffer.allocate(header.length + maxPayload).put(header);
+    }
+
+    /**
+     * Prepares a reusable (e.g. pooled direct) buffer as a frame buffer: clears it and writes the
+     * header, leaving the buffer positioned at the start of the payload.
+     *
+     * @param target the buffer to prepare; must be larger than the header
+     * @param header the connection header, see {@link #encodeHeader(String)}
+     * @return the target buffer
+     */
+    public static ByteBuffer prepare(final ByteBuffer target, final byte[] header) {
+        return target.clear().put(header);
+    }
+
+    /**
+     * Encodes a frame from a pre-encoded header and a slice of a payload array. The payload is copied
+     * exactly once, into the returned buffer.
+     *
+     * @param header the connection header, see {@link #encodeHeader(String)}
+     * @param data   the raw payload data
+     * @param offset the starting position of the payload in the data array
+     * @param length the number of payload bytes
+     * @return a buffer holding the frame, ready to be read
+     */
+    public static ByteBuffer encode(final byte[] header, final byte[] data, final int offset, final int length) {
+        return allocate(header, length).put(data, offset, length).flip();
+    }
+
+    /**
+     * Returns the frame as a header and payload pair for gathering writes to a channel, without
+     * copying the payload.
+     *
+     * @param header  the connection header, see {@link #encodeHeader(String)}
+     * @param payload the payload; its remaining bytes form the payload of the frame
+     * @return the buffers making up the frame, in order
+     */
+    public static ByteBuffer[] gather(final byte[] header, final ByteBuffer payload) {
+        return new ByteBuffer[] {ByteBuffer.wrap(header), payload};
+    }
+
     /**
      * Encodes the given connection ID and data into a {@link ByteBuffer} following a specific binary
      * frame format. The encoded frame contains the connection ID length, the UTF-8 encoded connection ID,
@@ -44,14 +156,7 @@ public final class BinaryWsFrame {
                                                 final byte[] data,
                                                 final int offset,
                                                 final int length) {
-        final var idBytes = connectionId.getBytes(StandardCharsets.UTF_8);
-        final var capacity = 2 + idBytes.length + length;
-        final var buffer = ByteBuffer.allocate(capacity);
-        buffer.putShort((short) (idBytes.length & 0xFFFF));
-        buffer.put(idBytes);
-        buffer.put(data, offset, length);
-        buffer.flip();
-        return buffer;
+        return encode(encodeHeader(connectionId), data, offset, length);
     }
 
     /**
@@ -70,11 +175,8 @@ public final class BinaryWsFrame {
                                        final byte[] data,
                                        final int offset,
                                        final int length) {
-        final var buffer = encodeToByteBuffer(connectionId, data, offset, length);
-        final var out = new byte[buffer.remaining()];
-        buffer.get(out);
-        buffer.clear();
-        return out;
+        // The buffer is allocated to the exact frame size, so its backing array is the frame
+        return encodeToByteBuffer(connectionId, data, offset, length).array();
     }
 
     /**
@@ -89,19 +191,37 @@ public final class BinaryWsFrame {
      *     or {@code null} if the buffer does not contain a valid or complete frame.
      */
     public static Decoded decode(final ByteBuffer buffer) {
-        if (buffer.remaining() < 2) {
+        return decode(buffer, null);
+    }
+
+    /**
+     * Decodes a binary frame without copying its payload: the returned payload is a slice of the
+     * given buffer and is only valid as long as the buffer's content is. The buffer is consumed.
+     *
+     * @param buffer  the buffer holding the frame
+     * @param idCache cache resolving connection ids without allocating a string per frame, or {@code null}
+     * @return the decoded frame, or {@code null} if the buffer does not contain a valid frame
+     */
+    public static Decoded decode(final ByteBuffer buffer, final IdCache idCache) {
+        if (buffer.remaining() < LENGTH_BYTES) {
             return null;
         }
-        final var length = Short.toUnsignedInt(buffer.getShort());
-        if (buffer.remaining() < length) {
+        final var idStart = buffer.position() + LENGTH_BYTES;
+        final var length = Short.toUnsignedInt(buffer.getShort(buffer.position()));
+        if (buffer.limit() - idStart < length) {
             return null;
         }
-        final var idBytes = new byte[length];
-        buffer.get(idBytes);
-        final var connectionId = new String(idBytes, StandardCharsets.UTF_8);
-        final var data = new byte[buffer.remaining()];
-        buffer.get(data);
-        return new Decoded(connectionId, data);
+        final String connectionId;
+        if (idCache != null) {
+            connectionId = idCache.resolve(buffer, idStart, length);
+        } else {
+            final var idBytes = new byte[length];
+            buffer.get(idStart, idBytes);
+            connectionId = new String(idBytes, StandardCharsets.UTF_8);
+        }
+        final var payload = buffer.slice(idStart + length, buffer.limit() - idStart - length);
+        buffer.position(buffer.limit());
+        return new Decoded(connectionId, payload);
     }
 
     /**
@@ -116,23 +236,91 @@ public final class BinaryWsFrame {
      *     or {@code null} if the array does not contain a valid or complete frame.
      */
     public static Decoded decode(final byte[] frameBytes) {
-        final var byteBuffer = ByteBuffer.wrap(frameBytes);
-        final var decoded = decode(byteBuffer);
-        byteBuffer.clear();
-        return decoded;
+        return decode(ByteBuffer.wrap(frameBytes), null);
     }
 
     /**
      * A record that represents the result of decoding a binary WebSocket frame.
-     * It contains a connection identifier and the corresponding payload data.
+     * It contains a connection identifier and the corresponding payload.
      *
      * <ul>
      *   <li>The {@code connectionId} represents the unique identifier of the connection.
-     *   <li>The {@code data} represents the raw payload data associated with the frame.
+     *   <li>The {@code payload} is a slice of the decoded buffer holding the raw payload data.
      * </ul>
      * Instances of this record are typically produced by decoding operations on binary
      * WebSocket frames, which follow a specific format.
      */
-    public record Decoded(String connectionId, byte[] data) {
+    public record Decoded(String connectionId, ByteBuffer payload) {
+
+        /**
+         * Returns a copy of the payload. Prefer {@link #payload()} on hot paths.
+         *
+         * @return the payload bytes
+         */
+        public byte[] data() {
+            final var data = new byte[payload.remaining()];
+            payload.get(payload.position(), data);
+            return data;
+        }
+    }
+
+    /**
+     * A frame decoded in stream-id mode: the stream id and a slice of the decoded buffer holding the payload.
+     */
+    public record StreamDecoded(int streamId, ByteBuffer payload) {
+    }
+
+    /**
+     * Resolves encoded connection ids to strings, allocating a string only the first time an id is seen.
+     * Lookups are lock-free: entries are immutable and a racing update at worst evicts an entry early.
+     */
+    public static final class IdCache {
+
+        private final Entry[] entries;
+        private final int mask;
+
+        /**
+         * Creates a cache.
+         *
+         * @param capacity the number of slots, rounded up to a power of two; should exceed the number of
+         *                 concurrently active connections
+         */
+        public IdCache(final int capacity) {
+            final var size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+            this.entries = new Entry[size];
+            this.mask = size - 1;
+        }
+
+        String resolve(final ByteBuffer buffer, final int offset, final int length) {
+            var hash = 1;
+            for (var i = 0; i < length; i++) {
+                hash = 31 * hash + buffer.get(offset + i);
+            }
+            final var slot = (hash ^ (hash >>> 16)) & mask;
+            final var entry = entries[slot];
+            if (entry != null && entry.matches(buffer, offset, length)) {
+                return entry.id;
+            }
+            final var idBytes = new byte[length];
+            buffer.get(offset, idBytes);
+            final var id = new String(idBytes, StandardCharsets.UTF_8);
+            entries[slot] = new Entry(idBytes, id);
+            return id;
+        }
+
+        private record Entry(byte[] bytes, String id) {
+
+            boolean matches(final ByteBuffer buffer, final int offset, final int length) {
+                if (bytes.length != length) {
+                    return false;
+                }
+                for (var i = 0; i < length; i++) {
+                    if (bytes[i] != buffer.get(offset + i)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
     }
 }
@@ -38,9 +38,20 @@ public class ControlMessage {
     @JsonProperty("ts")
     private Long ts;
 
+    /**
+     * Features accepted by the server in FEATURES, formatted by {@link TunnelFeatures#format}.
+     */
+    @JsonProperty("features")
+    private String features;
+
     public enum Type {
         PING,
         PONG,
-        EXIT
+        EXIT,
+        /**
+         * First message of the server on an HTTP tunnel whose client advertised features, telling which of them
+         * are used. Both sides keep plain messages until it is exchanged.
+         */
+        FEATURES
     }
 }
@@ -0,0 +1,152 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * Serves any number of non-blocking {@link DatagramChannel}s from one selector thread. Each ready channel is
+ * drained of the datagrams queued in its receive buffer, up to a bound per pass so a busy channel does not
+ * starve the others, and the handler is flushed once per pass. This lets the handler pack everything that
+ * arrived together into as few tunnel frames as possible, without a thread or a blocking receive per socket.
+ *
+ * @param <T> the type of the value attached to each channel
+ */
+public final class DatagramRelay<T> implements Closeable {
+
+    private final Handler<T> handler;
+    private final int maxDatagramsPerDrain;
+    private final Selector selector;
+    private final Thread thread;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(DatagramBatch.MAX_DATAGRAM_BYTES);
+    private volatile boolean closed;
+
+    /**
+     * Creates and starts a relay.
+     *
+     * @param name                 the name of the relay thread
+     * @param maxDatagramsPerDrain the most datagrams taken from one channel per pass
+     * @param handler              receives the datagrams; called on the relay thread only
+     * @throws IOException if the selector cannot be opened
+     */
+    public DatagramRelay(final String name, final int maxDatagramsPerDrain, final Handler<T> handler)
+        throws IOException {
+        this.handler = handler;
+        this.maxDatagramsPerDrain = maxDatagramsPerDrain;
+        this.selector = Selector.open();
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Switches the channel to non-blocking mode and starts relaying its datagrams. Sending on the channel
+     * stays possible from any thread; a send that finds the socket buffer full drops the datagram.
+     *
+     * @param channel    the bound channel
+     * @param attachment the value passed to the handler with each datagram of the channel
+     * @throws IOException if the channel cannot be registered
+     */
+    public void register(final DatagramChannel channel, final T attachment) throws IOException {
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, attachment);
+        selector.wakeup();
+    }
+
+    /**
+     * Stops the relay thread. Registered channels are left open.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+            selector.close();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final IOException e) {
+            handler.onError(null, e);
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                selector.select(this::drain);
+                handler.flush();
+            } catch (final Exception e) {
+                handler.onError(null, e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain(final SelectionKey key) {
+        final var attachment = (T) key.attachment();
+        try {
+            final var channel = (DatagramChannel) key.channel();
+            for (var i = 0; i < maxDatagramsPerDrain; i++) {
+                buffer.clear();
+                final var remote = (InetSocketAddress) channel.receive(buffer);
+                if (remote == null) {
+                    break;
+                }
+                handler.onDatagram(attachment, remote, buffer.flip());
+            }
+        } catch (final CancelledKeyException ignore) {
+            // closed while being drained
+        } catch (final Exception e) {
+            handler.onError(attachment, e);
+        }
+    }
+
+    /**
+     * Receives the datagrams of the relayed channels.
+     *
+     * @param <T> the type of the value attached to each channel
+     */
+    public interface Handler<T> {
+
+        /**
+         * Handles one datagram.
+         *
+         * @param attachment the value the channel was registered with
+         * @param remote     the sender
+         * @param datagram   the datagram, only valid during the call
+         */
+        void onDatagram(T attachment, InetSocketAddress remote, ByteBuffer datagram);
+
+        /**
+         * Called after each pass over the ready channels, to send what {@link #onDatagram} buffered.
+         */
+        void flush();
+
+        /**
+         * Called when receiving fails, e.g. when an ICMP error is reported for a connected channel.
+         *
+         * @param attachment the value the failing channel was registered with, or {@code null} for relay errors
+         * @param error      the failure
+         */
+        void onError(T attachment, Exception error);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of fixed-size direct buffers for frame encoding and channel I/O. Buffers beyond the
+ * pool size are allocated on demand and dropped on release, so the pool never blocks.
+ *
+ * <p>A buffer may only be released once nothing references its content anymore, e.g. after a
+ * blocking send of the frame returned. Senders that queue messages (such as a buffering session
+ * decorator) must not hand pooled buffers to them.
+ */
+public final class FrameBufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> free;
+
+    /**
+     * Creates a pool.
+     *
+     * @param bufferSize the capacity of each buffer
+     * @param maxPooled  the maximum number of idle buffers kept for reuse
+     */
+    public FrameBufferPool(final int bufferSize, final int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, allocating a new one if the pool is empty.
+     *
+     * @return a direct buffer of {@link #bufferSize()} bytes
+     */
+    public ByteBuffer acquire() {
+        final var buffer = free.poll();
+        return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers not acquired from a pool of this size are ignored.
+     *
+     * @param buffer the buffer to release
+     */
+    public void release(final ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && buffer.capacity() == bufferSize) {
+            free.offer(buffer);
+        }
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of idle buffers currently held by the pool.
+     */
+    public int pooled() {
+        return free.size();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per-frame deflate of binary tunnel frames, used when both sides negotiated {@link TunnelFeatures#DEFLATE}.
+ * Unlike permessage-deflate on the WebSocket, the sender decides per frame: bodies of already compressed
+ * content are sent as they are, and so are frames below {@link #MIN_SIZE} or that do not get smaller.
+ * Frame format:
+ * - 1 byte: {@link #MARKER}; does not overlap with {@link HttpStreamFrame.Type} or
+ * {@link TunnelMessageCodec.Kind} codes
+ * - 4 bytes: big-endian length of the original frame
+ * - R bytes: the original frame, raw deflate (no zlib header)
+ */
+public final class FrameCompression {
+
+    /**
+     * First byte of a compressed frame.
+     */
+    public static final byte MARKER = 0x30;
+
+    /**
+     * Frames smaller than this are never compressed.
+     */
+    public static final int MIN_SIZE = 1024;
+
+    private static final int HEADER_SIZE = 5;
+
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+        "application/gzip",
+        "application/x-gzip",
+        "application/zip",
+        "application/zstd",
+        "application/x-7z-compressed",
+        "application/x-bzip2",
+        "application/x-rar-compressed",
+        "application/x-xz",
+        "application/pdf",
+        "application/wasm",
+        "font/woff",
+        "font/woff2"
+    );
+
+    private static final int MAX_POOLED = 16;
+
+    // Deflater and Inflater hold native memory until ended; pooled rather than per thread since senders
+    // are often short-lived virtual threads
+    private static final Queue<Deflater> DEFLATERS = new ConcurrentLinkedQueue<>();
+    private static final Queue<Inflater> INFLATERS = new ConcurrentLinkedQueue<>();
+
+    private FrameCompression() {
+    }
+
+    /**
+     * Returns whether a body is worth compressing, judging by its headers.
+     *
+     * @param contentType     the {@code Content-Type} of the body, may be {@code null}
+     * @param contentEncoding the {@code Content-Encoding} of the body, may be {@code null}
+     * @return {@code false} if the body is already encoded or of a compressed media type
+     */
+    public static boolean isCompressible(final String contentType, final String contentEncoding) {
+        if (contentEncoding != null && !contentEncoding.isBlank()
+            && !"identity".equalsIgnoreCase(contentEncoding.trim())) {
+            return false;
+        }
+        if (contentType == null || contentType.isBlank()) {
+            return true;
+        }
+        final var separator = contentType.indexOf(';');
+        final var mediaType = (separator >= 0 ? contentType.substring(0, separator) : contentType)
+            .trim().toLowerCase(Locale.ROOT);
+        if (mediaType.startsWith("image/")) {
+            return mediaType.equals("image/svg+xml") || mediaType.equals("image/bmp");
+        }
+        return !mediaType.startsWith("video/")
+               && !mediaType.startsWith("audio/")
+               && !COMPRESSED_TYPES.contains(mediaType);
+    }
+
+    /**
+     * Returns whether a body is worth compressing, judging by the {@code Content-Type} and
+     * {@code Content-Encoding} among its headers.
+     *
+     * @param headers the headers of the request or response, names in any case; may be {@code null}
+     * @return {@code false} if the body is already encoded or of a compressed media type
+     */
+    public static boolean isCompressible(final Map<String, List<String>> headers) {
+        return isCompressible(header(headers, "Content-Type"), header(headers, "Content-Encoding"));
+    }
+
+    /**
+     * Compresses a frame if it is at least {@link #MIN_SIZE} bytes long and gets smaller.
+     *
+     * @param frame the encoded frame; its position is not changed
+     * @return the compressed frame, or {@code frame} itself if it is sent as it is
+     */
+    public static ByteBuffer compress(final ByteBuffer frame) {
+        final var length = frame.remaining();
+        if (length < MIN_SIZE) {
+            return frame;
+        }
+        final var pooled = DEFLATERS.poll();
+        final var deflater = pooled != null ? pooled : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(frame.duplicate());
+            deflater.finish();
+            // Only worth it if the result is smaller than the original
+            final var out = ByteBuffer.allocate(length);
+            out.put(MARKER).putInt(length);
+            while (!deflater.finished() && out.hasRemaining()) {
+                deflater.deflate(out);
+            }
+            if (!deflater.finished()) {
+                return frame;
+            }
+            return out.flip();
+        } finally {
+            deflater.reset();
+            if (DEFLATERS.size() >= MAX_POOLED || !DEFLATERS.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Returns whether a frame was produced by {@link #compress}. The buffer position is not changed.
+     *
+     * @param frame the received frame
+     * @return {@code true} if the frame starts with {@link #MARKER}
+     */
+    public static boolean isCompressed(final ByteBuffer frame) {
+        return frame.hasRemaining() && frame.get(frame.position()) == MARKER;
+    }
+
+    /**
+     * Restores the original frame of a compressed frame. The original length is declared by the peer, so it is
+     * checked against the largest message the endpoint accepts before anything is allocated.
+     *
+     * @param frame   the compressed frame positioned at its {@link #MARKER}
+     * @param maxSize the largest message the receiving endpoint accepts, in bytes
+     * @return the original frame, or {@code null} if the frame is malformed or its original exceeds {@code maxSize}
+     */
+    public static ByteBuffer decompress(final ByteBuffer frame, final int maxSize) {
+        if (frame.remaining() < HEADER_SIZE || frame.get(frame.position()) != MARKER) {
+            return null;
+        }
+        final var length = frame.getInt(frame.position() + 1);
+        if (length < 0 || length > maxSize) {
+            return null;
+        }
+        final var pooled = INFLATERS.poll();
+        final var inflater = pooled != null ? pooled : new Inflater(true);
+        try {
+            inflater.setInput(frame.duplicate().position(frame.position() + HEADER_SIZE));
+            final var out = new byte[length];
+            var inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                final var read = inflater.inflate(out, inflated, length - inflated);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                inflated += read;
+            }
+            if (inflated != length || !inflater.finished()) {
+                return null;
+            }
+            return ByteBuffer.wrap(out);
+        } catch (final DataFormatException e) {
+            return null;
+        } finally {
+            inflater.reset();
+            if (INFLATERS.size() >= MAX_POOLED || !INFLATERS.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Restores the original frame of a compressed frame, or returns a frame that is not compressed as it is.
+     *
+     * @param frame   the received frame
+     * @param maxSize the largest message the receiving endpoint accepts, in bytes
+     * @return the original frame, or {@code null} if a compressed frame is malformed or too large once inflated
+     */
+    public static ByteBuffer unwrap(final ByteBuffer frame, final int maxSize) {
+        return isCompressed(frame) ? decompress(frame, maxSize) : frame;
+    }
+
+    private static String header(final Map<String, List<String>> headers, final String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (final var header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                return header.getValue().getFirst();
+            }
+        }
+        return null;
+    }
+}
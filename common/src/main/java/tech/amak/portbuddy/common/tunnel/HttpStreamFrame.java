@@ -0,0 +1,225 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Utility to encode/decode binary WebSocket frames used to stream HTTP requests and responses
+ * through the tunnel in chunks instead of whole base64 bodies.
+ * Frame format (big-endian):
+ * - 1 byte: frame type (see {@link Type})
+ * - 2 bytes: unsigned short representing the byte length of the UTF-8 encoded request id (N)
+ * - N bytes: request id UTF-8 bytes
+ * - R bytes: payload
+ *
+ * <p>A streamed exchange is a sequence of frames sharing one request id:
+ * {@code REQUEST_START, REQUEST_DATA*, REQUEST_END} from the server to the CLI, followed by
+ * {@code RESPONSE_START, RESPONSE_DATA*, RESPONSE_END} from the CLI to the server. START frames carry
+ * a JSON encoded {@link HttpTunnelMessage} without body, DATA frames carry raw body bytes, END frames
+ * carry no payload. Either side may send {@code ABORT} with an optional UTF-8 reason to cancel the exchange.
+ *
+ * <p>Body chunks are flow controlled per exchange, so that a slow consumer never makes the tunnel reader wait
+ * and hold up the other exchanges: a side may send {@link #WINDOW_CHUNKS} DATA frames ahead of what its peer
+ * consumed, and the peer returns credit for consumed chunks in {@code CREDIT} frames carrying a 4-byte count.
+ * A peer that sends beyond its window fails the exchange.
+ */
+public final class HttpStreamFrame {
+
+    /**
+     * Size of the body chunks carried by a single DATA frame.
+     */
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Number of DATA frames of one exchange a side may send before it waits for credit (2 MiB of chunks).
+     */
+    public static final int WINDOW_CHUNKS = 32;
+
+    private HttpStreamFrame() {
+    }
+
+    /**
+     * Encodes a frame of the given type for the given request.
+     *
+     * @param type      the frame type
+     * @param requestId the request identifier (expected to be non-null)
+     * @param data      the payload, may be {@code null} for frames without payload
+     * @param offset    the starting position of the payload in {@code data}
+     * @param length    the number of payload bytes
+     * @return a {@link ByteBuffer} containing the encoded frame, ready to be read
+     */
+    public static ByteBuffer encode(final Type type,
+                                    final String requestId,
+                                    final byte[] data,
+                                    final int offset,
+                                    final int length) {
+        final var idBytes = requestId.getBytes(StandardCharsets.UTF_8);
+        final var payloadLength = data == null ? 0 : length;
+        final var buffer = ByteBuffer.allocate(1 + 2 + idBytes.length + payloadLength);
+        buffer.put(type.code);
+        buffer.putShort((short) (idBytes.length & 0xFFFF));
+        buffer.put(idBytes);
+        if (payloadLength > 0) {
+            buffer.put(data, offset, payloadLength);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Encodes a frame carrying the whole given payload.
+     *
+     * @param type      the frame type
+     * @param requestId the request identifier
+     * @param data      the payload, may be {@code null}
+     * @return a {@link ByteBuffer} containing the encoded frame
+     */
+    public static ByteBuffer encode(final Type type, final String requestId, final byte[] data) {
+        return encode(type, requestId, data, 0, data == null ? 0 : data.length);
+    }
+
+    /**
+     * Encodes a frame without payload (END frames).
+     *
+     * @param type      the frame type
+     * @param requestId the request identifier
+     * @return a {@link ByteBuffer} containing the encoded frame
+     */
+    public static ByteBuffer encode(final Type type, final String requestId) {
+        return encode(type, requestId, null, 0, 0);
+    }
+
+    /**
+     * Encodes a {@code CREDIT} frame returning the given number of consumed chunks to the sender.
+     *
+     * @param requestId the request identifier
+     * @param chunks    the number of chunks consumed since the last credit
+     * @return a {@link ByteBuffer} containing the encoded frame
+     */
+    public static ByteBuffer encodeCredit(final String requestId, final int chunks) {
+        return encode(Type.CREDIT, requestId, ByteBuffer.allocate(Integer.BYTES).putInt(chunks).array());
+    }
+
+    /**
+     * Returns the number of chunks a decoded {@code CREDIT} frame returns, or 0 if its payload is malformed.
+     *
+     * @param frame the decoded frame
+     * @return the credited number of chunks
+     */
+    public static int credit(final Decoded frame) {
+        return frame.data().length == Integer.BYTES ? Math.max(0, ByteBuffer.wrap(frame.data()).getInt()) : 0;
+    }
+
+    /**
+     * Encodes a frame into a byte array.
+     *
+     * @param type      the frame type
+     * @param requestId the request identifier
+     * @param data      the payload, may be {@code null}
+     * @param offset    the starting position of the payload in {@code data}
+     * @param length    the number of payload bytes
+     * @return a byte array containing the encoded frame
+     */
+    public static byte[] encodeToArray(final Type type,
+                                       final String requestId,
+                                       final byte[] data,
+                                       final int offset,
+                                       final int length) {
+        return encode(type, requestId, data, offset, length).array();
+    }
+
+    /**
+     * Decodes a frame from the given buffer.
+     *
+     * @param buffer the buffer positioned at the start of the frame
+     * @return the decoded frame, or {@code null} if the buffer does not contain a valid frame
+     */
+    public static Decoded decode(final ByteBuffer buffer) {
+        if (buffer.remaining() < 3) {
+            return null;
+        }
+        final var type = Type.of(buffer.get());
+        if (type == null) {
+            return null;
+        }
+        final var length = Short.toUnsignedInt(buffer.getShort());
+        if (buffer.remaining() < length) {
+            return null;
+        }
+        final var idBytes = new byte[length];
+        buffer.get(idBytes);
+        final var requestId = new String(idBytes, StandardCharsets.UTF_8);
+        final var data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return new Decoded(type, requestId, data);
+    }
+
+    /**
+     * Decodes a frame from the given byte array.
+     *
+     * @param frameBytes the encoded frame
+     * @return the decoded frame, or {@code null} if the array does not contain a valid frame
+     */
+    public static Decoded decode(final byte[] frameBytes) {
+        return decode(ByteBuffer.wrap(frameBytes));
+    }
+
+    /**
+     * Type of stream frame. Codes are stable on the wire.
+     */
+    public enum Type {
+        REQUEST_START(1),
+        REQUEST_DATA(2),
+        REQUEST_END(3),
+        RESPONSE_START(4),
+        RESPONSE_DATA(5),
+        RESPONSE_END(6),
+        ABORT(7),
+        CREDIT(8);
+
+        private final byte code;
+
+        Type(final int code) {
+            this.code = (byte) code;
+        }
+
+        public byte code() {
+            return code;
+        }
+
+        /**
+         * Resolves a frame type by its wire code.
+         *
+         * @param code the wire code
+         * @return the frame type, or {@code null} if the code is unknown
+         */
+        public static Type of(final byte code) {
+            for (final var type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A decoded stream frame: its type, the request it belongs to and the raw payload.
+     */
+    public record Decoded(Type type, String requestId, byte[] data) {
+    }
+}
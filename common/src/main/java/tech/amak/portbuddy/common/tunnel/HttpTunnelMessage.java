@@ -17,6 +17,7 @@ package tech.amak.portbuddy.common.tunnel;
 import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -24,7 +25,11 @@ import lombok.Data;
 
 /**
  * Envelope for HTTP tunnel messages exchanged over WebSocket between server and CLI.
- * To keep it simple, messages are whole-request/whole-response with base64 bodies.
+ * In the plain JSON mode messages are whole-request/whole-response with base64 bodies. When the client
+ * advertises {@link TunnelFeatures#HTTP_STREAM}, the same message (without body) is carried in the START
+ * frame of an {@link HttpStreamFrame} exchange and the body follows in binary chunks. When the
+ * {@link TunnelFeatures#BINARY_CODEC} is negotiated, messages are encoded with {@link TunnelMessageCodec}
+ * and bodies travel raw in {@link #body} / {@link #respBody} instead of base64.
  */
 @Data
 @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -61,6 +66,12 @@ public class HttpTunnelMessage {
     @JsonProperty("bodyB64")
     private String bodyB64;
 
+    /**
+     * Raw request body, used by the binary codec instead of {@link #bodyB64}.
+     */
+    @JsonIgnore
+    private byte[] body;
+
     /**
      * Original request body media type (e.g., "application/json; charset=utf-8").
      * The server captures this from the ingress request and the CLI uses it to
@@ -82,6 +93,12 @@ public class HttpTunnelMessage {
     @JsonProperty("respBodyB64")
     private String respBodyB64;
 
+    /**
+     * Raw response body, used by the binary codec instead of {@link #respBodyB64}.
+     */
+    @JsonIgnore
+    private byte[] respBody;
+
     public enum Type {
         REQUEST,
         RESPONSE
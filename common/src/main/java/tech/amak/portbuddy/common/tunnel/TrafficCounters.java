@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Frames and bytes relayed over WebSocket sessions, from the point of view of the relay: received from the
+ * peer (a tunnel client or a browser) and sent to it. Counting is contention-free, so it can be done on every
+ * frame. Counters of single tunnels also count into a parent holding the totals of the instance, which stay
+ * monotonic however tunnels come and go.
+ */
+public final class TrafficCounters {
+
+    private final TrafficCounters parent;
+    private final LongAdder framesReceived = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    /**
+     * Creates counters of their own.
+     */
+    public TrafficCounters() {
+        this(null);
+    }
+
+    /**
+     * Creates counters that also count into the given totals.
+     *
+     * @param parent the totals, or {@code null}
+     */
+    public TrafficCounters(final TrafficCounters parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Counts a frame received from the peer.
+     *
+     * @param bytes size of the frame
+     */
+    public void received(final long bytes) {
+        framesReceived.increment();
+        bytesReceived.add(bytes);
+        if (parent != null) {
+            parent.received(bytes);
+        }
+    }
+
+    /**
+     * Counts a frame sent to the peer.
+     *
+     * @param bytes size of the frame
+     */
+    public void sent(final long bytes) {
+        framesSent.increment();
+        bytesSent.add(bytes);
+        if (parent != null) {
+            parent.sent(bytes);
+        }
+    }
+
+    public long framesReceived() {
+        return framesReceived.sum();
+    }
+
+    public long bytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    public long framesSent() {
+        return framesSent.sum();
+    }
+
+    public long bytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * Returns the bytes relayed in both directions.
+     */
+    public long bytes() {
+        return bytesReceived() + bytesSent();
+    }
+}
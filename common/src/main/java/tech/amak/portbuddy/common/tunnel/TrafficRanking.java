@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Ranks tunnels by the bytes they relayed since the previous ranking, so metrics can be published for the
+ * busiest few tunnels only instead of one series per tunnel.
+ *
+ * @param <K> tunnel key
+ */
+public final class TrafficRanking<K> {
+
+    private final int limit;
+    private Map<K, Long> previousTotals = Map.of();
+    private long previousNanos;
+
+    /**
+     * Creates a ranking.
+     *
+     * @param limit number of tunnels to return at most
+     */
+    public TrafficRanking(final int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Ranks the tunnels by the bytes they relayed since the previous call. Tunnels seen for the first time
+     * are ranked by all their bytes; idle tunnels are left out.
+     *
+     * @param tunnels  the live tunnels and their counters
+     * @param nowNanos the current {@link System#nanoTime()}
+     * @return the busiest tunnels, busiest first, with their throughput in bytes per second
+     */
+    public synchronized List<Ranked<K>> rank(final Map<K, TrafficCounters> tunnels, final long nowNanos) {
+        final var seconds = previousNanos == 0 ? 0 : (nowNanos - previousNanos) / 1e9;
+        final var totals = new HashMap<K, Long>(tunnels.size() * 2);
+        final var top = new PriorityQueue<Ranked<K>>(limit + 1, Comparator.comparingLong(Ranked::bytes));
+        for (final var entry : tunnels.entrySet()) {
+            final var total = entry.getValue().bytes();
+            totals.put(entry.getKey(), total);
+            final var delta = total - previousTotals.getOrDefault(entry.getKey(), 0L);
+            if (delta <= 0) {
+                continue;
+            }
+            top.add(new Ranked<>(entry.getKey(), delta, seconds > 0 ? delta / seconds : 0));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        previousTotals = totals;
+        previousNanos = nowNanos;
+        final var ranked = new ArrayList<>(top);
+        ranked.sort(Comparator.comparingLong(Ranked<K>::bytes).reversed());
+        return ranked;
+    }
+
+    /**
+     * A ranked tunnel.
+     *
+     * @param key            the tunnel key
+     * @param bytes          bytes relayed since the previous ranking
+     * @param bytesPerSecond throughput since the previous ranking, {@code 0} on the first one
+     */
+    public record Ranked<K>(K key, long bytes, double bytesPerSecond) {
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Protocol features negotiated between the CLI and the server/net-proxy during the WebSocket handshake.
+ * The CLI advertises the features it supports in the {@link #HEADER} request header as a comma-separated
+ * list. The server only uses a feature if the client advertised it, so older clients that send nothing
+ * keep working with the plain JSON protocol. The gateway does not relay headers of the handshake response,
+ * so the accepted subset is announced in-band instead, before any other message: the server sends a
+ * {@link ControlMessage} of type FEATURES and Net Proxy the EXPOSED message of {@link WsTunnelMessage}.
+ * Neither side uses a feature until then.
+ */
+public final class TunnelFeatures {
+
+    /**
+     * Handshake header carrying the comma-separated list of features supported by the client.
+     */
+    public static final String HEADER = "X-PortBuddy-Features";
+
+    /**
+     * Handshake header carrying the number of HTTP requests the client executes concurrently. The server
+     * queues requests beyond it instead of letting them time out in the client.
+     */
+    public static final String MAX_IN_FLIGHT_HEADER = "X-PortBuddy-Max-In-Flight";
+
+    /**
+     * Chunked streaming of HTTP request/response bodies using {@link HttpStreamFrame} binary frames.
+     */
+    public static final String HTTP_STREAM = "http-stream";
+
+    /**
+     * Binary encoding of HTTP and WS tunnel messages with {@link TunnelMessageCodec} instead of JSON text frames.
+     */
+    public static final String BINARY_CODEC = "binary-codec";
+
+    /**
+     * Net tunnel data frames keyed by a 4-byte stream id assigned at OPEN instead of the string connection id,
+     * see {@link BinaryWsFrame#encodeStreamHeader(int)}.
+     */
+    public static final String STREAM_ID = "stream-id";
+
+    /**
+     * UDP net tunnel data frames carrying one or more datagrams, see {@link DatagramBatch}. Only used together
+     * with {@link #STREAM_ID}, whose stream ids identify the remote peers.
+     */
+    public static final String UDP_BATCH = "udp-batch";
+
+    /**
+     * Binary frames may be compressed with {@link FrameCompression}, deciding per frame by size and content.
+     * Replaces permessage-deflate on the WebSocket, which compresses every message regardless of content.
+     */
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * The server may keep responses the local app marks as cacheable ({@code Cache-Control}, {@code Expires},
+     * {@code ETag}, {@code Last-Modified}) and serve them without relaying the request, revalidating stale ones
+     * with conditional requests. Only advertised when the user opts in, as the app may not expect it.
+     */
+    public static final String HTTP_CACHE = "http-cache";
+
+    private TunnelFeatures() {
+    }
+
+    /**
+     * Parses the value of the {@link #HEADER} handshake header into a set of lower-case feature names.
+     *
+     * @param headerValue the raw header value, may be {@code null}
+     * @return the set of advertised features; empty if none were advertised
+     */
+    public static Set<String> parse(final String headerValue) {
+        final var features = new TreeSet<String>();
+        if (headerValue == null || headerValue.isBlank()) {
+            return features;
+        }
+        for (final var token : headerValue.split(",")) {
+            final var feature = token.trim().toLowerCase(Locale.ROOT);
+            if (!feature.isEmpty()) {
+                features.add(feature);
+            }
+        }
+        return features;
+    }
+
+    /**
+     * Negotiates the features to use on a connection: the advertised features the local side supports.
+     *
+     * @param headerValue the raw value of the {@link #HEADER} header sent by the peer, may be {@code null}
+     * @param supported   the features supported locally
+     * @return the accepted features
+     */
+    public static Set<String> negotiate(final String headerValue, final Collection<String> supported) {
+        final var features = parse(headerValue);
+        features.retainAll(supported);
+        return features;
+    }
+
+    /**
+     * Parses the value of the {@link #MAX_IN_FLIGHT_HEADER} handshake header.
+     *
+     * @param headerValue the raw header value, may be {@code null}
+     * @return the advertised limit, or {@code 0} if the client did not advertise a valid one
+     */
+    public static int parseMaxInFlight(final String headerValue) {
+        if (headerValue == null || headerValue.isBlank()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(headerValue.trim()));
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Formats the given features as a value for the {@link #HEADER} handshake header.
+     *
+     * @param features the features to advertise
+     * @return the comma-separated header value
+     */
+    public static String format(final Collection<String> features) {
+        return String.join(",", features);
+    }
+}
@@ -0,0 +1,519 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary codec for {@link HttpTunnelMessage} and {@link WsTunnelMessage}, used instead of JSON
+ * text frames when both sides negotiated {@link TunnelFeatures#BINARY_CODEC}.
+ * Frame format:
+ * - 1 byte: message kind (see {@link Kind}); codes do not overlap with {@link HttpStreamFrame.Type}
+ * - kind specific fields, where integers are unsigned varints (LEB128), strings are a varint of
+ * (byte length + 1) followed by UTF-8 bytes ({@code 0} encodes {@code null}), and header maps are a
+ * varint entry count followed by the entries
+ * - R bytes: raw body or WS payload, up to the end of the frame
+ *
+ * <p>HTTP messages carry a numeric request id, so ids assigned for binary tunnels must be decimal
+ * numbers. Bodies are carried raw in {@link HttpTunnelMessage#getBody()} /
+ * {@link HttpTunnelMessage#getRespBody()} and {@link WsTunnelMessage#getData()}; the base64 fields are
+ * only read as a fallback when encoding.
+ */
+public final class TunnelMessageCodec {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private TunnelMessageCodec() {
+    }
+
+    /**
+     * Returns whether the buffer holds a frame of this codec rather than an {@link HttpStreamFrame}.
+     * The buffer position is not changed.
+     *
+     * @param buffer the buffer positioned at the start of the frame
+     * @return {@code true} if the first byte is a known {@link Kind}
+     */
+    public static boolean isCodecFrame(final ByteBuffer buffer) {
+        return buffer.hasRemaining() && Kind.of(buffer.get(buffer.position())) != null;
+    }
+
+    /**
+     * Encodes an HTTP request or response message.
+     *
+     * @param message the message to encode; its id must be a decimal number
+     * @return a {@link ByteBuffer} containing the encoded frame, ready to be read
+     * @throws IllegalArgumentException if the message id is not numeric
+     */
+    public static ByteBuffer encode(final HttpTunnelMessage message) {
+        final var response = message.getType() == HttpTunnelMessage.Type.RESPONSE;
+        final var body = response
+            ? rawOrBase64(message.getRespBody(), message.getRespBodyB64())
+            : rawOrBase64(message.getBody(), message.getBodyB64());
+        final var writer = new Writer(128 + body.length);
+        writer.writeByte(response ? Kind.HTTP_RESPONSE.code : Kind.HTTP_REQUEST.code);
+        writer.writeVarLong(parseId(message.getId()));
+        if (response) {
+            writer.writeVarLong(message.getStatus() == null ? 0 : message.getStatus());
+            writer.writeMultiMap(message.getRespHeaders());
+        } else {
+            writer.writeString(message.getMethod());
+            writer.writeString(message.getPath());
+            writer.writeString(message.getQuery());
+            writer.writeString(message.getBodyContentType());
+            writer.writeMultiMap(message.getHeaders());
+        }
+        writer.writeBytes(body);
+        return writer.toByteBuffer();
+    }
+
+    /**
+     * Encodes an HTTP message into an exactly sized byte array, e.g. to embed it into an
+     * {@link HttpStreamFrame} START frame.
+     *
+     * @param message the message to encode; its id must be a decimal number
+     * @return a byte array containing the encoded frame
+     */
+    public static byte[] encodeToArray(final HttpTunnelMessage message) {
+        final var buffer = encode(message);
+        final var out = new byte[buffer.remaining()];
+        buffer.get(out);
+        return out;
+    }
+
+    /**
+     * Encodes a WebSocket tunneling message.
+     *
+     * @param message the message to encode
+     * @return a {@link ByteBuffer} containing the encoded frame, ready to be read
+     * @throws IllegalArgumentException if the message type has no binary representation
+     */
+    public static ByteBuffer encode(final WsTunnelMessage message) {
+        final var kind = Kind.of(message.getWsType());
+        if (kind == null) {
+            throw new IllegalArgumentException("Unsupported WS message type: " + message.getWsType());
+        }
+        final var payload = switch (kind) {
+            case WS_TEXT -> message.getText() == null ? EMPTY : message.getText().getBytes(StandardCharsets.UTF_8);
+            case WS_BINARY -> rawOrBase64(message.getData(), message.getDataB64());
+            default -> EMPTY;
+        };
+        final var writer = new Writer(64 + payload.length);
+        writer.writeByte(kind.code);
+        writer.writeString(message.getConnectionId());
+        switch (kind) {
+            case WS_OPEN -> {
+                writer.writeString(message.getPath());
+                writer.writeString(message.getQuery());
+                writer.writeMap(message.getHeaders());
+            }
+            case WS_CLOSE, WS_ERROR -> {
+                writer.writeVarLong(message.getCloseCode() == null ? 0 : message.getCloseCode() + 1L);
+                writer.writeString(message.getCloseReason());
+            }
+            default -> writer.writeBytes(payload);
+        }
+        return writer.toByteBuffer();
+    }
+
+    /**
+     * Encodes a WebSocket TEXT or BINARY frame straight from the payload buffer, without building a
+     * {@link WsTunnelMessage}: the payload is copied once, into the frame. The buffer position is not changed.
+     *
+     * @param type         {@link WsTunnelMessage.Type#TEXT} (UTF-8 payload) or {@link WsTunnelMessage.Type#BINARY}
+     * @param connectionId the WS connection id
+     * @param payload      the frame payload
+     * @return a {@link ByteBuffer} containing the encoded frame, ready to be read
+     * @throws IllegalArgumentException if the type is not a data frame type
+     */
+    public static ByteBuffer encodeWsData(final WsTunnelMessage.Type type,
+                                          final String connectionId,
+                                          final ByteBuffer payload) {
+        final var kind = Kind.of(type);
+        if (kind != Kind.WS_TEXT && kind != Kind.WS_BINARY) {
+            throw new IllegalArgumentException("Not a WS data frame type: " + type);
+        }
+        final var writer = new Writer(48 + payload.remaining());
+        writer.writeByte(kind.code);
+        writer.writeString(connectionId);
+        writer.writeBytes(payload.duplicate());
+        return writer.toByteBuffer();
+    }
+
+    /**
+     * Decodes a WebSocket TEXT or BINARY frame without copying its payload. The returned payload is a view
+     * of the given buffer, so it must be consumed before the buffer is reused.
+     *
+     * @param buffer the buffer positioned at the start of the frame; only advanced if a data frame is returned
+     * @return the data frame, or {@code null} if the buffer holds another kind of frame or is malformed
+     */
+    public static WsData decodeWsData(final ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+        final var kind = Kind.of(buffer.get(buffer.position()));
+        if (kind != Kind.WS_TEXT && kind != Kind.WS_BINARY) {
+            return null;
+        }
+        final var frame = buffer.duplicate();
+        frame.get();
+        try {
+            final var connectionId = readString(frame);
+            buffer.position(buffer.limit());
+            return new WsData(kind.wsType, connectionId, frame.slice());
+        } catch (final BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a frame from the given buffer.
+     *
+     * @param buffer the buffer positioned at the start of the frame
+     * @return the decoded message, or {@code null} if the buffer does not contain a valid frame
+     */
+    public static Decoded decode(final ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+        final var kind = Kind.of(buffer.get());
+        if (kind == null) {
+            return null;
+        }
+        try {
+            return switch (kind) {
+                case HTTP_REQUEST, HTTP_RESPONSE -> new Decoded(decodeHttp(kind, buffer), null);
+                default -> new Decoded(null, decodeWs(kind, buffer));
+            };
+        } catch (final BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a frame from the given byte array.
+     *
+     * @param frameBytes the encoded frame
+     * @return the decoded message, or {@code null} if the array does not contain a valid frame
+     */
+    public static Decoded decode(final byte[] frameBytes) {
+        return decode(ByteBuffer.wrap(frameBytes));
+    }
+
+    private static HttpTunnelMessage decodeHttp(final Kind kind, final ByteBuffer buffer) {
+        final var message = new HttpTunnelMessage();
+        message.setId(Long.toString(readVarLong(buffer)));
+        if (kind == Kind.HTTP_RESPONSE) {
+            message.setType(HttpTunnelMessage.Type.RESPONSE);
+            final var status = (int) readVarLong(buffer);
+            message.setStatus(status == 0 ? null : status);
+            message.setRespHeaders(readMultiMap(buffer));
+            message.setRespBody(readRemaining(buffer));
+        } else {
+            message.setType(HttpTunnelMessage.Type.REQUEST);
+            message.setMethod(readString(buffer));
+            message.setPath(readString(buffer));
+            message.setQuery(readString(buffer));
+            message.setBodyContentType(readString(buffer));
+            message.setHeaders(readMultiMap(buffer));
+            message.setBody(readRemaining(buffer));
+        }
+        return message;
+    }
+
+    private static WsTunnelMessage decodeWs(final Kind kind, final ByteBuffer buffer) {
+        final var message = new WsTunnelMessage();
+        message.setWsType(kind.wsType);
+        message.setConnectionId(readString(buffer));
+        switch (kind) {
+            case WS_OPEN -> {
+                message.setPath(readString(buffer));
+                message.setQuery(readString(buffer));
+                message.setHeaders(readMap(buffer));
+            }
+            case WS_CLOSE, WS_ERROR -> {
+                final var code = readVarLong(buffer);
+                message.setCloseCode(code == 0 ? null : (int) (code - 1));
+                message.setCloseReason(readString(buffer));
+            }
+            case WS_TEXT -> message.setText(new String(readRemaining(buffer), StandardCharsets.UTF_8));
+            case WS_BINARY -> message.setData(readRemaining(buffer));
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    private static byte[] rawOrBase64(final byte[] raw, final String base64) {
+        if (raw != null) {
+            return raw;
+        }
+        return base64 == null ? EMPTY : Base64.getDecoder().decode(base64);
+    }
+
+    private static long parseId(final String id) {
+        try {
+            final var value = Long.parseLong(id);
+            if (value < 0) {
+                throw new IllegalArgumentException("Request id must not be negative: " + id);
+            }
+            return value;
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Request id is not numeric: " + id, e);
+        }
+    }
+
+    private static long readVarLong(final ByteBuffer buffer) {
+        var result = 0L;
+        for (var shift = 0; shift < 64; shift += 7) {
+            final var b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static int readLength(final ByteBuffer buffer) {
+        final var length = readVarLong(buffer);
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("Length exceeds frame: " + length);
+        }
+        return (int) length;
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final var length = readVarLong(buffer);
+        if (length == 0) {
+            return null;
+        }
+        if (length - 1 > buffer.remaining()) {
+            throw new IllegalArgumentException("String length exceeds frame: " + (length - 1));
+        }
+        final var bytes = new byte[(int) (length - 1)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, List<String>> readMultiMap(final ByteBuffer buffer) {
+        final var count = readLength(buffer);
+        if (count == 0) {
+            return null;
+        }
+        final var map = new LinkedHashMap<String, List<String>>(count * 2);
+        for (var i = 0; i < count; i++) {
+            final var name = readString(buffer);
+            final var valueCount = readLength(buffer);
+            final var values = new ArrayList<String>(valueCount);
+            for (var j = 0; j < valueCount; j++) {
+                values.add(readString(buffer));
+            }
+            map.put(name, values);
+        }
+        return map;
+    }
+
+    private static Map<String, String> readMap(final ByteBuffer buffer) {
+        final var count = readLength(buffer);
+        if (count == 0) {
+            return null;
+        }
+        final var map = new HashMap<String, String>(count * 2);
+        for (var i = 0; i < count; i++) {
+            map.put(readString(buffer), readString(buffer));
+        }
+        return map;
+    }
+
+    private static byte[] readRemaining(final ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            return EMPTY;
+        }
+        final var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Kind of message carried by a codec frame. Codes are stable on the wire.
+     */
+    public enum Kind {
+        HTTP_REQUEST(0x10, null),
+        HTTP_RESPONSE(0x11, null),
+        WS_OPEN(0x20, WsTunnelMessage.Type.OPEN),
+        WS_OPEN_OK(0x21, WsTunnelMessage.Type.OPEN_OK),
+        WS_TEXT(0x22, WsTunnelMessage.Type.TEXT),
+        WS_BINARY(0x23, WsTunnelMessage.Type.BINARY),
+        WS_CLOSE(0x24, WsTunnelMessage.Type.CLOSE),
+        WS_ERROR(0x25, WsTunnelMessage.Type.ERROR);
+
+        private final byte code;
+        private final WsTunnelMessage.Type wsType;
+
+        Kind(final int code, final WsTunnelMessage.Type wsType) {
+            this.code = (byte) code;
+            this.wsType = wsType;
+        }
+
+        public byte code() {
+            return code;
+        }
+
+        /**
+         * Resolves a kind by its wire code.
+         *
+         * @param code the wire code
+         * @return the kind, or {@code null} if the code is unknown
+         */
+        public static Kind of(final byte code) {
+            for (final var kind : values()) {
+                if (kind.code == code) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+
+        private static Kind of(final WsTunnelMessage.Type wsType) {
+            if (wsType == null) {
+                return null;
+            }
+            for (final var kind : values()) {
+                if (kind.wsType == wsType) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A decoded codec frame; exactly one of {@code http} and {@code ws} is set.
+     */
+    public record Decoded(HttpTunnelMessage http, WsTunnelMessage ws) {
+    }
+
+    /**
+     * A WebSocket data frame decoded by {@link #decodeWsData(ByteBuffer)}; the payload is UTF-8 for
+     * {@link WsTunnelMessage.Type#TEXT}.
+     */
+    public record WsData(WsTunnelMessage.Type type, String connectionId, ByteBuffer payload) {
+
+        /**
+         * Returns the payload of a TEXT frame as a string.
+         */
+        public String text() {
+            return StandardCharsets.UTF_8.decode(payload.duplicate()).toString();
+        }
+    }
+
+    /**
+     * Minimal growable byte writer; avoids the synchronization of {@code ByteArrayOutputStream}.
+     */
+    private static final class Writer {
+
+        private byte[] bytes;
+        private int position;
+
+        Writer(final int initialCapacity) {
+            bytes = new byte[initialCapacity];
+        }
+
+        void writeByte(final byte value) {
+            ensureCapacity(1);
+            bytes[position++] = value;
+        }
+
+        void writeVarLong(final long value) {
+            ensureCapacity(10);
+            var remaining = value;
+            while ((remaining & ~0x7FL) != 0) {
+                bytes[position++] = (byte) ((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            bytes[position++] = (byte) remaining;
+        }
+
+        void writeString(final String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            final var utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length + 1L);
+            writeBytes(utf8);
+        }
+
+        void writeMultiMap(final Map<String, List<String>> map) {
+            if (map == null) {
+                writeVarLong(0);
+                return;
+            }
+            writeVarLong(map.size());
+            for (final var entry : map.entrySet()) {
+                writeString(entry.getKey());
+                final var values = entry.getValue() == null ? List.<String>of() : entry.getValue();
+                writeVarLong(values.size());
+                for (final var value : values) {
+                    writeString(value);
+                }
+            }
+        }
+
+        void writeMap(final Map<String, String> map) {
+            if (map == null) {
+                writeVarLong(0);
+                return;
+            }
+            writeVarLong(map.size());
+            for (final var entry : map.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue());
+            }
+        }
+
+        void writeBytes(final byte[] value) {
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, bytes, position, value.length);
+            position += value.length;
+        }
+
+        void writeBytes(final ByteBuffer value) {
+            final var length = value.remaining();
+            ensureCapacity(length);
+            value.get(bytes, position, length);
+            position += length;
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(bytes, 0, position);
+        }
+
+        private void ensureCapacity(final int extra) {
+            if (position + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + extra));
+            }
+        }
+    }
+}
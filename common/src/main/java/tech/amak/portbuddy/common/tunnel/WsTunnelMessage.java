@@ -16,6 +16,7 @@ package tech.amak.portbuddy.common.tunnel;
 
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -40,6 +41,13 @@ public class WsTunnelMessage {
     @JsonProperty("connectionId")
     private String connectionId;
 
+    /**
+     * Compact id of the connection in binary data frames, assigned by Net Proxy in OPEN when the
+     * {@link TunnelFeatures#STREAM_ID} feature was negotiated.
+     */
+    @JsonProperty("streamId")
+    private Integer streamId;
+
     /**
      * Optional request/response id alignment if needed.
      */
@@ -66,6 +74,12 @@ public class WsTunnelMessage {
     @JsonProperty("dataB64")
     private String dataB64;
 
+    /**
+     * Raw binary payload, used by the binary codec instead of {@link #dataB64}.
+     */
+    @JsonIgnore
+    private byte[] data;
+
     // Close details
     @JsonProperty("closeCode")
     private Integer closeCode;
@@ -82,7 +96,7 @@ public class WsTunnelMessage {
         ERROR,
         /**
          * Control message sent by Net Proxy after WebSocket is established to inform CLI
-         * about the actual exposed public endpoint details (host/port).
+         * about the actual exposed public endpoint details (host/port) and the accepted features.
          */
         EXPOSED
     }
@@ -93,4 +107,11 @@ public class WsTunnelMessage {
 
     @JsonProperty("publicPort")
     private Integer publicPort;
+
+    /**
+     * Features accepted by Net Proxy for the tunnel in EXPOSED, formatted by {@link TunnelFeatures#format}.
+     * Both sides keep plain frames until EXPOSED is exchanged, as it precedes every OPEN and data frame.
+     */
+    @JsonProperty("features")
+    private String features;
 }
@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class BinaryWsFrameTest {
+
+    private static final String CONNECTION_ID = "3f2b8c4e-0d1a-4b7e-9a55-6c2f1e8d9b10";
+
+    @Test
+    void shouldEncodeFrameReadIntoPreparedBuffer() {
+        // Given
+        final var header = BinaryWsFrame.encodeHeader(CONNECTION_ID);
+        final var payload = bytes("hello");
+        final var frame = BinaryWsFrame.allocate(header, 64);
+
+        // When - the payload is written directly behind the header, as a socket read would
+        frame.put(payload).flip();
+
+        // Then
+        assertArrayEquals(BinaryWsFrame.encodeToArray(CONNECTION_ID, payload, 0, payload.length), toArray(frame));
+    }
+
+    @Test
+    void shouldEncodeIntoPooledDirectBuffer() {
+        // Given
+        final var pool = new FrameBufferPool(1024, 2);
+        final var header = BinaryWsFrame.encodeHeader(CONNECTION_ID);
+
+        // When
+        final var frame = BinaryWsFrame.prepare(pool.acquire(), header).put(bytes("data")).flip();
+        final var decoded = BinaryWsFrame.decode(frame);
+        pool.release(frame);
+
+        // Then
+        assertEquals(CONNECTION_ID, decoded.connectionId());
+        assertArrayEquals(bytes("data"), decoded.data());
+        assertEquals(1, pool.pooled());
+    }
+
+    @Test
+    void shouldDecodePayloadAsSliceWithoutCopy() {
+        // Given
+        final var frame = BinaryWsFrame.encodeToArray(CONNECTION_ID, bytes("xpayloadx"), 1, 7);
+
+        // When
+        final var decoded = BinaryWsFrame.decode(ByteBuffer.wrap(frame), null);
+
+        // Then
+        assertEquals(CONNECTION_ID, decoded.connectionId());
+        assertSame(frame, decoded.payload().array());
+        assertArrayEquals(bytes("payload"), decoded.data());
+    }
+
+    @Test
+    void shouldResolveRepeatedConnectionIdsFromCache() {
+        // Given
+        final var cache = new BinaryWsFrame.IdCache(16);
+        final var first = BinaryWsFrame.encodeToByteBuffer(CONNECTION_ID, bytes("a"), 0, 1);
+        final var second = BinaryWsFrame.encodeToByteBuffer(CONNECTION_ID, bytes("b"), 0, 1);
+        final var other = BinaryWsFrame.encodeToByteBuffer("other", bytes("c"), 0, 1);
+
+        // When
+        final var firstId = BinaryWsFrame.decode(first, cache).connectionId();
+        final var secondId = BinaryWsFrame.decode(second, cache).connectionId();
+        final var otherId = BinaryWsFrame.decode(other, cache).connectionId();
+
+        // Then
+        assertSame(firstId, secondId);
+        assertEquals("other", otherId);
+    }
+
+    @Test
+    void shouldRejectTruncatedFrame() {
+        final var frame = BinaryWsFrame.encodeToArray(CONNECTION_ID, bytes("data"), 0, 4);
+
+        assertNull(BinaryWsFrame.decode(ByteBuffer.wrap(frame, 0, 10)));
+        assertNull(BinaryWsFrame.decode(new byte[1]));
+    }
+
+    private static byte[] toArray(final ByteBuffer buffer) {
+        final var out = new byte[buffer.remaining()];
+        buffer.get(out);
+        return out;
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class DatagramBatchTest {
+
+    @Test
+    void shouldRoundTripSeveralDatagramsInOneFrame() {
+        // Given
+        final var frame = ByteBuffer.allocate(DatagramBatch.MAX_FRAME_BYTES);
+        DatagramBatch.append(frame, 1, wrap("first"));
+        DatagramBatch.append(frame, 70000, wrap(""));
+        DatagramBatch.append(frame, 2, wrap("second"));
+
+        // When
+        final var entries = new ArrayList<String>();
+        final var complete = DatagramBatch.forEach(frame.flip(),
+            (streamId, datagram) -> entries.add(streamId + ":" + StandardCharsets.UTF_8.decode(datagram)));
+
+        // Then
+        assertTrue(complete);
+        assertEquals(List.of("1:first", "70000:", "2:second"), entries);
+    }
+
+    @Test
+    void shouldNotAppendBeyondCapacity() {
+        final var frame = ByteBuffer.allocate(DatagramBatch.ENTRY_HEADER_BYTES + 4);
+        final var datagram = wrap("12345");
+
+        assertFalse(DatagramBatch.append(frame, 1, datagram));
+        assertEquals(0, frame.position());
+        assertEquals(5, datagram.remaining());
+    }
+
+    @Test
+    void shouldStopAtTruncatedEntry() {
+        final var frame = ByteBuffer.allocate(64);
+        DatagramBatch.append(frame, 1, wrap("ok"));
+        DatagramBatch.append(frame, 2, wrap("truncated"));
+        frame.flip().limit(frame.limit() - 3);
+
+        final var entries = new ArrayList<Integer>();
+        assertFalse(DatagramBatch.forEach(frame, (streamId, datagram) -> entries.add(streamId)));
+        assertEquals(List.of(1), entries);
+    }
+
+    @Test
+    void shouldDrainReadyDatagramsBeforeFlushing() throws Exception {
+        // Given - a relay whose flush records how many datagrams arrived since the previous one
+        final var batches = new CopyOnWriteArrayList<Integer>();
+        final var received = new CountDownLatch(3);
+        final var counter = new int[1];
+        final var handler = new DatagramRelay.Handler<String>() {
+            @Override
+            public void onDatagram(final String name, final InetSocketAddress remote, final ByteBuffer datagram) {
+                counter[0]++;
+                received.countDown();
+            }
+
+            @Override
+            public void flush() {
+                if (counter[0] > 0) {
+                    batches.add(counter[0]);
+                    counter[0] = 0;
+                }
+            }
+
+            @Override
+            public void onError(final String name, final Exception error) {
+            }
+        };
+        try (final var relay = new DatagramRelay<>("test-relay", 64, handler);
+             final var channel = DatagramChannel.open();
+             final var sender = new DatagramSocket()) {
+            channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            final var target = channel.getLocalAddress();
+
+            // When - datagrams are queued before the channel is registered
+            for (var i = 0; i < 3; i++) {
+                final var data = ("datagram-" + i).getBytes(StandardCharsets.UTF_8);
+                sender.send(new DatagramPacket(data, data.length, target));
+            }
+            Thread.sleep(100);
+            relay.register(channel, "channel");
+
+            // Then - one pass drains them all
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertEquals(List.of(3), batches);
+        }
+    }
+
+    private static ByteBuffer wrap(final String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+
+class FrameCompressionTest {
+
+    private static final int MAX_MESSAGE_SIZE = 1024 * 1024;
+
+    @Test
+    void shouldRoundTripCompressibleFrame() {
+        // Given
+        final var frame = ByteBuffer.wrap("{\"name\":\"value\"},".repeat(200).getBytes(StandardCharsets.UTF_8));
+
+        // When
+        final var compressed = FrameCompression.compress(frame);
+
+        // Then
+        assertTrue(FrameCompression.isCompressed(compressed));
+        assertTrue(compressed.remaining() < frame.remaining() / 4);
+        assertEquals(0, frame.position());
+        assertEquals(frame, FrameCompression.unwrap(compressed, MAX_MESSAGE_SIZE));
+    }
+
+    @Test
+    void shouldSendSmallAndIncompressibleFramesAsTheyAre() {
+        final var small = ByteBuffer.wrap(new byte[FrameCompression.MIN_SIZE - 1]);
+        final var random = new byte[8 * 1024];
+        ThreadLocalRandom.current().nextBytes(random);
+        final var noise = ByteBuffer.wrap(random);
+
+        assertSame(small, FrameCompression.compress(small));
+        assertSame(noise, FrameCompression.compress(noise));
+        assertSame(noise, FrameCompression.unwrap(noise, MAX_MESSAGE_SIZE));
+    }
+
+    @Test
+    void shouldRejectMalformedAndOversizedFrames() {
+        final var truncated = FrameCompression.compress(ByteBuffer.wrap(new byte[4096]));
+        truncated.limit(truncated.limit() - 1);
+        final var oversized = ByteBuffer.allocate(16).put(FrameCompression.MARKER)
+            .putInt(MAX_MESSAGE_SIZE + 1).flip();
+
+        assertNull(FrameCompression.unwrap(truncated, MAX_MESSAGE_SIZE));
+        assertNull(FrameCompression.unwrap(oversized, MAX_MESSAGE_SIZE));
+    }
+
+    @Test
+    void shouldRejectFrameInflatingBeyondTheMessageLimit() {
+        // Given: 64 KiB of zeros deflate to well under a kilobyte
+        final var bomb = FrameCompression.compress(ByteBuffer.wrap(new byte[64 * 1024]));
+
+        // When
+        final var restored = FrameCompression.unwrap(bomb, 16 * 1024);
+
+        // Then
+        assertTrue(bomb.remaining() < 1024);
+        assertNull(restored);
+    }
+
+    @Test
+    void shouldSkipAlreadyCompressedContent() {
+        assertTrue(FrameCompression.isCompressible("application/json; charset=utf-8", null));
+        assertTrue(FrameCompression.isCompressible("image/svg+xml", "identity"));
+        assertTrue(FrameCompression.isCompressible(null, null));
+        assertFalse(FrameCompression.isCompressible("text/html", "gzip"));
+        assertFalse(FrameCompression.isCompressible("image/png", null));
+        assertFalse(FrameCompression.isCompressible("video/mp4", null));
+        assertFalse(FrameCompression.isCompressible("application/zip", null));
+        assertFalse(FrameCompression.isCompressible(Map.of("content-encoding", List.of("br"))));
+        assertTrue(FrameCompression.isCompressible(Map.of("Content-Type", List.of("text/css"))));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.common.tunnel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class TrafficRankingTest {
+
+    @Test
+    void shouldRankBusiestTunnelsOfTheLastInterval() {
+        // Given
+        final var total = new TrafficCounters();
+        final var quiet = new TrafficCounters(total);
+        final var busy = new TrafficCounters(total);
+        final var idle = new TrafficCounters(total);
+        final var tunnels = Map.of("quiet", quiet, "busy", busy, "idle", idle);
+        final var ranking = new TrafficRanking<String>(2);
+        quiet.received(5000);
+        busy.sent(100);
+        idle.sent(10);
+        ranking.rank(tunnels, TimeUnit.SECONDS.toNanos(1));
+
+        // When
+        quiet.received(100);
+        busy.sent(4000);
+        busy.received(1000);
+        final var ranked = ranking.rank(tunnels, TimeUnit.SECONDS.toNanos(11));
+
+        // Then
+        assertEquals(2, ranked.size());
+        assertEquals("busy", ranked.get(0).key());
+        assertEquals(5000, ranked.get(0).bytes());
+        assertEquals(500.0, ranked.get(0).bytesPerSecond(), 0.001);
+        assertEquals("quiet", ranked.get(1).key());
+        assertEquals(100, ranked.get(1).bytes());
+        assertEquals(10_210, total.bytes());
+        assertEquals(6, total.framesReceived() + total.framesSent());
+    }
+
+    @Test
+    void shouldLeaveOutIdleTunnels() {
+        // Given
+        final var counters = new TrafficCounters();
+        final var ranking = new TrafficRanking<String>(10);
+        counters.sent(42);
+        ranking.rank(Map.of("tunnel", counters), 1);
+
+        // When
+        final var ranked = ranking.rank(Map.of("tunnel", counters), 2);
+
+        // Then
+        assertTrue(ranked.isEmpty());
+    }
+}
@@ -21,12 +21,18 @@ import org.springframework.web.reactive.function.client.WebClient;
 
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
+import tech.amak.portbuddy.gateway.config.AppProperties;
+import tech.amak.portbuddy.gateway.dto.CertificateFeedResponse;
 import tech.amak.portbuddy.gateway.dto.CertificateResponse;
+import tech.amak.portbuddy.gateway.dto.SessionTicketKeysResponse;
 
 @Service
 @Slf4j
 public class SslServiceClient {
 
+    // Authenticates the gateway on ssl-service's /internal/api, which serves private keys
+    private static final String INTERNAL_TOKEN_HEADER = "X-PortBuddy-Internal-Token";
+
     private final WebClient webClient;
 
     /**
@@ -36,10 +42,23 @@ public class SslServiceClient {
      * @param loadBalancedWebClientBuilder the WebClient.Builder instance used to configure
      *                                     the load-balanced WebClient for communication with
      *                                     the ssl-service
+     * @param properties                   the gateway properties holding the internal API token
      */
-    public SslServiceClient(final WebClient.Builder loadBalancedWebClientBuilder) {
-        this.webClient = loadBalancedWebClientBuilder
+    public SslServiceClient(final WebClient.Builder loadBalancedWebClientBuilder,
+                            final AppProperties properties) {
+        final var sslService = properties.sslService();
+        final var token = sslService == null ? null : sslService.internalToken();
+        if (token == null || token.isBlank()) {
+            log.warn("No internal API token configured (app.ssl-service.internal-token). "
+                     + "ssl-service will refuse certificate requests.");
+        }
+        this.webClient = loadBalancedWebClientBuilder.clone()
             .baseUrl("lb://ssl-service")
+            .defaultHeaders(headers -> {
+                if (token != null && !token.isBlank()) {
+                    headers.set(INTERNAL_TOKEN_HEADER, token);
+                }
+            })
             .build();
     }
 
@@ -60,4 +79,49 @@ public class SslServiceClient {
                 return Mono.empty();
             });
     }
+
+    /**
+     * Retrieves all active certificates and the version to follow changes from.
+     *
+     * @return snapshot mono, failing if ssl-service cannot be reached
+     */
+    public Mono<CertificateFeedResponse> getSnapshot() {
+        return webClient.get()
+            .uri("/internal/api/certificates/snapshot")
+            .retrieve()
+            .bodyToMono(CertificateFeedResponse.class)
+            .timeout(Duration.ofSeconds(30));
+    }
+
+    /**
+     * Retrieves the certificates changed after a version. ssl-service holds the request until one changes or
+     * the wait elapses.
+     *
+     * @param since version already seen
+     * @param wait  how long ssl-service may wait for a change
+     * @return changes mono, failing if ssl-service cannot be reached
+     */
+    public Mono<CertificateFeedResponse> getChanges(final long since, final Duration wait) {
+        return webClient.get()
+            .uri(uri -> uri.path("/internal/api/certificates/changes")
+                .queryParam("since", since)
+                .queryParam("waitSeconds", wait.toSeconds())
+                .build())
+            .retrieve()
+            .bodyToMono(CertificateFeedResponse.class)
+            .timeout(wait.plusSeconds(10));
+    }
+
+    /**
+     * Retrieves the TLS session ticket key ring shared by the gateways.
+     *
+     * @return key ring mono, failing if ssl-service cannot be reached
+     */
+    public Mono<SessionTicketKeysResponse> getSessionTicketKeys() {
+        return webClient.get()
+            .uri("/internal/api/session-ticket-keys")
+            .retrieve()
+            .bodyToMono(SessionTicketKeysResponse.class)
+            .timeout(Duration.ofSeconds(5));
+    }
 }
@@ -14,6 +14,9 @@
 
 package tech.amak.portbuddy.gateway.config;
 
+import java.time.Duration;
+import java.util.List;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.core.io.Resource;
 
@@ -24,12 +27,84 @@ public record AppProperties(
     String url,
     String serverErrorPage,
     Jwt jwt,
-    Ssl ssl
+    Ssl ssl,
+    Routing routing,
+    SslService sslService
 ) {
 
+    /**
+     * Access to ssl-service.
+     *
+     * @param internalToken token sent to read certificates and session ticket keys; must match ssl-service's
+     *                      {@code app.internal.token}
+     */
+    public record SslService(
+        String internalToken
+    ) {
+    }
+
+    /**
+     * Gateway-side routing table of tunnel hosts to server instances.
+     *
+     * @param ttl             how long a known owner is trusted without a refreshing event
+     * @param negativeTtl     how long a host without owner is remembered before probing servers again
+     * @param refreshInterval how often server instances are re-discovered to subscribe to their route events
+     */
+    public record Routing(
+        Duration ttl,
+        Duration negativeTtl,
+        Duration refreshInterval
+    ) {
+    }
+
+    /**
+     * TLS termination of tunnel hosts.
+     *
+     * @param enabled  whether the public port terminates TLS
+     * @param provider the TLS engine
+     * @param ciphers  cipher suites offered, by their IANA names, in order of preference; the engine defaults when
+     *                 empty
+     * @param alpn     protocols offered through ALPN, none when empty
+     * @param fallback certificate presented for hosts without one of their own
+     * @param session  TLS session resumption
+     */
     public record Ssl(
         boolean enabled,
-        Certificate fallback
+        TlsProvider provider,
+        List<String> ciphers,
+        List<String> alpn,
+        Certificate fallback,
+        Session session
+    ) {
+    }
+
+    /**
+     * TLS engine of the public port.
+     */
+    public enum TlsProvider {
+        /**
+         * The TLS implementation of the JDK.
+         */
+        JDK,
+        /**
+         * BoringSSL through netty-tcnative, with the JDK engine as fallback when its native library cannot be
+         * loaded.
+         */
+        OPENSSL
+    }
+
+    /**
+     * TLS session resumption.
+     *
+     * @param cacheSize                maximum number of sessions cached per SSL context
+     * @param timeout                  how long a cached session or a session ticket can be resumed
+     * @param ticketKeyRefreshInterval how often the session ticket keys shared by the gateways are fetched
+     *                                 from ssl-service
+     */
+    public record Session(
+        long cacheSize,
+        Duration timeout,
+        Duration ticketKeyRefreshInterval
     ) {
     }
 
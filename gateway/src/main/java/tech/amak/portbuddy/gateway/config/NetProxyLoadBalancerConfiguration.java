@@ -23,6 +23,7 @@ import org.springframework.core.env.Environment;
 
 import lombok.extern.slf4j.Slf4j;
 import tech.amak.portbuddy.gateway.loadbalancer.NetProxyPublicHostLoadBalancer;
+import tech.amak.portbuddy.gateway.loadbalancer.RoutingMetrics;
 
 @Slf4j
 public class NetProxyLoadBalancerConfiguration {
@@ -30,12 +31,13 @@ public class NetProxyLoadBalancerConfiguration {
     @Bean
     public ReactorServiceInstanceLoadBalancer reactorServiceInstanceLoadBalancer(
         final Environment environment,
-        final LoadBalancerClientFactory loadBalancerClientFactory
+        final LoadBalancerClientFactory loadBalancerClientFactory,
+        final RoutingMetrics metrics
     ) {
         final var serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
         final ObjectProvider<ServiceInstanceListSupplier> provider =
             loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class);
         log.info("Created NetProxyPublicHostLoadBalancer for service {}", serviceId);
-        return new NetProxyPublicHostLoadBalancer(provider, serviceId);
+        return new NetProxyPublicHostLoadBalancer(provider, serviceId, metrics);
     }
 }
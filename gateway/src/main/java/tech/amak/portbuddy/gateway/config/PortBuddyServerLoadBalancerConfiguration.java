@@ -23,6 +23,8 @@ import org.springframework.core.env.Environment;
 
 import lombok.extern.slf4j.Slf4j;
 import tech.amak.portbuddy.gateway.loadbalancer.PortBuddySubdomainLoadBalancer;
+import tech.amak.portbuddy.gateway.loadbalancer.RoutingMetrics;
+import tech.amak.portbuddy.gateway.loadbalancer.SubdomainRoutingTable;
 
 @Slf4j
 public class PortBuddyServerLoadBalancerConfiguration {
@@ -30,12 +32,14 @@ public class PortBuddyServerLoadBalancerConfiguration {
     @Bean
     public ReactorServiceInstanceLoadBalancer reactorServiceInstanceLoadBalancer(
         final Environment environment,
-        final LoadBalancerClientFactory loadBalancerClientFactory
+        final LoadBalancerClientFactory loadBalancerClientFactory,
+        final SubdomainRoutingTable routingTable,
+        final RoutingMetrics metrics
     ) {
         final var serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
         final ObjectProvider<ServiceInstanceListSupplier> provider =
             loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class);
-        final var loadBalancer = new PortBuddySubdomainLoadBalancer(provider, serviceId);
+        final var loadBalancer = new PortBuddySubdomainLoadBalancer(provider, serviceId, routingTable, metrics);
         log.info("Created PortBuddySubdomainLoadBalancer for service {}", serviceId);
         return loadBalancer;
     }
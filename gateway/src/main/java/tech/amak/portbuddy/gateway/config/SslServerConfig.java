@@ -25,13 +25,13 @@ import org.springframework.http.server.reactive.HttpHandler;
 import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
 
 import io.netty.handler.codec.http.HttpHeaderNames;
-import io.netty.handler.ssl.SniHandler;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import reactor.netty.DisposableServer;
 import reactor.netty.http.server.HttpServer;
+import tech.amak.portbuddy.gateway.ssl.KeyTypeSniHandler;
 import tech.amak.portbuddy.gateway.ssl.SniSslContextMapping;
 
 @Configuration
@@ -58,7 +58,7 @@ public class SslServerConfig {
                 // We use doOnChannelInit to configure the pipeline at the transport level.
                 // This ensures SniHandler is added before any data is read and enables dynamic SSL via SNI.
                 server = server.doOnChannelInit((observer, channel, remoteAddress) -> {
-                    channel.pipeline().addFirst("sni-handler", new SniHandler(sniSslContextMapping));
+                    channel.pipeline().addFirst("sni-handler", new KeyTypeSniHandler(sniSslContextMapping));
                 });
             }
 
@@ -14,11 +14,24 @@
 
 package tech.amak.portbuddy.gateway.dto;
 
+/**
+ * Certificate of a domain served by ssl-service, with its PEM material inline.
+ *
+ * @param domain                   the domain, possibly a wildcard such as {@code *.example.com}
+ * @param version                  position of the last change of the certificate in the feed
+ * @param active                   whether the certificate can be served; when false the PEM fields are null
+ * @param certificateChainPem      the leaf RSA certificate followed by its chain
+ * @param privateKeyPem            the RSA private key
+ * @param ecdsaCertificateChainPem the leaf ECDSA certificate followed by its chain, null if the domain has none
+ * @param ecdsaPrivateKeyPem       the ECDSA private key, null if the domain has none
+ */
 public record CertificateResponse(
     String domain,
-    String certificatePath,
-    String privateKeyPath,
-    String chainPath,
-    String fullChainPath
+    long version,
+    boolean active,
+    String certificateChainPem,
+    String privateKeyPem,
+    String ecdsaCertificateChainPem,
+    String ecdsaPrivateKeyPem
 ) {
 }
@@ -48,23 +48,28 @@ public class NetProxyPublicHostLoadBalancer implements ReactorServiceInstanceLoa
 
     private final ObjectProvider<ServiceInstanceListSupplier> supplierProvider;
     private final String serviceId;
+    private final RoutingMetrics metrics;
 
     /**
      * Constructs load balancer.
      *
      * @param supplierProvider supplier provider
      * @param serviceId        target service id
+     * @param metrics          metrics of the choices
      */
     public NetProxyPublicHostLoadBalancer(final ObjectProvider<ServiceInstanceListSupplier> supplierProvider,
-                                          final String serviceId) {
+                                          final String serviceId,
+                                          final RoutingMetrics metrics) {
         this.supplierProvider = supplierProvider;
         this.serviceId = serviceId;
+        this.metrics = metrics;
     }
 
     @Override
     public Mono<Response<ServiceInstance>> choose(final Request request) {
         final var supplier = supplierProvider.getIfAvailable();
         if (supplier == null) {
+            metrics.choice(serviceId, RoutingMetrics.Source.UNAVAILABLE);
             return Mono.just(new EmptyResponse());
         }
 
@@ -72,18 +77,22 @@ public class NetProxyPublicHostLoadBalancer implements ReactorServiceInstanceLoa
 
         return supplier.get().next().map(instances -> {
             if (instances == null || instances.isEmpty()) {
+                metrics.choice(serviceId, RoutingMetrics.Source.UNAVAILABLE);
                 return new EmptyResponse();
             }
 
             if (!StringUtils.hasText(requestedPublicHost)) {
+                metrics.choice(serviceId, RoutingMetrics.Source.DEFAULT);
                 return new DefaultResponse(instances.getFirst());
             }
 
             final var matched = findByPublicHost(instances, requestedPublicHost);
             if (matched != null) {
+                metrics.choice(serviceId, RoutingMetrics.Source.PUBLIC_HOST);
                 return new DefaultResponse(matched);
             }
 
+            metrics.choice(serviceId, RoutingMetrics.Source.FALLBACK);
             return new DefaultResponse(instances.getFirst());
         });
     }
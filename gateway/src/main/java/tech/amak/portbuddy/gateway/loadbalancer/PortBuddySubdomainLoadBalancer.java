@@ -17,6 +17,7 @@ package tech.amak.portbuddy.gateway.loadbalancer;
 import java.net.URI;
 import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.cloud.client.ServiceInstance;
@@ -37,7 +38,9 @@ import reactor.core.publisher.Mono;
 
 /**
  * Custom load balancer that, for subdomain ingress requests, chooses the server instance
- * that currently holds an active tunnel for the requested subdomain. If no instance confirms
+ * that currently holds an active tunnel for the requested subdomain. The owner is taken from the
+ * {@link SubdomainRoutingTable} pushed by the servers; only on a table miss are the instances probed,
+ * and the result (including the absence of an owner) is cached. If no instance confirms
  * ownership, it falls back to the first instance from the list. For all other requests,
  * it delegates to round-robin.
  */
@@ -47,19 +50,27 @@ public class PortBuddySubdomainLoadBalancer implements ReactorServiceInstanceLoa
     private final String serviceId;
     private final RoundRobinLoadBalancer roundRobin;
     private final WebClient webClient;
+    private final SubdomainRoutingTable routingTable;
+    private final RoutingMetrics metrics;
 
     /**
      * Constructor.
      *
      * @param supplierProvider the service instance supplier provider
      * @param serviceId        service ID
+     * @param routingTable     routing table of tunnel hosts to server instances
+     * @param metrics          metrics of the choices
      */
     public PortBuddySubdomainLoadBalancer(final ObjectProvider<ServiceInstanceListSupplier> supplierProvider,
-                                          final String serviceId) {
+                                          final String serviceId,
+                                          final SubdomainRoutingTable routingTable,
+                                          final RoutingMetrics metrics) {
         this.supplierProvider = supplierProvider;
         this.serviceId = serviceId;
         this.roundRobin = new RoundRobinLoadBalancer(supplierProvider, serviceId);
         this.webClient = WebClient.builder().build();
+        this.routingTable = routingTable;
+        this.metrics = metrics;
     }
 
     @Override
@@ -67,11 +78,13 @@ public class PortBuddySubdomainLoadBalancer implements ReactorServiceInstanceLoa
         // Extract subdomain or custom domain from host if present; otherwise delegate.
         final var host = extractHost(request);
         if (!StringUtils.hasText(host)) {
+            metrics.choice(serviceId, RoutingMetrics.Source.DEFAULT);
             return roundRobin.choose(request);
         }
 
         final var supplier = supplierProvider.getIfAvailable();
         if (supplier == null) {
+            metrics.choice(serviceId, RoutingMetrics.Source.UNAVAILABLE);
             return Mono.just(new EmptyResponse());
         }
 
@@ -79,22 +92,57 @@ public class PortBuddySubdomainLoadBalancer implements ReactorServiceInstanceLoa
         final var target = isCustomDomain ? host : extractSubdomain(host);
 
         if (!StringUtils.hasText(target)) {
+            metrics.choice(serviceId, RoutingMetrics.Source.DEFAULT);
             return roundRobin.choose(request);
         }
 
         return supplier.get().next().flatMap(instances -> {
             if (instances == null || instances.isEmpty()) {
+                metrics.choice(serviceId, RoutingMetrics.Source.UNAVAILABLE);
                 return Mono.just(new EmptyResponse());
             }
 
-            // Probe all instances concurrently; pick the first that returns 200 OK.
+            final var route = routingTable.lookup(target);
+            if (route != null) {
+                if (route.isMissing()) {
+                    metrics.choice(serviceId, RoutingMetrics.Source.FALLBACK);
+                    return Mono.just(new DefaultResponse(instances.getFirst()));
+                }
+                final var owner = findInstance(instances, route.instanceId());
+                if (owner != null) {
+                    metrics.choice(serviceId, RoutingMetrics.Source.TABLE);
+                    return Mono.just(new DefaultResponse(owner));
+                }
+                // The owner is no longer listed; fall through to probing
+            }
+
+            // Table miss: probe all instances concurrently; pick the first that returns 200 OK.
             final var probeTimeout = Duration.ofMillis(500);
+            final var probeStart = System.nanoTime();
             return findOwningInstance(instances, target, isCustomDomain, probeTimeout)
+                .doOnNext(instance -> {
+                    routingTable.putOwner(target, SubdomainRoutingTable.instanceKey(instance));
+                    metrics.choice(serviceId, RoutingMetrics.Source.PROBE);
+                })
                 .map(DefaultResponse::new)
-                .switchIfEmpty(Mono.just(new DefaultResponse(instances.getFirst())));
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    routingTable.putMissing(target);
+                    metrics.choice(serviceId, RoutingMetrics.Source.FALLBACK);
+                    return new DefaultResponse(instances.getFirst());
+                }))
+                .doFinally(signal -> metrics.probes().record(System.nanoTime() - probeStart, TimeUnit.NANOSECONDS));
         });
     }
 
+    private ServiceInstance findInstance(final List<ServiceInstance> instances, final String instanceId) {
+        for (final var instance : instances) {
+            if (instanceId.equals(SubdomainRoutingTable.instanceKey(instance))) {
+                return instance;
+            }
+        }
+        return null;
+    }
+
     private Mono<ServiceInstance> findOwningInstance(final List<ServiceInstance> instances,
                                                      final String target,
                                                      final boolean isCustomDomain,
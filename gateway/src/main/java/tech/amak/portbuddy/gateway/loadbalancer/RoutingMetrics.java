@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Counts how the gateway load balancers choose instances, per service and source of the choice, and times
+ * the ownership probes of the servers. Tagged by service and source only, never by host, so the number of
+ * series stays bounded.
+ */
+@Component
+public class RoutingMetrics {
+
+    /**
+     * Where a choice came from.
+     */
+    public enum Source {
+        /**
+         * The owner was found in the routing table.
+         */
+        TABLE,
+        /**
+         * The owner was found by probing the instances.
+         */
+        PROBE,
+        /**
+         * The instance matched the requested public host.
+         */
+        PUBLIC_HOST,
+        /**
+         * No owner or match was found and the first instance was chosen.
+         */
+        FALLBACK,
+        /**
+         * Nothing to match was requested and the default choice was made.
+         */
+        DEFAULT,
+        /**
+         * No instance was available.
+         */
+        UNAVAILABLE
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Map<Source, Counter>> choices = new ConcurrentHashMap<>();
+    private final Timer probes;
+
+    /**
+     * Registers the meters.
+     *
+     * @param meterRegistry the registry to publish to
+     * @param routingTable  the routing table whose size is published
+     */
+    public RoutingMetrics(final MeterRegistry meterRegistry, final SubdomainRoutingTable routingTable) {
+        this.meterRegistry = meterRegistry;
+        this.probes = Timer.builder("portbuddy.gateway.route.probes")
+            .description("Probes of the servers for the owner of a tunnel host")
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(1))
+            .maximumExpectedValue(Duration.ofSeconds(1))
+            .register(meterRegistry);
+        Gauge.builder("portbuddy.gateway.routes", routingTable, SubdomainRoutingTable::size)
+            .description("Entries of the routing table, including hosts known to have no owner")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Counts a choice.
+     *
+     * @param serviceId the service an instance was chosen for
+     * @param source    where the choice came from
+     */
+    public void choice(final String serviceId, final Source source) {
+        choices.computeIfAbsent(serviceId, this::countersOf).get(source).increment();
+    }
+
+    /**
+     * Returns the timer of the ownership probes.
+     */
+    public Timer probes() {
+        return probes;
+    }
+
+    private Map<Source, Counter> countersOf(final String serviceId) {
+        final var counters = new EnumMap<Source, Counter>(Source.class);
+        for (final var source : Source.values()) {
+            counters.put(source, Counter.builder("portbuddy.gateway.route.choices")
+                .description("Instances chosen by the load balancers")
+                .tag("service", String.valueOf(serviceId))
+                .tag("source", source.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry));
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.Locale;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import tech.amak.portbuddy.gateway.config.AppProperties;
+
+/**
+ * Routing table of tunnel hosts (subdomains and custom domains) to the server instance holding the tunnel.
+ * Entries are pushed by the servers through {@link TunnelRouteSubscriber} and learned from probes on a
+ * miss. Known owners expire after the configured TTL; hosts without an owner are cached for a short
+ * negative TTL so unknown hosts do not trigger a probe of every server per request.
+ */
+@Component
+public class SubdomainRoutingTable {
+
+    private static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+    private static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofSeconds(5);
+    private static final Route MISSING = new Route(null);
+
+    private final Cache<String, Route> routes;
+
+    /**
+     * Creates the routing table.
+     *
+     * @param properties application properties holding the TTLs
+     */
+    public SubdomainRoutingTable(final AppProperties properties) {
+        final var routing = properties.routing();
+        final var ttl = routing != null && routing.ttl() != null ? routing.ttl() : DEFAULT_TTL;
+        final var negativeTtl = routing != null && routing.negativeTtl() != null
+            ? routing.negativeTtl()
+            : DEFAULT_NEGATIVE_TTL;
+        this.routes = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfter(new Expiry<String, Route>() {
+                @Override
+                public long expireAfterCreate(final String key, final Route route, final long currentTime) {
+                    return (route.isMissing() ? negativeTtl : ttl).toNanos();
+                }
+
+                @Override
+                public long expireAfterUpdate(final String key,
+                                              final Route route,
+                                              final long currentTime,
+                                              final long currentDuration) {
+                    return expireAfterCreate(key, route, currentTime);
+                }
+
+                @Override
+                public long expireAfterRead(final String key,
+                                            final Route route,
+                                            final long currentTime,
+                                            final long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+    }
+
+    /**
+     * Looks up the route of a host.
+     *
+     * @param host the subdomain or custom domain
+     * @return the route, or {@code null} on a cache miss
+     */
+    public Route lookup(final String host) {
+        return routes.getIfPresent(normalize(host));
+    }
+
+    /**
+     * Records the server instance holding the tunnel of a host.
+     *
+     * @param host       the subdomain or custom domain
+     * @param instanceId the owning instance, see {@link #instanceKey(ServiceInstance)}
+     */
+    public void putOwner(final String host, final String instanceId) {
+        routes.put(normalize(host), new Route(instanceId));
+    }
+
+    /**
+     * Records that no server instance holds a tunnel for a host.
+     *
+     * @param host the subdomain or custom domain
+     */
+    public void putMissing(final String host) {
+        routes.put(normalize(host), MISSING);
+    }
+
+    /**
+     * Removes the route of a host if it still points to the given instance, so a late DOWN event of
+     * an old owner does not drop the route of a tunnel that already reconnected elsewhere.
+     *
+     * @param host       the subdomain or custom domain
+     * @param instanceId the instance that released the tunnel
+     */
+    public void removeOwner(final String host, final String instanceId) {
+        routes.asMap().remove(normalize(host), new Route(instanceId));
+    }
+
+    /**
+     * Removes all routes pointing to the given instance.
+     *
+     * @param instanceId the instance
+     */
+    public void removeInstance(final String instanceId) {
+        routes.asMap().values().removeIf(route -> instanceId.equals(route.instanceId()));
+    }
+
+    /**
+     * Returns the approximate number of routes, including negative ones.
+     */
+    public long size() {
+        return routes.estimatedSize();
+    }
+
+    /**
+     * Returns the identifier used for an instance in the routing table.
+     *
+     * @param instance the service instance
+     * @return the discovery instance id, or {@code host:port} if the instance has none
+     */
+    public static String instanceKey(final ServiceInstance instance) {
+        final var instanceId = instance.getInstanceId();
+        return instanceId != null ? instanceId : instance.getHost() + ":" + instance.getPort();
+    }
+
+    private static String normalize(final String host) {
+        return host.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Route of a host: the owning instance, or none for a negative entry.
+     */
+    public record Route(String instanceId) {
+
+        public boolean isMissing() {
+            return instanceId == null;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.gateway.loadbalancer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import tech.amak.portbuddy.gateway.config.AppProperties;
+import tech.amak.portbuddy.gateway.dto.TunnelRouteEvent;
+
+/**
+ * Keeps the {@link SubdomainRoutingTable} current by subscribing to the {@code /ingress/routes} event
+ * stream of every {@code port-buddy-server} instance. Instances are re-discovered periodically; streams
+ * that end are re-opened on the next refresh and start with a fresh snapshot of the instance's tunnels.
+ */
+@Slf4j
+@Component
+public class TunnelRouteSubscriber {
+
+    static final String SERVICE_ID = "port-buddy-server";
+    private static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(5);
+    private static final ParameterizedTypeReference<ServerSentEvent<TunnelRouteEvent>> EVENT_TYPE =
+        new ParameterizedTypeReference<>() {
+        };
+
+    private final ReactiveDiscoveryClient discoveryClient;
+    private final SubdomainRoutingTable routingTable;
+    private final Duration refreshInterval;
+    private final WebClient webClient = WebClient.builder().build();
+    private final Map<String, Disposable.Swap> subscriptions = new ConcurrentHashMap<>();
+    private volatile Disposable refreshTask;
+
+    /**
+     * Creates the subscriber.
+     *
+     * @param discoveryClient discovery client used to find server instances
+     * @param routingTable    routing table to maintain
+     * @param properties      application properties holding the refresh interval
+     */
+    public TunnelRouteSubscriber(final ReactiveDiscoveryClient discoveryClient,
+                                 final SubdomainRoutingTable routingTable,
+                                 final AppProperties properties) {
+        this.discoveryClient = discoveryClient;
+        this.routingTable = routingTable;
+        final var routing = properties.routing();
+        this.refreshInterval = routing != null && routing.refreshInterval() != null
+            ? routing.refreshInterval()
+            : DEFAULT_REFRESH_INTERVAL;
+    }
+
+    @PostConstruct
+    void start() {
+        refreshTask = Flux.interval(Duration.ZERO, refreshInterval)
+            .onBackpressureDrop()
+            .concatMap(tick -> discoveryClient.getInstances(SERVICE_ID)
+                .collectList()
+                .onErrorResume(e -> {
+                    log.debug("Failed to discover {} instances: {}", SERVICE_ID, e.toString());
+                    return Mono.empty();
+                }))
+            .subscribe(this::reconcile);
+    }
+
+    @PreDestroy
+    void stop() {
+        final var task = refreshTask;
+        if (task != null) {
+            task.dispose();
+        }
+        subscriptions.values().forEach(Disposable::dispose);
+        subscriptions.clear();
+    }
+
+    void reconcile(final List<ServiceInstance> instances) {
+        final var current = new HashSet<String>();
+        for (final var instance : instances) {
+            final var instanceId = SubdomainRoutingTable.instanceKey(instance);
+            current.add(instanceId);
+            if (!subscriptions.containsKey(instanceId)) {
+                subscribe(instanceId, instance);
+            }
+        }
+        for (final var instanceId : List.copyOf(subscriptions.keySet())) {
+            if (!current.contains(instanceId)) {
+                final var subscription = subscriptions.remove(instanceId);
+                if (subscription != null) {
+                    subscription.dispose();
+                }
+                routingTable.removeInstance(instanceId);
+                log.info("Server instance {} left; dropped its routes", instanceId);
+            }
+        }
+    }
+
+    private void subscribe(final String instanceId, final ServiceInstance instance) {
+        final var swap = Disposables.swap();
+        subscriptions.put(instanceId, swap);
+        final var scheme = instance.isSecure() ? "https" : "http";
+        final var uri = URI.create("%s://%s:%d/ingress/routes".formatted(
+            scheme, instance.getHost(), instance.getPort()));
+        log.debug("Subscribing to route events of {} at {}", instanceId, uri);
+        swap.update(webClient.get()
+            .uri(uri)
+            .accept(MediaType.TEXT_EVENT_STREAM)
+            .retrieve()
+            .bodyToFlux(EVENT_TYPE)
+            // Keep-alive comments carry no data
+            .mapNotNull(ServerSentEvent::data)
+            .subscribe(
+                event -> apply(instanceId, event),
+                error -> {
+                    log.debug("Route event stream of {} failed: {}", instanceId, error.toString());
+                    subscriptions.remove(instanceId, swap);
+                    routingTable.removeInstance(instanceId);
+                },
+                () -> subscriptions.remove(instanceId, swap)));
+    }
+
+    void apply(final String instanceId, final TunnelRouteEvent event) {
+        switch (event.type()) {
+            case RESET -> routingTable.removeInstance(instanceId);
+            case UP -> {
+                if (event.subdomain() != null) {
+                    routingTable.putOwner(event.subdomain(), instanceId);
+                }
+                if (event.customDomain() != null) {
+                    routingTable.putOwner(event.customDomain(), instanceId);
+                }
+            }
+            case DOWN -> {
+                if (event.subdomain() != null) {
+                    routingTable.removeOwner(event.subdomain(), instanceId);
+                }
+                if (event.customDomain() != null) {
+                    routingTable.removeOwner(event.customDomain(), instanceId);
+                }
+            }
+            default -> {
+            }
+        }
+    }
+}
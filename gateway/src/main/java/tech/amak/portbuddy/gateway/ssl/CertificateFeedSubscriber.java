@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.gateway.ssl;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import tech.amak.portbuddy.gateway.client.SslServiceClient;
+import tech.amak.portbuddy.gateway.config.AppProperties;
+import tech.amak.portbuddy.gateway.dto.CertificateFeedResponse;
+
+/**
+ * Keeps the certificates of {@link DynamicSslProvider} current by loading a snapshot of all active
+ * certificates from ssl-service at startup and then long-polling the changes after its version. It starts
+ * before the web server and waits a bounded time for the snapshot, so the first handshakes after a deploy
+ * find their certificates loaded rather than waiting for a lookup. Failures are retried with backoff; until
+ * the snapshot is loaded, handshakes fall back to looking their domain up in ssl-service. Nothing is loaded
+ * when SSL is disabled.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CertificateFeedSubscriber implements SmartLifecycle {
+
+    // The web server starts in phase DEFAULT_PHASE - 2048
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+    private static final Duration STARTUP_WAIT = Duration.ofSeconds(15);
+    private static final Duration POLL_WAIT = Duration.ofSeconds(30);
+    private static final Retry RETRY = Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+        .maxBackoff(Duration.ofSeconds(30))
+        .transientErrors(true);
+
+    private final SslServiceClient sslServiceClient;
+    private final DynamicSslProvider sslProvider;
+    private final AppProperties properties;
+    private final CountDownLatch snapshotLoaded = new CountDownLatch(1);
+    private volatile Disposable subscription;
+
+    @Override
+    public void start() {
+        if (!properties.ssl().enabled()) {
+            return;
+        }
+        subscription = sslServiceClient.getSnapshot()
+            .doOnNext(this::applySnapshot)
+            .doOnError(e -> log.warn("Failed to load certificate snapshot: {}", e.toString()))
+            .retryWhen(RETRY)
+            .flatMapMany(snapshot -> follow(snapshot.version()))
+            .subscribe();
+        try {
+            if (!snapshotLoaded.await(STARTUP_WAIT.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Certificate snapshot not loaded after {}; continuing with on-demand lookups",
+                    STARTUP_WAIT);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void stop() {
+        final var current = subscription;
+        if (current != null) {
+            current.dispose();
+            subscription = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return subscription != null;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void applySnapshot(final CertificateFeedResponse snapshot) {
+        snapshot.certificates().forEach(sslProvider::apply);
+        log.info("Loaded {} certificates at version {}", snapshot.certificates().size(), snapshot.version());
+        snapshotLoaded.countDown();
+    }
+
+    private Flux<CertificateFeedResponse> follow(final long version) {
+        final var cursor = new AtomicLong(version);
+        return Mono.defer(() -> sslServiceClient.getChanges(cursor.get(), POLL_WAIT))
+            .doOnNext(changes -> {
+                changes.certificates().forEach(sslProvider::apply);
+                cursor.set(changes.version());
+            })
+            .doOnError(e -> log.debug("Certificate change feed failed: {}", e.toString()))
+            .repeat()
+            .retryWhen(RETRY);
+    }
+}
@@ -14,36 +14,76 @@
 
 package tech.amak.portbuddy.gateway.ssl;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.SequenceInputStream;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import javax.net.ssl.SSLException;
 
 import org.springframework.stereotype.Service;
 
 import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.github.benmanes.caffeine.cache.RemovalCause;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.IllegalReferenceCountException;
 import io.netty.util.ReferenceCountUtil;
 import jakarta.annotation.PreDestroy;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 import tech.amak.portbuddy.gateway.client.SslServiceClient;
 import tech.amak.portbuddy.gateway.config.AppProperties;
+import tech.amak.portbuddy.gateway.dto.CertificateResponse;
 
+/**
+ * Provides the {@link SslContext} to present for an SNI hostname, through two caches. The first maps the domain
+ * a hostname is looked up under to its certificate; every subdomain of the base domain is looked up under the
+ * wildcard domain, so it is resolved without a call to ssl-service once the wildcard is known. The second maps a
+ * certificate to the context built from it, so all the hostnames of a certificate share one context. The cache
+ * holds one reference to each context and releases it on eviction; every context handed out is retained for its
+ * caller, which releases it once the handshake's engine, holding its own, is created. Certificates are pushed by
+ * {@link CertificateFeedSubscriber}; a domain it has not pushed is looked up in ssl-service on its first
+ * handshake. Contexts are built by {@link ServerSslContextFactory} with the configured TLS engine and get the
+ * session ticket keys shared by the gateways, so a client resumes its session on any of them. A host with both
+ * an ECDSA and an RSA certificate has a context for each, and {@link KeyTypeSniHandler} picks the ECDSA one for
+ * the clients that support it, as its handshakes are several times cheaper.
+ */
 @Service
 @Slf4j
 public class DynamicSslProvider {
 
+    private static final Duration CERTIFICATE_TTL = Duration.ofMinutes(30);
+    // Domains without a certificate are looked up again sooner, so a newly issued one is picked up quickly
+    private static final Duration MISSING_CERTIFICATE_TTL = Duration.ofMinutes(1);
+    // Pushed certificates are kept current by the feed; the TTL only bounds staleness if it stops
+    private static final Duration PUSHED_CERTIFICATE_TTL = Duration.ofHours(24);
+    // A context evicted between its lookup and its retain is built anew; only a burst of evictions needs more
+    private static final int MAX_RETAIN_ATTEMPTS = 3;
+
     private final AppProperties properties;
     private final SslServiceClient sslServiceClient;
-    private final AsyncCache<String, SslContext> sslContextCache;
+    private final ServerSslContextFactory contextFactory;
+    private volatile List<byte[]> ticketKeys = List.of();
+    private final AsyncCache<String, Optional<DomainCertificates>> certificateCache;
+    private final AsyncCache<CertificateId, SslContext> sslContextCache;
+    private final Timer loadTimer;
     private final String baseDomain;
     @Getter
     private final SslContext fallbackSslContext;
@@ -53,31 +93,41 @@ public class DynamicSslProvider {
      *
      * @param sslServiceClient an instance of SslServiceClient used to communicate with the SSL service
      * @param properties       an instance of AppProperties containing configuration values
+     * @param meterRegistry    the registry the caches and load times are published to
      */
-    public DynamicSslProvider(final SslServiceClient sslServiceClient, final AppProperties properties) {
+    public DynamicSslProvider(final SslServiceClient sslServiceClient,
+                              final AppProperties properties,
+                              final MeterRegistry meterRegistry) {
         this.sslServiceClient = sslServiceClient;
         this.properties = properties;
         this.baseDomain = properties.domain();
+        this.contextFactory = new ServerSslContextFactory(properties.ssl());
         this.fallbackSslContext = createFallbackSslContext();
+        this.certificateCache = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfter(Expiry.<String, Optional<DomainCertificates>>creating((domain, certificate) ->
+                certificate.isPresent() ? CERTIFICATE_TTL : MISSING_CERTIFICATE_TTL))
+            .recordStats()
+            .buildAsync();
         this.sslContextCache = Caffeine.newBuilder()
             .maximumSize(500)
-            .expireAfterWrite(Duration.ofMinutes(30))
-            .removalListener((String key, Object value, RemovalCause cause) -> {
-                if (value instanceof CompletableFuture<?> future) {
-                    future.whenComplete((context, ex) -> {
-                        releaseSslContext(context, key);
-                    });
-                } else {
-                    releaseSslContext(value, key);
-                }
-            })
+            .expireAfterWrite(CERTIFICATE_TTL)
+            .recordStats()
+            .removalListener((CertificateId key, SslContext value, RemovalCause cause) ->
+                releaseSslContext(value, key))
             .buildAsync();
+        this.loadTimer = Timer.builder("portbuddy.gateway.ssl.context.load")
+            .description("Time to build an SSL context from certificate files")
+            .tag("provider", contextFactory.getProvider() == SslProvider.JDK ? "jdk" : "openssl")
+            .register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, certificateCache, "ssl.certificates");
+        CaffeineCacheMetrics.monitor(meterRegistry, sslContextCache, "ssl.contexts");
     }
 
-    private void releaseSslContext(final Object context, final String key) {
-        if (context instanceof SslContext sslContext && sslContext != fallbackSslContext) {
+    private void releaseSslContext(final SslContext context, final CertificateId key) {
+        if (context != null) {
             log.debug("Evicted SSL context for {}. Releasing resources.", key);
-            ReferenceCountUtil.release(sslContext);
+            ReferenceCountUtil.release(context);
         }
     }
 
@@ -87,6 +137,7 @@ public class DynamicSslProvider {
     @PreDestroy
     public void shutdown() {
         log.info("Shutting down DynamicSslProvider. Releasing resources.");
+        certificateCache.synchronous().invalidateAll();
         sslContextCache.synchronous().invalidateAll();
         sslContextCache.synchronous().cleanUp();
         if (fallbackSslContext != null) {
@@ -101,7 +152,7 @@ public class DynamicSslProvider {
             if (fallback == null || !fallback.enabled()) {
                 log.info("Fallback certificate is disabled. Generating a temporary self-signed certificate.");
                 final var ssc = new SelfSignedCertificate();
-                return SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey()).build();
+                return build(SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey()));
             }
 
             log.info("Loading fallback certificate from: {} and {}",
@@ -109,13 +160,13 @@ public class DynamicSslProvider {
 
             try (var certStream = fallback.keyCertChainFile().getInputStream();
                  var keyStream = fallback.keyFile().getInputStream()) {
-                return SslContextBuilder.forServer(certStream, keyStream).build();
+                return build(SslContextBuilder.forServer(certStream, keyStream));
             }
         } catch (final Exception e) {
             log.error("Failed to create fallback SSL context", e);
             try {
                 final var ssc = new SelfSignedCertificate();
-                return SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey()).build();
+                return build(SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey()));
             } catch (final Exception ex) {
                 log.error("Failed to create even a temporary self-signed certificate", ex);
                 return null;
@@ -124,74 +175,212 @@ public class DynamicSslProvider {
     }
 
     /**
-     * Retrieves SslContext for a given hostname, utilizing Caffeine cache.
+     * Replaces the session ticket keys of all contexts, current and future. Tickets are issued with the first
+     * key and accepted with any. Only contexts of the OpenSSL provider can share their keys; the JDK provider
+     * keeps its own per context.
+     *
+     * @param keys the keys, 48 bytes each: name, HMAC key and AES key
+     */
+    public void setTicketKeys(final List<byte[]> keys) {
+        ticketKeys = List.copyOf(keys);
+        applyTicketKeys(fallbackSslContext);
+        sslContextCache.synchronous().asMap().values().forEach(this::applyTicketKeys);
+        log.debug("Applied {} session ticket keys", keys.size());
+    }
+
+    /**
+     * Applies a certificate pushed by ssl-service: an active one is served for its domain from now on and its
+     * context is built ahead of the first handshake, an inactive one is forgotten.
+     *
+     * @param certificate the certificate
+     */
+    public void apply(final CertificateResponse certificate) {
+        final var domain = certificate.domain().toLowerCase(Locale.ROOT);
+        final var certificates = DomainCertificates.of(certificate);
+        if (certificates.isEmpty()) {
+            log.debug("Certificate of {} is no longer active", domain);
+            certificateCache.synchronous().invalidate(domain);
+            return;
+        }
+        log.debug("Certificate of {} updated to version {}", domain, certificate.version());
+        certificateCache.synchronous().policy().expireVariably().ifPresentOrElse(
+            expiration -> expiration.put(domain, certificates, PUSHED_CERTIFICATE_TTL),
+            () -> certificateCache.synchronous().put(domain, certificates));
+        certificates.get().all().forEach(this::sslContext);
+    }
+
+    /**
+     * Retrieves SslContext for a given hostname, utilizing the certificate and context caches.
      *
      * @param hostname requested hostname
-     * @return Mono of SslContext or fallback if not found
+     * @return Mono of SslContext or fallback if not found, retained for the caller to release
      */
     public Mono<SslContext> getSslContext(final String hostname) {
+        return getSslContext(hostname, false);
+    }
+
+    /**
+     * Retrieves SslContext for a given hostname, presenting the ECDSA certificate of the host if it has one and
+     * the client supports it, and its RSA certificate otherwise.
+     *
+     * @param hostname       requested hostname
+     * @param ecdsaSupported whether the client accepts an ECDSA certificate
+     * @return Mono of SslContext or fallback if not found, retained for the caller to release
+     */
+    public Mono<SslContext> getSslContext(final String hostname, final boolean ecdsaSupported) {
         if (hostname == null) {
-            return Mono.just(fallbackSslContext);
+            return retainedFallback();
         }
 
-        final var normalizedHostname = hostname.toLowerCase();
-        return Mono.fromFuture(sslContextCache.get(normalizedHostname, (h, executor) -> loadSslContext(h).toFuture()));
+        final var lookupDomain = lookupDomain(hostname.toLowerCase(Locale.ROOT));
+        return Mono.fromFuture(certificateCache.get(lookupDomain,
+                (domain, executor) -> resolveCertificate(domain).toFuture()))
+            .flatMap(certificates -> certificates
+                .map(found -> retainedSslContext(found.select(ecdsaSupported)))
+                .orElseGet(this::retainedFallback));
     }
 
-    private Mono<SslContext> loadSslContext(final String hostname) {
-        var lookupDomain = hostname;
+    private Mono<SslContext> retainedSslContext(final CertificateId id) {
+        // A context the cache releases between the lookup and the retain is gone from the cache, so a retry
+        // builds it anew; a context that cannot be built is not cached and the next handshake tries again
+        return Mono.defer(() -> Mono.fromFuture(sslContext(id)))
+            .map(ReferenceCountUtil::retain)
+            .retryWhen(Retry.max(MAX_RETAIN_ATTEMPTS - 1).filter(IllegalReferenceCountException.class::isInstance))
+            .onErrorResume(e -> {
+                log.error("No SSL context for {}. Using fallback.", id, e);
+                return retainedFallback();
+            });
+    }
+
+    private Mono<SslContext> retainedFallback() {
+        return Mono.fromSupplier(() -> ReferenceCountUtil.retain(fallbackSslContext));
+    }
+
+    private CompletableFuture<SslContext> sslContext(final CertificateId id) {
+        return sslContextCache.get(id,
+            (key, executor) -> CompletableFuture.supplyAsync(() -> loadSslContext(key), executor));
+    }
+
+    private String lookupDomain(final String hostname) {
         if (hostname.equals(baseDomain) || hostname.endsWith("." + baseDomain)) {
-            lookupDomain = "*." + baseDomain;
+            return "*." + baseDomain;
         }
+        return hostname;
+    }
 
-        log.debug("Loading SSL context for hostname: {}, lookup domain: {}", hostname, lookupDomain);
-
-        final String finalLookupDomain = lookupDomain;
+    private Mono<Optional<DomainCertificates>> resolveCertificate(final String lookupDomain) {
+        log.debug("Resolving certificate for lookup domain: {}", lookupDomain);
         return sslServiceClient.getCertificate(lookupDomain)
-            .flatMap(cert -> {
-                if (cert == null || cert.certificatePath() == null || cert.privateKeyPath() == null) {
-                    log.warn("No certificate found for {}. Using fallback.", finalLookupDomain);
-                    return Mono.just(fallbackSslContext);
-                }
-
-                try {
-                    final SslContext context;
-                    if (cert.fullChainPath() != null) {
-                        context = SslContextBuilder.forServer(
-                            new File(cert.fullChainPath()),
-                            new File(cert.privateKeyPath())
-                        ).build();
-                    } else if (cert.chainPath() != null && !cert.chainPath().isBlank()) {
-                        log.debug("Full chain path missing, but chain path present. Concatenating for {}.",
-                            finalLookupDomain);
-                        try (final var certIs = new FileInputStream(cert.certificatePath());
-                             final var chainIs = new FileInputStream(cert.chainPath());
-                             final var fullChainIs = new SequenceInputStream(certIs, chainIs);
-                             final var keyIs = new FileInputStream(cert.privateKeyPath())) {
-                            context = SslContextBuilder.forServer(fullChainIs, keyIs).build();
-                        }
-                    } else {
-                        context = SslContextBuilder.forServer(
-                            new File(cert.certificatePath()),
-                            new File(cert.privateKeyPath())
-                        ).build();
-                    }
-                    ReferenceCountUtil.retain(context);
-                    return Mono.just(context);
-                } catch (final Exception e) {
-                    log.error("Failed to create SslContext for {}. Using fallback.", finalLookupDomain, e);
-                    return Mono.just(fallbackSslContext);
+            .map(cert -> {
+                final var certificates = DomainCertificates.of(cert);
+                if (certificates.isEmpty()) {
+                    log.warn("No certificate found for {}. Using fallback.", lookupDomain);
                 }
+                return certificates;
             })
-            .doOnDiscard(SslContext.class, ctx -> {
-                if (ctx != fallbackSslContext) {
-                    ReferenceCountUtil.release(ctx);
-                }
-            })
-            .defaultIfEmpty(fallbackSslContext)
+            .defaultIfEmpty(Optional.empty())
             .onErrorResume(e -> {
-                log.error("Error retrieving certificate for {}. Using fallback.", finalLookupDomain, e);
-                return Mono.just(fallbackSslContext);
+                log.error("Error retrieving certificate for {}. Using fallback.", lookupDomain, e);
+                return Mono.just(Optional.empty());
             });
     }
+
+    private SslContext loadSslContext(final CertificateId cert) {
+        log.debug("Loading SSL context for {}", cert);
+        final var start = System.nanoTime();
+        try (final var chain = pemStream(cert.certificateChainPem());
+             final var key = pemStream(cert.privateKeyPem())) {
+            return build(SslContextBuilder.forServer(chain, key));
+        } catch (final Exception e) {
+            // Fails the cache entry, which is then dropped rather than kept for the TTL
+            throw new CompletionException("Failed to create SslContext for " + cert, e);
+        } finally {
+            loadTimer.record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    private SslContext build(final SslContextBuilder builder) throws SSLException {
+        final var context = contextFactory.build(builder);
+        applyTicketKeys(context);
+        return context;
+    }
+
+    private void applyTicketKeys(final SslContext context) {
+        final var keys = ticketKeys;
+        if (keys.isEmpty() || context == null
+            || !(context.sessionContext() instanceof OpenSslSessionContext sessionContext)) {
+            return;
+        }
+        sessionContext.setTicketKeys(keys.stream()
+            .map(key -> new OpenSslSessionTicketKey(
+                Arrays.copyOfRange(key, 0, OpenSslSessionTicketKey.NAME_SIZE),
+                Arrays.copyOfRange(key, OpenSslSessionTicketKey.NAME_SIZE,
+                    OpenSslSessionTicketKey.NAME_SIZE + OpenSslSessionTicketKey.HMAC_KEY_SIZE),
+                Arrays.copyOfRange(key, OpenSslSessionTicketKey.NAME_SIZE + OpenSslSessionTicketKey.HMAC_KEY_SIZE,
+                    OpenSslSessionTicketKey.TICKET_KEY_SIZE)))
+            .toArray(OpenSslSessionTicketKey[]::new));
+    }
+
+    private static ByteArrayInputStream pemStream(final String pem) {
+        return new ByteArrayInputStream(pem.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * The certificates of a domain: an RSA one, served to every client, and optionally an ECDSA one.
+     */
+    private record DomainCertificates(
+        CertificateId rsa,
+        CertificateId ecdsa
+    ) {
+
+        private static Optional<DomainCertificates> of(final CertificateResponse response) {
+            if (!response.active() || response.certificateChainPem() == null || response.privateKeyPem() == null) {
+                return Optional.empty();
+            }
+            final var rsa = new CertificateId(response.domain(), response.certificateChainPem(),
+                response.privateKeyPem());
+            final var ecdsa = response.ecdsaCertificateChainPem() == null || response.ecdsaPrivateKeyPem() == null
+                ? null
+                : new CertificateId(response.domain(), response.ecdsaCertificateChainPem(),
+                    response.ecdsaPrivateKeyPem());
+            return Optional.of(new DomainCertificates(rsa, ecdsa));
+        }
+
+        private CertificateId select(final boolean ecdsaSupported) {
+            return ecdsaSupported && ecdsa != null ? ecdsa : rsa;
+        }
+
+        private List<CertificateId> all() {
+            return ecdsa == null ? List.of(rsa) : List.of(ecdsa, rsa);
+        }
+    }
+
+    /**
+     * Identifies a certificate by its material, whatever domain it was looked up under. Comparing the PEM
+     * strings is cheap as they are shared by every lookup of the certificate and cache their hash.
+     */
+    private record CertificateId(
+        String domain,
+        String certificateChainPem,
+        String privateKeyPem
+    ) {
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof CertificateId id
+                   && certificateChainPem.equals(id.certificateChainPem)
+                   && privateKeyPem.equals(id.privateKeyPem);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * certificateChainPem.hashCode() + privateKeyPem.hashCode();
+        }
+
+        // Never logs the key
+        @Override
+        public String toString() {
+            return "certificate of " + domain;
+        }
+    }
 }
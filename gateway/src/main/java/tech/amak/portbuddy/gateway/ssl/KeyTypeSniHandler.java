@@ -0,0 +1,135 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.gateway.ssl;
+
+import java.util.Set;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.ssl.SniHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+
+/**
+ * {@link SniHandler} that also reads from the ClientHello whether the client accepts an ECDSA certificate, so
+ * a host with both an ECDSA and an RSA certificate is served the cheaper ECDSA handshake whenever possible.
+ * Choosing here rather than in the TLS engine works alike for the JDK and the OpenSSL engine, each context
+ * holding a single key.
+ */
+public class KeyTypeSniHandler extends SniHandler {
+
+    private static final int SIGNATURE_ALGORITHMS_EXTENSION = 0x000d;
+    private static final int ECDSA_SECP256R1_SHA256 = 0x0403;
+    private static final int TLS13_CIPHER_SUITES = 0x13;
+    // ECDHE_ECDSA cipher suites of TLS 1.2 with AES-CBC, AES-GCM, AES-CCM and ChaCha20-Poly1305
+    private static final Set<Integer> ECDHE_ECDSA_CIPHER_SUITES = Set.of(
+        0xc009, 0xc00a, 0xc023, 0xc024, 0xc02b, 0xc02c, 0xc0ac, 0xc0ad, 0xc0ae, 0xc0af, 0xcca9);
+
+    private final SniSslContextMapping mapping;
+    private boolean ecdsaSupported;
+
+    /**
+     * Creates the handler of a new connection.
+     *
+     * @param mapping resolves the context of a hostname
+     */
+    public KeyTypeSniHandler(final SniSslContextMapping mapping) {
+        super(mapping);
+        this.mapping = mapping;
+    }
+
+    @Override
+    protected Future<SslContext> lookup(final ChannelHandlerContext ctx, final ByteBuf clientHello)
+        throws Exception {
+        ecdsaSupported = clientHello != null && supportsEcdsa(clientHello);
+        return super.lookup(ctx, clientHello);
+    }
+
+    @Override
+    protected Future<SslContext> lookup(final ChannelHandlerContext ctx, final String hostname) {
+        return mapping.map(hostname, ecdsaSupported, ctx.executor().newPromise());
+    }
+
+    /**
+     * Releases the reference to the context the lookup took once the engine, holding its own, is created, so the
+     * context stays usable if the cache evicts it meanwhile.
+     */
+    @Override
+    protected void replaceHandler(final ChannelHandlerContext ctx, final String hostname,
+                                  final SslContext sslContext) throws Exception {
+        try {
+            super.replaceHandler(ctx, hostname, sslContext);
+        } finally {
+            ReferenceCountUtil.release(sslContext);
+        }
+    }
+
+    /**
+     * Tells whether a client accepts an ECDSA P-256 certificate: its ClientHello offers the
+     * ecdsa_secp256r1_sha256 signature algorithm, and TLS 1.3 or an ECDHE_ECDSA cipher suite of TLS 1.2.
+     * A malformed message is answered with false, leaving the handshake to the RSA certificate.
+     *
+     * @param clientHello the ClientHello message, without the handshake header, as passed to {@link #lookup}
+     * @return whether an ECDSA certificate can be presented
+     */
+    static boolean supportsEcdsa(final ByteBuf clientHello) {
+        try {
+            final var end = clientHello.writerIndex();
+            // Skip client_version and random
+            var offset = clientHello.readerIndex() + 34;
+            offset += 1 + clientHello.getUnsignedByte(offset);
+
+            final var cipherSuitesEnd = offset + 2 + clientHello.getUnsignedShort(offset);
+            var ecdsaCipherSuite = false;
+            for (offset += 2; offset + 2 <= cipherSuitesEnd && !ecdsaCipherSuite; offset += 2) {
+                final var cipherSuite = clientHello.getUnsignedShort(offset);
+                ecdsaCipherSuite = cipherSuite >> 8 == TLS13_CIPHER_SUITES
+                                   || ECDHE_ECDSA_CIPHER_SUITES.contains(cipherSuite);
+            }
+            if (!ecdsaCipherSuite) {
+                return false;
+            }
+            offset = cipherSuitesEnd;
+            offset += 1 + clientHello.getUnsignedByte(offset);
+
+            if (offset + 2 > end) {
+                // No extensions, so only the default signature algorithms, which are not P-256 specific
+                return false;
+            }
+            final var extensionsEnd = Math.min(end, offset + 2 + clientHello.getUnsignedShort(offset));
+            offset += 2;
+            while (offset + 4 <= extensionsEnd) {
+                final var type = clientHello.getUnsignedShort(offset);
+                final var length = clientHello.getUnsignedShort(offset + 2);
+                offset += 4;
+                if (type == SIGNATURE_ALGORITHMS_EXTENSION) {
+                    final var algorithmsEnd = Math.min(offset + length,
+                        offset + 2 + clientHello.getUnsignedShort(offset));
+                    for (var algorithm = offset + 2; algorithm + 2 <= algorithmsEnd; algorithm += 2) {
+                        if (clientHello.getUnsignedShort(algorithm) == ECDSA_SECP256R1_SHA256) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                offset += length;
+            }
+            return false;
+        } catch (final IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.gateway.ssl;
+
+import java.util.List;
+import javax.net.ssl.SSLException;
+
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import tech.amak.portbuddy.gateway.config.AppProperties;
+
+/**
+ * Builds the server contexts of the gateway with the configured TLS engine, cipher suites, ALPN protocols and
+ * session cache. The OpenSSL engine (BoringSSL through netty-tcnative) is only used when asked for and its
+ * native library loads on this platform; otherwise contexts are built with the JDK engine.
+ */
+@Slf4j
+final class ServerSslContextFactory {
+
+    @Getter
+    private final SslProvider provider;
+    private final List<String> ciphers;
+    private final ApplicationProtocolConfig applicationProtocols;
+    private final AppProperties.Session session;
+
+    ServerSslContextFactory(final AppProperties.Ssl properties) {
+        this.provider = resolveProvider(properties.provider());
+        this.ciphers = properties.ciphers() == null ? List.of() : List.copyOf(properties.ciphers());
+        this.applicationProtocols = properties.alpn() == null || properties.alpn().isEmpty()
+            ? ApplicationProtocolConfig.DISABLED
+            : new ApplicationProtocolConfig(
+                ApplicationProtocolConfig.Protocol.ALPN,
+                // The only failure behaviours the OpenSSL engine supports
+                ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                properties.alpn());
+        this.session = properties.session();
+    }
+
+    /**
+     * Applies the engine and settings of the gateway to a server context builder and builds the context.
+     * Cipher suites the engine does not support are left out.
+     *
+     * @param builder a builder created by {@link SslContextBuilder#forServer}
+     * @return the context, to be released by the caller
+     * @throws SSLException if the certificate or key cannot be used
+     */
+    SslContext build(final SslContextBuilder builder) throws SSLException {
+        builder.sslProvider(provider)
+            .applicationProtocolConfig(applicationProtocols);
+        if (!ciphers.isEmpty()) {
+            builder.ciphers(ciphers, SupportedCipherSuiteFilter.INSTANCE);
+        }
+        if (session != null) {
+            builder.sessionCacheSize(session.cacheSize());
+            if (session.timeout() != null) {
+                builder.sessionTimeout(session.timeout().toSeconds());
+            }
+        }
+        return builder.build();
+    }
+
+    private static SslProvider resolveProvider(final AppProperties.TlsProvider requested) {
+        if (requested != AppProperties.TlsProvider.OPENSSL) {
+            log.info("Using the JDK TLS engine");
+            return SslProvider.JDK;
+        }
+        if (!OpenSsl.isAvailable()) {
+            log.warn("OpenSSL TLS engine is not available on this platform. Falling back to the JDK engine.",
+                OpenSsl.unavailabilityCause());
+            return SslProvider.JDK;
+        }
+        log.info("Using the OpenSSL TLS engine: {}", OpenSsl.versionString());
+        // Contexts are released explicitly on eviction, so they need no finalizer
+        return SslProvider.OPENSSL_REFCNT;
+    }
+}
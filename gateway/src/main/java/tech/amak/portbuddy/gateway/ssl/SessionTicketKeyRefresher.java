@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.gateway.ssl;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import tech.amak.portbuddy.gateway.client.SslServiceClient;
+import tech.amak.portbuddy.gateway.config.AppProperties;
+import tech.amak.portbuddy.gateway.dto.SessionTicketKeysResponse;
+
+/**
+ * Periodically fetches the TLS session ticket keys that ssl-service rotates for all gateways and hands them to
+ * {@link DynamicSslProvider}. Keys are only replaced when the ring changed; a failed fetch keeps the current
+ * ones.
+ */
+@Slf4j
+@Component
+public class SessionTicketKeyRefresher {
+
+    private static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMinutes(1);
+
+    private final SslServiceClient sslServiceClient;
+    private final DynamicSslProvider sslProvider;
+    private final boolean enabled;
+    private final Duration refreshInterval;
+    private volatile List<String> current = List.of();
+    private volatile Disposable refreshTask;
+
+    /**
+     * Creates the refresher.
+     *
+     * @param sslServiceClient client of ssl-service
+     * @param sslProvider      provider whose contexts get the keys
+     * @param properties       application properties holding the refresh interval
+     */
+    public SessionTicketKeyRefresher(final SslServiceClient sslServiceClient,
+                                     final DynamicSslProvider sslProvider,
+                                     final AppProperties properties) {
+        this.sslServiceClient = sslServiceClient;
+        this.sslProvider = sslProvider;
+        this.enabled = properties.ssl().enabled();
+        final var session = properties.ssl().session();
+        this.refreshInterval = session != null && session.ticketKeyRefreshInterval() != null
+            ? session.ticketKeyRefreshInterval()
+            : DEFAULT_REFRESH_INTERVAL;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        refreshTask = Flux.interval(Duration.ZERO, refreshInterval)
+            .onBackpressureDrop()
+            .concatMap(tick -> sslServiceClient.getSessionTicketKeys()
+                .onErrorResume(e -> {
+                    log.debug("Failed to fetch session ticket keys: {}", e.toString());
+                    return Mono.empty();
+                }))
+            .subscribe(this::apply);
+    }
+
+    @PreDestroy
+    void stop() {
+        final var task = refreshTask;
+        if (task != null) {
+            task.dispose();
+        }
+    }
+
+    void apply(final SessionTicketKeysResponse response) {
+        final var keys = response.keys() == null ? List.<String>of() : response.keys();
+        if (keys.isEmpty() || keys.equals(current)) {
+            return;
+        }
+        final var decoder = Base64.getDecoder();
+        final var decoded = keys.stream()
+            .map(decoder::decode)
+            .filter(key -> key.length == OpenSslSessionTicketKey.TICKET_KEY_SIZE)
+            .toList();
+        if (decoded.size() != keys.size()) {
+            log.warn("Ignoring session ticket keys of unexpected size");
+            return;
+        }
+        sslProvider.setTicketKeys(decoded);
+        current = keys;
+        log.info("Session ticket keys updated ({} keys)", keys.size());
+    }
+}
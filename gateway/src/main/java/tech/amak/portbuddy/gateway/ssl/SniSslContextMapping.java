@@ -18,6 +18,7 @@ import org.springframework.stereotype.Component;
 
 import io.netty.handler.ssl.SslContext;
 import io.netty.util.AsyncMapping;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.Promise;
 import lombok.RequiredArgsConstructor;
@@ -32,12 +33,30 @@ public class SniSslContextMapping implements AsyncMapping<String, SslContext> {
 
     @Override
     public Future<SslContext> map(final String hostname, final Promise<SslContext> promise) {
-        log.debug("SNI lookup for hostname: {}", hostname);
+        return map(hostname, false, promise);
+    }
+
+    /**
+     * Resolves the context of a hostname, with its ECDSA certificate if it has one and the client supports it.
+     *
+     * @param hostname       the SNI hostname, null if the client sent none
+     * @param ecdsaSupported whether the client accepts an ECDSA certificate
+     * @param promise        completed with the context, retained for the caller to release
+     * @return the promise
+     */
+    public Future<SslContext> map(final String hostname, final boolean ecdsaSupported,
+                                  final Promise<SslContext> promise) {
+        log.debug("SNI lookup for hostname: {} (ECDSA: {})", hostname, ecdsaSupported);
         final var normalizedHostname = hostname != null ? hostname.toLowerCase() : null;
-        sslProvider.getSslContext(normalizedHostname)
+        sslProvider.getSslContext(normalizedHostname, ecdsaSupported)
             .subscribe(
-                promise::setSuccess,
-                promise::setFailure
+                context -> {
+                    if (!promise.trySuccess(context)) {
+                        // The handshake was given up meanwhile
+                        ReferenceCountUtil.release(context);
+                    }
+                },
+                promise::tryFailure
             );
         return promise;
     }
@@ -0,0 +1,152 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Connects to the tunnel WebSocket routes of the gateway, with a stub in place of the service behind them.
+ * The gateway completes the client's handshake before it connects upstream, so headers of the upstream
+ * handshake response never reach the client: features a service accepts have to be announced in-band.
+ */
+@SpringBootTest(
+    classes = ApiGatewayApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "app.ssl.enabled=false",
+        "eureka.client.enabled=false"
+    }
+)
+class TunnelWebSocketRouteTest {
+
+    private static final String FEATURES_HEADER = "X-PortBuddy-Features";
+    private static final String EXPOSED = "{\"kind\":\"WS\",\"wsType\":\"EXPOSED\",\"features\":\"stream-id\"}";
+    private static final String FEATURES = "{\"type\":\"FEATURES\",\"features\":\"binary-codec\"}";
+
+    private static final AtomicReference<String> advertised = new AtomicReference<>();
+    private static DisposableServer upstream;
+
+    @Value("${local.server.port}")
+    private int port;
+
+    @MockitoBean
+    private ReactiveJwtDecoder jwtDecoder;
+
+    @DynamicPropertySource
+    static void upstream(final DynamicPropertyRegistry registry) {
+        upstream = HttpServer.create()
+            .port(0)
+            .route(routes -> routes
+                .get("/api/net-tunnel/{tunnelId}", (request, response) -> {
+                    advertised.set(request.requestHeaders().get(FEATURES_HEADER));
+                    return response.header(FEATURES_HEADER, "stream-id")
+                        .sendWebsocket((in, out) -> out.sendString(Mono.just(EXPOSED))
+                            .then(in.receive().then()));
+                })
+                .get("/api/http-tunnel/{tunnelId}", (request, response) -> {
+                    advertised.set(request.requestHeaders().get(FEATURES_HEADER));
+                    return response.header(FEATURES_HEADER, "binary-codec")
+                        .sendWebsocket((in, out) -> out.sendString(Mono.just(FEATURES))
+                            .then(in.receive().then()));
+                }))
+            .bindNow();
+        registry.add("spring.cloud.discovery.client.simple.instances.net-proxy[0].uri",
+            () -> "http://localhost:" + upstream.port());
+        registry.add("spring.cloud.discovery.client.simple.instances.port-buddy-server[0].uri",
+            () -> "http://localhost:" + upstream.port());
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.disposeNow();
+    }
+
+    @BeforeEach
+    void setUp() {
+        when(jwtDecoder.decode(anyString())).thenReturn(Mono.just(Jwt.withTokenValue("token")
+            .header("alg", "none")
+            .subject("user")
+            .build()));
+    }
+
+    @Test
+    void shouldAnnounceNetTunnelFeaturesInBandThroughTheGateway() {
+        // Given
+        final var responseFeatures = new AtomicReference<String>();
+
+        // When
+        final var first = connect("/api/net-tunnel/" + UUID.randomUUID() + "?type=tcp&port=10000",
+            "stream-id,udp-batch", responseFeatures);
+
+        // Then: the advertisement reaches net-proxy, but only the in-band EXPOSED makes it back
+        assertEquals("stream-id,udp-batch", advertised.get());
+        assertNull(responseFeatures.get());
+        assertEquals(EXPOSED, first);
+    }
+
+    @Test
+    void shouldAnnounceHttpTunnelFeaturesInBandThroughTheGateway() {
+        // Given
+        final var responseFeatures = new AtomicReference<String>();
+
+        // When
+        final var first = connect("/api/http-tunnel/" + UUID.randomUUID(), "binary-codec,deflate",
+            responseFeatures);
+
+        // Then: the advertisement reaches the server, but only the in-band FEATURES makes it back
+        assertEquals("binary-codec,deflate", advertised.get());
+        assertNull(responseFeatures.get());
+        assertEquals(FEATURES, first);
+    }
+
+    private String connect(final String path, final String features,
+                           final AtomicReference<String> responseFeatures) {
+        return HttpClient.create()
+            .headers(headers -> headers
+                .set(HttpHeaders.AUTHORIZATION, "Bearer token")
+                .set(FEATURES_HEADER, features))
+            .websocket()
+            .uri("ws://localhost:" + port + path)
+            .handle((in, out) -> {
+                responseFeatures.set(in.headers().get(FEATURES_HEADER));
+                return in.receive().asString().take(1);
+            })
+            .blockFirst(Duration.ofSeconds(10));
+    }
+}
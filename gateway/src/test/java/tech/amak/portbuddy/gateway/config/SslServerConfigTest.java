@@ -15,7 +15,9 @@
 package tech.amak.portbuddy.gateway.config;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -55,7 +57,7 @@ class SslServerConfigTest {
         when(sslProperties.enabled()).thenReturn(true);
         when(sslProvider.getFallbackSslContext()).thenReturn(fallbackContext);
         // Return fallback even for dynamic to avoid complex setup, we just want to see if it's called
-        when(sslProvider.getSslContext(anyString())).thenReturn(Mono.just(fallbackContext));
+        when(sslProvider.getSslContext(anyString(), anyBoolean())).thenReturn(Mono.just(fallbackContext));
         when(httpHandler.handle(any(), any())).thenReturn(Mono.empty());
 
         final var sslServerConfig = new SslServerConfig(properties, sniMapping, httpHandler);
@@ -94,6 +96,6 @@ class SslServerConfigTest {
         }
 
         // Then
-        verify(sslProvider, atLeastOnce()).getSslContext("test.portbuddy.dev");
+        verify(sslProvider, atLeastOnce()).getSslContext(eq("test.portbuddy.dev"), anyBoolean());
     }
 }
@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.gateway.loadbalancer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import tech.amak.portbuddy.gateway.config.AppProperties;
+import tech.amak.portbuddy.gateway.dto.TunnelRouteEvent;
+
+class PortBuddySubdomainLoadBalancerTest {
+
+    // Unroutable addresses: any probe fails, so the chosen instance must come from the routing table
+    private final ServiceInstance first = new DefaultServiceInstance("server-1", "port-buddy-server",
+        "192.0.2.1", 8080, false);
+    private final ServiceInstance second = new DefaultServiceInstance("server-2", "port-buddy-server",
+        "192.0.2.2", 8080, false);
+
+    private SubdomainRoutingTable routingTable;
+    private TunnelRouteSubscriber subscriber;
+    private PortBuddySubdomainLoadBalancer loadBalancer;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        final var properties = mock(AppProperties.class);
+        when(properties.routing()).thenReturn(
+            new AppProperties.Routing(Duration.ofMinutes(5), Duration.ofMinutes(1), Duration.ofSeconds(5)));
+        routingTable = new SubdomainRoutingTable(properties);
+        subscriber = new TunnelRouteSubscriber(null, routingTable, properties);
+
+        final var supplier = mock(ServiceInstanceListSupplier.class);
+        when(supplier.get()).thenReturn(Flux.just(List.of(first, second)));
+        final ObjectProvider<ServiceInstanceListSupplier> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(supplier);
+        meterRegistry = new SimpleMeterRegistry();
+        loadBalancer = new PortBuddySubdomainLoadBalancer(provider, "port-buddy-server", routingTable,
+            new RoutingMetrics(meterRegistry, routingTable));
+    }
+
+    @Test
+    void shouldRouteToOwnerPushedByServer() {
+        subscriber.apply("server-2", new TunnelRouteEvent(TunnelRouteEvent.Type.UP, "abc", "app.example.com"));
+
+        assertEquals(second, choose("abc.portbuddy.dev"));
+        assertEquals(second, choose("app.example.com"));
+        assertEquals(2, choices("table"));
+    }
+
+    @Test
+    void shouldDropRouteOnDownEventOfOwnerOnly() {
+        subscriber.apply("server-2", new TunnelRouteEvent(TunnelRouteEvent.Type.UP, "abc", null));
+        subscriber.apply("server-1", new TunnelRouteEvent(TunnelRouteEvent.Type.DOWN, "abc", null));
+        assertEquals("server-2", routingTable.lookup("abc").instanceId());
+
+        subscriber.apply("server-2", new TunnelRouteEvent(TunnelRouteEvent.Type.DOWN, "abc", null));
+        assertNull(routingTable.lookup("abc"));
+    }
+
+    @Test
+    void shouldCacheMissingOwnerAfterProbe() {
+        assertEquals(first, choose("unknown.portbuddy.dev"));
+
+        final var route = routingTable.lookup("unknown");
+        assertTrue(route.isMissing());
+        assertEquals(1, meterRegistry.get("portbuddy.gateway.route.probes").timer().count());
+
+        assertEquals(first, choose("unknown.portbuddy.dev"));
+        assertEquals(2, choices("fallback"));
+        assertEquals(1, meterRegistry.get("portbuddy.gateway.route.probes").timer().count());
+    }
+
+    private double choices(final String source) {
+        return meterRegistry.get("portbuddy.gateway.route.choices").tag("source", source).counter().count();
+    }
+
+    private ServiceInstance choose(final String host) {
+        final var headers = new HttpHeaders();
+        headers.set(HttpHeaders.HOST, host);
+        final var requestData = new RequestData(HttpMethod.GET, URI.create("http://" + host + "/"),
+            headers, new HttpHeaders(), null);
+        final var response = loadBalancer.choose(new DefaultRequest<>(new RequestDataContext(requestData)))
+            .block(Duration.ofSeconds(5));
+        return response.getServer();
+    }
+}
@@ -14,12 +14,23 @@
 
 package tech.amak.portbuddy.gateway.ssl;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -28,8 +39,14 @@ import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.JdkSslContext;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.ReferenceCountedOpenSslContext;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.ReferenceCountUtil;
 import reactor.core.publisher.Mono;
 import tech.amak.portbuddy.gateway.client.SslServiceClient;
 import tech.amak.portbuddy.gateway.config.AppProperties;
@@ -50,6 +67,7 @@ class DynamicSslProviderTest {
     @TempDir
     File tempDir;
 
+    private SimpleMeterRegistry meterRegistry;
     private DynamicSslProvider sslProvider;
 
     @BeforeEach
@@ -57,7 +75,8 @@ class DynamicSslProviderTest {
         when(properties.domain()).thenReturn("portbuddy.dev");
         when(properties.ssl()).thenReturn(sslProperties);
         when(sslProperties.fallback()).thenReturn(null);
-        sslProvider = new DynamicSslProvider(sslServiceClient, properties);
+        meterRegistry = new SimpleMeterRegistry();
+        sslProvider = new DynamicSslProvider(sslServiceClient, properties, meterRegistry);
     }
 
     @Test
@@ -82,17 +101,11 @@ class DynamicSslProviderTest {
     }
 
     @Test
-    void shouldLoadSslContextFromFile() throws Exception {
+    void shouldLoadSslContextFromPem() throws Exception {
         // Given
         final SelfSignedCertificate ssc = new SelfSignedCertificate();
         final String hostname = "test.portbuddy.dev";
-        final CertificateResponse response = new CertificateResponse(
-            hostname,
-            ssc.certificate().getAbsolutePath(),
-            ssc.privateKey().getAbsolutePath(),
-            null,
-            null
-        );
+        final CertificateResponse response = response("*.portbuddy.dev", ssc);
         when(sslServiceClient.getCertificate("*.portbuddy.dev")).thenReturn(Mono.just(response));
 
         // When
@@ -102,4 +115,224 @@ class DynamicSslProviderTest {
         assertNotNull(context);
         assertTrue(context.isServer());
     }
+
+    @Test
+    void shouldShareOneContextAcrossSubdomainsWithOneLookup() throws Exception {
+        // Given
+        final SelfSignedCertificate ssc = new SelfSignedCertificate();
+        when(sslServiceClient.getCertificate("*.portbuddy.dev"))
+            .thenReturn(Mono.just(response("*.portbuddy.dev", ssc)));
+
+        // When
+        final SslContext first = sslProvider.getSslContext("a.portbuddy.dev").block();
+        final SslContext second = sslProvider.getSslContext("B.portbuddy.dev").block();
+        final SslContext apex = sslProvider.getSslContext("portbuddy.dev").block();
+
+        // Then
+        assertSame(first, second);
+        assertSame(first, apex);
+        assertNotSame(sslProvider.getFallbackSslContext(), first);
+        verify(sslServiceClient, times(1)).getCertificate("*.portbuddy.dev");
+        assertEquals(1, meterRegistry.get("portbuddy.gateway.ssl.context.load").timer().count());
+    }
+
+    @Test
+    void shouldShareOneContextAcrossDomainsOfTheSameCertificate() throws Exception {
+        // Given
+        final SelfSignedCertificate ssc = new SelfSignedCertificate();
+        when(sslServiceClient.getCertificate("app.example.com"))
+            .thenReturn(Mono.just(response("app.example.com", ssc)));
+        when(sslServiceClient.getCertificate("www.example.com"))
+            .thenReturn(Mono.just(response("www.example.com", ssc)));
+
+        // When
+        final SslContext first = sslProvider.getSslContext("app.example.com").block();
+        final SslContext second = sslProvider.getSslContext("www.example.com").block();
+
+        // Then
+        assertSame(first, second);
+        assertEquals(1, meterRegistry.get("portbuddy.gateway.ssl.context.load").timer().count());
+    }
+
+    @Test
+    void shouldCacheMissingCertificate() {
+        // Given
+        when(sslServiceClient.getCertificate("unknown.com")).thenReturn(Mono.empty());
+
+        // When
+        final SslContext first = sslProvider.getSslContext("unknown.com").block();
+        final SslContext second = sslProvider.getSslContext("unknown.com").block();
+
+        // Then
+        assertSame(sslProvider.getFallbackSslContext(), first);
+        assertSame(sslProvider.getFallbackSslContext(), second);
+        verify(sslServiceClient, times(1)).getCertificate("unknown.com");
+    }
+
+    @Test
+    void shouldServePushedCertificateWithoutLookup() throws Exception {
+        // Given
+        final SelfSignedCertificate ssc = new SelfSignedCertificate();
+        sslProvider.apply(response("*.portbuddy.dev", ssc));
+
+        // When
+        final SslContext context = sslProvider.getSslContext("app.portbuddy.dev").block();
+
+        // Then
+        assertNotSame(sslProvider.getFallbackSslContext(), context);
+        verifyNoInteractions(sslServiceClient);
+    }
+
+    @Test
+    void shouldLookUpAgainAfterCertificateIsDeactivated() throws Exception {
+        // Given
+        final SelfSignedCertificate ssc = new SelfSignedCertificate();
+        sslProvider.apply(response("custom.example.com", ssc));
+        sslProvider.apply(new CertificateResponse("custom.example.com", 2, false, null, null, null, null));
+        when(sslServiceClient.getCertificate("custom.example.com")).thenReturn(Mono.empty());
+
+        // When
+        final SslContext context = sslProvider.getSslContext("custom.example.com").block();
+
+        // Then
+        assertSame(sslProvider.getFallbackSslContext(), context);
+        verify(sslServiceClient, times(1)).getCertificate("custom.example.com");
+    }
+
+    @Test
+    void shouldNotCacheContextThatFailsToLoad() {
+        // Given
+        when(sslServiceClient.getCertificate("custom.example.com")).thenReturn(Mono.just(
+            new CertificateResponse("custom.example.com", 1, true, "not a certificate", "not a key", null, null)));
+
+        // When
+        final SslContext first = sslProvider.getSslContext("custom.example.com").block();
+        final SslContext second = sslProvider.getSslContext("custom.example.com").block();
+
+        // Then: the certificate is cached, but the context is built again for the second handshake
+        assertSame(sslProvider.getFallbackSslContext(), first);
+        assertSame(sslProvider.getFallbackSslContext(), second);
+        verify(sslServiceClient, times(1)).getCertificate("custom.example.com");
+        assertEquals(2, meterRegistry.get("portbuddy.gateway.ssl.context.load").timer().count());
+    }
+
+    @Test
+    void shouldRetainContextForTheHandshakeAcrossEviction() throws Exception {
+        // Given
+        assumeTrue(OpenSsl.isAvailable());
+        when(sslProperties.provider()).thenReturn(AppProperties.TlsProvider.OPENSSL);
+        final var provider = new DynamicSslProvider(sslServiceClient, properties, new SimpleMeterRegistry());
+        provider.apply(response("*.portbuddy.dev", new SelfSignedCertificate()));
+        final var context = (ReferenceCountedOpenSslContext) provider.getSslContext("app.portbuddy.dev").block();
+
+        // When: the cache drops its reference while the handshake still holds one
+        provider.shutdown();
+
+        // Then
+        assertNotNull(context);
+        assertEquals(1, context.refCnt());
+        ReferenceCountUtil.release(context.newEngine(ByteBufAllocator.DEFAULT));
+        assertTrue(context.release());
+    }
+
+    @Test
+    void shouldApplySessionSettingsToContexts() throws Exception {
+        // Given
+        when(sslProperties.session()).thenReturn(
+            new AppProperties.Session(1234, Duration.ofHours(2), Duration.ofMinutes(1)));
+        final var provider = new DynamicSslProvider(sslServiceClient, properties, new SimpleMeterRegistry());
+        final SelfSignedCertificate ssc = new SelfSignedCertificate();
+        provider.apply(response("*.portbuddy.dev", ssc));
+
+        // When
+        final SslContext context = provider.getSslContext("app.portbuddy.dev").block();
+
+        // Then
+        assertNotNull(context);
+        assertEquals(1234, context.sessionCacheSize());
+        assertEquals(7200, context.sessionTimeout());
+        assertEquals(7200, provider.getFallbackSslContext().sessionTimeout());
+    }
+
+    @Test
+    void shouldBuildContextsWithConfiguredEngineCiphersAndAlpn() throws Exception {
+        // Given
+        when(sslProperties.provider()).thenReturn(AppProperties.TlsProvider.OPENSSL);
+        when(sslProperties.ciphers()).thenReturn(List.of(
+            "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256", "TLS_NOT_A_REAL_CIPHER_SUITE"));
+        when(sslProperties.alpn()).thenReturn(List.of("http/1.1"));
+        final var provider = new DynamicSslProvider(sslServiceClient, properties, new SimpleMeterRegistry());
+        final SelfSignedCertificate ssc = new SelfSignedCertificate();
+        provider.apply(response("*.portbuddy.dev", ssc));
+
+        // When
+        final SslContext context = provider.getSslContext("app.portbuddy.dev").block();
+        provider.setTicketKeys(List.of(new byte[48]));
+
+        // Then
+        assertNotNull(context);
+        // Falls back to the JDK engine where netty-tcnative cannot be loaded
+        final Class<? extends SslContext> engine = OpenSsl.isAvailable()
+            ? ReferenceCountedOpenSslContext.class
+            : JdkSslContext.class;
+        assertInstanceOf(engine, context);
+        assertEquals(List.of("TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"), context.cipherSuites());
+        assertEquals(List.of("http/1.1"), context.applicationProtocolNegotiator().protocols());
+    }
+
+    @Test
+    void shouldSelectEcdsaContextOnlyForClientsSupportingIt() throws Exception {
+        // Given
+        sslProvider.apply(dualResponse("*.portbuddy.dev", new SelfSignedCertificate("portbuddy.dev"),
+            new SelfSignedCertificate("portbuddy.dev", "EC", 256)));
+
+        // When
+        final SslContext ecdsa = sslProvider.getSslContext("app.portbuddy.dev", true).block();
+        final SslContext rsa = sslProvider.getSslContext("app.portbuddy.dev", false).block();
+
+        // Then
+        assertNotNull(ecdsa);
+        assertNotNull(rsa);
+        assertNotSame(ecdsa, rsa);
+        assertSame(rsa, sslProvider.getSslContext("app.portbuddy.dev").block());
+        verifyNoInteractions(sslServiceClient);
+    }
+
+    @Test
+    void shouldSelectRsaContextWhenNoEcdsaCertificateIsIssued() throws Exception {
+        // Given
+        sslProvider.apply(response("*.portbuddy.dev", new SelfSignedCertificate()));
+
+        // When
+        final SslContext ecdsaCapable = sslProvider.getSslContext("app.portbuddy.dev", true).block();
+
+        // Then
+        assertSame(sslProvider.getSslContext("app.portbuddy.dev", false).block(), ecdsaCapable);
+    }
+
+    private static CertificateResponse response(final String domain, final SelfSignedCertificate ssc)
+        throws Exception {
+        return new CertificateResponse(
+            domain,
+            1,
+            true,
+            Files.readString(ssc.certificate().toPath()),
+            Files.readString(ssc.privateKey().toPath()),
+            null,
+            null
+        );
+    }
+
+    private static CertificateResponse dualResponse(final String domain, final SelfSignedCertificate rsa,
+                                                    final SelfSignedCertificate ecdsa) throws Exception {
+        return new CertificateResponse(
+            domain,
+            1,
+            true,
+            Files.readString(rsa.certificate().toPath()),
+            Files.readString(rsa.privateKey().toPath()),
+            Files.readString(ecdsa.certificate().toPath()),
+            Files.readString(ecdsa.privateKey().toPath())
+        );
+    }
 }
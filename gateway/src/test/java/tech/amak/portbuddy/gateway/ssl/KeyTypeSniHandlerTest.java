@@ -0,0 +1,171 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.gateway.ssl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.ReferenceCountedOpenSslContext;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Promise;
+
+@ExtendWith(MockitoExtension.class)
+class KeyTypeSniHandlerTest {
+
+    private static final String HOSTNAME = "app.portbuddy.dev";
+
+    @Mock
+    private SniSslContextMapping mapping;
+
+    @Test
+    void shouldSelectEcdsaForTls13Client() throws Exception {
+        // Given
+        final var client = SslContextBuilder.forClient()
+            .trustManager(InsecureTrustManagerFactory.INSTANCE)
+            .protocols("TLSv1.3")
+            .build();
+
+        // When
+        receiveClientHello(client);
+
+        // Then
+        verify(mapping).map(eq(HOSTNAME), eq(true), any());
+    }
+
+    @Test
+    void shouldSelectEcdsaForTls12ClientOfferingEcdheEcdsa() throws Exception {
+        // Given
+        final var client = SslContextBuilder.forClient()
+            .trustManager(InsecureTrustManagerFactory.INSTANCE)
+            .protocols("TLSv1.2")
+            .ciphers(List.of("TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256", "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"))
+            .build();
+
+        // When
+        receiveClientHello(client);
+
+        // Then
+        verify(mapping).map(eq(HOSTNAME), eq(true), any());
+    }
+
+    @Test
+    void shouldSelectRsaForRsaOnlyClient() throws Exception {
+        // Given
+        final var client = SslContextBuilder.forClient()
+            .trustManager(InsecureTrustManagerFactory.INSTANCE)
+            .protocols("TLSv1.2")
+            .ciphers(List.of("TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"))
+            .build();
+
+        // When
+        receiveClientHello(client);
+
+        // Then
+        verify(mapping).map(eq(HOSTNAME), eq(false), any());
+    }
+
+    @Test
+    void shouldNotSupportEcdsaForTruncatedClientHello() {
+        // Given
+        final ByteBuf clientHello = Unpooled.wrappedBuffer(new byte[] {3, 3, 0, 0});
+
+        // When / Then
+        assertFalse(KeyTypeSniHandler.supportsEcdsa(clientHello));
+    }
+
+    @Test
+    void shouldReleaseLookedUpContextOnceEngineIsCreated() throws Exception {
+        // Given
+        assumeTrue(OpenSsl.isAvailable());
+        final var certificate = new SelfSignedCertificate();
+        final var server = (ReferenceCountedOpenSslContext) SslContextBuilder
+            .forServer(certificate.certificate(), certificate.privateKey())
+            .sslProvider(SslProvider.OPENSSL_REFCNT)
+            .build();
+        when(mapping.map(any(), anyBoolean(), any())).thenAnswer(invocation -> {
+            // Retained for the handler, as by DynamicSslProvider
+            server.retain();
+            return invocation.<Promise<SslContext>>getArgument(2).setSuccess(server);
+        });
+        final var channel = new EmbeddedChannel(new KeyTypeSniHandler(mapping));
+
+        // When
+        channel.writeInbound(clientHello(SslContextBuilder.forClient()
+            .trustManager(InsecureTrustManagerFactory.INSTANCE)
+            .build()));
+
+        // Then: held by its creator and by the engine
+        assertNotNull(channel.pipeline().get(SslHandler.class));
+        assertEquals(2, server.refCnt());
+        channel.finishAndReleaseAll();
+        assertEquals(1, server.refCnt());
+        server.release();
+        certificate.delete();
+    }
+
+    /**
+     * Feeds the first flight of a client for {@link #HOSTNAME} to a new handler, which resolves its context.
+     */
+    private void receiveClientHello(final SslContext client) throws Exception {
+        when(mapping.map(any(), anyBoolean(), any())).thenAnswer(invocation -> invocation.getArgument(2));
+        final var channel = new EmbeddedChannel(new KeyTypeSniHandler(mapping));
+        try {
+            channel.writeInbound(clientHello(client));
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    /**
+     * Returns the first flight of a client for {@link #HOSTNAME}.
+     */
+    private static ByteBuf clientHello(final SslContext client) throws Exception {
+        final var engine = client.newEngine(ByteBufAllocator.DEFAULT, HOSTNAME, 443);
+        try {
+            final var clientHello = ByteBufAllocator.DEFAULT.heapBuffer(16 * 1024);
+            final var out = clientHello.nioBuffer(0, clientHello.capacity());
+            engine.beginHandshake();
+            engine.wrap(Unpooled.EMPTY_BUFFER.nioBuffer(), out);
+            return clientHello.writerIndex(out.position());
+        } finally {
+            ReferenceCountUtil.release(engine);
+        }
+    }
+}
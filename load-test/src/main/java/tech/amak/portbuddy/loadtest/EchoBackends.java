@@ -0,0 +1,277 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The local services behind the tunnels: HTTP, WebSocket, TCP and UDP servers on loopback that send back
+ * whatever they receive. Each connection is served by its own virtual thread.
+ */
+final class EchoBackends implements AutoCloseable {
+
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpServer http;
+    private final ServerSocket webSocket;
+    private final ServerSocket tcp;
+    private final DatagramSocket udp;
+
+    /**
+     * Starts all echo servers on ephemeral loopback ports.
+     *
+     * @throws IOException if a server cannot be bound
+     */
+    EchoBackends() throws IOException {
+        final var loopback = InetAddress.getLoopbackAddress();
+        http = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+        http.createContext("/", EchoBackends::echoHttp);
+        http.setExecutor(executor);
+        http.start();
+        webSocket = new ServerSocket(0, 0, loopback);
+        executor.execute(() -> accept(webSocket, EchoBackends::echoWebSocket));
+        tcp = new ServerSocket(0, 0, loopback);
+        executor.execute(() -> accept(tcp, EchoBackends::echoTcp));
+        udp = new DatagramSocket(0, loopback);
+        executor.execute(this::echoUdp);
+    }
+
+    /**
+     * Host the tunnels should forward to.
+     *
+     * @return the loopback address
+     */
+    String host() {
+        return InetAddress.getLoopbackAddress().getHostAddress();
+    }
+
+    int httpPort() {
+        return http.getAddress().getPort();
+    }
+
+    int webSocketPort() {
+        return webSocket.getLocalPort();
+    }
+
+    int tcpPort() {
+        return tcp.getLocalPort();
+    }
+
+    int udpPort() {
+        return udp.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        http.stop(0);
+        webSocket.close();
+        tcp.close();
+        udp.close();
+        executor.shutdownNow();
+    }
+
+    private void accept(final ServerSocket server, final Consumer<Socket> handler) {
+        while (!server.isClosed()) {
+            try {
+                final var socket = server.accept();
+                socket.setTcpNoDelay(true);
+                executor.execute(() -> {
+                    try (socket) {
+                        handler.accept(socket);
+                    } catch (final IOException e) {
+                        // peer went away
+                    }
+                });
+            } catch (final IOException e) {
+                // closed
+            }
+        }
+    }
+
+    private static void echoHttp(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final var body = exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                exchange.getResponseBody().write(body);
+            }
+        }
+    }
+
+    private static void echoTcp(final Socket socket) {
+        try {
+            socket.getInputStream().transferTo(socket.getOutputStream());
+        } catch (final IOException e) {
+            // peer went away
+        }
+    }
+
+    private void echoUdp() {
+        final var packet = new DatagramPacket(new byte[LoadTestOptions.MAX_PAYLOAD], LoadTestOptions.MAX_PAYLOAD);
+        while (!udp.isClosed()) {
+            try {
+                packet.setLength(LoadTestOptions.MAX_PAYLOAD);
+                udp.receive(packet);
+                udp.send(packet);
+            } catch (final IOException e) {
+                // closed
+            }
+        }
+    }
+
+    /**
+     * Minimal RFC 6455 server: completes the handshake and echoes data frames as they come, unmasked.
+     */
+    private static void echoWebSocket(final Socket socket) {
+        try {
+            final var in = socket.getInputStream();
+            final var out = socket.getOutputStream();
+            final var key = readHandshakeKey(in);
+            if (key == null) {
+                out.write("HTTP/1.1 426 Upgrade Required\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            out.write(("HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            while (true) {
+                final var first = in.read();
+                final var second = in.read();
+                if (first < 0 || second < 0) {
+                    return;
+                }
+                final var opcode = first & 0x0F;
+                var length = (long) (second & 0x7F);
+                if (length == 126) {
+                    length = ((in.read() & 0xFF) << 8) | (in.read() & 0xFF);
+                } else if (length == 127) {
+                    length = 0;
+                    for (var i = 0; i < 8; i++) {
+                        length = (length << 8) | (in.read() & 0xFF);
+                    }
+                }
+                final var mask = (second & 0x80) != 0 ? in.readNBytes(4) : null;
+                final var payload = in.readNBytes((int) length);
+                if (mask != null) {
+                    for (var i = 0; i < payload.length; i++) {
+                        payload[i] ^= mask[i & 3];
+                    }
+                }
+                switch (opcode) {
+                    case OPCODE_CLOSE -> {
+                        writeFrame(out, 0x80 | OPCODE_CLOSE, payload);
+                        return;
+                    }
+                    case OPCODE_PING -> writeFrame(out, 0x80 | OPCODE_PONG, payload);
+                    case OPCODE_PONG -> {
+                        // unsolicited pong
+                    }
+                    default -> writeFrame(out, first, payload);
+                }
+            }
+        } catch (final IOException e) {
+            // peer went away
+        }
+    }
+
+    private static String readHandshakeKey(final InputStream in) throws IOException {
+        String key = null;
+        final var line = new StringBuilder();
+        while (true) {
+            final var next = in.read();
+            if (next < 0) {
+                return null;
+            }
+            if (next != '\n') {
+                if (next != '\r') {
+                    line.append((char) next);
+                }
+                continue;
+            }
+            if (line.isEmpty()) {
+                return key;
+            }
+            final var header = line.toString();
+            final var colon = header.indexOf(':');
+            if (colon > 0 && header.substring(0, colon).trim().toLowerCase(Locale.ROOT)
+                .equals("sec-websocket-key")) {
+                key = header.substring(colon + 1).trim();
+            }
+            line.setLength(0);
+        }
+    }
+
+    private static String acceptKey(final String key) {
+        try {
+            final var digest = MessageDigest.getInstance("SHA-1")
+                .digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeFrame(final OutputStream out, final int first, final byte[] payload)
+        throws IOException {
+        final var header = new byte[10];
+        header[0] = (byte) first;
+        final int headerLength;
+        if (payload.length < 126) {
+            header[1] = (byte) payload.length;
+            headerLength = 2;
+        } else if (payload.length <= 0xFFFF) {
+            header[1] = 126;
+            header[2] = (byte) (payload.length >>> 8);
+            header[3] = (byte) payload.length;
+            headerLength = 4;
+        } else {
+            header[1] = 127;
+            for (var i = 0; i < 8; i++) {
+                header[2 + i] = (byte) ((long) payload.length >>> (56 - 8 * i));
+            }
+            headerLength = 10;
+        }
+        out.write(header, 0, headerLength);
+        out.write(payload);
+        out.flush();
+    }
+}
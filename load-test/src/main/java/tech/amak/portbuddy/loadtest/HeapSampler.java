@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the heap of this process, which holds the server, the net-proxy and the clients alike.
+ */
+final class HeapSampler implements AutoCloseable {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 100;
+
+    private final AtomicLong peak = new AtomicLong();
+    private final Thread sampler;
+
+    HeapSampler() {
+        sampler = new Thread(this::sample, "load-test-heap-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * Highest heap usage seen since the last {@link #resetPeak()}, garbage included.
+     *
+     * @return bytes
+     */
+    long peak() {
+        return peak.get();
+    }
+
+    void resetPeak() {
+        peak.set(used());
+    }
+
+    /**
+     * Heap still in use after a full collection: what the open tunnels and connections actually retain.
+     *
+     * @return bytes
+     * @throws InterruptedException if interrupted while the collection settles
+     */
+    static long retained() throws InterruptedException {
+        System.gc();
+        TimeUnit.MILLISECONDS.sleep(500);
+        return used();
+    }
+
+    static long used() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Override
+    public void close() {
+        sampler.interrupt();
+    }
+
+    private void sample() {
+        while (!Thread.currentThread().isInterrupted()) {
+            peak.accumulateAndGet(used(), Math::max);
+            try {
+                TimeUnit.MILLISECONDS.sleep(SAMPLE_INTERVAL_MILLIS);
+            } catch (final InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts the payload to the HTTP echo through the path-based ingress of the server
+ * ({@code /_/{subdomain}/...}), round robin over the tunnels.
+ */
+final class HttpDriver extends TrafficDriver {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .executor(executor)
+        .build();
+    private final List<URI> targets;
+
+    /**
+     * Creates the driver.
+     *
+     * @param serverPort port of the server
+     * @param subdomains subdomains of the HTTP tunnels to the echo
+     * @param options    load test options
+     */
+    HttpDriver(final int serverPort, final List<String> subdomains, final LoadTestOptions options) {
+        super("http", options);
+        this.targets = subdomains.stream()
+            .map(subdomain -> URI.create("http://localhost:%d/_/%s/echo".formatted(serverPort, subdomain)))
+            .toList();
+    }
+
+    @Override
+    void connect(final long deadline) throws Exception {
+        for (final var target : targets) {
+            while (true) {
+                final var response = client.send(HttpRequest.newBuilder(target).GET().build(),
+                    HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() == 200) {
+                    break;
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IllegalStateException("Tunnel behind " + target + " answers " + response.statusCode());
+                }
+                TimeUnit.MILLISECONDS.sleep(200);
+            }
+        }
+    }
+
+    @Override
+    protected void send(final long sequence) {
+        final var request = HttpRequest.newBuilder(targets.get((int) (sequence % targets.size())))
+            .timeout(options.timeout())
+            .header("Content-Type", "application/octet-stream")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(message(sequence)))
+            .build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .whenComplete((response, error) -> {
+                if (error == null
+                    && response.statusCode() == 200
+                    && response.body().length == options.payload()
+                    && sequenceOf(ByteBuffer.wrap(response.body())) == sequence) {
+                    complete(sequence);
+                } else {
+                    fail(sequence);
+                }
+            });
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
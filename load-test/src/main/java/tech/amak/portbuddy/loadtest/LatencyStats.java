@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+
+/**
+ * Outcome of one measurement phase of one traffic type. Latency is taken from the time a request was
+ * scheduled to start rather than from when it was actually sent, so a stalled node shows up in the
+ * percentiles instead of silently lowering the offered rate (coordinated omission).
+ */
+final class LatencyStats {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final String name;
+    private final ConcurrentHistogram histogram = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    LatencyStats(final String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    void sent() {
+        sent.increment();
+    }
+
+    /**
+     * Records a successful request.
+     *
+     * @param intendedStartNanos {@link System#nanoTime()} at which the request was scheduled to start
+     */
+    void completed(final long intendedStartNanos) {
+        final var micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStartNanos);
+        histogram.recordValue(Math.min(Math.max(micros, 0), MAX_LATENCY_MICROS));
+    }
+
+    void failed() {
+        errors.increment();
+    }
+
+    long completedCount() {
+        return histogram.getTotalCount();
+    }
+
+    /**
+     * Prints one row of the report table.
+     *
+     * @param out     where to print
+     * @param seconds length of the measurement phase
+     */
+    void printRow(final PrintStream out, final double seconds) {
+        out.printf("%-6s %10d %10d %8d %12.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+            name,
+            sent.sum(),
+            completedCount(),
+            errors.sum(),
+            completedCount() / seconds,
+            millis(50),
+            millis(90),
+            millis(99),
+            millis(99.9),
+            histogram.getMaxValue() / 1000.0);
+    }
+
+    static void printHeader(final PrintStream out) {
+        out.printf("%-6s %10s %10s %8s %12s %9s %9s %9s %9s %9s%n",
+            "type", "sent", "ok", "errors", "ok/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+    }
+
+    /**
+     * Writes the full percentile distribution in milliseconds, readable by the HdrHistogram plotter.
+     *
+     * @param dir target directory
+     * @throws IOException if the file cannot be written
+     */
+    void writeHgrm(final Path dir) throws IOException {
+        Files.createDirectories(dir);
+        try (final var out = new PrintStream(Files.newOutputStream(dir.resolve(name + ".hgrm")))) {
+            histogram.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+
+    private double millis(final double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
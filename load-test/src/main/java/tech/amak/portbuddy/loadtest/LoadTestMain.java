@@ -0,0 +1,195 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.loadtest;
+
+import static tech.amak.portbuddy.loadtest.LoadTestOptions.Traffic.HTTP;
+import static tech.amak.portbuddy.loadtest.LoadTestOptions.Traffic.TCP;
+import static tech.amak.portbuddy.loadtest.LoadTestOptions.Traffic.UDP;
+import static tech.amak.portbuddy.loadtest.LoadTestOptions.Traffic.WS;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.LoggerFactory;
+
+import tech.amak.portbuddy.common.TunnelType;
+
+/**
+ * Entry point of {@code load-test.jar}: starts a server and a net-proxy in this process, opens tunnels to
+ * local echo services through the real CLI tunnel clients, drives HTTP, WebSocket, TCP and UDP traffic at a
+ * fixed rate through the public side and prints latency percentiles, throughput and heap usage, e.g.
+ * {@code java -jar load-test/target/load-test.jar --tunnels=50 --rate=500 --duration=2m}.
+ */
+public final class LoadTestMain {
+
+    private static final Duration TUNNELS_UP_TIMEOUT = Duration.ofSeconds(60);
+    private static final double MIB = 1024 * 1024;
+    private static final String PROMETHEUS_PATH = "/actuator/prometheus";
+
+    private LoadTestMain() {
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param args options, see {@link LoadTestOptions}
+     * @throws Exception if the stack or the tunnels cannot be set up
+     */
+    public static void main(final String[] args) throws Exception {
+        // Initialize logback from our file rather than the logback.xml of the cli jar, then leave the logging
+        // system to Spring Boot, which ignores this property with a warning
+        System.setProperty("logback.configurationFile", LocalStack.LOGGING_CONFIG);
+        LoggerFactory.getILoggerFactory();
+        System.clearProperty("logback.configurationFile");
+        final LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Options: --tunnels=10 --connections=1 --rate=100 --warmup=10s --duration=60s "
+                + "--timeout=10s --payload=1024 --traffic=http,ws,tcp,udp --tcp-engine=blocking "
+                + "[--db-url=jdbc:postgresql://... --db-user=... --db-password=...] [--hgrm-dir=...]");
+            System.exit(2);
+            return;
+        }
+        run(options);
+        // Tunnel clients and HTTP clients leave non-daemon threads behind
+        System.exit(0);
+    }
+
+    private static void run(final LoadTestOptions options) throws Exception {
+        System.out.println("Starting server and net-proxy...");
+        try (final var stack = LocalStack.start(options);
+             final var echo = new EchoBackends();
+             final var heap = new HeapSampler()) {
+            System.out.printf("Metrics: http://localhost:%d%s and http://localhost:%d%s%n",
+                stack.serverPort(), PROMETHEUS_PATH, stack.netProxyPort(), PROMETHEUS_PATH);
+            final var started = HeapSampler.retained();
+            final var traffic = options.traffic();
+            final var tunnels = options.tunnels();
+            final var httpTunnels = traffic.contains(HTTP) ? tunnels : 0;
+            final var wsTunnels = traffic.contains(WS) ? tunnels : 0;
+            final var account = stack.seedAccount(tunnels * traffic.size(), httpTunnels + wsTunnels);
+
+            final var drivers = new ArrayList<TrafficDriver>();
+            try (final var fleet = new TunnelFleet(stack, account.apiToken())) {
+                final var openStart = System.nanoTime();
+                if (httpTunnels > 0) {
+                    final var subdomains = account.subdomains().subList(0, httpTunnels);
+                    for (final var subdomain : subdomains) {
+                        fleet.exposeHttp(subdomain, echo.host(), echo.httpPort());
+                    }
+                    drivers.add(new HttpDriver(stack.serverPort(), subdomains, options));
+                }
+                if (wsTunnels > 0) {
+                    final var subdomains = account.subdomains().subList(httpTunnels, httpTunnels + wsTunnels);
+                    for (final var subdomain : subdomains) {
+                        fleet.exposeHttp(subdomain, echo.host(), echo.webSocketPort());
+                    }
+                    drivers.add(new WebSocketDriver(stack.serverPort(), subdomains, options));
+                }
+                if (traffic.contains(TCP)) {
+                    drivers.add(new TcpDriver(exposeNet(fleet, TunnelType.TCP, echo.host(), echo.tcpPort(), tunnels),
+                        options));
+                }
+                if (traffic.contains(UDP)) {
+                    drivers.add(new UdpDriver(exposeNet(fleet, TunnelType.UDP, echo.host(), echo.udpPort(), tunnels),
+                        options));
+                }
+                final var deadline = System.nanoTime() + TUNNELS_UP_TIMEOUT.toNanos();
+                for (final var driver : drivers) {
+                    driver.connect(deadline);
+                }
+                System.out.printf("%d tunnels up in %d ms%n",
+                    fleet.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openStart));
+                final var withTunnels = HeapSampler.retained();
+
+                System.out.printf("Warming up for %s...%n", options.warmup());
+                runAll(drivers, options.warmup());
+                heap.resetPeak();
+                System.out.printf("Measuring for %s...%n", options.duration());
+                final var results = runAll(drivers, options.duration());
+                final var peak = heap.peak();
+                final var retained = HeapSampler.retained();
+
+                printReport(options, results);
+                System.out.printf("Heap (server, net-proxy and clients): %.1f MiB started, %.1f MiB with %d tunnels "
+                        + "(%.1f KiB per tunnel), %.1f MiB peak while measuring, %.1f MiB retained after%n",
+                    started / MIB, withTunnels / MIB, fleet.size(),
+                    (withTunnels - started) / 1024.0 / fleet.size(), peak / MIB, retained / MIB);
+                if (options.hgrmDir() != null) {
+                    for (final var stats : results) {
+                        stats.writeHgrm(options.hgrmDir());
+                    }
+                    System.out.println("Histograms written to " + options.hgrmDir().toAbsolutePath());
+                }
+            } finally {
+                for (final var driver : drivers) {
+                    driver.close();
+                }
+            }
+        }
+    }
+
+    private static List<Integer> exposeNet(final TunnelFleet fleet,
+                                           final TunnelType type,
+                                           final String host,
+                                           final int port,
+                                           final int count) throws Exception {
+        final var publicPorts = new ArrayList<Integer>();
+        for (var i = 0; i < count; i++) {
+            publicPorts.add(fleet.exposeNet(type, host, port));
+        }
+        return publicPorts;
+    }
+
+    /**
+     * Runs every driver at once, each from its own platform thread so the schedules stay accurate.
+     */
+    private static List<LatencyStats> runAll(final List<TrafficDriver> drivers, final Duration length)
+        throws InterruptedException, ExecutionException {
+        final var executor = Executors.newFixedThreadPool(drivers.size());
+        try {
+            final var tasks = drivers.stream()
+                .map(driver -> (Callable<LatencyStats>) () -> driver.run(length))
+                .toList();
+            final var results = new ArrayList<LatencyStats>();
+            for (final Future<LatencyStats> result : executor.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void printReport(final LoadTestOptions options, final List<LatencyStats> results) {
+        System.out.println();
+        System.out.printf("%d tunnels per type, %d connections per tunnel, %d requests/s per type, %d byte payload, "
+                + "tcp engine %s%n",
+            options.tunnels(), options.connections(), options.rate(), options.payload(), options.tcpEngine());
+        LatencyStats.printHeader(System.out);
+        final var seconds = options.duration().toMillis() / 1000.0;
+        for (final var stats : results) {
+            stats.printRow(System.out, seconds);
+        }
+    }
+}
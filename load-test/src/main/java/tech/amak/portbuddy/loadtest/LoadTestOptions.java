@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * Command line of the load test, given as {@code --name=value} pairs.
+ *
+ * @param tunnels     tunnels opened per traffic type; HTTP and WebSocket traffic use separate HTTP tunnels
+ * @param connections public connections per WebSocket, TCP and UDP tunnel
+ * @param rate        target requests (or messages) per second, per traffic type
+ * @param warmup      how long traffic runs before measurement starts
+ * @param duration    how long traffic is measured
+ * @param timeout     how long a request may take before it counts as an error
+ * @param payload     size of request bodies and messages in bytes
+ * @param traffic     traffic types to drive
+ * @param tcpEngine   TCP engine of the net-proxy, {@code blocking} or {@code nio}
+ * @param dbUrl       JDBC URL of an existing Postgres database, or {@code null} to start an embedded one
+ * @param dbUser      user of {@code dbUrl}
+ * @param dbPassword  password of {@code dbUrl}
+ * @param hgrmDir     directory to write the latency histograms to, or {@code null}
+ */
+public record LoadTestOptions(int tunnels,
+                              int connections,
+                              int rate,
+                              Duration warmup,
+                              Duration duration,
+                              Duration timeout,
+                              int payload,
+                              Set<Traffic> traffic,
+                              String tcpEngine,
+                              String dbUrl,
+                              String dbUser,
+                              String dbPassword,
+                              Path hgrmDir) {
+
+    /**
+     * Smallest payload: every message starts with its sequence number.
+     */
+    static final int MIN_PAYLOAD = Long.BYTES;
+
+    /**
+     * Largest payload that still fits in one UDP datagram.
+     */
+    static final int MAX_PAYLOAD = 65_507;
+
+    /**
+     * Kind of public traffic driven through the tunnels.
+     */
+    public enum Traffic {
+        HTTP, WS, TCP, UDP
+    }
+
+    /**
+     * Parses the command line, applying defaults for missing options.
+     *
+     * @param args {@code --name=value} pairs
+     * @return the options
+     * @throws IllegalArgumentException if an option is unknown or invalid
+     */
+    public static LoadTestOptions parse(final String[] args) {
+        final var values = new HashMap<String, String>();
+        for (final var arg : args) {
+            final var separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        final var options = new LoadTestOptions(
+            positive(values.remove("tunnels"), 10, "tunnels"),
+            positive(values.remove("connections"), 1, "connections"),
+            positive(values.remove("rate"), 100, "rate"),
+            duration(values.remove("warmup"), Duration.ofSeconds(10)),
+            duration(values.remove("duration"), Duration.ofSeconds(60)),
+            duration(values.remove("timeout"), Duration.ofSeconds(10)),
+            positive(values.remove("payload"), 1024, "payload"),
+            traffic(values.remove("traffic")),
+            Objects.requireNonNullElse(values.remove("tcp-engine"), "blocking"),
+            values.remove("db-url"),
+            Objects.requireNonNullElse(values.remove("db-user"), "postgres"),
+            Objects.requireNonNullElse(values.remove("db-password"), "postgres"),
+            Optional.ofNullable(values.remove("hgrm-dir")).map(Path::of).orElse(null));
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + values.keySet());
+        }
+        if (options.payload < MIN_PAYLOAD || options.payload > MAX_PAYLOAD) {
+            throw new IllegalArgumentException(
+                "payload must be between %d and %d bytes".formatted(MIN_PAYLOAD, MAX_PAYLOAD));
+        }
+        return options;
+    }
+
+    private static int positive(final String value, final int defaultValue, final String name) {
+        final var result = value == null ? defaultValue : Integer.parseInt(value);
+        if (result <= 0) {
+            throw new IllegalArgumentException(name + " must be positive");
+        }
+        return result;
+    }
+
+    private static Duration duration(final String value, final Duration defaultValue) {
+        return value == null ? defaultValue : DurationStyle.detectAndParse(value);
+    }
+
+    private static Set<Traffic> traffic(final String value) {
+        if (value == null) {
+            return EnumSet.allOf(Traffic.class);
+        }
+        return Arrays.stream(value.split(","))
+            .map(String::trim)
+            .map(name -> Traffic.valueOf(name.toUpperCase(Locale.ROOT)))
+            .collect(Collectors.toCollection(() -> EnumSet.noneOf(Traffic.class)));
+    }
+}
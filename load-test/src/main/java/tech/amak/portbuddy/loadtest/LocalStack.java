@@ -0,0 +1,168 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.loadtest;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import tech.amak.portbuddy.common.Plan;
+import tech.amak.portbuddy.netproxy.NetProxyApplication;
+import tech.amak.portbuddy.server.ServerApplication;
+import tech.amak.portbuddy.server.config.AppProperties;
+import tech.amak.portbuddy.server.db.entity.DomainEntity;
+import tech.amak.portbuddy.server.db.repo.AccountRepository;
+import tech.amak.portbuddy.server.service.ApiTokenService;
+import tech.amak.portbuddy.server.service.DomainService;
+import tech.amak.portbuddy.server.service.user.UserProvisioningService;
+
+/**
+ * A server and a net-proxy running in this process against one Postgres database, wired to each other
+ * through static discovery instead of Eureka. Unless a database is given, an embedded Postgres is started;
+ * the server migrations are Postgres-specific, so there is no in-memory database profile.
+ */
+final class LocalStack implements AutoCloseable {
+
+    /**
+     * Logging of the whole process; the cli jar brings a {@code logback.xml} of its own.
+     */
+    static final String LOGGING_CONFIG = "load-test/logback.xml";
+
+    private final EmbeddedPostgres embeddedPostgres;
+    private final ConfigurableApplicationContext server;
+    private final ConfigurableApplicationContext netProxy;
+    private final int serverPort;
+    private final int netProxyPort;
+
+    private LocalStack(final EmbeddedPostgres embeddedPostgres,
+                       final ConfigurableApplicationContext server,
+                       final ConfigurableApplicationContext netProxy,
+                       final int serverPort,
+                       final int netProxyPort) {
+        this.embeddedPostgres = embeddedPostgres;
+        this.server = server;
+        this.netProxy = netProxy;
+        this.serverPort = serverPort;
+        this.netProxyPort = netProxyPort;
+    }
+
+    /**
+     * Starts the database, the server and the net-proxy.
+     *
+     * @param options load test options
+     * @return the running stack
+     * @throws IOException if the embedded database cannot be started
+     */
+    static LocalStack start(final LoadTestOptions options) throws IOException {
+        final var embeddedPostgres = options.dbUrl() == null ? EmbeddedPostgres.builder().start() : null;
+        final var dbUrl = embeddedPostgres != null
+            ? embeddedPostgres.getJdbcUrl("postgres", "postgres")
+            : options.dbUrl();
+        final var serverPort = freePort();
+        final var netProxyPort = freePort();
+
+        final var server = new SpringApplicationBuilder(ServerApplication.class).run(
+            "--spring.config.location=classpath:/load-test/server.yml",
+            "--logging.config=classpath:" + LOGGING_CONFIG,
+            "--server.port=" + serverPort,
+            "--spring.datasource.url=" + dbUrl,
+            "--spring.datasource.username=" + options.dbUser(),
+            "--spring.datasource.password=" + options.dbPassword(),
+            "--spring.cloud.discovery.client.simple.instances.net-proxy[0].uri=http://localhost:" + netProxyPort,
+            "--spring.cloud.discovery.client.simple.instances.net-proxy[0].metadata.public-host=localhost");
+        final var netProxy = new SpringApplicationBuilder(NetProxyApplication.class).run(
+            "--spring.config.location=classpath:/load-test/net-proxy.yml",
+            "--logging.config=classpath:" + LOGGING_CONFIG,
+            "--server.port=" + netProxyPort,
+            "--app.tcp.engine=" + options.tcpEngine(),
+            "--spring.cloud.discovery.client.simple.instances.port-buddy-server[0].uri=http://localhost:" + serverPort);
+        return new LocalStack(embeddedPostgres, server, netProxy, serverPort, netProxyPort);
+    }
+
+    String serverUrl() {
+        return "http://localhost:" + serverPort;
+    }
+
+    int serverPort() {
+        return serverPort;
+    }
+
+    int netProxyPort() {
+        return netProxyPort;
+    }
+
+    /**
+     * Creates a fresh user whose account may hold the given number of tunnels, including TCP and UDP ones.
+     *
+     * @param tunnels number of tunnels the account must be allowed to open
+     * @param domains number of subdomains the account needs, one per HTTP tunnel
+     * @return the API token of the user and the subdomains of the account
+     */
+    SeededAccount seedAccount(final int tunnels, final int domains) {
+        final var provisioned = server.getBean(UserProvisioningService.class).createLocalUser(
+            "load-test+" + UUID.randomUUID() + "@portbuddy.dev", "Load Test", UUID.randomUUID().toString(),
+            "127.0.0.1");
+
+        final var accounts = server.getBean(AccountRepository.class);
+        final var account = accounts.findById(provisioned.accountId()).orElseThrow();
+        account.setPlan(Plan.TEAM);
+        account.setSubscriptionStatus("active");
+        // TCP and UDP tunnels also need a minimum number of purchased extra tunnels
+        final var minExtraTunnels = server.getBean(AppProperties.class).subscriptions().tcpMinExtraTunnels();
+        account.setExtraTunnels(Math.max(tunnels, minExtraTunnels));
+        accounts.save(account);
+
+        final var domainService = server.getBean(DomainService.class);
+        for (var i = domainService.getDomains(account).size(); i < domains; i++) {
+            domainService.createDomain(account).orElseThrow();
+        }
+        final var subdomains = domainService.getDomains(account).stream()
+            .map(DomainEntity::getSubdomain)
+            .toList();
+
+        final var token = server.getBean(ApiTokenService.class)
+            .createToken(provisioned.accountId(), provisioned.userId(), "load-test");
+        return new SeededAccount(token.token(), subdomains);
+    }
+
+    @Override
+    public void close() throws IOException {
+        netProxy.close();
+        server.close();
+        if (embeddedPostgres != null) {
+            embeddedPostgres.close();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (final var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Account created for a run.
+     *
+     * @param apiToken   API token to exchange for a JWT, like the CLI does
+     * @param subdomains subdomains available to HTTP tunnels
+     */
+    record SeededAccount(String apiToken, List<String> subdomains) {
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps TCP connections open to the public ports of the TCP tunnels and writes the payload as fixed-size
+ * messages, round robin over the connections. One virtual thread per connection reads the echo back.
+ */
+final class TcpDriver extends TrafficDriver {
+
+    private final List<Integer> publicPorts;
+    private final List<Connection> connections = new ArrayList<>();
+
+    /**
+     * Creates the driver.
+     *
+     * @param publicPorts net-proxy ports of the TCP tunnels to the echo
+     * @param options     load test options
+     */
+    TcpDriver(final List<Integer> publicPorts, final LoadTestOptions options) {
+        super("tcp", options);
+        this.publicPorts = publicPorts;
+    }
+
+    @Override
+    void connect(final long deadline) throws Exception {
+        for (final var port : publicPorts) {
+            for (var i = 0; i < options.connections(); i++) {
+                final var connection = open(port, deadline);
+                connections.add(connection);
+                Thread.ofVirtual().name("tcp-driver-" + port).start(() -> read(connection));
+            }
+        }
+    }
+
+    @Override
+    protected void send(final long sequence) throws IOException {
+        final var connection = connections.get((int) (sequence % connections.size()));
+        connection.writeLock.lock();
+        try {
+            connection.socket.getOutputStream().write(message(sequence));
+        } finally {
+            connection.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final var connection : connections) {
+            connection.socket.close();
+        }
+    }
+
+    /**
+     * Connects and checks that a message makes the round trip, retrying while the tunnel comes up.
+     */
+    private Connection open(final int port, final long deadline) throws Exception {
+        while (true) {
+            final var socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress("localhost", port), (int) options.timeout().toMillis());
+                socket.setSoTimeout((int) options.timeout().toMillis());
+                final var probe = message(0);
+                socket.getOutputStream().write(probe);
+                if (socket.getInputStream().readNBytes(probe.length).length == probe.length) {
+                    socket.setSoTimeout(0);
+                    return new Connection(socket);
+                }
+                socket.close();
+            } catch (final IOException e) {
+                socket.close();
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("TCP tunnel on port " + port + " does not echo");
+            }
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+    }
+
+    private void read(final Connection connection) {
+        try {
+            final var in = connection.socket.getInputStream();
+            final var message = new byte[options.payload()];
+            while (in.readNBytes(message, 0, message.length) == message.length) {
+                complete(sequenceOf(ByteBuffer.wrap(message)));
+            }
+        } catch (final IOException e) {
+            // closed at the end of the run; requests still waiting time out
+        }
+    }
+
+    private record Connection(Socket socket, ReentrantLock writeLock) {
+
+        Connection(final Socket socket) {
+            this(socket, new ReentrantLock());
+        }
+    }
+}
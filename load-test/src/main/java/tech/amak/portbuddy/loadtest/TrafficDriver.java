@@ -0,0 +1,163 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.loadtest;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Public client of one traffic type. Requests are started on a fixed schedule (open loop), each on its own
+ * virtual thread, regardless of how many are still waiting for their response, so a slow node cannot lower
+ * the offered load. Every message carries its sequence number in the first eight bytes; the echo brings it
+ * back and the response is matched to the request through it.
+ */
+abstract class TrafficDriver implements AutoCloseable {
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    protected final LoadTestOptions options;
+    private final String name;
+    private final byte[] template;
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong sequences = new AtomicLong();
+
+    TrafficDriver(final String name, final LoadTestOptions options) {
+        this.name = name;
+        this.options = options;
+        this.template = new byte[options.payload()];
+        ThreadLocalRandom.current().nextBytes(template);
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * Opens the public connections, retrying until the tunnels carry traffic.
+     *
+     * @param deadline {@link System#nanoTime()} after which to give up
+     * @throws Exception if the tunnels do not come up in time
+     */
+    abstract void connect(long deadline) throws Exception;
+
+    /**
+     * Sends one request. Must not wait for the response, which is reported through {@link #complete} or
+     * {@link #fail}.
+     *
+     * @param sequence sequence number of the request
+     * @throws Exception if sending fails
+     */
+    protected abstract void send(long sequence) throws Exception;
+
+    /**
+     * Drives traffic at the configured rate and then waits for the requests still in flight.
+     *
+     * @param length how long to send for
+     * @return the outcome of this run
+     */
+    LatencyStats run(final Duration length) {
+        final var stats = new LatencyStats(name);
+        final var period = TimeUnit.SECONDS.toNanos(1) / options.rate();
+        final var start = System.nanoTime();
+        final var end = start + length.toNanos();
+        var lastSweep = start;
+        for (var tick = 0L; ; tick++) {
+            final var intendedStart = start + tick * period;
+            if (intendedStart - end >= 0) {
+                break;
+            }
+            parkUntil(intendedStart);
+            final var sequence = sequences.incrementAndGet();
+            pending.put(sequence, new Pending(intendedStart, stats));
+            stats.sent();
+            Thread.ofVirtual().start(() -> {
+                try {
+                    send(sequence);
+                } catch (final Exception e) {
+                    fail(sequence);
+                }
+            });
+            if (intendedStart - lastSweep > SWEEP_INTERVAL_NANOS) {
+                expire(intendedStart - options.timeout().toNanos());
+                lastSweep = intendedStart;
+            }
+        }
+        final var drainDeadline = System.nanoTime() + options.timeout().toNanos();
+        while (!pending.isEmpty() && System.nanoTime() - drainDeadline < 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        pending.keySet().forEach(this::fail);
+        return stats;
+    }
+
+    /**
+     * Builds the message of a request: the payload with the sequence number in front.
+     *
+     * @param sequence sequence number of the request
+     * @return a new message of the configured payload size
+     */
+    protected final byte[] message(final long sequence) {
+        final var message = template.clone();
+        ByteBuffer.wrap(message).putLong(0, sequence);
+        return message;
+    }
+
+    /**
+     * Reads the sequence number of an echoed message.
+     *
+     * @param message the echoed message, positioned at its start
+     * @return the sequence number
+     */
+    protected static long sequenceOf(final ByteBuffer message) {
+        return message.getLong(message.position());
+    }
+
+    protected final void complete(final long sequence) {
+        final var request = pending.remove(sequence);
+        if (request != null) {
+            request.stats().completed(request.intendedStart());
+        }
+    }
+
+    protected final void fail(final long sequence) {
+        final var request = pending.remove(sequence);
+        if (request != null) {
+            request.stats().failed();
+        }
+    }
+
+    private void expire(final long startedBefore) {
+        for (final var entry : pending.entrySet()) {
+            if (entry.getValue().intendedStart() - startedBefore < 0) {
+                fail(entry.getKey());
+            }
+        }
+    }
+
+    private static void parkUntil(final long nanoTime) {
+        for (var remaining = nanoTime - System.nanoTime(); remaining > 0; remaining = nanoTime - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private record Pending(long intendedStart, LatencyStats stats) {
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import tech.amak.portbuddy.cli.tunnel.HttpTunnelClient;
+import tech.amak.portbuddy.cli.tunnel.NetTunnelClient;
+import tech.amak.portbuddy.cli.ui.NetTrafficSink;
+import tech.amak.portbuddy.common.TunnelType;
+import tech.amak.portbuddy.common.dto.ExposeRequest;
+import tech.amak.portbuddy.common.dto.ExposeResponse;
+import tech.amak.portbuddy.common.dto.auth.TokenExchangeRequest;
+import tech.amak.portbuddy.common.dto.auth.TokenExchangeResponse;
+
+/**
+ * The CLI side of the run: exposes tunnels through the server API and keeps one {@link HttpTunnelClient} or
+ * {@link NetTunnelClient} running per tunnel, exactly as {@code portbuddy} does for a single one.
+ */
+final class TunnelFleet implements AutoCloseable {
+
+    /**
+     * Client version sent on token exchange; development builds pass the minimum version check.
+     */
+    private static final String CLIENT_VERSION = "dev";
+
+    private static final NetTrafficSink NO_TRAFFIC_SINK = new NetTrafficSink() {
+        @Override
+        public void onBytesIn(final long bytes) {
+        }
+
+        @Override
+        public void onBytesOut(final long bytes) {
+        }
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final List<Runnable> closers = new ArrayList<>();
+    private final LocalStack stack;
+    private final String jwt;
+
+    /**
+     * Authenticates with the API token, like {@code portbuddy} does on start.
+     *
+     * @param stack    the running server and net-proxy
+     * @param apiToken API token of the seeded user
+     * @throws IOException          if the token exchange fails
+     * @throws InterruptedException if interrupted while waiting for the server
+     */
+    TunnelFleet(final LocalStack stack, final String apiToken) throws IOException, InterruptedException {
+        this.stack = stack;
+        this.jwt = post("/api/auth/token-exchange", new TokenExchangeRequest(apiToken, CLIENT_VERSION), null,
+            TokenExchangeResponse.class).getAccessToken();
+    }
+
+    /**
+     * Exposes a local HTTP service on the given subdomain and starts its tunnel client.
+     *
+     * @param subdomain subdomain of the account to use
+     * @param host      host of the local service
+     * @param port      port of the local service
+     * @throws IOException          if the server refuses the tunnel
+     * @throws InterruptedException if interrupted while waiting for the server
+     */
+    void exposeHttp(final String subdomain, final String host, final int port)
+        throws IOException, InterruptedException {
+        final var expose = post("/api/expose/http",
+            new ExposeRequest(TunnelType.HTTP, "http", host, port, subdomain, null, null), jwt, ExposeResponse.class);
+        final var client = new HttpTunnelClient(stack.serverUrl(), expose.tunnelId(), host, port, "http", jwt,
+            expose.publicUrl(), (method, url, status) -> {
+            }, false);
+        start(client::runBlocking, client::close, "load-test-http-" + subdomain);
+    }
+
+    /**
+     * Exposes a local TCP or UDP service and starts its tunnel client.
+     *
+     * @param type TCP or UDP
+     * @param host host of the local service
+     * @param port port of the local service
+     * @return the public port on the net-proxy
+     * @throws IOException          if the server refuses the tunnel
+     * @throws InterruptedException if interrupted while waiting for the server
+     */
+    int exposeNet(final TunnelType type, final String host, final int port) throws IOException, InterruptedException {
+        final var scheme = type.name().toLowerCase();
+        final var expose = post("/api/expose/net",
+            new ExposeRequest(type, scheme, host, port, null, null, null), jwt, ExposeResponse.class);
+        // Without a gateway in front, the tunnel connects straight to the net-proxy
+        final var client = new NetTunnelClient("localhost", stack.netProxyPort(), false, expose.tunnelId(), host,
+            port, type, expose.publicHost(), expose.publicPort(), jwt, NO_TRAFFIC_SINK, false);
+        start(client::runBlocking, client::close, "load-test-" + scheme + "-" + expose.publicPort());
+        return expose.publicPort();
+    }
+
+    int size() {
+        return closers.size();
+    }
+
+    @Override
+    public void close() {
+        closers.forEach(Runnable::run);
+    }
+
+    private void start(final Runnable client, final Runnable closer, final String name) {
+        final var thread = new Thread(client, name);
+        thread.setDaemon(true);
+        thread.start();
+        closers.add(closer);
+    }
+
+    private <T> T post(final String path, final Object body, final String bearer, final Class<T> responseType)
+        throws IOException, InterruptedException {
+        final var request = HttpRequest.newBuilder(URI.create(stack.serverUrl() + path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)));
+        if (bearer != null) {
+            request.header("Authorization", "Bearer " + bearer);
+        }
+        final var response = http.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("POST %s failed with %d: %s".formatted(
+                path, response.statusCode(), new String(response.body())));
+        }
+        return mapper.readValue(response.body(), responseType);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.loadtest;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends the payload as datagrams to the public ports of the UDP tunnels, round robin over one socket per
+ * connection (each socket is a separate peer for the net-proxy). Lost datagrams count as timeouts.
+ */
+final class UdpDriver extends TrafficDriver {
+
+    private static final int PROBE_TIMEOUT_MILLIS = 500;
+
+    private final List<Integer> publicPorts;
+    private final List<DatagramSocket> sockets = new ArrayList<>();
+
+    /**
+     * Creates the driver.
+     *
+     * @param publicPorts net-proxy ports of the UDP tunnels to the echo
+     * @param options     load test options
+     */
+    UdpDriver(final List<Integer> publicPorts, final LoadTestOptions options) {
+        super("udp", options);
+        this.publicPorts = publicPorts;
+    }
+
+    @Override
+    void connect(final long deadline) throws Exception {
+        for (final var port : publicPorts) {
+            for (var i = 0; i < options.connections(); i++) {
+                final var socket = new DatagramSocket();
+                socket.connect(new InetSocketAddress("localhost", port));
+                probe(socket, deadline);
+                sockets.add(socket);
+                Thread.ofVirtual().name("udp-driver-" + port).start(() -> read(socket));
+            }
+        }
+    }
+
+    @Override
+    protected void send(final long sequence) throws IOException {
+        final var message = message(sequence);
+        sockets.get((int) (sequence % sockets.size())).send(new DatagramPacket(message, message.length));
+    }
+
+    @Override
+    public void close() {
+        sockets.forEach(DatagramSocket::close);
+    }
+
+    /**
+     * Sends datagrams until one comes back, i.e. the tunnel is up and relays this peer.
+     */
+    private void probe(final DatagramSocket socket, final long deadline) throws IOException {
+        final var probe = message(0);
+        final var echo = new DatagramPacket(new byte[probe.length], probe.length);
+        socket.setSoTimeout(PROBE_TIMEOUT_MILLIS);
+        while (true) {
+            socket.send(new DatagramPacket(probe, probe.length));
+            try {
+                socket.receive(echo);
+                socket.setSoTimeout(0);
+                return;
+            } catch (final SocketTimeoutException e) {
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IllegalStateException("UDP tunnel on " + socket.getRemoteSocketAddress()
+                        + " does not echo");
+                }
+            }
+        }
+    }
+
+    private void read(final DatagramSocket socket) {
+        final var buffer = new byte[options.payload()];
+        final var packet = new DatagramPacket(buffer, buffer.length);
+        try {
+            while (!socket.isClosed()) {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                if (packet.getLength() == buffer.length) {
+                    complete(sequenceOf(ByteBuffer.wrap(buffer)));
+                }
+            }
+        } catch (final IOException e) {
+            // closed at the end of the run; datagrams still waiting time out
+        }
+    }
+}
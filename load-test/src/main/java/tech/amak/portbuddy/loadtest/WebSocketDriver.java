@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps WebSocket connections open to the WebSocket echo through the server ({@code /_ws/{subdomain}/...})
+ * and sends the payload as binary messages, round robin over the connections.
+ */
+final class WebSocketDriver extends TrafficDriver {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient client = HttpClient.newBuilder().executor(executor).build();
+    private final List<URI> targets;
+    private final List<Connection> connections = new ArrayList<>();
+
+    /**
+     * Creates the driver.
+     *
+     * @param serverPort port of the server
+     * @param subdomains subdomains of the HTTP tunnels to the WebSocket echo
+     * @param options    load test options
+     */
+    WebSocketDriver(final int serverPort, final List<String> subdomains, final LoadTestOptions options) {
+        super("ws", options);
+        this.targets = subdomains.stream()
+            .map(subdomain -> URI.create("ws://localhost:%d/_ws/%s/echo".formatted(serverPort, subdomain)))
+            .toList();
+    }
+
+    @Override
+    void connect(final long deadline) throws Exception {
+        for (final var target : targets) {
+            for (var i = 0; i < options.connections(); i++) {
+                final var connection = new Connection();
+                while (true) {
+                    try {
+                        connection.webSocket = client.newWebSocketBuilder()
+                            .buildAsync(target, connection)
+                            .get(options.timeout().toMillis(), TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (final Exception e) {
+                        if (System.nanoTime() - deadline > 0) {
+                            throw new IllegalStateException("Cannot open " + target, e);
+                        }
+                        TimeUnit.MILLISECONDS.sleep(200);
+                    }
+                }
+                connections.add(connection);
+            }
+        }
+    }
+
+    @Override
+    protected void send(final long sequence) throws Exception {
+        final var connection = connections.get((int) (sequence % connections.size()));
+        // A WebSocket accepts the next message only once the previous one has been handed over
+        connection.sendLock.lock();
+        try {
+            connection.webSocket.sendBinary(ByteBuffer.wrap(message(sequence)), true)
+                .get(options.timeout().toMillis(), TimeUnit.MILLISECONDS);
+        } finally {
+            connection.sendLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (final var connection : connections) {
+            connection.webSocket.abort();
+        }
+        executor.shutdownNow();
+    }
+
+    private final class Connection implements WebSocket.Listener {
+
+        private final ReentrantLock sendLock = new ReentrantLock();
+        private final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+        private volatile WebSocket webSocket;
+
+        @Override
+        public CompletionStage<?> onBinary(final WebSocket webSocket, final ByteBuffer data, final boolean last) {
+            if (last && partial.size() == 0) {
+                complete(sequenceOf(data));
+            } else {
+                final var bytes = new byte[data.remaining()];
+                data.get(bytes);
+                partial.writeBytes(bytes);
+                if (last) {
+                    complete(sequenceOf(ByteBuffer.wrap(partial.toByteArray())));
+                    partial.reset();
+                }
+            }
+            webSocket.request(1);
+            return null;
+        }
+    }
+}
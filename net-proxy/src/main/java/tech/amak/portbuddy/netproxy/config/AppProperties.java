@@ -23,7 +23,8 @@ import org.springframework.util.unit.DataSize;
 public record AppProperties(
     String publicHost,
     WebSocket webSocket,
-    Jwt jwt
+    Jwt jwt,
+    Tcp tcp
 ) {
 
     public record WebSocket(
@@ -40,4 +41,58 @@ public record AppProperties(
         String jwkSetUri
     ) {
     }
+
+    /**
+     * Public TCP side of net tunnels.
+     *
+     * @param engine            the I/O engine serving public connections
+     * @param noDelay           default TCP_NODELAY of public connections
+     * @param sendBufferSize    default SO_SNDBUF of public connections, or {@code null} for the OS default
+     * @param receiveBufferSize default SO_RCVBUF of public connections, or {@code null} for the OS default
+     * @param maxBufferSize     the largest SO_SNDBUF and SO_RCVBUF a client may ask for; larger sizes are clamped
+     * @param readBufferSize    the most bytes read from a public connection into one frame ({@code nio} engine)
+     * @param maxPendingWrite   the most bytes queued for a slow public connection before the tunnel
+     *                          waits for it to drain ({@code nio} engine)
+     * @param selectorThreads   the number of selector threads ({@code nio} engine)
+     */
+    public record Tcp(
+        Engine engine,
+        Boolean noDelay,
+        DataSize sendBufferSize,
+        DataSize receiveBufferSize,
+        DataSize maxBufferSize,
+        DataSize readBufferSize,
+        DataSize maxPendingWrite,
+        Integer selectorThreads
+    ) {
+
+        public Tcp {
+            engine = engine != null ? engine : Engine.BLOCKING;
+            noDelay = noDelay != null ? noDelay : Boolean.TRUE;
+            maxBufferSize = maxBufferSize != null ? maxBufferSize : DataSize.ofMegabytes(4);
+            readBufferSize = readBufferSize != null ? readBufferSize : DataSize.ofKilobytes(16);
+            maxPendingWrite = maxPendingWrite != null ? maxPendingWrite : DataSize.ofMegabytes(1);
+            selectorThreads = selectorThreads != null
+                ? selectorThreads
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        }
+
+        /**
+         * Returns the settings used when none are configured.
+         */
+        public static Tcp defaults() {
+            return new Tcp(null, null, null, null, null, null, null, null);
+        }
+
+        public enum Engine {
+            /**
+             * Blocking sockets with a virtual thread per accept loop and per connection.
+             */
+            BLOCKING,
+            /**
+             * Non-blocking channels multiplexed over a few selector threads.
+             */
+            NIO
+        }
+    }
 }
@@ -34,7 +34,8 @@ public class WebSocketConfig implements WebSocketConfigurer {
 
     @Override
     public void registerWebSocketHandlers(final WebSocketHandlerRegistry registry) {
-        registry.addHandler(tcpHandler, "/api/net-tunnel/{tunnelId}").setAllowedOrigins("*");
+        registry.addHandler(tcpHandler, "/api/net-tunnel/{tunnelId}")
+            .setAllowedOrigins("*");
     }
 
     /**
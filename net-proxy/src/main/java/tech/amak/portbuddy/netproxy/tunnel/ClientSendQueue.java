@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.netproxy.tunnel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Frames on their way to the client of one tunnel, sent one at a time by a task of the IO pool. Selector
+ * threads shared by all tunnels hand their frames over here instead of making the blocking WebSocket send
+ * themselves, so a slow client only delays its own tunnel.
+ *
+ * <p>The queue is bounded in bytes: datagrams are {@link #offer offered} and dropped when it is full, while
+ * TCP data is always {@link #add added} and its reader pauses until the queue {@link #whenDrained drained}
+ * to half the limit.
+ */
+@Slf4j
+final class ClientSendQueue {
+
+    private final Executor executor;
+    private final long maxBytes;
+    private final Consumer<ByteBuffer> sender;
+    private final Queue<ByteBuffer> frames = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final List<Runnable> drainedCallbacks = new ArrayList<>();
+
+    /**
+     * Creates the queue of a client session.
+     *
+     * @param executor runs the task sending the frames; it may block
+     * @param maxBytes the most bytes queued before datagrams are dropped and readers pause
+     * @param sender   sends a frame to the client
+     */
+    ClientSendQueue(final Executor executor, final long maxBytes, final Consumer<ByteBuffer> sender) {
+        this.executor = executor;
+        this.maxBytes = maxBytes;
+        this.sender = sender;
+    }
+
+    /**
+     * Queues a frame unless the queue is full.
+     *
+     * @param frame the frame; owned by the queue afterwards
+     * @return {@code false} if the frame was dropped
+     */
+    boolean offer(final ByteBuffer frame) {
+        if (pendingBytes.get() >= maxBytes) {
+            return false;
+        }
+        add(frame);
+        return true;
+    }
+
+    /**
+     * Queues a frame even if the queue is full.
+     *
+     * @param frame the frame; owned by the queue afterwards
+     * @return {@code true} if the queue is full now, and the caller should stop producing until it drained
+     */
+    boolean add(final ByteBuffer frame) {
+        final var queued = pendingBytes.addAndGet(frame.remaining());
+        frames.add(frame);
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+        return queued >= maxBytes;
+    }
+
+    /**
+     * Runs the callback once the queue drained to half its limit, right away if it already has.
+     *
+     * @param callback runs on the sending task or the calling thread
+     */
+    void whenDrained(final Runnable callback) {
+        synchronized (drainedCallbacks) {
+            if (pendingBytes.get() > maxBytes / 2) {
+                drainedCallbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * Returns the bytes queued and not yet handed to the session.
+     */
+    long pendingBytes() {
+        return pendingBytes.get();
+    }
+
+    private void drain() {
+        do {
+            ByteBuffer frame;
+            while ((frame = frames.poll()) != null) {
+                final var size = frame.remaining();
+                try {
+                    sender.accept(frame);
+                } catch (final RuntimeException e) {
+                    log.debug("Failed to send queued frame: {}", e.toString());
+                }
+                if (pendingBytes.addAndGet(-size) <= maxBytes / 2) {
+                    runDrainedCallbacks();
+                }
+            }
+            draining.set(false);
+            // A frame added after the last poll found the flag still set, so it is sent by this task
+        } while (!frames.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private void runDrainedCallbacks() {
+        final List<Runnable> callbacks;
+        synchronized (drainedCallbacks) {
+            if (drainedCallbacks.isEmpty()) {
+                return;
+            }
+            callbacks = new ArrayList<>(drainedCallbacks);
+            drainedCallbacks.clear();
+        }
+        for (final var callback : callbacks) {
+            try {
+                callback.run();
+            } catch (final RuntimeException e) {
+                log.debug("Drained callback failed: {}", e.toString());
+            }
+        }
+    }
+}
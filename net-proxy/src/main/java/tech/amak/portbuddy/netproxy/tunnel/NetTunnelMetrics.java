@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.netproxy.tunnel;
+
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import tech.amak.portbuddy.common.tunnel.TrafficCounters;
+import tech.amak.portbuddy.common.tunnel.TrafficRanking;
+
+/**
+ * Publishes the data plane of the TCP and UDP tunnels of this instance: frames and bytes exchanged with the
+ * clients per protocol, open connections, buffered outbound bytes and failures. Everything is aggregated over
+ * all tunnels, except the throughput of the {@link #TOP_TUNNELS} busiest tunnels of the last interval, so the
+ * number of series stays bounded however many tunnels are exposed.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NetTunnelMetrics implements MeterBinder {
+
+    /**
+     * Number of tunnels whose throughput is published with their id as a tag.
+     */
+    static final int TOP_TUNNELS = 10;
+
+    private static final long REFRESH_SECONDS = 30;
+
+    private final NetTunnelRegistry registry;
+    private final TrafficRanking<String> ranking = new TrafficRanking<>(TOP_TUNNELS);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final var thread = new Thread(runnable, "net-tunnel-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile MultiGauge topTunnels;
+
+    @Override
+    public void bindTo(final MeterRegistry meterRegistry) {
+        bindTraffic(meterRegistry, "tcp", registry.tcpTraffic);
+        bindTraffic(meterRegistry, "udp", registry.udpTraffic);
+        Gauge.builder("portbuddy.net.tunnels", registry, reg -> reg.byTunnelId.size())
+            .description("Tunnels registered on this instance")
+            .register(meterRegistry);
+        Gauge.builder("portbuddy.net.tcp.connections", registry, sum(tunnel -> tunnel.getConnections().size()))
+            .description("Public TCP connections of all tunnels")
+            .register(meterRegistry);
+        Gauge.builder("portbuddy.net.udp.peers", registry,
+                sum(tunnel -> tunnel.getUdpRemotes().size() + tunnel.getUdpStreams().size()))
+            .description("Recently active public UDP peers of all tunnels")
+            .register(meterRegistry);
+        Gauge.builder("portbuddy.net.send.buffer", registry, sum(NetTunnelMetrics::bufferSize))
+            .description("Bytes queued for sending to tunnel clients")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        FunctionCounter.builder("portbuddy.net.open.timeouts", registry.openTimeouts, Number::doubleValue)
+            .description("Public TCP connections closed because the client did not open them in time")
+            .register(meterRegistry);
+        FunctionCounter.builder("portbuddy.net.send.failures", registry.sendFailures, Number::doubleValue)
+            .description("Frames that could not be sent to tunnel clients")
+            .register(meterRegistry);
+        topTunnels = MultiGauge.builder("portbuddy.net.top.throughput")
+            .description("Bytes per second relayed by the busiest tunnels over the last interval")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refreshTopTunnels();
+            } catch (final Exception e) {
+                log.warn("Failed to refresh the busiest tunnels: {}", e.toString());
+            }
+        }, 0, REFRESH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Ranks the tunnels by their traffic since the previous run and publishes the busiest ones, replacing
+     * the previous set.
+     */
+    void refreshTopTunnels() {
+        final var gauge = topTunnels;
+        if (gauge == null) {
+            return;
+        }
+        final var tunnels = new HashMap<String, TrafficCounters>();
+        for (final var tunnel : registry.byTunnelId.values()) {
+            tunnels.put(tunnel.getTunnelId().toString(), tunnel.getTraffic());
+        }
+        gauge.register(ranking.rank(tunnels, System.nanoTime()).stream()
+            .map(ranked -> MultiGauge.Row.of(Tags.of("tunnel", ranked.key()), ranked.bytesPerSecond()))
+            .toList(), true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static void bindTraffic(final MeterRegistry meterRegistry,
+                                    final String protocol,
+                                    final TrafficCounters traffic) {
+        FunctionCounter.builder("portbuddy.net.frames", traffic, TrafficCounters::framesReceived)
+            .description("WebSocket frames exchanged with tunnel clients")
+            .tags("protocol", protocol, "direction", "received")
+            .register(meterRegistry);
+        FunctionCounter.builder("portbuddy.net.frames", traffic, TrafficCounters::framesSent)
+            .description("WebSocket frames exchanged with tunnel clients")
+            .tags("protocol", protocol, "direction", "sent")
+            .register(meterRegistry);
+        FunctionCounter.builder("portbuddy.net.bytes", traffic, TrafficCounters::bytesReceived)
+            .description("Payload bytes exchanged with tunnel clients")
+            .tags("protocol", protocol, "direction", "received")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        FunctionCounter.builder("portbuddy.net.bytes", traffic, TrafficCounters::bytesSent)
+            .description("Payload bytes exchanged with tunnel clients")
+            .tags("protocol", protocol, "direction", "sent")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    private static double bufferSize(final NetTunnelRegistry.Tunnel tunnel) {
+        final var queue = tunnel.getSendQueue();
+        final var queued = queue != null ? queue.pendingBytes() : 0;
+        return tunnel.getSession() instanceof ConcurrentWebSocketSessionDecorator decorator
+            ? queued + decorator.getBufferSize()
+            : queued;
+    }
+
+    private static ToDoubleFunction<NetTunnelRegistry> sum(
+        final ToDoubleFunction<NetTunnelRegistry.Tunnel> metric) {
+        return registry -> registry.byTunnelId.values().stream()
+            .mapToDouble(metric)
+            .sum();
+    }
+}
@@ -18,16 +18,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PushbackInputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
@@ -36,6 +41,8 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.BinaryMessage;
@@ -50,6 +57,10 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import tech.amak.portbuddy.common.TunnelType;
 import tech.amak.portbuddy.common.tunnel.BinaryWsFrame;
+import tech.amak.portbuddy.common.tunnel.DatagramBatch;
+import tech.amak.portbuddy.common.tunnel.DatagramRelay;
+import tech.amak.portbuddy.common.tunnel.TrafficCounters;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
 import tech.amak.portbuddy.common.tunnel.WsTunnelMessage;
 import tech.amak.portbuddy.netproxy.config.AppProperties;
 
@@ -59,6 +70,8 @@ public class NetTunnelRegistry {
 
     private static final int MIN_PORT = 10000;
     private static final int MAX_PORT = 65535;
+    private static final int PUMP_CHUNK_SIZE = 8192;
+    private static final int MAX_DATAGRAMS_PER_DRAIN = 64;
 
     private static final byte[][] HTTP_METHODS_BYTES = {
         "GET ".getBytes(), "POST ".getBytes(), "PUT ".getBytes(), "DELETE ".getBytes(),
@@ -70,6 +83,22 @@ public class NetTunnelRegistry {
      */
     final Map<UUID, Tunnel> byTunnelId = new ConcurrentHashMap<>();
 
+    /**
+     * Traffic of all TCP tunnels and of all UDP tunnels, including closed ones.
+     */
+    final TrafficCounters tcpTraffic = new TrafficCounters();
+    final TrafficCounters udpTraffic = new TrafficCounters();
+
+    /**
+     * Public TCP connections closed because the client did not confirm them in time.
+     */
+    final LongAdder openTimeouts = new LongAdder();
+
+    /**
+     * Frames that could not be sent to a client, e.g. because its session buffer was full.
+     */
+    final LongAdder sendFailures = new LongAdder();
+
     /**
      * Map of session ID to tunnel ID for fast lookup during detachment.
      */
@@ -90,6 +119,11 @@ public class NetTunnelRegistry {
      */
     private static final long ORPHAN_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
 
+    /**
+     * Protocol features this proxy accepts from clients (see {@link TunnelFeatures}).
+     */
+    public static final Set<String> SUPPORTED_FEATURES = Set.of(TunnelFeatures.STREAM_ID, TunnelFeatures.UDP_BATCH);
+
     /**
      * Jackson object mapper.
      */
@@ -100,6 +134,27 @@ public class NetTunnelRegistry {
      */
     private final AppProperties properties;
 
+    /**
+     * Socket options of tunnels exposed without overrides.
+     */
+    private final TcpOptions defaultTcpOptions;
+
+    /**
+     * Largest socket buffer size a client may ask for.
+     */
+    private final int maxTcpBufferSize;
+
+    /**
+     * Engine serving public TCP connections if {@code app.tcp.engine=nio}, otherwise {@code null} and
+     * connections are served by blocking sockets on virtual threads.
+     */
+    private final NioTcpEngine nioEngine;
+
+    /**
+     * Receives the datagrams of all UDP tunnels; started with the first UDP tunnel.
+     */
+    private DatagramRelay<Tunnel> udpRelay;
+
     /**
      * Constructor for NetTunnelRegistry.
      *
@@ -109,9 +164,26 @@ public class NetTunnelRegistry {
     public NetTunnelRegistry(final ObjectMapper mapper, final AppProperties properties) {
         this.mapper = mapper;
         this.properties = properties;
+        final var tcp = properties.tcp() != null ? properties.tcp() : AppProperties.Tcp.defaults();
+        this.defaultTcpOptions = TcpOptions.from(tcp);
+        this.maxTcpBufferSize = (int) Math.min(tcp.maxBufferSize().toBytes(), Integer.MAX_VALUE);
+        this.nioEngine = tcp.engine() == AppProperties.Tcp.Engine.NIO ? createNioEngine(tcp) : null;
         this.scheduler.scheduleAtFixedRate(this::cleanupOrphanedTunnels, 1, 1, TimeUnit.MINUTES);
     }
 
+    private NioTcpEngine createNioEngine(final AppProperties.Tcp tcp) {
+        try {
+            return new NioTcpEngine(new NioListener(),
+                tcp.selectorThreads(),
+                (int) tcp.readBufferSize().toBytes(),
+                tcp.maxPendingWrite().toBytes(),
+                properties.webSocket().sendTimeLimit(),
+                properties.webSocket().sessionIdleTimeout());
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to start the NIO TCP engine", e);
+        }
+    }
+
     /**
      * Shuts down the executor services when the component is destroyed.
      */
@@ -135,6 +207,14 @@ public class NetTunnelRegistry {
         for (final var tunnelId : byTunnelId.keySet()) {
             closeTunnel(tunnelId);
         }
+        if (nioEngine != null) {
+            nioEngine.close();
+        }
+        synchronized (this) {
+            if (udpRelay != null) {
+                udpRelay.close();
+            }
+        }
     }
 
     /**
@@ -160,7 +240,7 @@ public class NetTunnelRegistry {
 
             final var age = now - tunnel.createdAt;
             final var udpInactiveTime = now - tunnel.lastUdpActivity;
-            final var isUdpTunnel = tunnel.udpSocket != null;
+            final var isUdpTunnel = tunnel.udpChannel != null;
 
             if (age > ORPHAN_TIMEOUT_MS) {
                 log.warn("Cleaning up orphaned tunnel {} (no session or closed for {}ms)",
@@ -182,7 +262,7 @@ public class NetTunnelRegistry {
     private void closeTunnelUsingPort(final int port) {
         for (final var tunnel : byTunnelId.values()) {
             final var tcpPort = tunnel.serverSocket != null ? tunnel.serverSocket.getLocalPort() : -1;
-            final var udpPort = tunnel.udpSocket != null ? tunnel.udpSocket.getLocalPort() : -1;
+            final var udpPort = tunnel.udpChannel != null ? tunnel.udpChannel.socket().getLocalPort() : -1;
 
             if (tcpPort == port || udpPort == port) {
                 log.info("Closing existing tunnel {} using port {}", tunnel.tunnelId, port);
@@ -202,6 +282,48 @@ public class NetTunnelRegistry {
      */
     public ExposedPort expose(final UUID tunnelId, final TunnelType tunnelType, final int desiredPort)
         throws IOException {
+        return expose(tunnelId, tunnelType, desiredPort, null);
+    }
+
+    /**
+     * Returns the configured socket options of public TCP connections with per-tunnel overrides applied.
+     * Buffer sizes come from the client, so they are checked here rather than failing every accepted
+     * connection later, and clamped to the configured maximum.
+     *
+     * @param noDelay           TCP_NODELAY, or {@code null} for the configured default
+     * @param sendBufferSize    SO_SNDBUF in bytes, or {@code null} for the configured default
+     * @param receiveBufferSize SO_RCVBUF in bytes, or {@code null} for the configured default
+     * @return options to pass to {@link #expose(UUID, TunnelType, int, TcpOptions)}
+     * @throws IllegalArgumentException if a buffer size is not positive
+     */
+    public TcpOptions tcpOptions(final Boolean noDelay, final Integer sendBufferSize, final Integer receiveBufferSize) {
+        return defaultTcpOptions.withOverrides(noDelay, bufferSize("sendBufferSize", sendBufferSize),
+            bufferSize("receiveBufferSize", receiveBufferSize));
+    }
+
+    private Integer bufferSize(final String name, final Integer size) {
+        if (size == null) {
+            return null;
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException(name + " must be positive");
+        }
+        return Math.min(size, maxTcpBufferSize);
+    }
+
+    /**
+     * Exposes a network tunnel with per-tunnel socket options for its public TCP connections.
+     *
+     * @param tunnelId   tunnel identifier
+     * @param tunnelType tunnelType string ("tcp" or "udp")
+     * @param tcpOptions socket options of public TCP connections, or {@code null} for the configured defaults
+     * @return exposed public port info
+     * @throws IOException on IO errors
+     */
+    public ExposedPort expose(final UUID tunnelId,
+                              final TunnelType tunnelType,
+                              final int desiredPort,
+                              final TcpOptions tcpOptions) throws IOException {
         if (desiredPort <= MIN_PORT) {
             throw new IllegalArgumentException("desiredPort must be greater than " + MIN_PORT);
         }
@@ -210,7 +332,7 @@ public class NetTunnelRegistry {
         }
         return switch (tunnelType) {
             case UDP -> exposeUdp(tunnelId, desiredPort);
-            case TCP -> exposeTcp(tunnelId, desiredPort);
+            case TCP -> exposeTcp(tunnelId, desiredPort, tcpOptions != null ? tcpOptions : defaultTcpOptions);
             default -> throw new IllegalArgumentException("Unsupported tunnel type: " + tunnelType);
         };
     }
@@ -218,36 +340,61 @@ public class NetTunnelRegistry {
     /**
      * Expose TCP.
      */
-    private ExposedPort exposeTcp(final UUID tunnelId, final Integer desiredPort) throws IOException {
+    private ExposedPort exposeTcp(final UUID tunnelId, final Integer desiredPort, final TcpOptions tcpOptions)
+        throws IOException {
         final var tunnel = byTunnelId.computeIfAbsent(tunnelId, Tunnel::new);
         synchronized (tunnel) {
             if (byTunnelId.get(tunnelId) != tunnel) {
                 // The tunnel was replaced or removed; retry.
-                return exposeTcp(tunnelId, desiredPort);
+                return exposeTcp(tunnelId, desiredPort, tcpOptions);
             }
+            tunnel.tcpOptions = tcpOptions;
             if (tunnel.serverSocket != null && !tunnel.serverSocket.isClosed()) {
                 return new ExposedPort(tunnel.serverSocket.getLocalPort());
             }
+            tunnel.traffic = new TrafficCounters(tcpTraffic);
             try {
-                tunnel.serverSocket = new ServerSocket(desiredPort);
+                tunnel.serverSocket = bindTcp(desiredPort);
                 log.info("New Tunnel {} using port {}", tunnel.tunnelId, desiredPort);
             } catch (final IOException bindEx) {
                 log.info("TCP port {} is busy. Trying to close existing tunnel and retry.", desiredPort);
                 closeTunnelUsingPort(desiredPort);
                 try {
-                    tunnel.serverSocket = new ServerSocket(desiredPort);
+                    tunnel.serverSocket = bindTcp(desiredPort);
                 } catch (final IOException secondBindEx) {
                     log.error("TCP port {} is still busy.", desiredPort);
                     throw secondBindEx;
                 }
             }
-            tunnel.acceptLoopFuture = ioPool.submit(() -> acceptLoop(tunnel));
+            if (nioEngine != null) {
+                nioEngine.listen(tunnel, tunnel.serverSocket.getChannel());
+            } else {
+                tunnel.acceptLoopFuture = ioPool.submit(() -> acceptLoop(tunnel));
+            }
             return new ExposedPort(tunnel.serverSocket.getLocalPort());
         }
     }
 
     /**
-     * Expose UDP by binding a datagram socket and starting a receive loop that forwards
+     * Binds the public TCP port, as a server channel when the NIO engine is active. The channel is kept
+     * through its socket adaptor, so closing the tunnel closes it the same way for both engines.
+     */
+    private ServerSocket bindTcp(final int port) throws IOException {
+        if (nioEngine == null) {
+            return new ServerSocket(port);
+        }
+        final var channel = ServerSocketChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(port));
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel.socket();
+    }
+
+    /**
+     * Expose UDP by binding a datagram channel and registering it with the relay that forwards
      * datagrams over the control WebSocket using binary frames.
      */
     private ExposedPort exposeUdp(final UUID tunnelId, final int desiredPort) throws IOException {
@@ -258,28 +405,45 @@ public class NetTunnelRegistry {
                 // The tunnel was replaced or removed; retry.
                 return exposeUdp(tunnelId, desiredPort);
             }
-            if (tunnel.udpSocket != null && !tunnel.udpSocket.isClosed()) {
-                return new ExposedPort(tunnel.udpSocket.getLocalPort());
+            if (tunnel.udpChannel != null && tunnel.udpChannel.isOpen()) {
+                return new ExposedPort(tunnel.udpChannel.socket().getLocalPort());
             }
-            final DatagramSocket socket;
-            DatagramSocket sock;
+            DatagramChannel channel;
             try {
-                sock = new DatagramSocket(desiredPort);
+                channel = bindUdp(desiredPort);
             } catch (final IOException bindEx) {
                 log.info("UDP port {} is busy. Trying to close existing tunnel and retry.", desiredPort);
                 closeTunnelUsingPort(desiredPort);
                 try {
-                    sock = new DatagramSocket(desiredPort);
+                    channel = bindUdp(desiredPort);
                 } catch (final IOException secondBindEx) {
                     log.error("UDP port {} is still busy.", desiredPort);
                     throw secondBindEx;
                 }
             }
-            socket = sock;
-            tunnel.udpSocket = socket;
-            tunnel.udpReceiveLoopFuture = ioPool.submit(() -> udpReceiveLoop(tunnel));
-            return new ExposedPort(socket.getLocalPort());
+            tunnel.traffic = new TrafficCounters(udpTraffic);
+            tunnel.udpChannel = channel;
+            udpRelay().register(channel, tunnel);
+            return new ExposedPort(channel.socket().getLocalPort());
+        }
+    }
+
+    private static DatagramChannel bindUdp(final int port) throws IOException {
+        final var channel = DatagramChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(port));
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    private synchronized DatagramRelay<Tunnel> udpRelay() throws IOException {
+        if (udpRelay == null) {
+            udpRelay = new DatagramRelay<>("net-udp-relay", MAX_DATAGRAMS_PER_DRAIN, new UdpHandler());
         }
+        return udpRelay;
     }
 
     /**
@@ -289,11 +453,36 @@ public class NetTunnelRegistry {
      * @param session  websocket session.
      */
     public void attachSession(final UUID tunnelId, final WebSocketSession session) {
+        attachSession(tunnelId, session, negotiateFeatures(session));
+    }
+
+    /**
+     * Returns the features of {@link #SUPPORTED_FEATURES} the client advertised in its handshake request.
+     *
+     * @param session websocket session
+     * @return the features to use on the session
+     */
+    public Set<String> negotiateFeatures(final WebSocketSession session) {
+        final var handshakeHeaders = session.getHandshakeHeaders();
+        return handshakeHeaders != null
+            ? TunnelFeatures.negotiate(handshakeHeaders.getFirst(TunnelFeatures.HEADER), SUPPORTED_FEATURES)
+            : Set.of();
+    }
+
+    /**
+     * Attach session to tunnel, using the given features from now on. The client has to be told about them
+     * before, as it keeps plain frames until then.
+     *
+     * @param tunnelId tunnel id.
+     * @param session  websocket session.
+     * @param features features from {@link #negotiateFeatures}.
+     */
+    public void attachSession(final UUID tunnelId, final WebSocketSession session, final Set<String> features) {
         final var tunnel = byTunnelId.computeIfAbsent(tunnelId, Tunnel::new);
         synchronized (tunnel) {
             if (byTunnelId.get(tunnelId) != tunnel) {
                 // The tunnel was replaced or removed; retry.
-                attachSession(tunnelId, session);
+                attachSession(tunnelId, session, features);
                 return;
             }
             final var ws = properties.webSocket();
@@ -302,6 +491,10 @@ public class NetTunnelRegistry {
                 (int) ws.sendTimeLimit().toMillis(),
                 (int) ws.sendBufferSizeLimit().toBytes()
             );
+            tunnel.sendQueue = new ClientSendQueue(ioPool, ws.sendBufferSizeLimit().toBytes(),
+                frame -> sendFrameToClient(tunnel, frame));
+            tunnel.streamIds = features.contains(TunnelFeatures.STREAM_ID);
+            tunnel.udpBatch = tunnel.streamIds && features.contains(TunnelFeatures.UDP_BATCH);
             sessionToTunnelId.put(session.getId(), tunnelId);
         }
     }
@@ -334,7 +527,7 @@ public class NetTunnelRegistry {
     /**
      * Closes and removes the entire tunnel identified by the given tunnelId.
      * This will immediately close the TCP ServerSocket (if any), all accepted TCP
-     * connections, and the UDP DatagramSocket (if any). Any associated WebSocket
+     * connections, and the UDP DatagramChannel (if any). Any associated WebSocket
      * session reference is cleared. The tunnel entry is removed from the registry.
      *
      * @param tunnelId identifier of the tunnel to close
@@ -350,10 +543,6 @@ public class NetTunnelRegistry {
                 tunnel.acceptLoopFuture.cancel(true);
                 tunnel.acceptLoopFuture = null;
             }
-            if (tunnel.udpReceiveLoopFuture != null) {
-                tunnel.udpReceiveLoopFuture.cancel(true);
-                tunnel.udpReceiveLoopFuture = null;
-            }
             // Close TCP acceptor first so accept loops break
             final var server = tunnel.serverSocket;
             if (server != null) {
@@ -369,17 +558,19 @@ public class NetTunnelRegistry {
                 connection.close();
             }
             tunnel.connections.clear();
+            tunnel.streams.clear();
             // Close UDP socket
-            final var udp = tunnel.udpSocket;
+            final var udp = tunnel.udpChannel;
             if (udp != null) {
                 try {
                     udp.close();
                 } catch (final Exception e) {
-                    log.debug("Failed to close DatagramSocket: {}", e.toString());
+                    log.debug("Failed to close DatagramChannel: {}", e.toString());
                 }
-                tunnel.udpSocket = null;
+                tunnel.udpChannel = null;
             }
             tunnel.udpRemotes.clear();
+            tunnel.clearUdpStreams();
             final var session = tunnel.session;
             if (session != null) {
                 sessionToTunnelId.remove(session.getId());
@@ -425,26 +616,20 @@ public class NetTunnelRegistry {
         String connId = null;
         try {
             socket.setSoTimeout(30000); // 30s timeout for initial handshake
+            tunnel.tcpOptions.apply(socket);
             connId = UUID.randomUUID().toString();
             final var pushbackIn = new PushbackInputStream(socket.getInputStream(), 16);
-            final var connection = new Connection(connId, socket, pushbackIn);
+            final var streamId = tunnel.streamIds ? tunnel.nextStreamId() : null;
+            final var connection = new Connection(connId, streamId, socket, pushbackIn);
             tunnel.connections.put(connId, connection);
+            if (streamId != null) {
+                tunnel.streams.put(streamId, connection);
+            }
 
-            if (!sendOpen(tunnel, connId)) {
+            if (!sendOpen(tunnel, connId, streamId)) {
                 throw new IOException("Failed to send OPEN message to client");
             }
-
-            // Start a task to cleanup this connection if it's not opened within a reasonable time
-            final var finalConnId = connId;
-            final var cleanupTask = scheduler.schedule(() -> {
-                final var conn = tunnel.connections.get(finalConnId);
-                if (conn != null && !conn.pumpStarted) {
-                    log.warn("Connection {} for tunnel {} was not opened by client within 60s. Closing.",
-                        finalConnId, tunnel.tunnelId);
-                    onClientClose(tunnel.tunnelId, finalConnId);
-                }
-            }, 60, TimeUnit.SECONDS);
-            connection.setCleanupTask(cleanupTask);
+            scheduleOpenTimeout(tunnel, connection);
         } catch (final Exception e) {
             log.error("Failed to handle new connection for tunnel {}: {}", tunnel.tunnelId, e.toString());
             if (connId != null) {
@@ -459,37 +644,93 @@ public class NetTunnelRegistry {
         }
     }
 
+    /**
+     * NIO counterpart of {@link #handleNewConnection}: registers the accepted channel with the engine and
+     * sends OPEN. Reading starts once the client confirms with OPEN_OK.
+     *
+     * @param tunnel  the tunnel associated with the connection
+     * @param channel the newly accepted channel
+     */
+    private void handleNewChannel(final Tunnel tunnel, final SocketChannel channel) {
+        if (tunnel.session == null || !tunnel.session.isOpen()) {
+            try {
+                channel.close();
+            } catch (final IOException ignore) {
+                // ignore
+            }
+            return;
+        }
+        String connId = null;
+        try {
+            tunnel.tcpOptions.apply(channel.socket());
+            connId = UUID.randomUUID().toString();
+            final var streamId = tunnel.streamIds ? tunnel.nextStreamId() : null;
+            final var connection = new Connection(connId, streamId, channel);
+            nioEngine.register(tunnel, connection);
+            tunnel.connections.put(connId, connection);
+            if (streamId != null) {
+                tunnel.streams.put(streamId, connection);
+            }
+            if (!sendOpen(tunnel, connId, streamId)) {
+                throw new IOException("Failed to send OPEN message to client");
+            }
+            scheduleOpenTimeout(tunnel, connection);
+        } catch (final Exception e) {
+            log.error("Failed to handle new connection for tunnel {}: {}", tunnel.tunnelId, e.toString());
+            if (connId != null) {
+                onClientClose(tunnel.tunnelId, connId);
+            }
+            try {
+                channel.close();
+            } catch (final IOException ignore) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Starts a task to clean up the connection if it's not opened by the client within a reasonable time.
+     */
+    private void scheduleOpenTimeout(final Tunnel tunnel, final Connection connection) {
+        final var connId = connection.connectionId;
+        final var cleanupTask = scheduler.schedule(() -> {
+            final var conn = tunnel.connections.get(connId);
+            if (conn != null && !conn.pumpStarted) {
+                log.warn("Connection {} for tunnel {} was not opened by client within 60s. Closing.",
+                    connId, tunnel.tunnelId);
+                openTimeouts.increment();
+                onClientClose(tunnel.tunnelId, connId);
+            }
+        }, 60, TimeUnit.SECONDS);
+        connection.setCleanupTask(cleanupTask);
+    }
+
     private void pumpFromPublic(final Tunnel tunnel, final Connection connection) {
-        final var buffer = new byte[8192];
         try {
             connection.socket.setSoTimeout((int) properties.webSocket().sessionIdleTimeout().toMillis());
             // Peek at initial bytes to detect HTTP requests
             final var peekBuffer = new byte[16];
             final var bytesRead = connection.in.read(peekBuffer);
             if (bytesRead != -1) {
-                for (final var methodBytes : HTTP_METHODS_BYTES) {
-                    if (startsWith(peekBuffer, bytesRead, methodBytes)) {
-                        log.warn("Blocking HTTP request on TCP tunnel {}: {}",
-                            tunnel.tunnelId, new String(peekBuffer, 0, bytesRead).trim());
-                        final var closeMsg = new WsTunnelMessage();
-                        closeMsg.setWsType(WsTunnelMessage.Type.CLOSE);
-                        closeMsg.setConnectionId(connection.connectionId);
-                        sendToClient(tunnel, closeMsg);
-                        return;
-                    }
+                if (rejectHttp(tunnel, connection, peekBuffer, bytesRead)) {
+                    return;
                 }
                 // If not HTTP, send the peeked bytes and continue
-                if (!sendBinaryToClient(tunnel, connection.connectionId, peekBuffer, 0, bytesRead)) {
+                if (!sendBinaryToClient(tunnel, connection.frameHeader, peekBuffer, 0, bytesRead)) {
                     return;
                 }
             }
 
             while (!Thread.currentThread().isInterrupted()) {
-                final var next = connection.in.read(buffer);
+                // Read straight into a frame buffer behind the connection header, so the payload is never copied.
+                // The buffer is not reused: the session decorator may still hold it after sendMessage returns.
+                final var frame = BinaryWsFrame.allocate(connection.frameHeader, PUMP_CHUNK_SIZE);
+                final var next = connection.in.read(frame.array(), frame.position(), frame.remaining());
                 if (next == -1) {
                     break;
                 }
-                if (!sendBinaryToClient(tunnel, connection.connectionId, buffer, 0, next)) {
+                frame.position(frame.position() + next).flip();
+                if (!sendFrameToClient(tunnel, frame)) {
                     break;
                 }
             }
@@ -506,6 +747,59 @@ public class NetTunnelRegistry {
         }
     }
 
+    /**
+     * Forwards data read by the NIO engine, checking the first read for an HTTP request like
+     * {@link #pumpFromPublic} does. The data is copied once, into a frame sized to fit, and handed to the
+     * tunnel's send queue, so the selector thread never waits for the client.
+     *
+     * @return {@code false} if the connection should be closed
+     */
+    private boolean forwardFromPublic(final Tunnel tunnel, final Connection connection, final ByteBuffer data) {
+        if (!connection.peeked) {
+            connection.peeked = true;
+            final var peekBuffer = new byte[Math.min(16, data.remaining())];
+            data.get(data.position(), peekBuffer);
+            if (rejectHttp(tunnel, connection, peekBuffer, peekBuffer.length)) {
+                return false;
+            }
+        }
+        final var queue = tunnel.sendQueue;
+        if (queue == null || tunnel.session == null || !tunnel.session.isOpen()) {
+            return false;
+        }
+        final var frame = BinaryWsFrame.allocate(connection.frameHeader, data.remaining());
+        frame.put(data).flip();
+        if (queue.add(frame)) {
+            // The client is not keeping up: stop reading from this connection until the queue drained
+            nioEngine.pauseReading(connection);
+            queue.whenDrained(() -> nioEngine.startReading(connection));
+        }
+        return true;
+    }
+
+    /**
+     * Tells the client to close the connection if its first bytes start an HTTP request.
+     *
+     * @return {@code true} if the connection was rejected
+     */
+    private boolean rejectHttp(final Tunnel tunnel,
+                               final Connection connection,
+                               final byte[] peekBuffer,
+                               final int bytesRead) {
+        for (final var methodBytes : HTTP_METHODS_BYTES) {
+            if (startsWith(peekBuffer, bytesRead, methodBytes)) {
+                log.warn("Blocking HTTP request on TCP tunnel {}: {}",
+                    tunnel.tunnelId, new String(peekBuffer, 0, bytesRead).trim());
+                final var closeMsg = new WsTunnelMessage();
+                closeMsg.setWsType(WsTunnelMessage.Type.CLOSE);
+                closeMsg.setConnectionId(connection.connectionId);
+                sendToClient(tunnel, closeMsg);
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean startsWith(final byte[] buffer, final int bytesRead, final byte[] prefix) {
         if (prefix.length > bytesRead) {
             return false;
@@ -518,21 +812,55 @@ public class NetTunnelRegistry {
         return true;
     }
 
-    private void udpReceiveLoop(final Tunnel tunnel) {
-        final var buffer = new byte[8192];
-        try {
-            while (tunnel.udpSocket != null && !tunnel.udpSocket.isClosed()
-                   && !Thread.currentThread().isInterrupted()) {
-                final var packet = new DatagramPacket(buffer, buffer.length);
-                tunnel.udpSocket.receive(packet);
-                tunnel.lastUdpActivity = System.currentTimeMillis();
-                final var remote = new InetSocketAddress(packet.getAddress(), packet.getPort());
-                final var connectionId = remote.getHostString() + ":" + remote.getPort();
-                tunnel.udpRemotes.put(connectionId, remote);
-                sendBinaryToClient(tunnel, connectionId, packet.getData(), packet.getOffset(), packet.getLength());
+    /**
+     * Forwards a datagram received on the public UDP port. In batch mode it is appended to the tunnel's
+     * pending frame, which is sent once the relay drained all ready datagrams or the frame is full.
+     */
+    private void forwardDatagram(final Tunnel tunnel, final InetSocketAddress remote, final ByteBuffer datagram) {
+        tunnel.lastUdpActivity = System.currentTimeMillis();
+        if (tunnel.udpBatch) {
+            final var streamId = tunnel.udpStream(remote).streamId();
+            if (tunnel.udpFrame == null) {
+                tunnel.udpFrame = ByteBuffer.allocate(DatagramBatch.MAX_FRAME_BYTES);
             }
-        } catch (final Exception e) {
-            log.info("UDP receive loop ended for tunnel {}: {}", tunnel.tunnelId, e.toString());
+            if (!DatagramBatch.append(tunnel.udpFrame, streamId, datagram)) {
+                flushDatagrams(tunnel);
+                DatagramBatch.append(tunnel.udpFrame, streamId, datagram);
+            }
+            return;
+        }
+        final byte[] frameHeader;
+        if (tunnel.streamIds) {
+            frameHeader = tunnel.udpStream(remote).frameHeader();
+        } else {
+            final var connectionId = remote.getHostString() + ":" + remote.getPort();
+            tunnel.udpRemotes.put(connectionId, remote);
+            frameHeader = BinaryWsFrame.encodeHeader(connectionId);
+        }
+        final var frame = BinaryWsFrame.allocate(frameHeader, datagram.remaining());
+        queueDatagrams(tunnel, frame.put(datagram).flip());
+    }
+
+    private void flushDatagrams(final Tunnel tunnel) {
+        final var pending = tunnel.udpFrame;
+        if (pending == null || pending.position() == 0) {
+            return;
+        }
+        // The session decorator may hold the frame after sendMessage returns, so it gets its own array
+        final var frame = new byte[pending.position()];
+        pending.flip().get(frame);
+        pending.clear();
+        queueDatagrams(tunnel, ByteBuffer.wrap(frame));
+    }
+
+    /**
+     * Hands a frame of datagrams to the tunnel's send queue, so the relay thread shared by all UDP tunnels never
+     * waits for a client. A frame that does not fit is dropped, as datagrams may be.
+     */
+    private void queueDatagrams(final Tunnel tunnel, final ByteBuffer frame) {
+        final var queue = tunnel.sendQueue;
+        if (queue != null && !queue.offer(frame)) {
+            sendFailures.increment();
         }
     }
 
@@ -561,7 +889,11 @@ public class NetTunnelRegistry {
                 return;
             }
             connection.pumpStarted = true;
-            connection.pumpFuture = ioPool.submit(() -> pumpFromPublic(tunnel, connection));
+            if (connection.endpoint != null) {
+                nioEngine.startReading(connection);
+            } else {
+                connection.pumpFuture = ioPool.submit(() -> pumpFromPublic(tunnel, connection));
+            }
         }
     }
 
@@ -574,63 +906,126 @@ public class NetTunnelRegistry {
         if (tunnel == null) {
             return;
         }
-        final var connection = tunnel.connections.get(connectionId);
-        if (connection == null) {
+        final var data = Base64.getDecoder().decode(dataB64);
+        tunnel.traffic.received(data.length);
+        writeToPublic(tunnel, tunnel.connections.get(connectionId), ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Handles incoming binary WebSocket frames from the client. Data is routed directly
+     * to the corresponding public TCP socket without base64 encoding.
+     *
+     * @param tunnelId     the tunnel the frame was received on
+     * @param connectionId the connection the frame belongs to
+     * @param payload      the payload; only read during this call, so it may be a slice of the received frame
+     */
+    public void onClientBinaryBytes(final UUID tunnelId, final String connectionId, final ByteBuffer payload) {
+        final var tunnel = byTunnelId.get(tunnelId);
+        if (tunnel == null) {
             return;
         }
-        final var out = connection.out;
-        if (out == null) {
+        tunnel.traffic.received(payload.remaining());
+        // If UDP is active on this tunnel, route as a datagram
+        if (tunnel.udpChannel != null) {
+            sendDatagram(tunnel, tunnel.udpRemotes.get(connectionId), payload);
             return;
         }
-        try {
-            out.write(Base64.getDecoder().decode(dataB64));
-            out.flush();
-        } catch (final IOException e) {
-            log.debug("Failed to write to public socket: {}", e.toString());
-            onClientClose(tunnelId, connectionId);
+        // Else assume TCP
+        writeToPublic(tunnel, tunnel.connections.get(connectionId), payload);
+    }
+
+    /**
+     * Handles incoming binary WebSocket frames of a tunnel in stream-id mode
+     * (see {@link TunnelFeatures#STREAM_ID}).
+     *
+     * @param tunnelId the tunnel the frame was received on
+     * @param streamId the stream id assigned at OPEN, or to the remote peer for UDP
+     * @param payload  the payload; only read during this call, so it may be a slice of the received frame
+     */
+    public void onClientStreamBytes(final UUID tunnelId, final int streamId, final ByteBuffer payload) {
+        final var tunnel = byTunnelId.get(tunnelId);
+        if (tunnel == null) {
+            return;
+        }
+        if (tunnel.udpChannel != null) {
+            final var stream = tunnel.udpStreams.get(streamId);
+            sendDatagram(tunnel, stream != null ? stream.remote() : null, payload);
+            return;
         }
+        writeToPublic(tunnel, tunnel.streams.get(streamId), payload);
     }
 
     /**
-     * Handles incoming binary WebSocket frames from the client. Data is routed directly
-     * to the corresponding public TCP socket without base64 encoding.
+     * Handles incoming binary WebSocket frames of a tunnel in stream-id mode, including datagram batches
+     * (see {@link TunnelFeatures#UDP_BATCH}).
+     *
+     * @param tunnelId the tunnel the frame was received on
+     * @param frame    the received frame; only read during this call
      */
-    public void onClientBinaryBytes(final UUID tunnelId, final String connectionId, final byte[] data) {
+    public void onClientStreamFrame(final UUID tunnelId, final ByteBuffer frame) {
         final var tunnel = byTunnelId.get(tunnelId);
         if (tunnel == null) {
             return;
         }
-        // If UDP is active on this tunnel, route as a datagram
-        if (tunnel.udpSocket != null) {
-            tunnel.lastUdpActivity = System.currentTimeMillis();
-            final var remote = tunnel.udpRemotes.get(connectionId);
-            if (remote == null) {
-                return;
-            }
-            try {
-                final var packet = new DatagramPacket(data, 0, data.length, remote);
-                tunnel.udpSocket.send(packet);
-            } catch (final IOException e) {
-                log.debug("Failed to send UDP packet: {}", e.toString());
+        tunnel.traffic.received(frame.remaining());
+        if (tunnel.udpBatch && tunnel.udpChannel != null) {
+            if (!DatagramBatch.forEach(frame, (streamId, datagram) -> {
+                final var stream = tunnel.udpStreams.get(streamId);
+                sendDatagram(tunnel, stream != null ? stream.remote() : null, datagram);
+            })) {
+                log.debug("Truncated datagram batch on tunnel {}", tunnelId);
             }
             return;
         }
+        final var decoded = BinaryWsFrame.decodeStream(frame);
+        if (decoded != null) {
+            onClientStreamBytes(tunnelId, decoded.streamId(), decoded.payload());
+        }
+    }
 
-        // Else assume TCP
-        final var connection = tunnel.connections.get(connectionId);
-        if (connection == null) {
+    /**
+     * Returns whether data frames of the tunnel carry stream ids instead of connection ids.
+     *
+     * @param tunnelId the tunnel identifier
+     * @return {@code true} if the client negotiated {@link TunnelFeatures#STREAM_ID}
+     */
+    public boolean usesStreamIds(final UUID tunnelId) {
+        final var tunnel = byTunnelId.get(tunnelId);
+        return tunnel != null && tunnel.streamIds;
+    }
+
+    private void sendDatagram(final Tunnel tunnel, final InetSocketAddress remote, final ByteBuffer payload) {
+        tunnel.lastUdpActivity = System.currentTimeMillis();
+        if (remote == null) {
             return;
         }
-        final var out = connection.out;
-        if (out == null) {
+        try {
+            // Non-blocking: a datagram that does not fit the socket send buffer is dropped, as on the wire
+            tunnel.udpChannel.send(payload, remote);
+        } catch (final IOException e) {
+            log.debug("Failed to send UDP packet: {}", e.toString());
+        }
+    }
+
+    private void writeToPublic(final Tunnel tunnel, final Connection connection, final ByteBuffer payload) {
+        if (connection == null) {
             return;
         }
         try {
-            out.write(data);
+            if (connection.endpoint != null) {
+                nioEngine.write(connection.endpoint, payload);
+                return;
+            }
+            final var out = connection.out;
+            if (out == null) {
+                return;
+            }
+            final var data = toArray(payload);
+            out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
             out.flush();
         } catch (final IOException e) {
             log.debug("Failed to write to public socket: {}. Closing connection.", e.toString());
-            onClientClose(tunnel.tunnelId, connectionId);
+            onClientClose(tunnel.tunnelId, connection.connectionId);
         }
     }
 
@@ -646,21 +1041,25 @@ public class NetTunnelRegistry {
         if (tunnel == null) {
             return;
         }
-        if (tunnel.udpSocket != null) {
+        if (tunnel.udpChannel != null) {
             // Just remove mapping; no need to close the UDP socket itself
             tunnel.udpRemotes.remove(connectionId);
         } else {
             final var connection = tunnel.connections.remove(connectionId);
             if (connection != null) {
+                if (connection.streamId != null) {
+                    tunnel.streams.remove(connection.streamId, connection);
+                }
                 connection.close();
             }
         }
     }
 
-    private boolean sendOpen(final Tunnel tunnel, final String connId) {
+    private boolean sendOpen(final Tunnel tunnel, final String connId, final Integer streamId) {
         final var message = new WsTunnelMessage();
         message.setWsType(WsTunnelMessage.Type.OPEN);
         message.setConnectionId(connId);
+        message.setStreamId(streamId);
         return sendToClient(tunnel, message);
     }
 
@@ -677,23 +1076,90 @@ public class NetTunnelRegistry {
     }
 
     private boolean sendBinaryToClient(final Tunnel tunnel,
-                                       final String connectionId,
+                                       final byte[] frameHeader,
                                        final byte[] bytes,
                                        final int offset,
                                        final int length) {
+        return sendFrameToClient(tunnel, BinaryWsFrame.encode(frameHeader, bytes, offset, length));
+    }
+
+    private boolean sendFrameToClient(final Tunnel tunnel, final ByteBuffer frame) {
         try {
             if (tunnel.session != null && tunnel.session.isOpen()) {
-                final var payload = BinaryWsFrame.encodeToByteBuffer(connectionId, bytes, offset, length);
-                final var binaryMessage = new BinaryMessage(payload);
-                tunnel.session.sendMessage(binaryMessage);
+                final var size = frame.remaining();
+                tunnel.session.sendMessage(new BinaryMessage(frame));
+                tunnel.traffic.sent(size);
                 return true;
             }
         } catch (final Exception e) {
+            sendFailures.increment();
             log.debug("Failed to send binary to client: {}", e.getMessage());
         }
         return false;
     }
 
+    /**
+     * Returns the payload as an array-backed buffer, copying it only if it is direct or read-only.
+     */
+    private static ByteBuffer toArray(final ByteBuffer payload) {
+        if (payload.hasArray()) {
+            return payload;
+        }
+        final var copy = new byte[payload.remaining()];
+        payload.get(payload.position(), copy);
+        return ByteBuffer.wrap(copy);
+    }
+
+    /**
+     * Connects the NIO engine to the registry.
+     */
+    private final class NioListener implements NioTcpEngine.Listener {
+
+        @Override
+        public void onAccept(final Tunnel tunnel, final SocketChannel channel) {
+            handleNewChannel(tunnel, channel);
+        }
+
+        @Override
+        public boolean onRead(final Tunnel tunnel, final Connection connection, final ByteBuffer data) {
+            return forwardFromPublic(tunnel, connection, data);
+        }
+
+        @Override
+        public void onClose(final Tunnel tunnel, final Connection connection) {
+            onClientClose(tunnel.tunnelId, connection.connectionId);
+        }
+    }
+
+    /**
+     * Connects the UDP relay to the registry.
+     */
+    private final class UdpHandler implements DatagramRelay.Handler<Tunnel> {
+
+        private final ArrayDeque<Tunnel> pending = new ArrayDeque<>();
+
+        @Override
+        public void onDatagram(final Tunnel tunnel, final InetSocketAddress remote, final ByteBuffer datagram) {
+            forwardDatagram(tunnel, remote, datagram);
+            if (tunnel.udpBatch && !pending.contains(tunnel)) {
+                pending.add(tunnel);
+            }
+        }
+
+        @Override
+        public void flush() {
+            Tunnel tunnel;
+            while ((tunnel = pending.poll()) != null) {
+                flushDatagrams(tunnel);
+            }
+        }
+
+        @Override
+        public void onError(final Tunnel tunnel, final Exception error) {
+            log.debug("UDP relay error for tunnel {}: {}", tunnel != null ? tunnel.tunnelId : null, error.toString());
+        }
+    }
+
     @Data
     public static class ExposedPort {
         private final int port;
@@ -704,11 +1170,19 @@ public class NetTunnelRegistry {
         private final UUID tunnelId;
         private long createdAt = System.currentTimeMillis();
         private volatile WebSocketSession session;
+        // Frames sent to the session by the IO pool on behalf of the selector and relay threads
+        private volatile ClientSendQueue sendQueue;
+        // Replaced on expose by counters that also count into the totals of the protocol
+        private volatile TrafficCounters traffic = new TrafficCounters();
+        // Socket adaptor of the server channel when the NIO engine is active
         private volatile ServerSocket serverSocket;
+        private volatile TcpOptions tcpOptions;
         private volatile Future<?> acceptLoopFuture;
         private final Map<String, Connection> connections = new ConcurrentHashMap<>();
-        private volatile DatagramSocket udpSocket;
-        private volatile Future<?> udpReceiveLoopFuture;
+        private volatile DatagramChannel udpChannel;
+        // Datagram batching (see TunnelFeatures.UDP_BATCH); the pending frame is only used by the relay thread
+        private volatile boolean udpBatch;
+        private ByteBuffer udpFrame;
         private final Map<String, InetSocketAddress> udpRemotes =
             Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
                 @Override
@@ -717,30 +1191,104 @@ public class NetTunnelRegistry {
                 }
             });
         private long lastUdpActivity = System.currentTimeMillis();
+        // Stream-id mode (see TunnelFeatures.STREAM_ID): data frames carry a 4-byte id instead of the
+        // connection id, looked up in the maps below
+        private volatile boolean streamIds;
+        private final AtomicInteger streamIdSequence = new AtomicInteger();
+        private final Map<Integer, Connection> streams = new ConcurrentHashMap<>();
+        private final Map<Integer, UdpStream> udpStreams = new ConcurrentHashMap<>();
+        private final Map<InetSocketAddress, UdpStream> udpStreamsByRemote =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<InetSocketAddress, UdpStream> eldest) {
+                    if (size() > 100) {
+                        udpStreams.remove(eldest.getValue().streamId());
+                        return true;
+                    }
+                    return false;
+                }
+            };
 
         Tunnel(final UUID tunnelId) {
             this.tunnelId = tunnelId;
         }
+
+        int nextStreamId() {
+            return streamIdSequence.incrementAndGet();
+        }
+
+        /**
+         * Returns the stream of a UDP remote peer, assigning a stream id on its first datagram.
+         */
+        UdpStream udpStream(final InetSocketAddress remote) {
+            synchronized (udpStreamsByRemote) {
+                var stream = udpStreamsByRemote.get(remote);
+                if (stream == null) {
+                    final var streamId = nextStreamId();
+                    stream = new UdpStream(streamId, remote, BinaryWsFrame.encodeStreamHeader(streamId));
+                    udpStreams.put(streamId, stream);
+                    udpStreamsByRemote.put(remote, stream);
+                }
+                return stream;
+            }
+        }
+
+        void clearUdpStreams() {
+            synchronized (udpStreamsByRemote) {
+                udpStreamsByRemote.clear();
+                udpStreams.clear();
+            }
+        }
+    }
+
+    /**
+     * UDP remote peer of a tunnel in stream-id mode, with the header of its frames.
+     */
+    record UdpStream(int streamId, InetSocketAddress remote, byte[] frameHeader) {
     }
 
     @Data
     public static class Connection {
         final String connectionId;
+        // Assigned at OPEN in stream-id mode, otherwise null
+        final Integer streamId;
+        // Header of the binary frames of this connection, encoded once
+        final byte[] frameHeader;
         Socket socket;
         InputStream in;
         OutputStream out;
+        // Set instead of the streams when the connection is served by the NIO engine
+        final NioTcpEngine.Endpoint endpoint;
         volatile boolean pumpStarted = false;
+        // Whether the NIO engine delivered the first read, checked for HTTP requests
+        boolean peeked;
         volatile Future<?> pumpFuture;
         volatile ScheduledFuture<?> cleanupTask;
 
         Connection(final String connectionId,
+                   final Integer streamId,
                    final Socket socket,
                    final InputStream in) throws IOException {
 
             this.connectionId = connectionId;
+            this.streamId = streamId;
+            this.frameHeader = streamId != null
+                ? BinaryWsFrame.encodeStreamHeader(streamId)
+                : BinaryWsFrame.encodeHeader(connectionId);
             this.socket = socket;
             this.in = in;
             this.out = socket.getOutputStream();
+            this.endpoint = null;
+        }
+
+        Connection(final String connectionId, final Integer streamId, final SocketChannel channel) {
+            this.connectionId = connectionId;
+            this.streamId = streamId;
+            this.frameHeader = streamId != null
+                ? BinaryWsFrame.encodeStreamHeader(streamId)
+                : BinaryWsFrame.encodeHeader(connectionId);
+            this.socket = channel.socket();
+            this.endpoint = new NioTcpEngine.Endpoint(channel);
         }
 
         void setCleanupTask(final ScheduledFuture<?> cleanupTask) {
@@ -768,6 +1316,9 @@ public class NetTunnelRegistry {
                 log.error("Failed to cancel pump future: {}", e.getMessage());
             }
             try {
+                if (endpoint != null) {
+                    endpoint.close();
+                }
                 if (socket != null && !socket.isClosed()) {
                     socket.close();
                 }
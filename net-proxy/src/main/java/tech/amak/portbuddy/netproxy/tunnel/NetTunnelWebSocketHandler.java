@@ -34,6 +34,7 @@ import tech.amak.portbuddy.common.TunnelType;
 import tech.amak.portbuddy.common.tunnel.BinaryWsFrame;
 import tech.amak.portbuddy.common.tunnel.ControlMessage;
 import tech.amak.portbuddy.common.tunnel.MessageEnvelope;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
 import tech.amak.portbuddy.common.tunnel.WsTunnelMessage;
 import tech.amak.portbuddy.common.utils.IdUtils;
 import tech.amak.portbuddy.netproxy.config.AppProperties;
@@ -46,6 +47,8 @@ public class NetTunnelWebSocketHandler extends AbstractWebSocketHandler {
     private final NetTunnelRegistry registry;
     private final ObjectMapper mapper;
     private final AppProperties properties;
+    // Resolves connection ids of inbound frames without a string allocation per frame
+    private final BinaryWsFrame.IdCache connectionIds = new BinaryWsFrame.IdCache(4096);
 
     @Override
     public void afterConnectionEstablished(final WebSocketSession session) throws Exception {
@@ -77,32 +80,46 @@ public class NetTunnelWebSocketHandler extends AbstractWebSocketHandler {
             return;
         }
 
+        // Optional per-tunnel socket options of public TCP connections
+        final TcpOptions tcpOptions;
+        try {
+            tcpOptions = registry.tcpOptions(
+                params.containsKey("noDelay") ? Boolean.valueOf(params.get("noDelay")) : null,
+                params.containsKey("sendBufferSize") ? Integer.valueOf(params.get("sendBufferSize")) : null,
+                params.containsKey("receiveBufferSize") ? Integer.valueOf(params.get("receiveBufferSize")) : null);
+        } catch (final Exception ignore) {
+            session.close(CloseStatus.BAD_DATA);
+            return;
+        }
+
         // Prepare exposure and then attach the session
         final NetTunnelRegistry.ExposedPort exposedPort;
         try {
-            exposedPort = registry.expose(tunnelId, tunnelType, desiredPort);
+            exposedPort = registry.expose(tunnelId, tunnelType, desiredPort, tcpOptions);
         } catch (final Exception e) {
             log.warn("Failed to expose {} on {}: {}", tunnelType, desiredPort, e.toString());
             session.close(CloseStatus.SERVER_ERROR);
             return;
         }
         // TODO: validate Authorization header/JWT
-        registry.attachSession(tunnelId, session);
-        final var decoratedSession = registry.getSession(tunnelId);
-        log.info("Net tunnel WS established: {} type={} port={}", tunnelId, tunnelType, desiredPort);
-
-        // Inform client about actual public details in case port was re-assigned
+        // Inform client about actual public details in case port was re-assigned, and about the accepted
+        // features. Handshake response headers do not pass the gateway, so they are announced in-band, before
+        // the session is attached and any OPEN or data frame can be sent.
+        final var features = registry.negotiateFeatures(session);
         try {
             final var info = new WsTunnelMessage();
             info.setWsType(WsTunnelMessage.Type.EXPOSED);
             info.setPublicHost(properties.publicHost());
             info.setPublicPort(exposedPort.getPort());
-            if (decoratedSession != null) {
-                decoratedSession.sendMessage(new TextMessage(mapper.writeValueAsString(info)));
+            if (!features.isEmpty()) {
+                info.setFeatures(TunnelFeatures.format(features));
             }
+            session.sendMessage(new TextMessage(mapper.writeValueAsString(info)));
         } catch (final Exception e) {
             log.debug("Failed to send EXPOSED info: {}", e.toString());
         }
+        registry.attachSession(tunnelId, session, features);
+        log.info("Net tunnel WS established: {} type={} port={}", tunnelId, tunnelType, desiredPort);
     }
 
     @Override
@@ -144,11 +161,15 @@ public class NetTunnelWebSocketHandler extends AbstractWebSocketHandler {
     protected void handleBinaryMessage(final WebSocketSession session, final BinaryMessage message) {
         final var tunnelId = extractTunnelId(session);
         final var payload = message.getPayload();
-        final var decoded = BinaryWsFrame.decode(payload);
+        if (registry.usesStreamIds(tunnelId)) {
+            registry.onClientStreamFrame(tunnelId, payload);
+            return;
+        }
+        final var decoded = BinaryWsFrame.decode(payload, connectionIds);
         if (decoded == null) {
             return;
         }
-        registry.onClientBinaryBytes(tunnelId, decoded.connectionId(), decoded.data());
+        registry.onClientBinaryBytes(tunnelId, decoded.connectionId(), decoded.payload());
         payload.clear();
     }
 
@@ -0,0 +1,429 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.netproxy.tunnel;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.slf4j.Slf4j;
+import tech.amak.portbuddy.netproxy.tunnel.NetTunnelRegistry.Connection;
+import tech.amak.portbuddy.netproxy.tunnel.NetTunnelRegistry.Tunnel;
+
+/**
+ * Non-blocking engine for the public TCP side of net tunnels, selected with {@code app.tcp.engine=nio}.
+ *
+ * <p>A few selector threads serve the listening and accepted channels of all tunnels, so a connection costs
+ * a registered key and a small {@link Endpoint} instead of a thread, a stream pair and a read buffer. Reads
+ * go through one direct buffer per selector thread and are drained until the socket is empty, so small
+ * segments that arrived together leave as one frame. Writes towards a public connection are attempted
+ * inline; whatever the socket does not take is queued, small writes are appended to the last queued chunk,
+ * and the queue is flushed with a single gathering write once the socket becomes writable.
+ */
+@Slf4j
+class NioTcpEngine {
+
+    private static final long SELECT_TIMEOUT_MS = 1000;
+    private static final int WRITE_CHUNK_BYTES = 16 * 1024;
+
+    /**
+     * Callbacks into the registry. They run on a selector thread and should not block for long.
+     */
+    interface Listener {
+
+        /**
+         * Called for each accepted connection. The listener owns the channel and is expected to
+         * {@link #register(Tunnel, Connection) register} it or close it.
+         */
+        void onAccept(Tunnel tunnel, SocketChannel channel);
+
+        /**
+         * Called with data read from a public connection.
+         *
+         * @return {@code false} to close the connection
+         */
+        boolean onRead(Tunnel tunnel, Connection connection, ByteBuffer data);
+
+        /**
+         * Called when a public connection reached end of stream, failed, or idled out.
+         */
+        void onClose(Tunnel tunnel, Connection connection);
+    }
+
+    private final Listener listener;
+    private final Loop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final long maxPendingWriteBytes;
+    private final long writeTimeoutNanos;
+    private final long idleTimeoutMs;
+    private volatile boolean closed;
+
+    /**
+     * Creates and starts the engine.
+     *
+     * @param listener             the registry callbacks
+     * @param selectorThreads      the number of selector threads
+     * @param readBufferSize       the most bytes read from a connection into one frame
+     * @param maxPendingWriteBytes the most bytes queued for a connection before writers wait
+     * @param writeTimeout         how long a writer waits for a slow connection to drain
+     * @param idleTimeout          how long a connection may go without inbound data
+     * @throws IOException if a selector cannot be opened
+     */
+    NioTcpEngine(final Listener listener,
+                 final int selectorThreads,
+                 final int readBufferSize,
+                 final long maxPendingWriteBytes,
+                 final Duration writeTimeout,
+                 final Duration idleTimeout) throws IOException {
+        this.listener = listener;
+        this.maxPendingWriteBytes = maxPendingWriteBytes;
+        this.writeTimeoutNanos = writeTimeout.toNanos();
+        this.idleTimeoutMs = idleTimeout.toMillis();
+        this.loops = new Loop[selectorThreads];
+        for (var i = 0; i < selectorThreads; i++) {
+            loops[i] = new Loop(i, readBufferSize);
+        }
+        for (final var loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    /**
+     * Starts accepting connections on a bound server channel.
+     *
+     * @param tunnel the tunnel the channel belongs to
+     * @param server the bound server channel
+     * @throws IOException if the channel cannot be registered
+     */
+    void listen(final Tunnel tunnel, final ServerSocketChannel server) throws IOException {
+        server.configureBlocking(false);
+        final var selector = nextLoop().selector;
+        server.register(selector, SelectionKey.OP_ACCEPT, tunnel);
+        selector.wakeup();
+    }
+
+    /**
+     * Registers an accepted connection without reading from it yet; writes to it are possible right away.
+     *
+     * @param tunnel     the tunnel the connection belongs to
+     * @param connection the connection, created with its channel
+     * @throws IOException if the channel cannot be registered
+     */
+    void register(final Tunnel tunnel, final Connection connection) throws IOException {
+        final var endpoint = connection.endpoint;
+        endpoint.channel.configureBlocking(false);
+        endpoint.key = endpoint.channel.register(nextLoop().selector, 0, new Registration(tunnel, connection));
+    }
+
+    /**
+     * Starts delivering data read from the connection to the listener, or resumes after {@link #pauseReading}.
+     *
+     * @param connection a registered connection
+     */
+    void startReading(final Connection connection) {
+        final var endpoint = connection.endpoint;
+        endpoint.lastReadAt = System.currentTimeMillis();
+        final var key = endpoint.key;
+        if (key != null && key.isValid()) {
+            key.interestOpsOr(SelectionKey.OP_READ);
+            key.selector().wakeup();
+        }
+    }
+
+    /**
+     * Stops delivering data read from the connection until {@link #startReading} is called again, leaving
+     * unread data to the socket's receive buffer and TCP flow control.
+     *
+     * @param connection a registered connection
+     */
+    void pauseReading(final Connection connection) {
+        final var key = connection.endpoint.key;
+        if (key != null && key.isValid()) {
+            key.interestOpsAnd(~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Writes to a public connection. The payload is written inline if the socket takes it; otherwise the
+     * rest is copied to the connection's queue. The caller waits only while the queue is full.
+     *
+     * @param endpoint the connection endpoint
+     * @param payload  the data; only read during this call
+     * @throws IOException if the connection is closed or does not drain within the write timeout
+     */
+    void write(final Endpoint endpoint, final ByteBuffer payload) throws IOException {
+        endpoint.lock.lock();
+        try {
+            if (endpoint.pending.isEmpty()) {
+                endpoint.channel.write(payload);
+                if (!payload.hasRemaining()) {
+                    return;
+                }
+            }
+            var remaining = writeTimeoutNanos;
+            while (endpoint.pendingBytes >= maxPendingWriteBytes) {
+                if (!endpoint.channel.isOpen()) {
+                    throw new ClosedChannelException();
+                }
+                if (remaining <= 0) {
+                    throw new IOException("Public connection did not drain within "
+                                          + TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos) + "ms");
+                }
+                remaining = endpoint.drained.awaitNanos(remaining);
+            }
+            if (!endpoint.channel.isOpen()) {
+                throw new ClosedChannelException();
+            }
+            endpoint.enqueue(payload);
+            final var key = endpoint.key;
+            if (key != null && key.isValid()) {
+                key.interestOpsOr(SelectionKey.OP_WRITE);
+                key.selector().wakeup();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the public connection to drain");
+        } finally {
+            endpoint.lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the selector threads. Channels are closed by the registry.
+     */
+    void close() {
+        closed = true;
+        for (final var loop : loops) {
+            loop.selector.wakeup();
+        }
+        for (final var loop : loops) {
+            try {
+                loop.thread.join(TimeUnit.SECONDS.toMillis(5));
+                loop.selector.close();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final IOException e) {
+                log.debug("Failed to close selector: {}", e.toString());
+            }
+        }
+    }
+
+    private Loop nextLoop() {
+        return loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+    }
+
+    private void accept(final SelectionKey key) {
+        final var tunnel = (Tunnel) key.attachment();
+        final var server = (ServerSocketChannel) key.channel();
+        try {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                listener.onAccept(tunnel, channel);
+            }
+        } catch (final IOException e) {
+            log.info("Accept failed for tunnel {}: {}", tunnel.getTunnelId(), e.getMessage());
+        }
+    }
+
+    private void read(final SelectionKey key, final Registration registration, final ByteBuffer buffer) {
+        final var endpoint = registration.connection().endpoint;
+        buffer.clear();
+        var open = true;
+        try {
+            while (buffer.hasRemaining()) {
+                final var read = endpoint.channel.read(buffer);
+                if (read <= 0) {
+                    open = read == 0;
+                    break;
+                }
+            }
+        } catch (final IOException e) {
+            log.debug("Failed to read from public connection {}: {}",
+                registration.connection().getConnectionId(), e.toString());
+            open = false;
+        }
+        endpoint.lastReadAt = System.currentTimeMillis();
+        if (buffer.position() > 0
+            && !listener.onRead(registration.tunnel(), registration.connection(), buffer.flip())) {
+            open = false;
+        }
+        if (!open) {
+            close(key, registration);
+        }
+    }
+
+    private void flush(final SelectionKey key, final Registration registration) {
+        final var endpoint = registration.connection().endpoint;
+        var failed = false;
+        endpoint.lock.lock();
+        try {
+            if (!endpoint.pending.isEmpty()) {
+                endpoint.pendingBytes -= endpoint.channel.write(endpoint.pending.toArray(ByteBuffer[]::new));
+                while (!endpoint.pending.isEmpty() && !endpoint.pending.peekFirst().hasRemaining()) {
+                    endpoint.pending.pollFirst();
+                }
+            }
+            if (endpoint.pending.isEmpty()) {
+                key.interestOpsAnd(~SelectionKey.OP_WRITE);
+            }
+            endpoint.drained.signalAll();
+        } catch (final IOException e) {
+            log.debug("Failed to write to public connection {}: {}",
+                registration.connection().getConnectionId(), e.toString());
+            failed = true;
+        } finally {
+            endpoint.lock.unlock();
+        }
+        if (failed) {
+            close(key, registration);
+        }
+    }
+
+    private void close(final SelectionKey key, final Registration registration) {
+        key.cancel();
+        listener.onClose(registration.tunnel(), registration.connection());
+    }
+
+    private void closeIdle(final Selector selector) {
+        final var deadline = System.currentTimeMillis() - idleTimeoutMs;
+        for (final var key : selector.keys()) {
+            if (key.isValid()
+                && key.attachment() instanceof Registration registration
+                && (key.interestOps() & SelectionKey.OP_READ) != 0
+                && registration.connection().endpoint.lastReadAt < deadline) {
+                log.debug("Closing idle public connection {}", registration.connection().getConnectionId());
+                close(key, registration);
+            }
+        }
+    }
+
+    private record Registration(Tunnel tunnel, Connection connection) {
+    }
+
+    /**
+     * Channel and write queue of a public connection served by this engine.
+     */
+    static final class Endpoint {
+
+        final SocketChannel channel;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition drained = lock.newCondition();
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>(2);
+        private long pendingBytes;
+        private volatile SelectionKey key;
+        private volatile long lastReadAt = System.currentTimeMillis();
+
+        Endpoint(final SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Copies the payload to the queue, appending to the last chunk while it has room.
+         */
+        private void enqueue(final ByteBuffer payload) {
+            final var length = payload.remaining();
+            final var last = pending.peekLast();
+            if (last != null && last.capacity() - last.limit() >= length) {
+                final var position = last.position();
+                last.position(last.limit()).limit(last.capacity());
+                last.put(payload).flip().position(position);
+            } else {
+                pending.addLast(ByteBuffer.allocate(Math.max(length, WRITE_CHUNK_BYTES)).put(payload).flip());
+            }
+            pendingBytes += length;
+        }
+
+        /**
+         * Closes the channel and releases queued data and waiting writers.
+         */
+        void close() throws IOException {
+            lock.lock();
+            try {
+                channel.close();
+                pending.clear();
+                pendingBytes = 0;
+                drained.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final class Loop implements Runnable {
+
+        private final Selector selector;
+        private final Thread thread;
+        private final ByteBuffer readBuffer;
+
+        Loop(final int index, final int readBufferSize) throws IOException {
+            this.selector = Selector.open();
+            this.readBuffer = ByteBuffer.allocateDirect(readBufferSize);
+            this.thread = new Thread(this, "net-tcp-selector-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            var lastIdleCheck = System.currentTimeMillis();
+            while (!closed) {
+                try {
+                    selector.select(this::handle, SELECT_TIMEOUT_MS);
+                    final var now = System.currentTimeMillis();
+                    if (now - lastIdleCheck >= SELECT_TIMEOUT_MS) {
+                        lastIdleCheck = now;
+                        closeIdle(selector);
+                    }
+                } catch (final Exception e) {
+                    log.error("Selector loop error: {}", e.toString(), e);
+                }
+            }
+        }
+
+        private void handle(final SelectionKey key) {
+            try {
+                if (!key.isValid()) {
+                    return;
+                }
+                if (key.isAcceptable()) {
+                    accept(key);
+                    return;
+                }
+                final var registration = (Registration) key.attachment();
+                if (key.isWritable()) {
+                    flush(key, registration);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read(key, registration, readBuffer);
+                }
+            } catch (final CancelledKeyException ignore) {
+                // closed by another thread while being handled
+            } catch (final Exception e) {
+                log.error("Failed to handle selected key: {}", e.toString(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.netproxy.tunnel;
+
+import java.net.Socket;
+import java.net.SocketException;
+
+import tech.amak.portbuddy.netproxy.config.AppProperties;
+
+/**
+ * Socket options applied to the public TCP connections of a tunnel.
+ *
+ * @param noDelay           whether Nagle's algorithm is disabled (TCP_NODELAY)
+ * @param sendBufferSize    SO_SNDBUF in bytes, or {@code null} for the OS default
+ * @param receiveBufferSize SO_RCVBUF in bytes, or {@code null} for the OS default
+ */
+public record TcpOptions(boolean noDelay, Integer sendBufferSize, Integer receiveBufferSize) {
+
+    /**
+     * Returns the configured defaults.
+     *
+     * @param tcp the TCP settings of the proxy
+     * @return the default options of new tunnels
+     */
+    public static TcpOptions from(final AppProperties.Tcp tcp) {
+        return new TcpOptions(
+            tcp.noDelay(),
+            tcp.sendBufferSize() != null ? (int) tcp.sendBufferSize().toBytes() : null,
+            tcp.receiveBufferSize() != null ? (int) tcp.receiveBufferSize().toBytes() : null);
+    }
+
+    /**
+     * Returns these options with the given per-tunnel overrides applied.
+     *
+     * @param noDelay           TCP_NODELAY, or {@code null} to keep the current value
+     * @param sendBufferSize    SO_SNDBUF in bytes, or {@code null} to keep the current value
+     * @param receiveBufferSize SO_RCVBUF in bytes, or {@code null} to keep the current value
+     * @return the resulting options
+     */
+    public TcpOptions withOverrides(final Boolean noDelay,
+                                    final Integer sendBufferSize,
+                                    final Integer receiveBufferSize) {
+        return new TcpOptions(
+            noDelay != null ? noDelay : this.noDelay,
+            sendBufferSize != null ? sendBufferSize : this.sendBufferSize,
+            receiveBufferSize != null ? receiveBufferSize : this.receiveBufferSize);
+    }
+
+    /**
+     * Applies the options to an accepted socket, or to the adaptor of an accepted socket channel.
+     *
+     * @param socket the socket to configure
+     * @throws SocketException if an option cannot be set
+     */
+    public void apply(final Socket socket) throws SocketException {
+        socket.setTcpNoDelay(noDelay);
+        if (sendBufferSize != null) {
+            socket.setSendBufferSize(sendBufferSize);
+        }
+        if (receiveBufferSize != null) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+    }
+}
@@ -56,7 +56,8 @@ class NetTunnelLeakVerificationTest {
             Duration.ofSeconds(10),
             DataSize.ofMegabytes(1)
         ),
-        new AppProperties.Jwt("port-buddy", "http://localhost:8080")
+        new AppProperties.Jwt("port-buddy", "http://localhost:8080"),
+        AppProperties.Tcp.defaults()
     );
 
     @Test
@@ -162,7 +163,8 @@ class NetTunnelLeakVerificationTest {
                 Duration.ofSeconds(10),
                 DataSize.ofMegabytes(1)
             ),
-            new AppProperties.Jwt("port-buddy", "http://localhost:8080")
+            new AppProperties.Jwt("port-buddy", "http://localhost:8080"),
+            AppProperties.Tcp.defaults()
         );
 
         final var registry = new NetTunnelRegistry(mapper, shortIdleProps);
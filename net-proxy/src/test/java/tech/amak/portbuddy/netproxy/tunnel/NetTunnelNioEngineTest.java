@@ -0,0 +1,244 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.netproxy.tunnel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import tech.amak.portbuddy.common.TunnelType;
+import tech.amak.portbuddy.common.tunnel.BinaryWsFrame;
+import tech.amak.portbuddy.common.tunnel.WsTunnelMessage;
+import tech.amak.portbuddy.netproxy.config.AppProperties;
+
+class NetTunnelNioEngineTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AppProperties properties = new AppProperties(
+        "localhost",
+        new AppProperties.WebSocket(
+            DataSize.ofMegabytes(10),
+            DataSize.ofMegabytes(10),
+            Duration.ofMinutes(10),
+            Duration.ofSeconds(10),
+            DataSize.ofMegabytes(1)
+        ),
+        new AppProperties.Jwt("port-buddy", "http://localhost:8080"),
+        new AppProperties.Tcp(AppProperties.Tcp.Engine.NIO, true, null, null, null, null, DataSize.ofKilobytes(64), 2)
+    );
+
+    private final List<WebSocketMessage<?>> sent = new CopyOnWriteArrayList<>();
+    private NetTunnelRegistry registry;
+    private UUID tunnelId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        registry = new NetTunnelRegistry(mapper, properties);
+        tunnelId = UUID.randomUUID();
+        final var session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(UUID.randomUUID().toString());
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> sent.add(invocation.getArgument(0))).when(session).sendMessage(any());
+        registry.attachSession(tunnelId, session);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    void shouldRelayDataInBothDirections() throws Exception {
+        final var exposedPort = registry.expose(tunnelId, TunnelType.TCP, 10031);
+
+        try (final var clientSocket = new Socket("localhost", exposedPort.getPort())) {
+            clientSocket.setSoTimeout(5000);
+            final var connectionId = awaitOpen();
+            registry.onClientOpenOk(tunnelId, connectionId);
+
+            // Public -> client
+            clientSocket.getOutputStream().write("ping".getBytes(StandardCharsets.UTF_8));
+            final var frame = BinaryWsFrame.decode(awaitBinary().getPayload().array());
+            assertEquals(connectionId, frame.connectionId());
+            assertArrayEquals("ping".getBytes(StandardCharsets.UTF_8), frame.data());
+
+            // Client -> public
+            final var reply = "pong".getBytes(StandardCharsets.UTF_8);
+            registry.onClientBinaryBytes(tunnelId, connectionId, ByteBuffer.wrap(reply));
+            assertArrayEquals(reply, clientSocket.getInputStream().readNBytes(reply.length));
+        }
+    }
+
+    @Test
+    void shouldBlockHttpRequest() throws Exception {
+        final var exposedPort = registry.expose(tunnelId, TunnelType.TCP, 10032);
+
+        try (final var clientSocket = new Socket("localhost", exposedPort.getPort())) {
+            clientSocket.setSoTimeout(5000);
+            registry.onClientOpenOk(tunnelId, awaitOpen());
+
+            clientSocket.getOutputStream().write("GET / HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+
+            assertEquals(-1, clientSocket.getInputStream().read());
+        }
+    }
+
+    @Test
+    void shouldQueueWritesForSlowReaderInOrder() throws Exception {
+        final var exposedPort = registry.expose(tunnelId, TunnelType.TCP, 10033);
+
+        try (final var clientSocket = new Socket("localhost", exposedPort.getPort())) {
+            clientSocket.setSoTimeout(5000);
+            final var connectionId = awaitOpen();
+            registry.onClientOpenOk(tunnelId, connectionId);
+
+            // Far more than the socket buffers and the pending-write limit hold, in small writes
+            final var chunks = new ArrayList<byte[]>();
+            final var expected = new ByteArrayOutputStream();
+            for (var i = 0; i < 50_000; i++) {
+                final var chunk = ("chunk-" + i + ";").getBytes(StandardCharsets.UTF_8);
+                chunks.add(chunk);
+                expected.writeBytes(chunk);
+            }
+            final var writer = CompletableFuture.runAsync(() -> chunks.forEach(chunk ->
+                registry.onClientBinaryBytes(tunnelId, connectionId, ByteBuffer.wrap(chunk))));
+
+            // The reader starts late, so writes queue up and the writer has to wait for the queue to drain
+            Thread.sleep(200);
+            final var received = new ByteArrayOutputStream();
+            final var buffer = new byte[4096];
+            while (received.size() < expected.size()) {
+                final var read = clientSocket.getInputStream().read(buffer);
+                assertTrue(read > 0);
+                received.write(buffer, 0, read);
+            }
+            writer.get(5, TimeUnit.SECONDS);
+            assertArrayEquals(expected.toByteArray(), received.toByteArray());
+        }
+    }
+
+    @Test
+    void shouldPauseReadingWhileClientIsCongested() throws Exception {
+        // Given: a tunnel whose client takes no frames until released
+        final var stalledTunnelId = UUID.randomUUID();
+        final var stalled = mock(WebSocketSession.class);
+        final var release = new CountDownLatch(1);
+        final var relayed = new AtomicLong();
+        final var connectionId = new CompletableFuture<String>();
+        when(stalled.getId()).thenReturn(UUID.randomUUID().toString());
+        when(stalled.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            if (invocation.getArgument(0) instanceof TextMessage open) {
+                connectionId.complete(mapper.readValue(open.getPayload(), WsTunnelMessage.class).getConnectionId());
+            } else if (release.await(10, TimeUnit.SECONDS)) {
+                relayed.addAndGet(((BinaryMessage) invocation.getArgument(0)).getPayloadLength());
+            }
+            return null;
+        }).when(stalled).sendMessage(any());
+        registry.attachSession(stalledTunnelId, stalled);
+        final var stalledPort = registry.expose(stalledTunnelId, TunnelType.TCP, 10037);
+        final var exposedPort = registry.expose(tunnelId, TunnelType.TCP, 10038);
+        final var total = 16 * 1024 * 1024;
+
+        try (final var stalledSocket = new Socket("localhost", stalledPort.getPort());
+             final var clientSocket = new Socket("localhost", exposedPort.getPort())) {
+            registry.onClientOpenOk(stalledTunnelId, connectionId.get(5, TimeUnit.SECONDS));
+            final var writer = CompletableFuture.runAsync(() -> {
+                try {
+                    stalledSocket.getOutputStream().write(new byte[total]);
+                } catch (final IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            // When
+            Thread.sleep(500);
+
+            // Then: the public connection is no longer read, so only about the queue limit is buffered
+            assertFalse(writer.isDone());
+            final var queued = registry.byTunnelId.get(stalledTunnelId).getSendQueue().pendingBytes();
+            assertTrue(queued <= DataSize.ofMegabytes(1).toBytes() + DataSize.ofKilobytes(64).toBytes());
+
+            // And other tunnels are still served by the selector threads
+            clientSocket.setSoTimeout(5000);
+            registry.onClientOpenOk(tunnelId, awaitOpen());
+            clientSocket.getOutputStream().write("ping".getBytes(StandardCharsets.UTF_8));
+            assertArrayEquals("ping".getBytes(StandardCharsets.UTF_8),
+                BinaryWsFrame.decode(awaitBinary().getPayload().array()).data());
+
+            // And reading resumes once the client drains
+            release.countDown();
+            writer.get(10, TimeUnit.SECONDS);
+            final var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (relayed.get() < total && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(relayed.get() >= total);
+        }
+    }
+
+    private String awaitOpen() throws Exception {
+        final var message = (TextMessage) awaitMessage(TextMessage.class);
+        return mapper.readValue(message.getPayload(), WsTunnelMessage.class).getConnectionId();
+    }
+
+    private BinaryMessage awaitBinary() throws Exception {
+        return (BinaryMessage) awaitMessage(BinaryMessage.class);
+    }
+
+    private WebSocketMessage<?> awaitMessage(final Class<?> type) throws InterruptedException, IOException {
+        final var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            for (final var message : sent) {
+                if (type.isInstance(message)) {
+                    return message;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new IOException("No " + type.getSimpleName() + " sent");
+    }
+}
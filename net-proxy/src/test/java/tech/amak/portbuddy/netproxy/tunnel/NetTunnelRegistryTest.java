@@ -14,6 +14,9 @@
 
 package tech.amak.portbuddy.netproxy.tunnel;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
@@ -23,12 +26,14 @@ import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.UUID;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
@@ -49,7 +54,8 @@ class NetTunnelRegistryTest {
             Duration.ofSeconds(10),
             DataSize.ofMegabytes(1)
         ),
-        new AppProperties.Jwt("port-buddy", "http://localhost:8080")
+        new AppProperties.Jwt("port-buddy", "http://localhost:8080"),
+        AppProperties.Tcp.defaults()
     );
 
     @Test
@@ -160,4 +166,38 @@ class NetTunnelRegistryTest {
             registry.closeTunnel(tunnelId);
         }
     }
+
+    @Test
+    void shouldRejectNonPositiveBufferSizesAndClampLargeOnes() {
+        // Given
+        final var registry = new NetTunnelRegistry(mapper, properties);
+        final var max = (int) AppProperties.Tcp.defaults().maxBufferSize().toBytes();
+
+        // When
+        final var clamped = registry.tcpOptions(null, Integer.MAX_VALUE, 65536);
+
+        // Then
+        assertEquals(max, clamped.sendBufferSize());
+        assertEquals(65536, clamped.receiveBufferSize());
+        assertThrows(IllegalArgumentException.class, () -> registry.tcpOptions(null, 0, null));
+        assertThrows(IllegalArgumentException.class, () -> registry.tcpOptions(null, null, -1));
+    }
+
+    @Test
+    void shouldRefuseHandshakeWithNonPositiveBufferSize() throws Exception {
+        // Given
+        final var registry = new NetTunnelRegistry(mapper, properties);
+        final var handler = new NetTunnelWebSocketHandler(registry, mapper, properties);
+        final var tunnelId = UUID.randomUUID();
+        final var session = mock(WebSocketSession.class);
+        when(session.getUri()).thenReturn(
+            URI.create("/api/net-tunnel/" + tunnelId + "?type=tcp&port=10041&sendBufferSize=0"));
+
+        // When
+        handler.afterConnectionEstablished(session);
+
+        // Then
+        verify(session).close(CloseStatus.BAD_DATA);
+        assertNull(registry.byTunnelId.get(tunnelId));
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.netproxy.tunnel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.Socket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import tech.amak.portbuddy.common.TunnelType;
+import tech.amak.portbuddy.common.tunnel.BinaryWsFrame;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
+import tech.amak.portbuddy.common.tunnel.WsTunnelMessage;
+import tech.amak.portbuddy.netproxy.config.AppProperties;
+
+class NetTunnelStreamIdTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AppProperties properties = new AppProperties(
+        "localhost",
+        new AppProperties.WebSocket(
+            DataSize.ofMegabytes(10),
+            DataSize.ofMegabytes(10),
+            Duration.ofMinutes(10),
+            Duration.ofSeconds(10),
+            DataSize.ofMegabytes(1)
+        ),
+        new AppProperties.Jwt("port-buddy", "http://localhost:8080"),
+        AppProperties.Tcp.defaults()
+    );
+
+    @Test
+    void shouldRelayTcpDataByStreamIdWhenNegotiated() throws Exception {
+        final var registry = new NetTunnelRegistry(mapper, properties);
+        final var tunnelId = UUID.randomUUID();
+        final var session = mock(WebSocketSession.class);
+        final var handshakeHeaders = new HttpHeaders();
+        handshakeHeaders.set(TunnelFeatures.HEADER, TunnelFeatures.STREAM_ID);
+        when(session.getId()).thenReturn(UUID.randomUUID().toString());
+        when(session.isOpen()).thenReturn(true);
+        when(session.getHandshakeHeaders()).thenReturn(handshakeHeaders);
+
+        registry.attachSession(tunnelId, session);
+        assertTrue(registry.usesStreamIds(tunnelId));
+        final var exposedPort = registry.expose(tunnelId, TunnelType.TCP, 10030);
+
+        try (final var clientSocket = new Socket("localhost", exposedPort.getPort())) {
+            clientSocket.setSoTimeout(5000);
+
+            // OPEN carries the stream id assigned to the connection
+            final var openCaptor = ArgumentCaptor.forClass(TextMessage.class);
+            verify(session, timeout(2000)).sendMessage(openCaptor.capture());
+            final var open = mapper.readValue(openCaptor.getValue().getPayload(), WsTunnelMessage.class);
+            assertNotNull(open.getStreamId());
+            registry.onClientOpenOk(tunnelId, open.getConnectionId());
+
+            // Public -> client frames use the 4-byte stream header
+            clientSocket.getOutputStream().write(new byte[] {1, 2, 3});
+            clientSocket.getOutputStream().flush();
+            final var frameCaptor = ArgumentCaptor.forClass(WebSocketMessage.class);
+            verify(session, timeout(2000).times(2)).sendMessage(frameCaptor.capture());
+            final var frame = ((BinaryMessage) frameCaptor.getAllValues().get(1)).getPayload();
+            assertEquals(BinaryWsFrame.STREAM_HEADER_BYTES + 3, frame.remaining());
+            final var decoded = BinaryWsFrame.decodeStream(frame);
+            assertEquals(open.getStreamId(), decoded.streamId());
+
+            // Client -> public frames are routed by stream id
+            final var reply = "pong".getBytes(StandardCharsets.UTF_8);
+            registry.onClientStreamBytes(tunnelId, open.getStreamId(), ByteBuffer.wrap(reply));
+            assertArrayEquals(reply, clientSocket.getInputStream().readNBytes(reply.length));
+        } finally {
+            registry.closeTunnel(tunnelId);
+        }
+    }
+
+    @Test
+    void shouldAnnounceFeaturesInExposedBeforeAnyOpen() throws Exception {
+        // Given: a client advertising stream ids, whose handshake response headers are lost on the way back
+        final var registry = new NetTunnelRegistry(mapper, properties);
+        final var handler = new NetTunnelWebSocketHandler(registry, mapper, properties);
+        final var tunnelId = UUID.randomUUID();
+        final var session = mock(WebSocketSession.class);
+        final var handshakeHeaders = new HttpHeaders();
+        handshakeHeaders.set(TunnelFeatures.HEADER, TunnelFeatures.STREAM_ID);
+        when(session.getId()).thenReturn(UUID.randomUUID().toString());
+        when(session.isOpen()).thenReturn(true);
+        when(session.getHandshakeHeaders()).thenReturn(handshakeHeaders);
+        when(session.getUri()).thenReturn(URI.create("/api/net-tunnel/" + tunnelId + "?type=tcp&port=10039"));
+
+        try {
+            // When
+            handler.afterConnectionEstablished(session);
+            try (final var clientSocket = new Socket("localhost", 10039)) {
+                // Then: EXPOSED carries the accepted features and precedes the OPEN using them
+                final var captor = ArgumentCaptor.forClass(TextMessage.class);
+                verify(session, timeout(2000).times(2)).sendMessage(captor.capture());
+                final var exposed = mapper.readValue(captor.getAllValues().get(0).getPayload(), WsTunnelMessage.class);
+                assertEquals(WsTunnelMessage.Type.EXPOSED, exposed.getWsType());
+                assertEquals(TunnelFeatures.STREAM_ID, exposed.getFeatures());
+                final var open = mapper.readValue(captor.getAllValues().get(1).getPayload(), WsTunnelMessage.class);
+                assertEquals(WsTunnelMessage.Type.OPEN, open.getWsType());
+                assertNotNull(open.getStreamId());
+            }
+        } finally {
+            registry.closeTunnel(tunnelId);
+        }
+    }
+}
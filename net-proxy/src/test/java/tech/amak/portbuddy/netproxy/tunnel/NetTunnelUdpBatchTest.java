@@ -0,0 +1,166 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.netproxy.tunnel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import tech.amak.portbuddy.common.TunnelType;
+import tech.amak.portbuddy.common.tunnel.DatagramBatch;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
+import tech.amak.portbuddy.netproxy.config.AppProperties;
+
+class NetTunnelUdpBatchTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AppProperties properties = new AppProperties(
+        "localhost",
+        new AppProperties.WebSocket(
+            DataSize.ofMegabytes(10),
+            DataSize.ofMegabytes(10),
+            Duration.ofMinutes(10),
+            Duration.ofSeconds(10),
+            DataSize.ofMegabytes(1)
+        ),
+        new AppProperties.Jwt("port-buddy", "http://localhost:8080"),
+        AppProperties.Tcp.defaults()
+    );
+
+    @Test
+    void shouldRelayDatagramBatchesInBothDirections() throws Exception {
+        final var registry = new NetTunnelRegistry(mapper, properties);
+        final var tunnelId = UUID.randomUUID();
+        final var session = mock(WebSocketSession.class);
+        final var handshakeHeaders = new HttpHeaders();
+        handshakeHeaders.set(TunnelFeatures.HEADER,
+            TunnelFeatures.format(List.of(TunnelFeatures.STREAM_ID, TunnelFeatures.UDP_BATCH)));
+        final var frames = new CopyOnWriteArrayList<BinaryMessage>();
+        when(session.getId()).thenReturn(UUID.randomUUID().toString());
+        when(session.isOpen()).thenReturn(true);
+        when(session.getHandshakeHeaders()).thenReturn(handshakeHeaders);
+        doAnswer(invocation -> frames.add(invocation.getArgument(0))).when(session).sendMessage(any());
+
+        registry.attachSession(tunnelId, session);
+        final var exposedPort = registry.expose(tunnelId, TunnelType.UDP, 10034);
+
+        try (final var peer = new DatagramSocket()) {
+            peer.setSoTimeout(5000);
+            final var target = new InetSocketAddress("localhost", exposedPort.getPort());
+
+            // Public -> client: every datagram arrives as an entry of a batch frame
+            for (var i = 0; i < 5; i++) {
+                final var data = ("datagram-" + i).getBytes(StandardCharsets.UTF_8);
+                peer.send(new DatagramPacket(data, data.length, target));
+            }
+            final var entries = new ArrayList<String>();
+            final var streamIds = new ArrayList<Integer>();
+            final var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            var consumed = 0;
+            while (entries.size() < 5 && System.nanoTime() < deadline) {
+                while (consumed < frames.size()) {
+                    final var frame = frames.get(consumed++).getPayload();
+                    assertTrue(DatagramBatch.forEach(frame, (streamId, datagram) -> {
+                        streamIds.add(streamId);
+                        entries.add(StandardCharsets.UTF_8.decode(datagram).toString());
+                    }));
+                }
+                Thread.sleep(10);
+            }
+            assertEquals(List.of("datagram-0", "datagram-1", "datagram-2", "datagram-3", "datagram-4"), entries);
+            assertEquals(1, streamIds.stream().distinct().count());
+
+            // Client -> public: both entries of one batch are sent to the peer
+            final var reply = ByteBuffer.allocate(64);
+            DatagramBatch.append(reply, streamIds.getFirst(), ByteBuffer.wrap("one".getBytes(StandardCharsets.UTF_8)));
+            DatagramBatch.append(reply, streamIds.getFirst(), ByteBuffer.wrap("two".getBytes(StandardCharsets.UTF_8)));
+            registry.onClientStreamFrame(tunnelId, reply.flip());
+
+            final var packet = new DatagramPacket(new byte[64], 64);
+            peer.receive(packet);
+            assertEquals("one", new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8));
+            peer.receive(packet);
+            assertEquals("two", new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8));
+        } finally {
+            registry.shutdown();
+        }
+    }
+
+    @Test
+    void shouldKeepRelayingOtherTunnelsWhileOneClientStalls() throws Exception {
+        // Given
+        final var registry = new NetTunnelRegistry(mapper, properties);
+        final var stalledTunnelId = UUID.randomUUID();
+        final var tunnelId = UUID.randomUUID();
+        final var stalled = mock(WebSocketSession.class);
+        final var session = mock(WebSocketSession.class);
+        final var release = new CountDownLatch(1);
+        final var received = new CountDownLatch(1);
+        when(stalled.getId()).thenReturn(UUID.randomUUID().toString());
+        when(stalled.isOpen()).thenReturn(true);
+        doAnswer(invocation -> release.await(10, TimeUnit.SECONDS)).when(stalled).sendMessage(any());
+        when(session.getId()).thenReturn(UUID.randomUUID().toString());
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            received.countDown();
+            return null;
+        }).when(session).sendMessage(any());
+
+        registry.attachSession(stalledTunnelId, stalled);
+        registry.attachSession(tunnelId, session);
+        final var stalledPort = registry.expose(stalledTunnelId, TunnelType.UDP, 10035);
+        final var exposedPort = registry.expose(tunnelId, TunnelType.UDP, 10036);
+
+        try (final var peer = new DatagramSocket()) {
+            // When: the first client stops taking frames
+            final var data = "datagram".getBytes(StandardCharsets.UTF_8);
+            final var stalledTarget = new InetSocketAddress("localhost", stalledPort.getPort());
+            for (var i = 0; i < 3; i++) {
+                peer.send(new DatagramPacket(data, data.length, stalledTarget));
+            }
+            peer.send(new DatagramPacket(data, data.length, new InetSocketAddress("localhost", exposedPort.getPort())));
+
+            // Then: the shared relay thread still serves the second tunnel
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            registry.shutdown();
+        }
+    }
+}
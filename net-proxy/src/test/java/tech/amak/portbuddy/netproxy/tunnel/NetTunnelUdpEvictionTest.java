@@ -56,7 +56,8 @@ class NetTunnelUdpEvictionTest {
             Duration.ofSeconds(10),
             DataSize.ofMegabytes(1)
         ),
-        new AppProperties.Jwt("port-buddy", "http://localhost:8080")
+        new AppProperties.Jwt("port-buddy", "http://localhost:8080"),
+        AppProperties.Tcp.defaults()
     );
 
     @Test
@@ -51,7 +51,8 @@ public record AppProperties(
         String subdomainUrlTemplate,
         String notFoundPage,
         String passcodePage,
-        DataSize maxRequestBodySize
+        DataSize maxRequestBodySize,
+        String passcodeCookieSecret
     ) {
         public String subdomainHost() {
             return "." + domain;
@@ -0,0 +1,61 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/** Configuration of the HTTP response cache at the ingress, used by tunnels that opted in. */
+@Getter
+@Setter
+@Component("ingressCacheProperties")
+@ConfigurationProperties(prefix = "app.ingress-cache")
+public class IngressCacheProperties {
+
+    /**
+     * Whether responses may be cached at all. Tunnels still have to opt in.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Memory held by cached responses of all tunnels of this instance.
+     * Defaults to 256 MB.
+     */
+    private DataSize maxSize = DataSize.ofMegabytes(256);
+
+    /**
+     * Memory held by cached responses of the tunnels of a single account.
+     * Defaults to 32 MB.
+     */
+    private DataSize accountQuota = DataSize.ofMegabytes(32);
+
+    /**
+     * Largest response that is cached; larger ones are relayed without being kept.
+     * Defaults to 8 MB.
+     */
+    private DataSize maxEntrySize = DataSize.ofMegabytes(8);
+
+    /**
+     * How long a response with a validator is kept after it went stale, to be revalidated with a conditional
+     * request instead of fetched again. Defaults to 10 minutes.
+     */
+    private Duration staleRetention = Duration.ofMinutes(10);
+}
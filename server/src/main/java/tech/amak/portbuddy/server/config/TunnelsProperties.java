@@ -40,4 +40,10 @@ public class TunnelsProperties {
      * Defaults to 30 seconds.
      */
     private Duration checkInterval = Duration.ofSeconds(30);
+
+    /**
+     * How often recorded heartbeats are written to the database. Must be well below the heartbeat timeout.
+     * Defaults to 5 seconds.
+     */
+    private Duration heartbeatFlushInterval = Duration.ofSeconds(5);
 }
@@ -15,6 +15,7 @@
 package tech.amak.portbuddy.server.db.repo;
 
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -26,6 +27,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import tech.amak.portbuddy.server.db.entity.DomainEntity;
 import tech.amak.portbuddy.server.db.entity.PortReservationEntity;
@@ -93,6 +95,23 @@ public interface TunnelRepository extends JpaRepository<TunnelEntity, UUID> {
         nativeQuery = true)
     List<UUID> closeStaleConnected(@Param("cutoff") final OffsetDateTime cutoff);
 
+    /**
+     * Records a heartbeat for a batch of tunnels and marks them as connected. Closed tunnels are skipped, so a
+     * heartbeat written behind never reopens a tunnel closed in the meantime.
+     *
+     * @param ids    the tunnels that sent a heartbeat
+     * @param seenAt the heartbeat timestamp to store
+     * @return number of rows updated
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+        UPDATE tunnels SET last_heartbeat_at = :seenAt, status = 'CONNECTED', updated_at = NOW()
+        WHERE id IN (:ids)
+          AND status <> 'CLOSED'""",
+        nativeQuery = true)
+    int updateHeartbeats(@Param("ids") Collection<UUID> ids, @Param("seenAt") OffsetDateTime seenAt);
+
     @Query(value = """
         SELECT t.id AS id,
                t.type AS type,
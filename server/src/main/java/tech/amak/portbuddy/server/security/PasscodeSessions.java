@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import tech.amak.portbuddy.server.config.AppProperties;
+
+/**
+ * Issues and verifies the values of the passcode session cookie. Once a visitor has entered the passcode of a
+ * tunnel, the cookie carries an HMAC over the subdomain, an expiry and the current passcode hash instead of
+ * the passcode itself. Verifying it costs one HMAC rather than a BCrypt match per request, and changing the
+ * passcode invalidates all sessions issued for the previous one.
+ */
+@Slf4j
+@Component
+public class PasscodeSessions {
+
+    private static final String VERSION = "v1";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    // Initialized once; each use works on a clone since Mac instances are not thread-safe
+    private final Mac prototype;
+    private final Clock clock;
+
+    /**
+     * Creates the signer with the key configured in {@code app.gateway.passcode-cookie-secret}. Without a
+     * configured key a random one is used, so sessions last only as long as this instance.
+     *
+     * @param properties the application properties
+     */
+    @Autowired
+    public PasscodeSessions(final AppProperties properties) {
+        this(properties.gateway().passcodeCookieSecret(), Clock.systemUTC());
+    }
+
+    PasscodeSessions(final String secret, final Clock clock) {
+        final byte[] key;
+        if (StringUtils.isBlank(secret)) {
+            log.warn("app.gateway.passcode-cookie-secret is not set; passcode sessions are only valid "
+                     + "on this instance until it restarts");
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        } else {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            this.prototype = Mac.getInstance(ALGORITHM);
+            this.prototype.init(new SecretKeySpec(key, ALGORITHM));
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+        }
+        this.clock = clock;
+    }
+
+    /**
+     * Issues a session value for a tunnel.
+     *
+     * @param subdomain    the subdomain of the tunnel
+     * @param passcodeHash the current passcode hash of the tunnel
+     * @param ttl          how long the session is valid
+     * @return the cookie value
+     */
+    public String issue(final String subdomain, final String passcodeHash, final Duration ttl) {
+        final var expiresAt = clock.instant().plus(ttl).getEpochSecond();
+        return VERSION + "." + expiresAt + "." + ENCODER.encodeToString(sign(subdomain, expiresAt, passcodeHash));
+    }
+
+    /**
+     * Verifies a session value for a tunnel.
+     *
+     * @param value        the cookie value
+     * @param subdomain    the subdomain of the tunnel
+     * @param passcodeHash the current passcode hash of the tunnel
+     * @return whether the value was issued for this tunnel and passcode and has not expired
+     */
+    public boolean verify(final String value, final String subdomain, final String passcodeHash) {
+        if (!isSession(value)) {
+            return false;
+        }
+        final var parts = value.split("\\.", -1);
+        if (parts.length != 3) {
+            return false;
+        }
+        try {
+            final var expiresAt = Long.parseLong(parts[1]);
+            if (clock.instant().getEpochSecond() >= expiresAt) {
+                return false;
+            }
+            return MessageDigest.isEqual(DECODER.decode(parts[2]), sign(subdomain, expiresAt, passcodeHash));
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether a cookie value has the format of a session value, as opposed to a passcode stored
+     * in the cookie by earlier versions.
+     *
+     * @param value the cookie value
+     * @return whether the value is a session value
+     */
+    public boolean isSession(final String value) {
+        return value != null && value.startsWith(VERSION + ".");
+    }
+
+    private byte[] sign(final String subdomain, final long expiresAt, final String passcodeHash) {
+        final Mac mac;
+        try {
+            mac = (Mac) prototype.clone();
+        } catch (final CloneNotSupportedException e) {
+            throw new IllegalStateException(ALGORITHM + " is not cloneable", e);
+        }
+        final var data = subdomain + "\n" + expiresAt + "\n" + passcodeHash;
+        return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+}
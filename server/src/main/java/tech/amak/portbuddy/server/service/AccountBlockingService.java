@@ -14,6 +14,7 @@
 
 package tech.amak.portbuddy.server.service;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -23,6 +24,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import tech.amak.portbuddy.server.db.entity.AccountEntity;
 import tech.amak.portbuddy.server.db.repo.AccountRepository;
+import tech.amak.portbuddy.server.tunnel.TunnelAccessChangedEvent;
 
 /**
  * Central place for blocking/unblocking an account and the side effects that accompany it
@@ -39,6 +41,7 @@ public class AccountBlockingService {
     private final TunnelService tunnelService;
     private final IpBlacklistService ipBlacklistService;
     private final StripeService stripeService;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * Blocks the account (if not already blocked): flips the flag, cancels any active paid
@@ -55,6 +58,7 @@ public class AccountBlockingService {
         account.setBlocked(true);
         cancelActiveSubscription(account);
         accountRepository.save(account);
+        eventPublisher.publishEvent(TunnelAccessChangedEvent.forAccount(account.getId()));
         tunnelService.closeAllTunnels(account);
         ipBlacklistService.blacklistAccountIps(account.getId());
         log.info("Blocked account {}", account.getId());
@@ -96,6 +100,7 @@ public class AccountBlockingService {
         }
         account.setBlocked(false);
         accountRepository.save(account);
+        eventPublisher.publishEvent(TunnelAccessChangedEvent.forAccount(account.getId()));
         ipBlacklistService.removeAccountIps(account.getId());
         log.info("Unblocked account {}", account.getId());
     }
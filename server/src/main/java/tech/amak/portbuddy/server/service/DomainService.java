@@ -28,6 +28,7 @@ import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.InitialDirContext;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -45,6 +46,7 @@ import tech.amak.portbuddy.server.db.repo.AccountRepository;
 import tech.amak.portbuddy.server.db.repo.DomainRepository;
 import tech.amak.portbuddy.server.db.repo.TunnelRepository;
 import tech.amak.portbuddy.server.db.repo.UserRepository;
+import tech.amak.portbuddy.server.tunnel.TunnelAccessChangedEvent;
 
 @Service
 @RequiredArgsConstructor
@@ -60,6 +62,7 @@ public class DomainService {
     private final SslServiceClient sslServiceClient;
     private final UserRepository userRepository;
     private final AccountRepository accountRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     private final SecureRandom random = new SecureRandom();
 
@@ -186,7 +189,9 @@ public class DomainService {
 
         final var hash = passwordEncoder.encode(passcode);
         domain.setPasscodeHash(hash);
-        return domainRepository.save(domain);
+        final var saved = domainRepository.save(domain);
+        eventPublisher.publishEvent(TunnelAccessChangedEvent.forSubdomain(domain.getSubdomain()));
+        return saved;
     }
 
     /**
@@ -201,6 +206,7 @@ public class DomainService {
             .orElseThrow(() -> new RuntimeException("Domain not found"));
         domain.setPasscodeHash(null);
         domainRepository.save(domain);
+        eventPublisher.publishEvent(TunnelAccessChangedEvent.forSubdomain(domain.getSubdomain()));
     }
 
     /**
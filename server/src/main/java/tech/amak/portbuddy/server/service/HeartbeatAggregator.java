@@ -0,0 +1,171 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.service;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import tech.amak.portbuddy.server.db.repo.AccountRepository;
+import tech.amak.portbuddy.server.db.repo.TunnelRepository;
+import tech.amak.portbuddy.server.exception.AccountBlockedException;
+import tech.amak.portbuddy.server.exception.SubscriptionException;
+import tech.amak.portbuddy.server.tunnel.TunnelAccessChangedEvent;
+
+/**
+ * Write-behind store of tunnel heartbeats. Every message of a tunnel counts as a heartbeat, so recording one
+ * only marks the tunnel as seen in memory; the seen tunnels are written with one batched update per flush
+ * interval. The subscription re-check that accompanies a heartbeat is cached per tunnel, refreshed after
+ * {@link #ENTITLEMENT_MAX_AGE} and dropped when the account changes.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HeartbeatAggregator {
+
+    static final Duration ENTITLEMENT_MAX_AGE = Duration.ofMinutes(1);
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private final TunnelRepository tunnelRepository;
+    private final AccountRepository accountRepository;
+
+    private final Set<UUID> seen = ConcurrentHashMap.newKeySet();
+    // Tunnels of the flush being written; a failed write only retries the ones not forgotten meanwhile
+    private final Set<UUID> flushing = ConcurrentHashMap.newKeySet();
+    private final Map<UUID, Entitlement> entitlements = new ConcurrentHashMap<>();
+
+    /**
+     * Records a heartbeat of a tunnel after re-checking the subscription of its account.
+     * Heartbeats of unknown tunnels are ignored.
+     *
+     * @param tunnelId the tunnel
+     * @throws SubscriptionException   if the subscription of the account is not active
+     * @throws AccountBlockedException if the account is blocked
+     */
+    public void record(final UUID tunnelId) {
+        if (tunnelId == null) {
+            return;
+        }
+        var entitlement = entitlements.get(tunnelId);
+        if (entitlement == null || entitlement.isStale()) {
+            entitlement = check(tunnelId);
+            if (entitlement == null) {
+                return;
+            }
+            entitlements.put(tunnelId, entitlement);
+        }
+        if (entitlement.failure() != null) {
+            throw entitlement.failure();
+        }
+        seen.add(tunnelId);
+    }
+
+    /**
+     * Drops the unwritten heartbeat and the cached entitlement of a closed tunnel, so a later flush does not
+     * mark it as connected again.
+     *
+     * @param tunnelId the tunnel
+     */
+    public void forget(final UUID tunnelId) {
+        seen.remove(tunnelId);
+        flushing.remove(tunnelId);
+        entitlements.remove(tunnelId);
+    }
+
+    /**
+     * Writes the heartbeats recorded since the last flush. Tunnels whose update fails are kept for the next one.
+     */
+    @Scheduled(
+        fixedDelayString = "#{@tunnelsProperties.heartbeatFlushInterval.toMillis()}",
+        initialDelayString = "#{@tunnelsProperties.heartbeatFlushInterval.toMillis()}"
+    )
+    @PreDestroy
+    public void flush() {
+        entitlements.values().removeIf(Entitlement::isStale);
+        if (seen.isEmpty()) {
+            return;
+        }
+        final var seenAt = OffsetDateTime.now();
+        final var drained = new ArrayList<UUID>(seen.size());
+        for (final var iterator = seen.iterator(); iterator.hasNext(); ) {
+            final var tunnelId = iterator.next();
+            flushing.add(tunnelId);
+            drained.add(tunnelId);
+            iterator.remove();
+        }
+        for (var from = 0; from < drained.size(); from += MAX_BATCH_SIZE) {
+            write(drained.subList(from, Math.min(from + MAX_BATCH_SIZE, drained.size())), seenAt);
+        }
+    }
+
+    /**
+     * Drops the cached entitlements of the tunnels of an account whose subscription or blocking changed.
+     *
+     * @param event the change
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onAccessChanged(final TunnelAccessChangedEvent event) {
+        if (event.accountId() != null) {
+            entitlements.values().removeIf(entitlement -> event.accountId().equals(entitlement.accountId()));
+        }
+    }
+
+    private void write(final List<UUID> batch, final OffsetDateTime seenAt) {
+        try {
+            final var updated = tunnelRepository.updateHeartbeats(batch, seenAt);
+            log.trace("Flushed {} heartbeats, {} tunnels updated", batch.size(), updated);
+        } catch (final Exception e) {
+            log.warn("Failed to flush {} heartbeats: {}", batch.size(), e.toString());
+            batch.stream().filter(flushing::contains).forEach(seen::add);
+        } finally {
+            batch.forEach(flushing::remove);
+        }
+    }
+
+    private Entitlement check(final UUID tunnelId) {
+        return tunnelRepository.findById(tunnelId)
+            .map(tunnel -> {
+                RuntimeException failure = null;
+                try {
+                    accountRepository.findById(tunnel.getAccountId())
+                        .ifPresent(TunnelService::checkSubscriptionStatus);
+                } catch (final SubscriptionException | AccountBlockedException e) {
+                    failure = e;
+                }
+                return new Entitlement(tunnel.getAccountId(), failure, System.nanoTime());
+            })
+            .orElse(null);
+    }
+
+    private record Entitlement(UUID accountId, RuntimeException failure, long checkedAt) {
+
+        boolean isStale() {
+            return System.nanoTime() - checkedAt >= ENTITLEMENT_MAX_AGE.toNanos();
+        }
+    }
+}
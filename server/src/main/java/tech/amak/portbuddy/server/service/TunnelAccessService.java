@@ -0,0 +1,63 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.service;
+
+import java.util.UUID;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.RequiredArgsConstructor;
+import tech.amak.portbuddy.server.db.entity.AccountEntity;
+import tech.amak.portbuddy.server.db.entity.DomainEntity;
+import tech.amak.portbuddy.server.db.repo.AccountRepository;
+import tech.amak.portbuddy.server.db.repo.DomainRepository;
+import tech.amak.portbuddy.server.tunnel.TunnelAccess;
+
+/**
+ * Loads what the ingress needs to admit public traffic to a tunnel. The lookup runs in its own short
+ * read-only transaction, so no database connection is held while a request is relayed to the CLI.
+ */
+@Service
+@RequiredArgsConstructor
+public class TunnelAccessService {
+
+    private final AccountRepository accountRepository;
+    private final DomainRepository domainRepository;
+    private final TunnelService tunnelService;
+
+    /**
+     * Looks up the subscription status of the tunnel's account and the passcode protecting the tunnel.
+     * A temporary passcode of the tunnel takes precedence over the passcode of its domain.
+     *
+     * @param accountId the account owning the tunnel
+     * @param tunnelId  the tunnel
+     * @param subdomain the subdomain the tunnel is exposed on
+     * @return the access snapshot of the tunnel
+     */
+    @Transactional(readOnly = true)
+    public TunnelAccess load(final UUID accountId, final UUID tunnelId, final String subdomain) {
+        final var account = accountRepository.findById(accountId);
+        final var passcodeHash = tunnelService.getTempPasscodeHash(tunnelId)
+            .or(() -> domainRepository.findBySubdomain(subdomain)
+                .map(DomainEntity::getPasscodeHash))
+            .orElse(null);
+        return new TunnelAccess(
+            account.isPresent(),
+            account.map(AccountEntity::getSubscriptionStatus).orElse(null),
+            passcodeHash,
+            System.nanoTime());
+    }
+}
@@ -56,6 +56,7 @@ public class TunnelService {
     private final TunnelRegistry tunnelRegistry;
     private final NetProxyClient netProxyClient;
     private final IpBlacklistService ipBlacklistService;
+    private final HeartbeatAggregator heartbeatAggregator;
 
     /**
      * Creates a new HTTP tunnel using the database entity id as the tunnel id.
@@ -110,7 +111,7 @@ public class TunnelService {
         return createTunnel(account.getId(), userId, apiKeyId, request, null, null, clientIp, userAgent);
     }
 
-    private void checkSubscriptionStatus(final AccountEntity account) {
+    static void checkSubscriptionStatus(final AccountEntity account) {
         if (account.isBlocked()) {
             throw new AccountBlockedException(
                 "Account [%s] is blocked. Please contact support.".formatted(account.getId()));
@@ -227,6 +228,7 @@ public class TunnelService {
                 }
                 tunnel.setStatus(TunnelStatus.CLOSED);
                 tunnelRepository.save(tunnel);
+                heartbeatAggregator.forget(tunnelId);
             }
         }
     }
@@ -373,23 +375,14 @@ public class TunnelService {
     }
 
     /**
-     * Updates the last heartbeat timestamp of a tunnel to the current time. This method
-     * retrieves the tunnel from the repository using the provided tunnel ID and updates
-     * the last heartbeat timestamp if the tunnel is found.
+     * Records a heartbeat of a tunnel. The last heartbeat timestamp is written in batches by the
+     * {@link HeartbeatAggregator}, which also serves the subscription re-check from its cache.
      *
      * @param tunnelId The unique identifier of the tunnel whose heartbeat should be updated.
      *                 If null or the tunnel is not found, no action is taken.
      */
-    @Transactional
     public void heartbeat(final UUID tunnelId) {
-        findByTunnelId(tunnelId).ifPresent(entity -> {
-            accountRepository.findById(entity.getAccountId())
-                .ifPresent(this::checkSubscriptionStatus);
-
-            entity.setLastHeartbeatAt(OffsetDateTime.now());
-            entity.setStatus(TunnelStatus.CONNECTED);
-            tunnelRepository.save(entity);
-        });
+        heartbeatAggregator.record(tunnelId);
     }
 
     /**
@@ -402,6 +395,9 @@ public class TunnelService {
      */
     @Transactional
     public void markClosed(final UUID tunnelId) {
+        if (tunnelId != null) {
+            heartbeatAggregator.forget(tunnelId);
+        }
         findByTunnelId(tunnelId).ifPresent(entity -> {
             entity.setStatus(TunnelStatus.CLOSED);
             tunnelRepository.save(entity);
@@ -0,0 +1,266 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.web.socket.BinaryMessage;
+
+import lombok.extern.slf4j.Slf4j;
+import tech.amak.portbuddy.common.tunnel.FrameCompression;
+import tech.amak.portbuddy.common.tunnel.HttpStreamFrame;
+import tech.amak.portbuddy.common.tunnel.HttpTunnelMessage;
+
+/**
+ * Server side of a streamed HTTP exchange (see {@link HttpStreamFrame}).
+ * The ingress thread pushes request body chunks to the CLI, then waits for the response head and
+ * pulls response body chunks as they arrive. Both directions are flow controlled with
+ * {@link HttpStreamFrame#WINDOW_CHUNKS credit}: the ingress thread waits for credit before it sends request
+ * chunks, and returns credit as it takes response chunks, so the tunnel reader only ever buffers a window of
+ * them and never waits for a slow public client.
+ */
+@Slf4j
+public class HttpTunnelStream {
+
+    /**
+     * Number of response chunks taken before their credit is returned to the CLI in one frame.
+     */
+    static final int CREDIT_BATCH = HttpStreamFrame.WINDOW_CHUNKS / 4;
+
+    /**
+     * How long a request chunk may wait for credit before the CLI is considered stuck.
+     */
+    private static final Duration CREDIT_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final byte[] END = new byte[0];
+
+    private final TunnelRegistry.Tunnel tunnel;
+    private final String requestId;
+    // Whether request body chunks are deflated; decided once from the request head
+    private final boolean compressBody;
+    private final CompletableFuture<HttpTunnelMessage> head = new CompletableFuture<>();
+    // A window of response chunks and the end marker
+    private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>(HttpStreamFrame.WINDOW_CHUNKS + 1);
+    private final Semaphore requestCredit = new Semaphore(HttpStreamFrame.WINDOW_CHUNKS);
+    // Response chunks taken and not yet credited; only touched by the ingress thread
+    private int uncreditedChunks;
+    private volatile String abortReason;
+
+    HttpTunnelStream(final TunnelRegistry.Tunnel tunnel, final String requestId, final boolean compressBody) {
+        this.tunnel = tunnel;
+        this.requestId = requestId;
+        this.compressBody = compressBody;
+    }
+
+    public String requestId() {
+        return requestId;
+    }
+
+    /**
+     * Sends a chunk of the request body to the CLI.
+     *
+     * @param data   buffer holding the chunk
+     * @param offset offset of the chunk in the buffer
+     * @param length length of the chunk
+     * @throws IOException if the stream was aborted, the CLI returned no credit in time or the tunnel
+     *                     session failed
+     */
+    public void sendBody(final byte[] data, final int offset, final int length) throws IOException {
+        ensureNotAborted();
+        awaitRequestCredit();
+        ensureNotAborted();
+        final var frame = HttpStreamFrame.encode(HttpStreamFrame.Type.REQUEST_DATA, requestId, data, offset, length);
+        tunnel.sendMessage(requestId, new BinaryMessage(compressBody ? FrameCompression.compress(frame) : frame));
+    }
+
+    /**
+     * Signals the CLI that the request body is complete.
+     *
+     * @throws IOException if the stream was aborted or the tunnel session failed
+     */
+    public void endBody() throws IOException {
+        ensureNotAborted();
+        send(HttpStreamFrame.encode(HttpStreamFrame.Type.REQUEST_END, requestId).array());
+    }
+
+    /**
+     * Waits for the response head (status and headers) sent by the CLI.
+     *
+     * @param timeout maximum time to wait
+     * @return the response head
+     * @throws IOException      if the stream was aborted
+     * @throws TimeoutException if the head did not arrive in time
+     */
+    public HttpTunnelMessage awaitHead(final Duration timeout) throws IOException, TimeoutException {
+        try {
+            return head.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for response", e);
+        } catch (final ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Takes the next response body chunk.
+     *
+     * @param idleTimeout maximum time to wait for the next chunk
+     * @return the next chunk, or {@code null} when the response body is complete
+     * @throws IOException      if the stream was aborted
+     * @throws TimeoutException if no chunk arrived in time
+     */
+    public byte[] nextChunk(final Duration idleTimeout) throws IOException, TimeoutException {
+        final byte[] chunk;
+        try {
+            chunk = chunks.poll(idleTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for response body", e);
+        }
+        if (chunk == null) {
+            ensureNotAborted();
+            throw new TimeoutException("No response data received within " + idleTimeout);
+        }
+        if (chunk == END) {
+            ensureNotAborted();
+            return null;
+        }
+        creditResponseChunk();
+        return chunk;
+    }
+
+    /**
+     * Returns whether more response chunks are already buffered, which lets the caller
+     * coalesce writes and flush only when it caught up with the tunnel.
+     */
+    public boolean hasBufferedChunks() {
+        return !chunks.isEmpty();
+    }
+
+    /**
+     * Aborts the exchange and notifies the CLI so it can cancel the upstream call.
+     *
+     * @param reason human-readable reason
+     */
+    public void abort(final String reason) {
+        if (abortReason != null) {
+            return;
+        }
+        onAbort(reason);
+        try {
+            final var bytes = reason == null ? null : reason.getBytes(StandardCharsets.UTF_8);
+            send(HttpStreamFrame.encode(HttpStreamFrame.Type.ABORT, requestId, bytes).array());
+        } catch (final Exception e) {
+            log.debug("Failed to send ABORT for stream {}: {}", requestId, e.toString());
+        }
+    }
+
+    /**
+     * Releases the stream from the tunnel. Must be called once the exchange is over.
+     */
+    public void close() {
+        tunnel.streams().remove(requestId, this);
+    }
+
+    void onHead(final HttpTunnelMessage response) {
+        head.complete(response);
+    }
+
+    void onData(final byte[] data) {
+        if (data.length > 0) {
+            enqueue(data);
+        }
+    }
+
+    void onEnd() {
+        enqueue(END);
+    }
+
+    void onCredit(final int credit) {
+        if (credit > 0) {
+            requestCredit.release(credit);
+        }
+    }
+
+    /**
+     * Buffers a response chunk without waiting: the CLI sends no more than the window it was credited, so a
+     * full buffer means it broke the protocol, and only this stream fails.
+     */
+    private void enqueue(final byte[] chunk) {
+        if (abortReason != null) {
+            return;
+        }
+        // The last slot is kept for the end marker; only the reader thread adds chunks
+        if ((chunk != END && chunks.remainingCapacity() <= 1) || !chunks.offer(chunk)) {
+            log.warn("Client sent response data of stream {} beyond its window; aborting", requestId);
+            abort("Flow control window exceeded");
+        }
+    }
+
+    void onAbort(final String reason) {
+        if (abortReason != null) {
+            return;
+        }
+        abortReason = reason == null ? "Stream aborted" : reason;
+        head.completeExceptionally(new IOException(abortReason));
+        chunks.clear();
+        chunks.offer(END);
+        // Wakes a request chunk waiting for credit, which then sees the abort
+        requestCredit.release(HttpStreamFrame.WINDOW_CHUNKS);
+    }
+
+    private void awaitRequestCredit() throws IOException {
+        try {
+            if (!requestCredit.tryAcquire(CREDIT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Client did not consume the request body within " + CREDIT_TIMEOUT);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for credit", e);
+        }
+    }
+
+    /**
+     * Returns the credit of taken response chunks to the CLI, batched to save frames.
+     */
+    private void creditResponseChunk() throws IOException {
+        if (++uncreditedChunks < CREDIT_BATCH) {
+            return;
+        }
+        final var credit = uncreditedChunks;
+        uncreditedChunks = 0;
+        send(HttpStreamFrame.encodeCredit(requestId, credit).array());
+    }
+
+    private void ensureNotAborted() throws IOException {
+        if (abortReason != null) {
+            throw new IOException(abortReason);
+        }
+    }
+
+    private void send(final byte[] frame) throws IOException {
+        tunnel.sendMessage(requestId, new BinaryMessage(frame));
+    }
+}
@@ -14,7 +14,7 @@
 
 package tech.amak.portbuddy.server.tunnel;
 
-import java.util.Base64;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,7 +33,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import tech.amak.portbuddy.common.tunnel.WsTunnelMessage;
 import tech.amak.portbuddy.server.config.AppProperties;
-import tech.amak.portbuddy.server.db.repo.AccountRepository;
 import tech.amak.portbuddy.server.db.repo.DomainRepository;
 
 /**
@@ -48,7 +47,7 @@ public class PublicWebSocketProxyHandler extends AbstractWebSocketHandler {
     private final TunnelRegistry registry;
     private final AppProperties properties;
     private final DomainRepository domainRepository;
-    private final AccountRepository accountRepository;
+    private final TunnelAccessCache accessCache;
 
     @Override
     public void afterConnectionEstablished(final WebSocketSession browserSession) throws Exception {
@@ -75,15 +74,12 @@ public class PublicWebSocketProxyHandler extends AbstractWebSocketHandler {
         }
 
         // Check subscription status
-        final var accountOpt = accountRepository.findById(tunnel.accountId());
-        if (accountOpt.isPresent()) {
-            final var status = accountOpt.get().getSubscriptionStatus();
-            if (status != null && !"active".equals(status)) {
-                log.warn("Blocked WS request to subdomain {} because subscription is not active (status: {})",
-                    subdomain, status);
-                browserSession.close(CloseStatus.POLICY_VIOLATION.withReason("Subscription inactive"));
-                return;
-            }
+        final var access = accessCache.get(tunnel);
+        if (!access.subscriptionActive()) {
+            log.warn("Blocked WS request to subdomain {} because subscription is not active (status: {})",
+                subdomain, access.subscriptionStatus());
+            browserSession.close(CloseStatus.POLICY_VIOLATION.withReason("Subscription inactive"));
+            return;
         }
 
         final var connectionId = UUID.randomUUID().toString();
@@ -114,11 +110,9 @@ public class PublicWebSocketProxyHandler extends AbstractWebSocketHandler {
         if (ids == null) {
             return;
         }
-        final var websocketMessage = new WsTunnelMessage();
-        websocketMessage.setConnectionId(ids.getConnectionId());
-        websocketMessage.setWsType(WsTunnelMessage.Type.TEXT);
-        websocketMessage.setText(message.getPayload());
-        registry.sendWsToClient(ids.getTunnelId(), websocketMessage);
+        final var payload = ByteBuffer.wrap(message.asBytes());
+        registry.browserTraffic().received(payload.remaining());
+        registry.sendWsDataToClient(ids, WsTunnelMessage.Type.TEXT, payload);
     }
 
     @Override
@@ -127,11 +121,9 @@ public class PublicWebSocketProxyHandler extends AbstractWebSocketHandler {
         if (ids == null) {
             return;
         }
-        final var websocketMessage = new WsTunnelMessage();
-        websocketMessage.setConnectionId(ids.getConnectionId());
-        websocketMessage.setWsType(WsTunnelMessage.Type.BINARY);
-        websocketMessage.setDataB64(Base64.getEncoder().encodeToString(message.getPayload().array()));
-        registry.sendWsToClient(ids.getTunnelId(), websocketMessage);
+        registry.browserTraffic().received(message.getPayloadLength());
+        // Copied straight into the tunnel frame; base64 only for tunnels on the JSON protocol
+        registry.sendWsDataToClient(ids, WsTunnelMessage.Type.BINARY, message.getPayload());
     }
 
     @Override
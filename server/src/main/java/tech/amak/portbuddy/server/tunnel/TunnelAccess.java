@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+/**
+ * Snapshot of what decides whether public traffic may reach a tunnel, held on the
+ * {@link TunnelRegistry.Tunnel} so ingress does not query the database per request.
+ *
+ * @param accountFound       whether the account owning the tunnel exists
+ * @param subscriptionStatus the subscription status of the account, or {@code null} if none is recorded
+ * @param passcodeHash       the hash of the passcode protecting the tunnel, or {@code null} if unprotected
+ * @param loadedAt           the {@link System#nanoTime()} at which the snapshot was loaded
+ */
+public record TunnelAccess(boolean accountFound, String subscriptionStatus, String passcodeHash, long loadedAt) {
+
+    /**
+     * Returns whether the subscription allows traffic; accounts without a recorded status are not restricted.
+     */
+    public boolean subscriptionActive() {
+        return subscriptionStatus == null || "active".equals(subscriptionStatus);
+    }
+}
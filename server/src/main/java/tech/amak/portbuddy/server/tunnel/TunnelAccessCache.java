@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import java.time.Duration;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import tech.amak.portbuddy.server.service.TunnelAccessService;
+
+/**
+ * Keeps the {@link TunnelAccess} snapshot of each registered tunnel. The snapshot is loaded when the tunnel
+ * registers and dropped when a {@link TunnelAccessChangedEvent} is committed on this instance. Changes made
+ * through another server instance are picked up once the snapshot is older than {@link #MAX_AGE}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TunnelAccessCache implements TunnelRegistry.RouteListener {
+
+    /**
+     * Age after which a snapshot is reloaded even without an invalidation event.
+     */
+    static final Duration MAX_AGE = Duration.ofMinutes(1);
+
+    private final TunnelRegistry registry;
+    private final TunnelAccessService accessService;
+
+    @PostConstruct
+    void init() {
+        registry.addRouteListener(this);
+    }
+
+    /**
+     * Returns the access snapshot of a tunnel, loading it if it is missing or stale.
+     *
+     * @param tunnel the tunnel
+     * @return the snapshot
+     */
+    public TunnelAccess get(final TunnelRegistry.Tunnel tunnel) {
+        final var cached = tunnel.access();
+        if (cached != null && System.nanoTime() - cached.loadedAt() < MAX_AGE.toNanos()) {
+            return cached;
+        }
+        return load(tunnel);
+    }
+
+    @Override
+    public void onTunnelUp(final TunnelRegistry.Tunnel tunnel) {
+        load(tunnel);
+    }
+
+    @Override
+    public void onTunnelDown(final TunnelRegistry.Tunnel tunnel) {
+        tunnel.invalidateAccess();
+    }
+
+    /**
+     * Drops the snapshots affected by a committed change.
+     *
+     * @param event the change
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onAccessChanged(final TunnelAccessChangedEvent event) {
+        if (event.accountId() != null) {
+            for (final var tunnel : registry.tunnels()) {
+                if (event.accountId().equals(tunnel.accountId())) {
+                    tunnel.invalidateAccess();
+                }
+            }
+        }
+        if (event.subdomain() != null) {
+            final var tunnel = registry.getBySubdomain(event.subdomain());
+            if (tunnel != null) {
+                tunnel.invalidateAccess();
+            }
+        }
+        log.debug("Invalidated tunnel access for {}", event);
+    }
+
+    private TunnelAccess load(final TunnelRegistry.Tunnel tunnel) {
+        final var version = tunnel.accessVersion();
+        final var loaded = accessService.load(tunnel.accountId(), tunnel.tunnelId(), tunnel.subdomain());
+        tunnel.setAccess(version, loaded);
+        return loaded;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import java.util.UUID;
+
+/**
+ * Application event published when something a {@link TunnelAccess} snapshot is built from changes:
+ * the subscription status or blocking of an account, or the passcode of a domain.
+ *
+ * @param accountId the account whose tunnels are affected, or {@code null}
+ * @param subdomain the subdomain whose tunnel is affected, or {@code null}
+ */
+public record TunnelAccessChangedEvent(UUID accountId, String subdomain) {
+
+    /**
+     * Creates an event affecting all tunnels of an account.
+     *
+     * @param accountId the account
+     * @return the event
+     */
+    public static TunnelAccessChangedEvent forAccount(final UUID accountId) {
+        return new TunnelAccessChangedEvent(accountId, null);
+    }
+
+    /**
+     * Creates an event affecting the tunnel of a subdomain.
+     *
+     * @param subdomain the subdomain
+     * @return the event
+     */
+    public static TunnelAccessChangedEvent forSubdomain(final String subdomain) {
+        return new TunnelAccessChangedEvent(null, subdomain);
+    }
+}
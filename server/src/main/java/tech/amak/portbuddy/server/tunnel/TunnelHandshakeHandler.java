@@ -0,0 +1,46 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import java.util.List;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
+
+/**
+ * Handshake handler of the tunnel endpoint. Clients that negotiate {@link TunnelFeatures#DEFLATE} compress
+ * frames themselves where it pays off, so the permessage-deflate extension, which would deflate every
+ * frame including already compressed bodies, is not accepted for them.
+ */
+public class TunnelHandshakeHandler extends PermissiveSubprotocolHandshakeHandler {
+
+    static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    @Override
+    protected List<WebSocketExtension> filterRequestedExtensions(final ServerHttpRequest request,
+                                                                 final List<WebSocketExtension> requested,
+                                                                 final List<WebSocketExtension> supported) {
+        final var filtered = super.filterRequestedExtensions(request, requested, supported);
+        final var features = TunnelFeatures.parse(request.getHeaders().getFirst(TunnelFeatures.HEADER));
+        if (!features.contains(TunnelFeatures.DEFLATE)) {
+            return filtered;
+        }
+        return filtered.stream()
+            .filter(extension -> !PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName()))
+            .toList();
+    }
+}
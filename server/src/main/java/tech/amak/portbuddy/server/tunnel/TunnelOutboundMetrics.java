@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Publishes the queue state of the tunnel outbound writers (see {@link TunnelOutboundWriter}),
+ * aggregated over all tunnels of this instance to keep the number of series independent of the tunnel count.
+ */
+@Component
+@RequiredArgsConstructor
+public class TunnelOutboundMetrics implements MeterBinder {
+
+    private final TunnelRegistry registry;
+
+    @Override
+    public void bindTo(final MeterRegistry meterRegistry) {
+        Gauge.builder("portbuddy.tunnel.outbound.queue.depth", registry,
+                sum(writer -> writer.queueDepth()))
+            .description("Messages waiting to be written to tunnel sessions")
+            .register(meterRegistry);
+        Gauge.builder("portbuddy.tunnel.outbound.queue.bytes", registry,
+                sum(writer -> writer.queuedBytes()))
+            .description("Payload bytes waiting to be written to tunnel sessions")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("portbuddy.tunnel.outbound.queue.time.max", registry, TunnelOutboundMetrics::maxTimeInQueue)
+            .description("Longest time a message waited for a tunnel session since the previous sample")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+    }
+
+    private static ToDoubleFunction<TunnelRegistry> sum(final ToDoubleFunction<TunnelOutboundWriter> metric) {
+        return registry -> registry.tunnels().stream()
+            .map(TunnelRegistry.Tunnel::writer)
+            .filter(writer -> writer != null)
+            .mapToDouble(metric)
+            .sum();
+    }
+
+    private static double maxTimeInQueue(final TunnelRegistry registry) {
+        return registry.tunnels().stream()
+            .map(TunnelRegistry.Tunnel::writer)
+            .filter(writer -> writer != null)
+            .mapToDouble(writer -> writer.takeMaxTimeInQueue().toNanos() / 1e9)
+            .max()
+            .orElse(0);
+    }
+}
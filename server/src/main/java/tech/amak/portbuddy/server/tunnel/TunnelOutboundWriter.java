@@ -0,0 +1,343 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Outbound writer of a tunnel session. Senders on any thread enqueue messages on the lane of their
+ * connection (an HTTP request id or a browser WS connection id); a single virtual thread drains the
+ * lanes round-robin and is the only thread writing to the session.
+ *
+ * <p>Each lane has a byte credit: once a lane holds {@link #LANE_CREDIT_BYTES} of unsent data its
+ * senders block until the writer catches up, so a bulk upload is throttled to the tunnel's speed
+ * without delaying messages of other lanes by more than one {@link #QUANTUM_BYTES} turn. Control
+ * messages (e.g. PONG) bypass the credit and are written before any lane.
+ */
+@Slf4j
+public class TunnelOutboundWriter {
+
+    /**
+     * Lane of control messages, which are written ahead of all connections.
+     */
+    public static final String CONTROL_LANE = "";
+
+    /**
+     * Unsent bytes a single lane may hold before its senders block.
+     */
+    static final int LANE_CREDIT_BYTES = 256 * 1024;
+
+    /**
+     * Bytes written from one lane before the writer moves to the next lane with pending messages.
+     */
+    static final int QUANTUM_BYTES = 64 * 1024;
+
+    /**
+     * Maximum number of messages queued across all lanes.
+     */
+    static final int MAX_QUEUED_MESSAGES = 4096;
+
+    /**
+     * How long a sender may wait for credit before the send fails.
+     */
+    private static final Duration SEND_TIMEOUT = Duration.ofSeconds(10);
+
+    private final String name;
+    private final WebSocketSession session;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pending = lock.newCondition();
+    private final Condition credit = lock.newCondition();
+    // All fields below up to the metrics are guarded by lock
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private final ArrayDeque<Lane> ready = new ArrayDeque<>();
+    private final Lane control = new Lane(CONTROL_LANE);
+    private int queuedMessages;
+    private long queuedBytes;
+    private boolean closed;
+    private Thread thread;
+
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong totalTimeInQueueNanos = new AtomicLong();
+    private final AtomicLong maxTimeInQueueNanos = new AtomicLong();
+
+    /**
+     * Creates a writer for a tunnel session. The writer does not send anything until {@link #start()}.
+     *
+     * @param name    name used for the writer thread and log messages
+     * @param session the tunnel session to write to
+     */
+    public TunnelOutboundWriter(final String name, final WebSocketSession session) {
+        this.name = name;
+        this.session = session;
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    public void start() {
+        lock.lock();
+        try {
+            if (thread == null && !closed) {
+                thread = Thread.ofVirtual().name("tunnel-writer-" + name).unstarted(this::drain);
+                thread.start();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a message on the lane of a connection, waiting for the lane's credit if it is exhausted.
+     *
+     * @param lane    the connection the message belongs to, or {@link #CONTROL_LANE}
+     * @param message the message to send
+     * @throws IOException if the writer is closed or no credit became available in time
+     */
+    public void send(final String lane, final WebSocketMessage<?> message) throws IOException {
+        final var size = message.getPayloadLength();
+        final var isControl = CONTROL_LANE.equals(lane);
+        lock.lock();
+        try {
+            var remaining = SEND_TIMEOUT.toNanos();
+            while (!closed && !isControl && (queueFull() || !hasCredit(lanes.get(lane)))) {
+                if (remaining <= 0) {
+                    throw new IOException("Tunnel writer queue is full");
+                }
+                remaining = credit.awaitNanos(remaining);
+            }
+            if (closed) {
+                throw new IOException("Tunnel session is not open");
+            }
+            final var target = isControl ? control : lanes.computeIfAbsent(lane, Lane::new);
+            target.messages.add(new Entry(message, size, System.nanoTime()));
+            target.bytes += size;
+            queuedMessages++;
+            queuedBytes += size;
+            if (!isControl && !target.scheduled) {
+                target.scheduled = true;
+                ready.addLast(target);
+            }
+            pending.signal();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for tunnel credit", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the writer and discards queued messages. Waits briefly for a write in progress, so the
+     * caller may use the session directly afterwards.
+     */
+    public void close() {
+        final Thread current;
+        lock.lock();
+        try {
+            closed = true;
+            lanes.clear();
+            ready.clear();
+            control.messages.clear();
+            queuedMessages = 0;
+            queuedBytes = 0;
+            pending.signalAll();
+            credit.signalAll();
+            current = thread;
+        } finally {
+            lock.unlock();
+        }
+        if (current != null && current != Thread.currentThread()) {
+            try {
+                current.join(Duration.ofSeconds(1).toMillis());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting to be written.
+     */
+    public int queueDepth() {
+        lock.lock();
+        try {
+            return queuedMessages;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of payload bytes waiting to be written.
+     */
+    public long queuedBytes() {
+        lock.lock();
+        try {
+            return queuedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages written so far.
+     */
+    public long sentMessages() {
+        return sentMessages.get();
+    }
+
+    /**
+     * Returns the total time the written messages spent in the queue.
+     */
+    public Duration totalTimeInQueue() {
+        return Duration.ofNanos(totalTimeInQueueNanos.get());
+    }
+
+    /**
+     * Returns the longest time a message spent in the queue since the previous call and resets it,
+     * so periodic sampling reports the worst case of each interval.
+     */
+    public Duration takeMaxTimeInQueue() {
+        return Duration.ofNanos(maxTimeInQueueNanos.getAndSet(0));
+    }
+
+    private static boolean hasCredit(final Lane lane) {
+        return lane == null || lane.bytes < LANE_CREDIT_BYTES;
+    }
+
+    private boolean queueFull() {
+        return queuedMessages >= MAX_QUEUED_MESSAGES;
+    }
+
+    private void drain() {
+        final var batch = new ArrayList<Entry>();
+        while (true) {
+            final Lane lane;
+            lock.lock();
+            try {
+                while (!closed && control.messages.isEmpty() && ready.isEmpty()) {
+                    pending.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return;
+                }
+                lane = control.messages.isEmpty() ? ready.pollFirst() : control;
+                takeTurn(lane, batch);
+            } finally {
+                lock.unlock();
+            }
+            try {
+                write(batch);
+            } catch (final IOException | RuntimeException e) {
+                log.warn("Tunnel {} write failed: {}", name, e.toString());
+                close();
+                closeSession();
+                return;
+            } finally {
+                release(lane, batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Moves up to one quantum of the lane's messages to the batch and reschedules the lane if it has more.
+     */
+    private void takeTurn(final Lane lane, final List<Entry> batch) {
+        var taken = 0;
+        while (!lane.messages.isEmpty() && (batch.isEmpty() || taken < QUANTUM_BYTES)) {
+            final var entry = lane.messages.pollFirst();
+            batch.add(entry);
+            taken += entry.size;
+        }
+        if (lane != control) {
+            if (lane.messages.isEmpty()) {
+                lane.scheduled = false;
+            } else {
+                ready.addLast(lane);
+            }
+        }
+    }
+
+    private void write(final List<Entry> batch) throws IOException {
+        for (final var entry : batch) {
+            final var waited = System.nanoTime() - entry.enqueuedAt;
+            totalTimeInQueueNanos.addAndGet(waited);
+            maxTimeInQueueNanos.accumulateAndGet(waited, Math::max);
+            session.sendMessage(entry.message);
+            sentMessages.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the credit of written messages to their lane and wakes up blocked senders.
+     */
+    private void release(final Lane lane, final List<Entry> batch) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            for (final var entry : batch) {
+                lane.bytes -= entry.size;
+                queuedMessages--;
+                queuedBytes -= entry.size;
+            }
+            if (lane != control && !lane.scheduled && lane.bytes == 0) {
+                lanes.remove(lane.key, lane);
+            }
+            credit.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeSession() {
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (final IOException e) {
+            log.debug("Failed to close tunnel {} session: {}", name, e.toString());
+        }
+    }
+
+    private static final class Lane {
+        private final String key;
+        private final ArrayDeque<Entry> messages = new ArrayDeque<>();
+        private long bytes;
+        private boolean scheduled;
+
+        private Lane(final String key) {
+            this.key = key;
+        }
+    }
+
+    private record Entry(WebSocketMessage<?> message, int size, long enqueuedAt) {
+    }
+}
@@ -15,15 +15,25 @@
 package tech.amak.portbuddy.server.tunnel;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -34,7 +44,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import tech.amak.portbuddy.common.tunnel.ControlMessage;
+import tech.amak.portbuddy.common.tunnel.FrameCompression;
+import tech.amak.portbuddy.common.tunnel.HttpStreamFrame;
 import tech.amak.portbuddy.common.tunnel.HttpTunnelMessage;
+import tech.amak.portbuddy.common.tunnel.TrafficCounters;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
+import tech.amak.portbuddy.common.tunnel.TunnelMessageCodec;
 import tech.amak.portbuddy.common.tunnel.WsTunnelMessage;
 import tech.amak.portbuddy.server.db.entity.TunnelEntity;
 
@@ -48,7 +63,26 @@ public class TunnelRegistry {
 
     private final Map<String, Tunnel> bySubdomain = new ConcurrentHashMap<>();
     private final Map<UUID, Tunnel> byTunnelId = new ConcurrentHashMap<>();
+    // Browser WS sessions of all tunnels, so a frame from the browser is routed without scanning the tunnels
+    private final Map<WebSocketSession, Ids> byBrowserSession = new ConcurrentHashMap<>();
+    private final List<RouteListener> routeListeners = new CopyOnWriteArrayList<>();
+    // Totals of all tunnel sessions and of all browser WS sessions of this instance
+    private final TrafficCounters traffic = new TrafficCounters();
+    private final TrafficCounters browserTraffic = new TrafficCounters();
     public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+    /**
+     * How long an HTTP request waits for a free slot of a tunnel at its concurrency limit before it is shed.
+     */
+    public static final Duration ADMISSION_TIMEOUT = Duration.ofSeconds(10);
+    /**
+     * Requests waiting per slot of a tunnel beyond which further requests are shed without waiting.
+     */
+    static final int MAX_QUEUED_PER_SLOT = 4;
+    /**
+     * Protocol features this server accepts from clients (see {@link TunnelFeatures}).
+     */
+    public static final Set<String> SUPPORTED_FEATURES = Set.of(TunnelFeatures.HTTP_STREAM,
+        TunnelFeatures.BINARY_CODEC, TunnelFeatures.DEFLATE, TunnelFeatures.HTTP_CACHE);
 
     private final ObjectMapper mapper;
 
@@ -64,13 +98,109 @@ public class TunnelRegistry {
         final var tunnel = register(tunnelEntity.getDomain().getSubdomain(), tunnelEntity.getId(),
             tunnelEntity.getAccountId());
         tunnel.setSession(session);
-        log.info("Registered tunnel {} with session {}", tunnel.tunnelId(), session.getId());
+        tunnel.setCustomDomain(tunnelEntity.getDomain().getCustomDomain());
+        final var handshakeHeaders = session.getHandshakeHeaders();
+        if (handshakeHeaders != null) {
+            tunnel.setFeatures(negotiateFeatures(session));
+            tunnel.limitInFlight(TunnelFeatures.parseMaxInFlight(
+                handshakeHeaders.getFirst(TunnelFeatures.MAX_IN_FLIGHT_HEADER)));
+        }
+        log.info("Registered tunnel {} with session {} features {} max in-flight {}", tunnel.tunnelId(),
+            session.getId(), tunnel.features(), tunnel.maxInFlight());
+        notifyRouteListeners(tunnel, true);
         return true;
     }
 
+    /**
+     * Returns the features of {@link #SUPPORTED_FEATURES} the client advertised in its handshake request.
+     *
+     * @param session the tunnel session
+     * @return the features to use on the session
+     */
+    public static Set<String> negotiateFeatures(final WebSocketSession session) {
+        final var handshakeHeaders = session.getHandshakeHeaders();
+        return handshakeHeaders != null
+            ? TunnelFeatures.negotiate(handshakeHeaders.getFirst(TunnelFeatures.HEADER), SUPPORTED_FEATURES)
+            : Set.of();
+    }
+
+    /**
+     * Adds a listener notified whenever a tunnel is registered on or removed from this instance.
+     *
+     * @param listener the listener to add
+     */
+    public void addRouteListener(final RouteListener listener) {
+        routeListeners.add(listener);
+    }
+
+    /**
+     * Returns the tunnels currently registered on this instance.
+     *
+     * @return a snapshot of the registered tunnels
+     */
+    public List<Tunnel> tunnels() {
+        return List.copyOf(byTunnelId.values());
+    }
+
+    /**
+     * Returns the number of tunnels registered on this instance.
+     */
+    public int tunnelCount() {
+        return byTunnelId.size();
+    }
+
+    /**
+     * Returns the number of browser WS sessions of all tunnels.
+     */
+    public int browserSessionCount() {
+        return byBrowserSession.size();
+    }
+
+    /**
+     * Returns the frames and bytes exchanged with the clients of all tunnels, including closed ones.
+     */
+    public TrafficCounters traffic() {
+        return traffic;
+    }
+
+    /**
+     * Returns the frames and bytes exchanged with the browser WS sessions of all tunnels.
+     */
+    public TrafficCounters browserTraffic() {
+        return browserTraffic;
+    }
+
+    /**
+     * Counts a message received from the client of a tunnel.
+     *
+     * @param tunnelId the tunnel the message was received on
+     * @param bytes    size of the message
+     */
+    public void onReceived(final UUID tunnelId, final int bytes) {
+        final var tunnel = byTunnelId.get(tunnelId);
+        if (tunnel != null) {
+            tunnel.traffic().received(bytes);
+        }
+    }
+
+    private void notifyRouteListeners(final Tunnel tunnel, final boolean up) {
+        for (final var listener : routeListeners) {
+            try {
+                if (up) {
+                    listener.onTunnelUp(tunnel);
+                } else {
+                    listener.onTunnelDown(tunnel);
+                }
+            } catch (final Exception e) {
+                log.warn("Route listener failed for tunnel {}: {}", tunnel.tunnelId(), e.toString());
+            }
+        }
+    }
+
     /**
      * Creates a new pending Tunnel instance with the specified subdomain and tunnel ID
-     * and registers it in the internal mappings.
+     * and registers it in the internal mappings. A tunnel still registered under the same ID, whose client
+     * reconnected before its old session's close was handled, is released.
      *
      * @param subdomain the subdomain associated with the tunnel
      * @param tunnelId  the unique identifier for the tunnel
@@ -78,9 +208,13 @@ public class TunnelRegistry {
      * @return the created Tunnel instance
      */
     private Tunnel register(final String subdomain, final UUID tunnelId, final UUID accountId) {
-        final var tunnel = new Tunnel(subdomain, tunnelId, accountId);
+        final var tunnel = new Tunnel(subdomain, tunnelId, accountId, new TrafficCounters(traffic));
         bySubdomain.put(subdomain, tunnel);
-        byTunnelId.put(tunnelId, tunnel);
+        final var replaced = byTunnelId.put(tunnelId, tunnel);
+        if (replaced != null) {
+            log.info("Tunnel {} reconnected; releasing its previous session", tunnelId);
+            release(replaced);
+        }
         return tunnel;
     }
 
@@ -114,16 +248,27 @@ public class TunnelRegistry {
         }
         // Assign id if missing
         if (request.getId() == null) {
-            request.setId(UUID.randomUUID().toString());
+            request.setId(tunnel.nextRequestId());
         }
         request.setType(HttpTunnelMessage.Type.REQUEST);
         final var future = new CompletableFuture<HttpTunnelMessage>();
         tunnel.pending().put(request.getId(), future);
         try {
-            final var json = mapper.writeValueAsString(request);
-            tunnel.session().sendMessage(new TextMessage(json));
-            log.trace("Forwarded request {} to tunnel {}", json, tunnel.tunnelId());
-        } catch (final IOException e) {
+            if (tunnel.supportsBinaryCodec()) {
+                final var frame = TunnelMessageCodec.encode(request);
+                tunnel.sendMessage(request.getId(), new BinaryMessage(
+                    tunnel.deflate(frame, FrameCompression.isCompressible(request.getHeaders()))));
+            } else {
+                if (request.getBody() != null) {
+                    request.setBodyB64(request.getBody().length == 0
+                        ? null
+                        : Base64.getEncoder().encodeToString(request.getBody()));
+                }
+                final var json = mapper.writeValueAsString(request);
+                tunnel.sendMessage(request.getId(), new TextMessage(json));
+            }
+            log.trace("Forwarded request {} to tunnel {}", request.getId(), tunnel.tunnelId());
+        } catch (final IOException | IllegalArgumentException e) {
             tunnel.pending().remove(request.getId());
             future.completeExceptionally(e);
             return future;
@@ -139,6 +284,97 @@ public class TunnelRegistry {
         return timedFuture;
     }
 
+    /**
+     * Opens a streamed HTTP exchange on the tunnel of the given subdomain by sending the request head
+     * as a {@link HttpStreamFrame.Type#REQUEST_START} frame. The caller then streams the body through the
+     * returned {@link HttpTunnelStream} and reads the response from it. Only valid for tunnels whose
+     * client advertised {@link TunnelFeatures#HTTP_STREAM}.
+     *
+     * @param subdomain the subdomain associated with the destination tunnel
+     * @param request   the request head; its body fields are ignored
+     * @return the opened stream
+     * @throws IOException if the tunnel is not connected or the request head could not be sent
+     */
+    public HttpTunnelStream openStream(final String subdomain, final HttpTunnelMessage request) throws IOException {
+        final var tunnel = bySubdomain.get(subdomain);
+        if (tunnel == null || !tunnel.isOpen()) {
+            throw new IOException("Tunnel not connected");
+        }
+        if (request.getId() == null) {
+            request.setId(tunnel.nextRequestId());
+        }
+        request.setType(HttpTunnelMessage.Type.REQUEST);
+        request.setBodyB64(null);
+        request.setBody(null);
+        final var stream = new HttpTunnelStream(tunnel, request.getId(),
+            tunnel.supportsDeflate() && FrameCompression.isCompressible(request.getHeaders()));
+        tunnel.streams().put(request.getId(), stream);
+        try {
+            final var head = tunnel.supportsBinaryCodec()
+                ? TunnelMessageCodec.encodeToArray(request)
+                : mapper.writeValueAsBytes(request);
+            tunnel.sendMessage(request.getId(), new BinaryMessage(tunnel.deflate(
+                HttpStreamFrame.encode(HttpStreamFrame.Type.REQUEST_START, request.getId(), head), true)));
+        } catch (final IOException e) {
+            stream.close();
+            throw e;
+        } catch (final IllegalArgumentException e) {
+            stream.close();
+            throw new IOException(e.getMessage(), e);
+        }
+        return stream;
+    }
+
+    /**
+     * Dispatches a stream frame received from the CLI to the matching {@link HttpTunnelStream}.
+     * Frames for unknown or already finished streams are ignored.
+     *
+     * @param tunnelId the unique identifier of the tunnel the frame was received on
+     * @param frame    the decoded frame
+     */
+    public void onStreamFrame(final UUID tunnelId, final HttpStreamFrame.Decoded frame) {
+        final var tunnel = byTunnelId.get(tunnelId);
+        if (tunnel == null) {
+            return;
+        }
+        final var stream = tunnel.streams().get(frame.requestId());
+        if (stream == null) {
+            log.trace("Ignoring {} frame for unknown stream {}", frame.type(), frame.requestId());
+            return;
+        }
+        switch (frame.type()) {
+            case RESPONSE_START -> {
+                try {
+                    stream.onHead(decodeHead(frame.data()));
+                } catch (final IOException e) {
+                    log.warn("Invalid response head for stream {}: {}", frame.requestId(), e.toString());
+                    stream.abort("Invalid response head");
+                }
+            }
+            case RESPONSE_DATA -> stream.onData(frame.data());
+            case RESPONSE_END -> stream.onEnd();
+            case ABORT -> stream.onAbort(new String(frame.data(), StandardCharsets.UTF_8));
+            case CREDIT -> stream.onCredit(HttpStreamFrame.credit(frame));
+            default -> log.debug("Ignoring unexpected stream frame {} from client", frame.type());
+        }
+    }
+
+    /**
+     * Decodes a response head, which the CLI encodes the same way as the request head it answers:
+     * with {@link TunnelMessageCodec} or as JSON (which always starts with '{').
+     */
+    private HttpTunnelMessage decodeHead(final byte[] data) throws IOException {
+        final var buffer = ByteBuffer.wrap(data);
+        if (TunnelMessageCodec.isCodecFrame(buffer)) {
+            final var decoded = TunnelMessageCodec.decode(buffer);
+            if (decoded == null || decoded.http() == null) {
+                throw new IOException("Malformed binary response head");
+            }
+            return decoded.http();
+        }
+        return mapper.readValue(data, HttpTunnelMessage.class);
+    }
+
     /**
      * Processes an HTTP tunnel response message associated with the specified tunnel ID.
      * If the tunnel with the given ID exists and the response matches an existing pending
@@ -155,6 +391,11 @@ public class TunnelRegistry {
         final var future = tunnel.pending()
             .get(response.getId());
         if (future != null) {
+            // Normalize JSON responses so callers only deal with the raw body
+            if (response.getRespBody() == null && response.getRespBodyB64() != null) {
+                response.setRespBody(Base64.getDecoder().decode(response.getRespBodyB64()));
+                response.setRespBodyB64(null);
+            }
             future.complete(response);
         }
     }
@@ -173,8 +414,52 @@ public class TunnelRegistry {
             return;
         }
         try {
+            if (tunnel.supportsBinaryCodec()) {
+                tunnel.sendMessage(message.getConnectionId(),
+                    new BinaryMessage(tunnel.deflate(TunnelMessageCodec.encode(message), true)));
+                return;
+            }
+            if (message.getData() != null) {
+                message.setDataB64(Base64.getEncoder().encodeToString(message.getData()));
+            }
             final var json = mapper.writeValueAsString(message);
-            tunnel.session().sendMessage(new TextMessage(json));
+            tunnel.sendMessage(message.getConnectionId(), new TextMessage(json));
+        } catch (final IOException e) {
+            log.warn("Failed to send WS message to client: {}", e.toString());
+        }
+    }
+
+    /**
+     * Relays a data frame received from a browser to the client. Tunnels on the binary codec get the payload
+     * copied once into a codec frame; others fall back to a JSON {@link WsTunnelMessage} with base64 data.
+     * The payload buffer is not retained, so it may be reused once this method returns.
+     *
+     * @param ids     the tunnel and connection of the browser session
+     * @param type    {@link WsTunnelMessage.Type#TEXT} (UTF-8 payload) or {@link WsTunnelMessage.Type#BINARY}
+     * @param payload the frame payload
+     */
+    public void sendWsDataToClient(final Ids ids, final WsTunnelMessage.Type type, final ByteBuffer payload) {
+        final var tunnel = byTunnelId.get(ids.tunnelId);
+        if (tunnel == null || !tunnel.isOpen()) {
+            return;
+        }
+        if (!tunnel.supportsBinaryCodec()) {
+            final var message = new WsTunnelMessage();
+            message.setConnectionId(ids.connectionId);
+            message.setWsType(type);
+            if (type == WsTunnelMessage.Type.TEXT) {
+                message.setText(StandardCharsets.UTF_8.decode(payload.duplicate()).toString());
+            } else {
+                final var data = new byte[payload.remaining()];
+                payload.duplicate().get(data);
+                message.setData(data);
+            }
+            sendWsToClient(ids.tunnelId, message);
+            return;
+        }
+        try {
+            final var frame = TunnelMessageCodec.encodeWsData(type, ids.connectionId, payload);
+            tunnel.sendMessage(ids.connectionId, new BinaryMessage(tunnel.deflate(frame, true)));
         } catch (final IOException e) {
             log.warn("Failed to send WS message to client: {}", e.toString());
         }
@@ -183,7 +468,8 @@ public class TunnelRegistry {
     /**
      * Registers a browser WebSocket session associated with the specified tunnel ID and connection ID.
      * If no tunnel with the provided tunnel ID exists, the operation is aborted.
-     * The session is mapped in both the forward and reverse lookup structures for later reference.
+     * The session is mapped in the forward and reverse lookup structures of the tunnel and in the
+     * registry-wide session index for later reference.
      *
      * @param tunnelId       the unique identifier of the tunnel to associate with the browser session
      * @param connectionId   the unique identifier of the connection within the tunnel
@@ -196,8 +482,10 @@ public class TunnelRegistry {
         if (tunnel == null) {
             return;
         }
+        final var ids = new Ids(tunnelId, connectionId);
         tunnel.browserByConnection().put(connectionId, browserSession);
-        tunnel.browserReverse().put(browserSession, new Ids(tunnelId, connectionId));
+        tunnel.browserReverse().put(browserSession, ids);
+        byBrowserSession.put(browserSession, ids);
     }
 
     /**
@@ -211,32 +499,28 @@ public class TunnelRegistry {
      *     unregistered browser session, or {@code null} if the session was not found
      */
     public Ids unregisterBrowserWs(final WebSocketSession browserSession) {
-        for (final var tunnel : byTunnelId.values()) {
-            final var ids = tunnel.browserReverse().remove(browserSession);
-            if (ids != null) {
-                tunnel.browserByConnection().remove(ids.connectionId);
-                return ids;
-            }
+        final var ids = byBrowserSession.remove(browserSession);
+        if (ids == null) {
+            return null;
+        }
+        final var tunnel = byTunnelId.get(ids.tunnelId);
+        if (tunnel == null || tunnel.browserReverse().remove(browserSession) == null) {
+            return null;
         }
-        return null;
+        tunnel.browserByConnection().remove(ids.connectionId);
+        return ids;
     }
 
     /**
      * Retrieves the tunnel and connection IDs associated with a given browser WebSocket session.
-     * Iterates through the registered tunnels to find a reverse mapping for the specified session.
+     * The lookup is a single index access, independent of the number of registered tunnels.
      *
      * @param browserSession the WebSocketSession representing the browser connection to look up
      * @return an {@code Ids} object containing the tunnel ID and connection ID associated with
      *     the specified session, or {@code null} if no match is found
      */
     public Ids findIdsByBrowserSession(final WebSocketSession browserSession) {
-        for (final var tunnel : byTunnelId.values()) {
-            final var ids = tunnel.browserReverse().get(browserSession);
-            if (ids != null) {
-                return ids;
-            }
-        }
-        return null;
+        return byBrowserSession.get(browserSession);
     }
 
     /**
@@ -264,14 +548,56 @@ public class TunnelRegistry {
      */
     public void closeTunnel(final UUID tunnelId) {
         final var tunnel = byTunnelId.remove(tunnelId);
+        if (tunnel != null) {
+            close(tunnel);
+        }
+    }
+
+    /**
+     * Closes the tunnel of the given ID if it is still served by the given session. A client that reconnected
+     * before the close of its old session was handled keeps the tunnel of its new session.
+     *
+     * @param tunnelId the unique identifier of the tunnel to close
+     * @param session  the tunnel session that closed
+     * @return {@code false} if the tunnel is served by another session now
+     */
+    public boolean closeTunnel(final UUID tunnelId, final WebSocketSession session) {
+        final var tunnel = byTunnelId.get(tunnelId);
         if (tunnel == null) {
-            return;
+            return true;
+        }
+        if (tunnel.session() != session || !byTunnelId.remove(tunnelId, tunnel)) {
+            log.debug("Tunnel {} is served by a newer session; keeping it", tunnelId);
+            return false;
         }
-        // Remove from bySubdomain if exists
+        close(tunnel);
+        return true;
+    }
+
+    private void close(final Tunnel tunnel) {
         if (tunnel.subdomain() != null) {
-            bySubdomain.remove(tunnel.subdomain());
+            bySubdomain.remove(tunnel.subdomain(), tunnel);
         }
+        notifyRouteListeners(tunnel, false);
+        release(tunnel);
+        if (tunnel.isOpen()) {
+            try {
+                final var exitMsg = new ControlMessage();
+                exitMsg.setType(ControlMessage.Type.EXIT);
+                exitMsg.setTs(System.currentTimeMillis());
+                tunnel.session().sendMessage(new TextMessage(mapper.writeValueAsString(exitMsg)));
+                tunnel.session().close();
+            } catch (final IOException e) {
+                log.warn("Failed to close tunnel WS session: {}", e.toString());
+            }
+        }
+    }
 
+    /**
+     * Releases what a tunnel holds that is no longer registered: its browser sessions, the requests waiting for
+     * it and the outbound writer of its session.
+     */
+    private void release(final Tunnel tunnel) {
         // Close all browser sessions associated with this tunnel
         tunnel.browserByConnection().values().forEach(session -> {
             if (session.isOpen()) {
@@ -283,24 +609,28 @@ public class TunnelRegistry {
             }
         });
         tunnel.browserByConnection().clear();
+        tunnel.browserReverse().keySet().forEach(byBrowserSession::remove);
         tunnel.browserReverse().clear();
 
         // Fail all pending HTTP requests and clear
         tunnel.pending().forEach((id, future) ->
             future.completeExceptionally(new IllegalStateException("Tunnel closed")));
         tunnel.pending().clear();
+        tunnel.streams().values().forEach(stream -> stream.onAbort("Tunnel closed"));
+        tunnel.streams().clear();
 
-        if (tunnel.isOpen()) {
-            try {
-                final var exitMsg = new ControlMessage();
-                exitMsg.setType(ControlMessage.Type.EXIT);
-                exitMsg.setTs(System.currentTimeMillis());
-                tunnel.session().sendMessage(new TextMessage(mapper.writeValueAsString(exitMsg)));
-                tunnel.session().close();
-            } catch (final IOException e) {
-                log.warn("Failed to close tunnel WS session: {}", e.toString());
-            }
-        }
+        // Queued messages are of no use anymore; stopping the writer hands the session back to this thread
+        tunnel.closeWriter();
+    }
+
+    /**
+     * Receives tunnel ownership changes of this instance, e.g. to keep the gateway routing table current.
+     */
+    public interface RouteListener {
+
+        void onTunnelUp(Tunnel tunnel);
+
+        void onTunnelDown(Tunnel tunnel);
     }
 
     @Data
@@ -316,14 +646,32 @@ public class TunnelRegistry {
         private final String subdomain;
         private final UUID tunnelId;
         private final UUID accountId;
+        // Counts into the totals of the registry
+        private final TrafficCounters traffic;
 
-        @Setter
         private volatile WebSocketSession session;
+        // Single writer of the session; see TunnelOutboundWriter
+        private volatile TunnelOutboundWriter writer;
+        // Custom domain attached to the tunnel's subdomain at registration, if any
+        @Setter
+        private volatile String customDomain;
+        // Protocol features advertised by the client at handshake
+        @Setter
+        private volatile Set<String> features = Set.of();
+        // Fair admission of HTTP requests, sized by the concurrency the client reported at handshake
+        private volatile int maxInFlight;
+        private volatile Semaphore admission;
+        // Numeric request ids, as required by the binary codec
+        private final AtomicLong requestIds = new AtomicLong();
         private final Map<String, CompletableFuture<HttpTunnelMessage>> pending = new ConcurrentHashMap<>();
+        // Streamed HTTP exchanges in flight, keyed by request id
+        private final Map<String, HttpTunnelStream> streams = new ConcurrentHashMap<>();
         // Browser WS peers for this tunnel
         private final Map<String, WebSocketSession> browserByConnection = new ConcurrentHashMap<>();
         private final Map<WebSocketSession, Ids> browserReverse = new ConcurrentHashMap<>();
-
+        // Authorization snapshot; the version makes a load that raced with an invalidation discard its result
+        private final AtomicLong accessVersion = new AtomicLong();
+        private volatile TunnelAccess access;
 
         public String subdomain() {
             return subdomain;
@@ -337,14 +685,157 @@ public class TunnelRegistry {
             return accountId;
         }
 
+        public String customDomain() {
+            return customDomain;
+        }
+
+        /**
+         * Returns the frames and bytes exchanged with the client of this tunnel.
+         */
+        public TrafficCounters traffic() {
+            return traffic;
+        }
+
         public WebSocketSession session() {
             return session;
         }
 
+        /**
+         * Attaches the tunnel session and starts its outbound writer.
+         *
+         * @param session the tunnel session
+         */
+        public void setSession(final WebSocketSession session) {
+            this.session = session;
+            this.writer = new TunnelOutboundWriter(tunnelId.toString(), session);
+            writer.start();
+        }
+
+        /**
+         * Returns the outbound writer of the session, e.g. to sample its queue metrics.
+         */
+        public TunnelOutboundWriter writer() {
+            return writer;
+        }
+
+        void closeWriter() {
+            final var current = writer;
+            if (current != null) {
+                current.close();
+            }
+        }
+
         public Map<String, CompletableFuture<HttpTunnelMessage>> pending() {
             return pending;
         }
 
+        public Map<String, HttpTunnelStream> streams() {
+            return streams;
+        }
+
+        public Set<String> features() {
+            return features;
+        }
+
+        public boolean supportsStreaming() {
+            return features.contains(TunnelFeatures.HTTP_STREAM);
+        }
+
+        public boolean supportsBinaryCodec() {
+            return features.contains(TunnelFeatures.BINARY_CODEC);
+        }
+
+        public boolean supportsDeflate() {
+            return features.contains(TunnelFeatures.DEFLATE);
+        }
+
+        /**
+         * Returns whether the client opted in to having its responses cached at the ingress.
+         */
+        public boolean cachesResponses() {
+            return features.contains(TunnelFeatures.HTTP_CACHE);
+        }
+
+        /**
+         * Compresses a binary frame for the client if it negotiated {@link TunnelFeatures#DEFLATE}.
+         *
+         * @param frame        the encoded frame
+         * @param compressible whether the content of the frame is worth compressing
+         * @return the frame to send, compressed or as it is
+         */
+        public ByteBuffer deflate(final ByteBuffer frame, final boolean compressible) {
+            return compressible && supportsDeflate() ? FrameCompression.compress(frame) : frame;
+        }
+
+        /**
+         * Limits the HTTP requests relayed at the same time to the number the client executes concurrently.
+         *
+         * @param maxInFlight the limit reported by the client; {@code 0} for no limit
+         */
+        public void limitInFlight(final int maxInFlight) {
+            this.maxInFlight = Math.max(0, maxInFlight);
+            this.admission = maxInFlight > 0 ? new Semaphore(maxInFlight, true) : null;
+        }
+
+        /**
+         * Returns the concurrency limit of the tunnel, or {@code 0} if it has none.
+         */
+        public int maxInFlight() {
+            return maxInFlight;
+        }
+
+        /**
+         * Waits in line for a slot to relay an HTTP request. Requests are admitted in arrival order; one that
+         * finds {@link #MAX_QUEUED_PER_SLOT} requests per slot already waiting, or that waits longer than the
+         * timeout, is shed.
+         *
+         * @param timeout how long to wait for a slot
+         * @return the slot to release once the exchange completes, or {@code null} if the request is shed
+         * @throws InterruptedException if interrupted while waiting
+         */
+        public Runnable admit(final Duration timeout) throws InterruptedException {
+            final var current = admission;
+            if (current == null) {
+                return () -> { };
+            }
+            if (current.getQueueLength() >= MAX_QUEUED_PER_SLOT * maxInFlight
+                || !current.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                return null;
+            }
+            return current::release;
+        }
+
+        /**
+         * Allocates the id of the next HTTP request relayed through this tunnel.
+         */
+        public String nextRequestId() {
+            return Long.toString(requestIds.incrementAndGet());
+        }
+
+        /**
+         * Queues a message for the tunnel session on the lane of the connection it belongs to.
+         * Blocks while that connection has too much unsent data, see {@link TunnelOutboundWriter}.
+         *
+         * @param lane    the request id or WS connection id, or {@link TunnelOutboundWriter#CONTROL_LANE}
+         * @param message the message to send
+         * @throws IOException if the session is closed or the connection ran out of credit
+         */
+        public void sendMessage(final String lane, final WebSocketMessage<?> message) throws IOException {
+            final var current = writer;
+            if (current == null || !isOpen()) {
+                throw new IOException("Tunnel session is not open");
+            }
+            current.send(lane, message);
+            traffic.sent(sizeOf(message));
+        }
+
+        /**
+         * Size of a message for the traffic counters; text is counted in chars to avoid encoding it twice.
+         */
+        static int sizeOf(final WebSocketMessage<?> message) {
+            return message instanceof TextMessage text ? text.getPayload().length() : message.getPayloadLength();
+        }
+
         public boolean isOpen() {
             return session != null && session.isOpen();
         }
@@ -357,6 +848,38 @@ public class TunnelRegistry {
             return browserReverse;
         }
 
-        // No passcode kept in-memory; use DB via TunnelService when needed
+        /**
+         * Returns the authorization snapshot of the tunnel, or {@code null} if it is not loaded.
+         */
+        public TunnelAccess access() {
+            return access;
+        }
+
+        /**
+         * Returns the version of the authorization snapshot, to be passed to {@link #setAccess} after loading.
+         */
+        public long accessVersion() {
+            return accessVersion.get();
+        }
+
+        /**
+         * Stores a loaded authorization snapshot unless it was invalidated since the load started.
+         *
+         * @param version the {@link #accessVersion()} read before loading
+         * @param loaded  the loaded snapshot
+         */
+        public synchronized void setAccess(final long version, final TunnelAccess loaded) {
+            if (accessVersion.get() == version) {
+                access = loaded;
+            }
+        }
+
+        /**
+         * Drops the authorization snapshot so the next request loads a fresh one.
+         */
+        public synchronized void invalidateAccess() {
+            accessVersion.incrementAndGet();
+            access = null;
+        }
     }
 }
@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import tech.amak.portbuddy.server.web.dto.TunnelRouteEvent;
+
+/**
+ * Streams tunnel ownership changes of this instance to API Gateway instances as server-sent events,
+ * so the gateway can route ingress traffic from its own table instead of probing every server.
+ * Each subscriber first receives the full set of tunnels held by this instance.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TunnelRouteBroadcaster implements TunnelRegistry.RouteListener {
+
+    /**
+     * Lifetime of a single stream; the gateway re-subscribes and receives a fresh snapshot.
+     */
+    static final Duration STREAM_TIMEOUT = Duration.ofMinutes(10);
+
+    private final TunnelRegistry registry;
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    void init() {
+        registry.addRouteListener(this);
+    }
+
+    /**
+     * Opens a new route event stream, starting with a snapshot of the tunnels held by this instance.
+     *
+     * @return the emitter of the stream
+     */
+    public SseEmitter subscribe() {
+        final var emitter = new SseEmitter(STREAM_TIMEOUT.toMillis());
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(error -> emitters.remove(emitter));
+        // Snapshot and registration happen under the same lock as publishing, so no change is lost
+        synchronized (this) {
+            try {
+                emitter.send(new TunnelRouteEvent(TunnelRouteEvent.Type.RESET, null, null));
+                for (final var tunnel : registry.tunnels()) {
+                    if (tunnel.isOpen()) {
+                        emitter.send(toEvent(TunnelRouteEvent.Type.UP, tunnel));
+                    }
+                }
+                emitters.add(emitter);
+            } catch (final IOException e) {
+                emitter.completeWithError(e);
+            }
+        }
+        return emitter;
+    }
+
+    @Override
+    public void onTunnelUp(final TunnelRegistry.Tunnel tunnel) {
+        publish(toEvent(TunnelRouteEvent.Type.UP, tunnel));
+    }
+
+    @Override
+    public void onTunnelDown(final TunnelRegistry.Tunnel tunnel) {
+        publish(toEvent(TunnelRouteEvent.Type.DOWN, tunnel));
+    }
+
+    /**
+     * Sends a comment to every subscriber so broken connections are detected and dropped.
+     */
+    @Scheduled(fixedDelay = 20_000)
+    public void keepAlive() {
+        for (final var emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().comment("keep-alive"));
+            } catch (final Exception e) {
+                drop(emitter, e);
+            }
+        }
+    }
+
+    private synchronized void publish(final TunnelRouteEvent event) {
+        for (final var emitter : emitters) {
+            try {
+                emitter.send(event);
+            } catch (final Exception e) {
+                drop(emitter, e);
+            }
+        }
+    }
+
+    private void drop(final SseEmitter emitter, final Exception error) {
+        log.debug("Dropping route event subscriber: {}", error.toString());
+        emitters.remove(emitter);
+        emitter.completeWithError(error);
+    }
+
+    private static TunnelRouteEvent toEvent(final TunnelRouteEvent.Type type, final TunnelRegistry.Tunnel tunnel) {
+        return new TunnelRouteEvent(type, tunnel.subdomain(), tunnel.customDomain());
+    }
+}
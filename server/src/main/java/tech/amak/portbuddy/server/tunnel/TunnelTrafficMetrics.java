@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import java.util.HashMap;
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import tech.amak.portbuddy.common.tunnel.TrafficCounters;
+import tech.amak.portbuddy.common.tunnel.TrafficRanking;
+
+/**
+ * Publishes the data plane of the tunnels of this instance: frames and bytes exchanged with the clients and
+ * with the browsers, and the requests in flight. Everything is aggregated over all tunnels, except the
+ * throughput of the {@link #TOP_TUNNELS} busiest tunnels of the last interval, so the number of series stays
+ * bounded however many tunnels are open.
+ */
+@Component
+@RequiredArgsConstructor
+public class TunnelTrafficMetrics implements MeterBinder {
+
+    /**
+     * Number of tunnels whose throughput is published with their subdomain as a tag.
+     */
+    static final int TOP_TUNNELS = 10;
+
+    private final TunnelRegistry registry;
+    private final TrafficRanking<String> ranking = new TrafficRanking<>(TOP_TUNNELS);
+    private volatile MultiGauge topTunnels;
+
+    @Override
+    public void bindTo(final MeterRegistry meterRegistry) {
+        bindTraffic(meterRegistry, "portbuddy.tunnel", registry.traffic(), "tunnel clients");
+        bindTraffic(meterRegistry, "portbuddy.tunnel.browser", registry.browserTraffic(), "browser WS sessions");
+        Gauge.builder("portbuddy.tunnel.active", registry, TunnelRegistry::tunnelCount)
+            .description("Tunnels registered on this instance")
+            .register(meterRegistry);
+        Gauge.builder("portbuddy.tunnel.browser.sessions", registry, TunnelRegistry::browserSessionCount)
+            .description("Browser WS sessions of all tunnels")
+            .register(meterRegistry);
+        Gauge.builder("portbuddy.tunnel.requests.pending", registry,
+                sum(tunnel -> tunnel.pending().size() + tunnel.streams().size()))
+            .description("HTTP requests relayed to tunnel clients and waiting for their response")
+            .register(meterRegistry);
+        topTunnels = MultiGauge.builder("portbuddy.tunnel.top.throughput")
+            .description("Bytes per second relayed by the busiest tunnels over the last interval")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Ranks the tunnels by their traffic since the previous run and publishes the busiest ones, replacing
+     * the previous set.
+     */
+    @Scheduled(fixedDelay = 30_000)
+    public void refreshTopTunnels() {
+        final var gauge = topTunnels;
+        if (gauge == null) {
+            return;
+        }
+        final var tunnels = new HashMap<String, TrafficCounters>();
+        for (final var tunnel : registry.tunnels()) {
+            tunnels.put(tunnel.subdomain(), tunnel.traffic());
+        }
+        gauge.register(ranking.rank(tunnels, System.nanoTime()).stream()
+            .map(ranked -> MultiGauge.Row.of(Tags.of("tunnel", ranked.key()), ranked.bytesPerSecond()))
+            .toList(), true);
+    }
+
+    private static void bindTraffic(final MeterRegistry meterRegistry,
+                                    final String prefix,
+                                    final TrafficCounters traffic,
+                                    final String peers) {
+        FunctionCounter.builder(prefix + ".frames", traffic, TrafficCounters::framesReceived)
+            .description("WebSocket messages exchanged with " + peers)
+            .tag("direction", "received")
+            .register(meterRegistry);
+        FunctionCounter.builder(prefix + ".frames", traffic, TrafficCounters::framesSent)
+            .description("WebSocket messages exchanged with " + peers)
+            .tag("direction", "sent")
+            .register(meterRegistry);
+        FunctionCounter.builder(prefix + ".bytes", traffic, TrafficCounters::bytesReceived)
+            .description("Payload bytes exchanged with " + peers)
+            .tag("direction", "received")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        FunctionCounter.builder(prefix + ".bytes", traffic, TrafficCounters::bytesSent)
+            .description("Payload bytes exchanged with " + peers)
+            .tag("direction", "sent")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    private static ToDoubleFunction<TunnelRegistry> sum(final ToDoubleFunction<TunnelRegistry.Tunnel> metric) {
+        return registry -> registry.tunnels().stream()
+            .mapToDouble(metric)
+            .sum();
+    }
+}
@@ -14,25 +14,32 @@
 
 package tech.amak.portbuddy.server.tunnel;
 
+import java.nio.ByteBuffer;
 import java.util.Base64;
 import java.util.UUID;
 
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import tech.amak.portbuddy.common.tunnel.ControlMessage;
+import tech.amak.portbuddy.common.tunnel.FrameCompression;
+import tech.amak.portbuddy.common.tunnel.HttpStreamFrame;
 import tech.amak.portbuddy.common.tunnel.HttpTunnelMessage;
 import tech.amak.portbuddy.common.tunnel.MessageEnvelope;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
+import tech.amak.portbuddy.common.tunnel.TunnelMessageCodec;
 import tech.amak.portbuddy.common.tunnel.WsTunnelMessage;
 import tech.amak.portbuddy.common.utils.IdUtils;
+import tech.amak.portbuddy.server.config.AppProperties;
 import tech.amak.portbuddy.server.exception.AccountBlockedException;
 import tech.amak.portbuddy.server.exception.SubscriptionException;
 import tech.amak.portbuddy.server.service.TunnelService;
@@ -40,11 +47,12 @@ import tech.amak.portbuddy.server.service.TunnelService;
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class TunnelWebSocketHandler extends TextWebSocketHandler {
+public class TunnelWebSocketHandler extends AbstractWebSocketHandler {
 
     private final TunnelRegistry registry;
     private final ObjectMapper mapper;
     private final TunnelService tunnelService;
+    private final AppProperties properties;
 
     @Override
     @Transactional
@@ -64,6 +72,7 @@ public class TunnelWebSocketHandler extends TextWebSocketHandler {
                     closeWebsocket(session, CloseStatus.POLICY_VIOLATION);
                     return;
                 }
+                sendFeatures(session);
                 registry.register(tunnel, session);
                 log.info("Tunnel session established: {}", tunnelId);
             },
@@ -91,6 +100,26 @@ public class TunnelWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
+    /**
+     * Sends a FEATURES control message telling the CLI which of the features it advertised are used. Handshake
+     * response headers do not pass the gateway, so they go in-band, before the tunnel is registered and can
+     * receive requests. Older clients advertise nothing and get nothing.
+     */
+    private void sendFeatures(final WebSocketSession session) {
+        final var features = TunnelRegistry.negotiateFeatures(session);
+        if (features.isEmpty()) {
+            return;
+        }
+        try {
+            final var message = new ControlMessage();
+            message.setType(ControlMessage.Type.FEATURES);
+            message.setFeatures(TunnelFeatures.format(features));
+            session.sendMessage(new TextMessage(mapper.writeValueAsString(message)));
+        } catch (final Exception e) {
+            log.debug("Failed to send FEATURES to tunnel session: {}", e.toString());
+        }
+    }
+
     private void closeWebsocket(final WebSocketSession session,
                                 final CloseStatus status) {
         try {
@@ -106,6 +135,7 @@ public class TunnelWebSocketHandler extends TextWebSocketHandler {
         try {
             log.trace("Received message from client: {}", message.getPayload());
             final var tunnelId = extractTunnelId(session);
+            registry.onReceived(tunnelId, message.getPayload().length());
 
             tunnelService.heartbeat(tunnelId);
 
@@ -118,7 +148,13 @@ public class TunnelWebSocketHandler extends TextWebSocketHandler {
                     final var pong = new ControlMessage();
                     pong.setType(ControlMessage.Type.PONG);
                     pong.setTs(System.currentTimeMillis());
-                    session.sendMessage(new TextMessage(mapper.writeValueAsString(pong)));
+                    final var pongMessage = new TextMessage(mapper.writeValueAsString(pong));
+                    final var tunnel = registry.getByTunnelId(tunnelId);
+                    if (tunnel != null) {
+                        tunnel.sendMessage(TunnelOutboundWriter.CONTROL_LANE, pongMessage);
+                    } else {
+                        session.sendMessage(pongMessage);
+                    }
                 }
                 return;
             }
@@ -138,6 +174,78 @@ public class TunnelWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
+    /**
+     * Handles binary messages: {@link TunnelMessageCodec} frames of tunnels that negotiated the binary codec,
+     * and frames of streamed HTTP exchanges (see {@link HttpStreamFrame}), either possibly wrapped in
+     * {@link FrameCompression}.
+     */
+    @Override
+    protected void handleBinaryMessage(final WebSocketSession session, final BinaryMessage message) {
+        try {
+            registry.onReceived(extractTunnelId(session), message.getPayloadLength());
+            final var maxMessageSize = properties.webSocket().maxBinaryMessageSize().toBytes();
+            final var payload = FrameCompression.unwrap(message.getPayload(), (int) maxMessageSize);
+            if (payload == null) {
+                log.debug("Ignoring malformed or oversized compressed frame from client");
+                return;
+            }
+            if (TunnelMessageCodec.isCodecFrame(payload)) {
+                handleCodecMessage(session, payload);
+                return;
+            }
+            final var frame = HttpStreamFrame.decode(payload);
+            if (frame == null) {
+                log.debug("Ignoring malformed binary frame from client");
+                return;
+            }
+            registry.onStreamFrame(extractTunnelId(session), frame);
+        } catch (final Exception e) {
+            log.warn("Tunnel binary message handling error: {}", e.toString());
+        }
+    }
+
+    private void handleCodecMessage(final WebSocketSession session, final ByteBuffer payload) throws Exception {
+        final var data = TunnelMessageCodec.decodeWsData(payload);
+        if (data != null) {
+            handleWsDataFromClient(extractTunnelId(session), data);
+            return;
+        }
+        final var decoded = TunnelMessageCodec.decode(payload);
+        if (decoded == null) {
+            log.debug("Ignoring malformed binary message from client");
+            return;
+        }
+        final var tunnelId = extractTunnelId(session);
+        if (decoded.ws() != null) {
+            handleWsFromClient(tunnelId, decoded.ws());
+        } else if (decoded.http().getType() == HttpTunnelMessage.Type.RESPONSE) {
+            registry.onResponse(tunnelId, decoded.http());
+        } else {
+            log.debug("Ignoring unexpected message type from client: {}", decoded.http().getType());
+        }
+    }
+
+    /**
+     * Relays a data frame to the browser without copying the payload out of the tunnel frame. The send
+     * completes before this returns, so the frame buffer is not used after it is handed back to the container.
+     */
+    private void handleWsDataFromClient(final UUID tunnelId, final TunnelMessageCodec.WsData data) throws Exception {
+        final var browser = registry.getBrowserSession(tunnelId, data.connectionId());
+        if (browser == null) {
+            log.debug("No browser WS for connectionId={} tunnelId={}", data.connectionId(), tunnelId);
+            return;
+        }
+        if (data.type() == WsTunnelMessage.Type.TEXT) {
+            final var text = data.text();
+            browser.sendMessage(new TextMessage(text));
+            registry.browserTraffic().sent(text.length());
+        } else {
+            final var payload = data.payload();
+            registry.browserTraffic().sent(payload.remaining());
+            browser.sendMessage(new BinaryMessage(payload));
+        }
+    }
+
     private void handleWsFromClient(final UUID tunnelId, final WsTunnelMessage message) throws Exception {
         final var browser = registry.getBrowserSession(tunnelId, message.getConnectionId());
         if (browser == null) {
@@ -146,11 +254,18 @@ public class TunnelWebSocketHandler extends TextWebSocketHandler {
         }
         switch (message.getWsType()) {
             case OPEN_OK -> { /* nothing extra for now */ }
-            case TEXT -> browser.sendMessage(new TextMessage(message.getText() != null ? message.getText() : ""));
+            case TEXT -> {
+                final var text = message.getText() != null ? message.getText() : "";
+                browser.sendMessage(new TextMessage(text));
+                registry.browserTraffic().sent(text.length());
+            }
             case BINARY -> {
-                if (message.getDataB64() != null) {
-                    final var bytes = Base64.getDecoder().decode(message.getDataB64());
-                    browser.sendMessage(new org.springframework.web.socket.BinaryMessage(bytes));
+                final var bytes = message.getData() != null
+                    ? message.getData()
+                    : message.getDataB64() != null ? Base64.getDecoder().decode(message.getDataB64()) : null;
+                if (bytes != null) {
+                    browser.sendMessage(new BinaryMessage(bytes));
+                    registry.browserTraffic().sent(bytes.length);
                 }
             }
             case CLOSE -> {
@@ -170,8 +285,10 @@ public class TunnelWebSocketHandler extends TextWebSocketHandler {
             status != null ? status.getCode() : null,
             status != null ? status.getReason() : null);
 
-        registry.closeTunnel(tunnelId);
-        tunnelService.markClosed(tunnelId);
+        // A client that already reconnected keeps its tunnel open
+        if (registry.closeTunnel(tunnelId, session)) {
+            tunnelService.markClosed(tunnelId);
+        }
     }
 
     private UUID extractTunnelId(final WebSocketSession session) {
@@ -37,8 +37,8 @@ public class WebSocketConfig implements WebSocketConfigurer {
     public void registerWebSocketHandlers(final WebSocketHandlerRegistry registry) {
         registry.addHandler(tunnelWebSocketHandler, "/api/http-tunnel/{tunnelId}")
             .setAllowedOrigins("*")
-            // Echo back any requested subprotocol (some clients require it, e.g., Vaadin)
-            .setHandshakeHandler(new PermissiveSubprotocolHandshakeHandler());
+            // Echo back any requested subprotocol; skip permessage-deflate for clients that deflate per frame
+            .setHandshakeHandler(new TunnelHandshakeHandler());
         // Public WS endpoint for tunneled hosts (dedicated base path to avoid MVC collisions)
         registry.addHandler(publicWebSocketProxyHandler, "/_ws/**")
             .setAllowedOrigins("*")
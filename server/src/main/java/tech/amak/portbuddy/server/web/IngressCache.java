@@ -0,0 +1,608 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.web;
+
+import java.io.ByteArrayOutputStream;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import tech.amak.portbuddy.common.tunnel.HttpTunnelMessage;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
+import tech.amak.portbuddy.server.config.IngressCacheProperties;
+import tech.amak.portbuddy.server.tunnel.TunnelRegistry;
+
+/**
+ * HTTP response cache of the ingress for tunnels that negotiated {@link TunnelFeatures#HTTP_CACHE}. It acts as
+ * a shared cache for GET requests: a response is kept if the app marks it cacheable with {@code Cache-Control}
+ * or {@code Expires}, or gives it a validator; it is served without reaching the tunnel while fresh, and
+ * revalidated through the tunnel with a conditional request once stale. Responses are keyed by subdomain,
+ * path, query and the request headers named by their {@code Vary}. Memory is bounded per instance, with
+ * W-TinyLFU deciding what to evict, and per account, beyond which new responses are not kept.
+ */
+@Slf4j
+@Component
+public class IngressCache implements TunnelRegistry.RouteListener {
+
+    // Accounts for the key, the headers map and the entry itself
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final UUID NO_ACCOUNT = new UUID(0, 0);
+
+    private final IngressCacheProperties properties;
+    private final TunnelRegistry registry;
+    private final Cache<Key, Entry> entries;
+    // Header names the last cached response of a resource varies on
+    private final Cache<Resource, List<String>> varyByResource;
+    private final Map<UUID, AtomicLong> usage = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the cache.
+     *
+     * @param properties    the cache configuration
+     * @param registry      the registry notifying tunnels going down
+     * @param meterRegistry the registry to publish the cache statistics to
+     */
+    public IngressCache(final IngressCacheProperties properties,
+                        final TunnelRegistry registry,
+                        final MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.registry = registry;
+        this.entries = Caffeine.newBuilder()
+            .maximumWeight(properties.getMaxSize().toBytes())
+            .weigher((final Key key, final Entry entry) -> entry.weight())
+            .expireAfter(new Expiry<Key, Entry>() {
+                @Override
+                public long expireAfterCreate(final Key key, final Entry entry, final long currentTime) {
+                    return entry.retainNanos();
+                }
+
+                @Override
+                public long expireAfterUpdate(final Key key,
+                                              final Entry entry,
+                                              final long currentTime,
+                                              final long currentDuration) {
+                    return entry.retainNanos();
+                }
+
+                @Override
+                public long expireAfterRead(final Key key,
+                                            final Entry entry,
+                                            final long currentTime,
+                                            final long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            // Run removals on the caller so the usage of the account is released before the next store
+            .executor(Runnable::run)
+            .removalListener((final Key key, final Entry entry, final RemovalCause cause) -> release(entry))
+            .recordStats()
+            .build();
+        this.varyByResource = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(properties.getStaleRetention())
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "ingress");
+    }
+
+    @PostConstruct
+    void init() {
+        registry.addRouteListener(this);
+    }
+
+    /**
+     * Looks up a request of a tunnel that opted in.
+     *
+     * @param tunnel  the tunnel the request is for
+     * @param request the request as relayed to the tunnel
+     * @return the lookup to complete with the response, or {@code null} if the request bypasses the cache
+     */
+    public Lookup lookup(final TunnelRegistry.Tunnel tunnel, final HttpTunnelMessage request) {
+        if (!properties.isEnabled() || !"GET".equals(request.getMethod())) {
+            return null;
+        }
+        final var headers = request.getHeaders();
+        // Responses to authenticated or partial requests are not shared
+        if (first(headers, HttpHeaders.AUTHORIZATION) != null || first(headers, HttpHeaders.RANGE) != null) {
+            return null;
+        }
+        final var directives = directives(all(headers, HttpHeaders.CACHE_CONTROL));
+        if (directives.containsKey("no-store")) {
+            return null;
+        }
+        final var resource = new Resource(tunnel.subdomain(), request.getPath(), request.getQuery());
+        final var varyNames = varyByResource.getIfPresent(resource);
+        final var key = key(resource, varyNames, headers);
+        final var entry = key == null ? null : entries.getIfPresent(key);
+        final var revalidate = directives.containsKey("no-cache") || "0".equals(directives.get("max-age"));
+        return new Lookup(Objects.requireNonNullElse(tunnel.accountId(), NO_ACCOUNT), resource, headers, key, entry,
+            revalidate);
+    }
+
+    @Override
+    public void onTunnelUp(final TunnelRegistry.Tunnel tunnel) {
+        // nothing to do
+    }
+
+    /**
+     * Drops the responses of a tunnel that went away, since the app behind its next session may differ.
+     *
+     * @param tunnel the tunnel
+     */
+    @Override
+    public void onTunnelDown(final TunnelRegistry.Tunnel tunnel) {
+        final var subdomain = tunnel.subdomain();
+        entries.asMap().keySet().removeIf(key -> key.resource().subdomain().equals(subdomain));
+        varyByResource.asMap().keySet().removeIf(resource -> resource.subdomain().equals(subdomain));
+    }
+
+    /**
+     * Returns the bytes held by the responses of an account.
+     *
+     * @param accountId the account
+     * @return the bytes held
+     */
+    long usage(final UUID accountId) {
+        final var used = usage.get(accountId);
+        return used == null ? 0 : used.get();
+    }
+
+    private void store(final Key key, final List<String> varyNames, final Entry entry) {
+        final var used = usage.computeIfAbsent(entry.accountId(), id -> new AtomicLong());
+        if (used.addAndGet(entry.weight()) > properties.getAccountQuota().toBytes()) {
+            used.addAndGet(-entry.weight());
+            log.debug("Not caching {}: cache quota of account {} reached", key.resource(), entry.accountId());
+            return;
+        }
+        varyByResource.put(key.resource(), varyNames);
+        entries.put(key, entry);
+    }
+
+    private void release(final Entry entry) {
+        if (entry != null) {
+            final var used = usage.get(entry.accountId());
+            if (used != null) {
+                used.addAndGet(-entry.weight());
+            }
+        }
+    }
+
+    /**
+     * Builds the entry for a response, or returns {@code null} if it must not be cached.
+     */
+    private Entry entry(final UUID accountId,
+                        final int status,
+                        final Map<String, List<String>> responseHeaders,
+                        final byte[] body) {
+        final var initialAge = Math.max(0, parseSeconds(first(responseHeaders, HttpHeaders.AGE)));
+        final var headers = new LinkedHashMap<String, List<String>>();
+        var headersSize = 0;
+        for (final var header : responseHeaders.entrySet()) {
+            if (header.getKey() == null || header.getValue() == null
+                || HttpHeaders.AGE.equalsIgnoreCase(header.getKey())) {
+                continue;
+            }
+            headers.put(header.getKey(), List.copyOf(header.getValue()));
+            headersSize += header.getKey().length() + header.getValue().stream().mapToInt(String::length).sum();
+        }
+        final var weight = (long) body.length + headersSize * 2L + ENTRY_OVERHEAD;
+        if (weight > properties.getMaxEntrySize().toBytes()) {
+            return null;
+        }
+        final var etag = first(headers, HttpHeaders.ETAG);
+        final var lastModified = first(headers, HttpHeaders.LAST_MODIFIED);
+        final var hasValidator = etag != null || lastModified != null;
+        final var directives = directives(all(headers, HttpHeaders.CACHE_CONTROL));
+        final var noCache = directives.containsKey("no-cache");
+        final var lifetime = noCache ? 0 : freshnessLifetime(directives, headers);
+        if (lifetime <= 0 && !hasValidator) {
+            // Neither fresh for a while nor revalidatable
+            return null;
+        }
+        final var freshSeconds = Math.max(0, lifetime - initialAge);
+        final var retainNanos = TimeUnit.SECONDS.toNanos(freshSeconds)
+                                + (hasValidator ? properties.getStaleRetention().toNanos() : 0);
+        if (retainNanos <= 0) {
+            return null;
+        }
+        return new Entry(accountId, status, headers, body, System.nanoTime(), initialAge, Math.max(0, lifetime),
+            noCache, etag, lastModified, (int) weight, retainNanos);
+    }
+
+    /**
+     * Returns the freshness lifetime in seconds from {@code s-maxage}, {@code max-age} or {@code Expires}, or
+     * {@code -1} if the response gives none.
+     */
+    private static long freshnessLifetime(final Map<String, String> directives,
+                                          final Map<String, List<String>> headers) {
+        if (directives.containsKey("s-maxage")) {
+            return parseSeconds(directives.get("s-maxage"));
+        }
+        if (directives.containsKey("max-age")) {
+            return parseSeconds(directives.get("max-age"));
+        }
+        final var expires = first(headers, HttpHeaders.EXPIRES);
+        if (expires == null) {
+            return -1;
+        }
+        final var expiresAt = parseDate(expires);
+        if (expiresAt == null) {
+            // An invalid date means already expired
+            return 0;
+        }
+        final var date = parseDate(first(headers, HttpHeaders.DATE));
+        final var now = date != null ? date : ZonedDateTime.now();
+        return Math.max(0, expiresAt.toEpochSecond() - now.toEpochSecond());
+    }
+
+    private static Key key(final Resource resource,
+                           final List<String> varyNames,
+                           final Map<String, List<String>> requestHeaders) {
+        if (varyNames == null) {
+            return null;
+        }
+        final var values = new ArrayList<String>(varyNames.size());
+        for (final var name : varyNames) {
+            values.add(String.join(",", all(requestHeaders, name)));
+        }
+        return new Key(resource, values);
+    }
+
+    private static List<String> varyNames(final Map<String, List<String>> responseHeaders) {
+        final var names = new ArrayList<String>();
+        for (final var value : all(responseHeaders, HttpHeaders.VARY)) {
+            for (final var token : value.split(",")) {
+                final var name = token.trim().toLowerCase(Locale.ROOT);
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    static Map<String, String> directives(final List<String> values) {
+        final var directives = new HashMap<String, String>();
+        for (final var value : values) {
+            for (final var token : value.split(",")) {
+                final var directive = token.trim();
+                if (directive.isEmpty()) {
+                    continue;
+                }
+                final var eq = directive.indexOf('=');
+                if (eq < 0) {
+                    directives.put(directive.toLowerCase(Locale.ROOT), "");
+                } else {
+                    directives.put(directive.substring(0, eq).trim().toLowerCase(Locale.ROOT),
+                        directive.substring(eq + 1).trim().replace("\"", ""));
+                }
+            }
+        }
+        return directives;
+    }
+
+    private static String first(final Map<String, List<String>> headers, final String name) {
+        final var values = all(headers, name);
+        return values.isEmpty() ? null : values.getFirst();
+    }
+
+    private static List<String> all(final Map<String, List<String>> headers, final String name) {
+        if (headers == null) {
+            return List.of();
+        }
+        for (final var header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null
+                && !header.getValue().isEmpty()) {
+                return header.getValue();
+            }
+        }
+        return List.of();
+    }
+
+    private static long parseSeconds(final String value) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static ZonedDateTime parseDate(final String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+        } catch (final DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static boolean sameEntityTag(final String ifNoneMatch, final String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        final var weakless = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (final var token : ifNoneMatch.split(",")) {
+            final var tag = token.trim();
+            if ("*".equals(tag) || weakless.equals(tag.startsWith("W/") ? tag.substring(2) : tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A request looked up in the cache, completed with the response relayed for it.
+     */
+    public final class Lookup {
+
+        private final UUID accountId;
+        private final Resource resource;
+        private final Map<String, List<String>> requestHeaders;
+        // Key of the cached response, if any
+        private final Key key;
+        private final Entry entry;
+        private final boolean revalidate;
+        private boolean conditional;
+
+        private Lookup(final UUID accountId,
+                       final Resource resource,
+                       final Map<String, List<String>> requestHeaders,
+                       final Key key,
+                       final Entry entry,
+                       final boolean revalidate) {
+            this.accountId = accountId;
+            this.resource = resource;
+            this.requestHeaders = requestHeaders;
+            this.key = key;
+            this.entry = entry;
+            this.revalidate = revalidate;
+        }
+
+        /**
+         * Returns the cached response if it may be served without asking the tunnel.
+         */
+        public Entry fresh() {
+            return entry != null && !revalidate && entry.isFresh(System.nanoTime()) ? entry : null;
+        }
+
+        /**
+         * Returns whether the requester already holds the given response, so a 304 can be sent instead.
+         *
+         * @param cached the cached response
+         */
+        public boolean notModified(final Entry cached) {
+            return sameEntityTag(first(requestHeaders, HttpHeaders.IF_NONE_MATCH), cached.etag());
+        }
+
+        /**
+         * Makes the request conditional on the validators of the stale cached response, unless the requester
+         * sent conditions of its own.
+         *
+         * @param request the request to relay
+         */
+        public void addValidators(final HttpTunnelMessage request) {
+            if (entry == null
+                || first(requestHeaders, HttpHeaders.IF_NONE_MATCH) != null
+                || first(requestHeaders, HttpHeaders.IF_MODIFIED_SINCE) != null) {
+                return;
+            }
+            final var headers = new HashMap<>(request.getHeaders());
+            if (entry.etag() != null) {
+                headers.put(HttpHeaders.IF_NONE_MATCH, List.of(entry.etag()));
+            }
+            if (entry.lastModified() != null) {
+                headers.put(HttpHeaders.IF_MODIFIED_SINCE, List.of(entry.lastModified()));
+            }
+            request.setHeaders(headers);
+            conditional = entry.etag() != null || entry.lastModified() != null;
+        }
+
+        /**
+         * Completes a conditional request answered with 304: the cached response is freshened with the headers
+         * of the answer and is to be served instead.
+         *
+         * @param response the head of the response relayed for the request
+         * @return the freshened response, or {@code null} if the response is to be relayed as it is
+         */
+        public Entry revalidated(final HttpTunnelMessage response) {
+            final var status = response.getStatus();
+            if (!conditional || status == null || status != HttpServletResponse.SC_NOT_MODIFIED) {
+                return null;
+            }
+            final var headers = new LinkedHashMap<>(entry.headers());
+            if (response.getRespHeaders() != null) {
+                for (final var header : response.getRespHeaders().entrySet()) {
+                    if (header.getKey() == null || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getKey())) {
+                        continue;
+                    }
+                    headers.keySet().removeIf(name -> name.equalsIgnoreCase(header.getKey()));
+                    headers.put(header.getKey(), header.getValue());
+                }
+            }
+            final var freshened = entry(accountId, entry.status(), headers, entry.body());
+            entries.invalidate(key);
+            if (freshened == null) {
+                return entry;
+            }
+            final var varyNames = varyNames(headers);
+            store(key(resource, varyNames, requestHeaders), varyNames, freshened);
+            return freshened;
+        }
+
+        /**
+         * Starts capturing the body of a response that may be cached.
+         *
+         * @param response the head of the response relayed for the request
+         * @return the capture to feed the body to, or {@code null} if the response is not cached
+         */
+        public Capture capture(final HttpTunnelMessage response) {
+            final var status = response.getStatus();
+            if (status == null || status != HttpServletResponse.SC_OK || response.getRespHeaders() == null) {
+                return null;
+            }
+            final var headers = response.getRespHeaders();
+            final var directives = directives(all(headers, HttpHeaders.CACHE_CONTROL));
+            if (directives.containsKey("no-store") || directives.containsKey("private")
+                || first(headers, HttpHeaders.SET_COOKIE) != null) {
+                invalidate();
+                return null;
+            }
+            final var varyNames = varyNames(headers);
+            if (varyNames.contains("*")) {
+                invalidate();
+                return null;
+            }
+            return new Capture(this, status, headers, varyNames);
+        }
+
+        private void invalidate() {
+            if (key != null) {
+                entries.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Body of a response being relayed, kept until it exceeds the largest cacheable size.
+     */
+    public final class Capture {
+
+        private final Lookup lookup;
+        private final int status;
+        private final Map<String, List<String>> headers;
+        private final List<String> varyNames;
+        private final long limit = properties.getMaxEntrySize().toBytes();
+        private ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        private Capture(final Lookup lookup,
+                        final int status,
+                        final Map<String, List<String>> headers,
+                        final List<String> varyNames) {
+            this.lookup = lookup;
+            this.status = status;
+            this.headers = headers;
+            this.varyNames = varyNames;
+        }
+
+        /**
+         * Appends a part of the body.
+         *
+         * @param bytes  the buffer
+         * @param offset the offset of the part
+         * @param length the length of the part
+         */
+        public void write(final byte[] bytes, final int offset, final int length) {
+            if (body == null) {
+                return;
+            }
+            if (body.size() + (long) length > limit) {
+                body = null;
+                return;
+            }
+            body.write(bytes, offset, length);
+        }
+
+        /**
+         * Caches the response once its body is complete.
+         */
+        public void complete() {
+            if (body == null) {
+                return;
+            }
+            final var entry = entry(lookup.accountId, status, headers, body.toByteArray());
+            body = null;
+            if (entry != null) {
+                store(key(lookup.resource, varyNames, lookup.requestHeaders), varyNames, entry);
+            }
+        }
+    }
+
+    /**
+     * Cached response.
+     *
+     * @param accountId    the account owning the tunnel
+     * @param status       the status code
+     * @param headers      the response headers, without {@code Age}
+     * @param body         the response body
+     * @param storedAt     the {@link System#nanoTime()} at which it was received
+     * @param initialAge   its age in seconds when received
+     * @param lifetime     its freshness lifetime in seconds
+     * @param noCache      whether it must be revalidated before each use
+     * @param etag         its entity tag, if any
+     * @param lastModified its modification date, if any
+     * @param weight       the memory it holds, approximately
+     * @param retainNanos  how long to keep it
+     */
+    public record Entry(UUID accountId,
+                        int status,
+                        Map<String, List<String>> headers,
+                        byte[] body,
+                        long storedAt,
+                        long initialAge,
+                        long lifetime,
+                        boolean noCache,
+                        String etag,
+                        String lastModified,
+                        int weight,
+                        long retainNanos) {
+
+        /**
+         * Returns the current age in seconds.
+         *
+         * @param now the current {@link System#nanoTime()}
+         */
+        public long age(final long now) {
+            return initialAge + TimeUnit.NANOSECONDS.toSeconds(now - storedAt);
+        }
+
+        boolean isFresh(final long now) {
+            return !noCache && age(now) < lifetime;
+        }
+    }
+
+    record Resource(String subdomain, String path, String query) {
+    }
+
+    record Key(Resource resource, List<String> varyValues) {
+    }
+}
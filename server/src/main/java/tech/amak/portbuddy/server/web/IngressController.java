@@ -20,7 +20,6 @@ import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Base64;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
@@ -28,30 +27,38 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.AntPathMatcher;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.servlet.HandlerMapping;
 
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import tech.amak.portbuddy.common.tunnel.HttpStreamFrame;
 import tech.amak.portbuddy.common.tunnel.HttpTunnelMessage;
 import tech.amak.portbuddy.server.config.AppProperties;
-import tech.amak.portbuddy.server.db.entity.DomainEntity;
-import tech.amak.portbuddy.server.db.repo.AccountRepository;
 import tech.amak.portbuddy.server.db.repo.DomainRepository;
-import tech.amak.portbuddy.server.service.TunnelService;
+import tech.amak.portbuddy.server.security.PasscodeSessions;
+import tech.amak.portbuddy.server.tunnel.HttpTunnelStream;
+import tech.amak.portbuddy.server.tunnel.TunnelAccessCache;
 import tech.amak.portbuddy.server.tunnel.TunnelRegistry;
 
 /**
@@ -63,13 +70,22 @@ import tech.amak.portbuddy.server.tunnel.TunnelRegistry;
 public class IngressController {
 
     private static final String PASSCODE_COOKIE_NAME = "pbp";
+    private static final Duration PASSCODE_SESSION_TTL = Duration.ofHours(12);
+    // A non-positive servlet async timeout disables the container's own timeout
+    private static final long NO_ASYNC_TIMEOUT = -1;
+    private static final Object RELAY_INTERCEPTOR_KEY = IngressController.class.getName() + ".relay";
+    // Relays in flight at shutdown are given the time a response may take to finish
+    private static final Duration RELAY_DRAIN_TIMEOUT = TunnelRegistry.DEFAULT_TIMEOUT;
 
     private final TunnelRegistry registry;
     private final AppProperties properties;
     private final DomainRepository domainRepository;
-    private final AccountRepository accountRepository;
-    private final TunnelService tunnelService;
+    private final TunnelAccessCache accessCache;
+    private final PasscodeSessions passcodeSessions;
     private final PasswordEncoder passwordEncoder;
+    private final IngressMetrics metrics;
+    private final IngressCache cache;
+    private final ExecutorService relayExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     private static final Set<String> HOP_BY_HOP_RESPONSE_HEADERS = Set.of(
         // RFC 7230 hop-by-hop headers + common variants we do not want to relay
@@ -85,13 +101,29 @@ public class IngressController {
         HttpHeaders.CONTENT_LENGTH.toLowerCase()
     );
 
+    /**
+     * Stops accepting relays and lets those in flight finish before the context closes.
+     */
+    @PreDestroy
+    public void shutdown() {
+        relayExecutor.shutdown();
+        try {
+            if (!relayExecutor.awaitTermination(RELAY_DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Relays still in flight after {}, interrupting them", RELAY_DRAIN_TIMEOUT);
+                relayExecutor.shutdownNow();
+            }
+        } catch (final InterruptedException e) {
+            relayExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
     // HTTP route for subdomain ingress (non-WS traffic)
     @RequestMapping("/_/{subdomain:.+}/**")
-    @Transactional
-    public void ingressPathBased(final @PathVariable("subdomain") String subdomain,
-                                 final HttpServletRequest request,
-                                 final HttpServletResponse response) throws IOException {
-        forwardViaTunnel(subdomain, request, response);
+    public DeferredResult<Void> ingressPathBased(final @PathVariable("subdomain") String subdomain,
+                                                 final HttpServletRequest request,
+                                                 final HttpServletResponse response) throws IOException {
+        return forwardViaTunnel(subdomain, request, response);
     }
 
     /**
@@ -102,15 +134,16 @@ public class IngressController {
      *                     locate a matching subdomain in the database.
      * @param request      The incoming HTTP request to be forwarded to the matching subdomain's endpoint.
      * @param response     The HTTP response object used to return output or error codes to the client.
+     * @return The pending result of the relayed exchange, or {@code null} if the response was written directly.
      * @throws IOException If an input or output error occurs during the request forwarding process
      *                     or while setting the HTTP response.
      */
     // Path-based custom domain ingress: http://server/_custom/{customDomain}/...
     @RequestMapping("/_custom/{customDomain:.+}/**")
-    @Transactional
-    public void ingressCustomDomainPathBased(final @PathVariable("customDomain") String customDomain,
-                                             final HttpServletRequest request,
-                                             final HttpServletResponse response) throws IOException {
+    public DeferredResult<Void> ingressCustomDomainPathBased(final @PathVariable("customDomain") String customDomain,
+                                                             final HttpServletRequest request,
+                                                             final HttpServletResponse response)
+        throws IOException {
         var lookupDomain = customDomain.toLowerCase();
         final var colonIdx = lookupDomain.indexOf(':');
         if (colonIdx > 0) {
@@ -119,45 +152,50 @@ public class IngressController {
 
         final var domainOpt = domainRepository.findByCustomDomain(lookupDomain);
         if (domainOpt.isPresent()) {
-            forwardViaTunnel(domainOpt.get().getSubdomain(), request, response);
-        } else {
-            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Custom domain not found: " + lookupDomain);
+            return forwardViaTunnel(domainOpt.get().getSubdomain(), request, response);
         }
+        response.sendError(HttpServletResponse.SC_NOT_FOUND, "Custom domain not found: " + lookupDomain);
+        return null;
     }
 
-    private void forwardViaTunnel(final String subdomain,
-                                  final HttpServletRequest request,
-                                  final HttpServletResponse response) throws IOException {
+    /**
+     * Admits the request and relays it to the tunnel off the servlet thread. The container thread is
+     * released as soon as the request is admitted; the exchange itself runs on a virtual thread that only
+     * parks while waiting for the CLI, so the number of in-flight requests is not bounded by the worker pool.
+     *
+     * @return the pending result of the exchange, or {@code null} if the response was written directly
+     */
+    private DeferredResult<Void> forwardViaTunnel(final String subdomain,
+                                                  final HttpServletRequest request,
+                                                  final HttpServletResponse response) throws IOException {
         // If there is no active tunnel for the requested subdomain — redirect users to SPA 404 page
         final var tunnel = registry.getBySubdomain(subdomain);
         if (tunnel == null || !tunnel.isOpen()) {
             final var notFoundUrl = properties.gateway().notFoundPage();
             response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
             response.setHeader(HttpHeaders.LOCATION, notFoundUrl);
-            return;
+            return null;
         }
 
+        final var access = accessCache.get(tunnel);
+
         // Check subscription status
-        final var accountOpt = accountRepository.findById(tunnel.accountId());
-        if (accountOpt.isPresent()) {
-            final var status = accountOpt.get().getSubscriptionStatus();
-            if (status != null && !"active".equals(status)) {
-                log.warn("Blocked request to subdomain {} because subscription is not active (status: {})",
-                    subdomain, status);
-                response.sendError(HttpServletResponse.SC_PAYMENT_REQUIRED,
-                    "Subscription is not active. Please check your billing information.");
-                return;
-            }
+        if (!access.subscriptionActive()) {
+            log.warn("Blocked request to subdomain {} because subscription is not active (status: {})",
+                subdomain, access.subscriptionStatus());
+            response.sendError(HttpServletResponse.SC_PAYMENT_REQUIRED,
+                "Subscription is not active. Please check your billing information.");
+            return null;
         }
 
         // Passcode protection check (query param, header, or cookie)
-        if (!isAuthorized(subdomain, tunnel.tunnelId(), request, response)) {
+        if (!isAuthorized(subdomain, access.passcodeHash(), request, response)) {
             final var gateway = properties.gateway();
             final var originalDomain = "%s.%s".formatted(subdomain, gateway.domain());
             final var redirect = "%s?target_domain=%s".formatted(gateway.passcodePage(), originalDomain);
             response.setStatus(TEMPORARY_REDIRECT.value());
             response.setHeader(HttpHeaders.LOCATION, redirect);
-            return;
+            return null;
         }
 
         final var pathWithin = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
@@ -194,81 +232,291 @@ public class IngressController {
         headers.put("X-Forwarded-Proto", List.of(request.isSecure() ? "https" : "http"));
 
         final var maxRequestBodySize = properties.gateway().maxRequestBodySize();
-        var limit = maxRequestBodySize == null ? -1 : maxRequestBodySize.toBytes();
-        if (limit > Integer.MAX_VALUE - 8) {
-            limit = Integer.MAX_VALUE - 8;
+        final var limit = maxRequestBodySize == null
+            ? -1
+            : Math.min(maxRequestBodySize.toBytes(), Integer.MAX_VALUE - 8);
+
+        final var msg = new HttpTunnelMessage();
+        msg.setMethod(method);
+        msg.setPath(path);
+        msg.setQuery(query);
+        msg.setHeaders(headers);
+        msg.setBodyContentType(request.getContentType());
+
+        // The relay has its own timeouts: per request in buffered mode, per chunk in streaming mode
+        final var result = new DeferredResult<Void>(NO_ASYNC_TIMEOUT);
+        final var mode = tunnel.supportsStreaming() ? IngressMetrics.Mode.STREAMED : IngressMetrics.Mode.BUFFERED;
+        final var startNanos = System.nanoTime();
+        final var cached = tunnel.cachesResponses() ? cache.lookup(tunnel, msg) : null;
+        if (cached != null) {
+            final var fresh = cached.fresh();
+            if (fresh != null) {
+                writeCached(fresh, cached.notModified(fresh), response);
+                metrics.record(mode, IngressMetrics.Outcome.CACHED, startNanos);
+                return null;
+            }
+            cached.addValidators(msg);
         }
+        // The relay reads the request and writes the response, so it must not start before the request is in
+        // async mode: Spring only starts async processing once the handler returned the DeferredResult
+        startWhenAsync(request, result, () -> relayExecutor.execute(() -> {
+            try {
+                // Requests beyond what the client executes concurrently wait here rather than time out there
+                final var slot = tunnel.admit(TunnelRegistry.ADMISSION_TIMEOUT);
+                if (slot == null) {
+                    log.debug("Shedding request for subdomain={}: {} requests in flight", subdomain,
+                        tunnel.maxInFlight());
+                    response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+                    response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Tunnel is busy");
+                    metrics.record(mode, IngressMetrics.Outcome.SHED, startNanos);
+                    result.setResult(null);
+                    return;
+                }
+                final IngressMetrics.Outcome outcome;
+                try {
+                    outcome = mode == IngressMetrics.Mode.STREAMED
+                        ? streamViaTunnel(subdomain, msg, limit, cached, request, response)
+                        : bufferViaTunnel(subdomain, msg, limit, cached, request, response);
+                } finally {
+                    slot.run();
+                }
+                metrics.record(mode, outcome, startNanos);
+                result.setResult(null);
+            } catch (final Exception ex) {
+                log.debug("Relay failed for subdomain={}: {}", subdomain, ex.toString());
+                metrics.record(mode, IngressMetrics.Outcome.FAILED, startNanos);
+                result.setErrorResult(ex);
+            }
+        }));
+        return result;
+    }
+
+    /**
+     * Runs the task once async processing of the given result has started, still on the container thread that
+     * started it. From then on the request and response may be used by other threads.
+     */
+    private static void startWhenAsync(final HttpServletRequest request,
+                                       final DeferredResult<?> result,
+                                       final Runnable task) {
+        WebAsyncUtils.getAsyncManager(request).registerDeferredResultInterceptor(RELAY_INTERCEPTOR_KEY,
+            new DeferredResultProcessingInterceptor() {
+                @Override
+                public <T> void preProcess(final NativeWebRequest webRequest, final DeferredResult<T> deferred) {
+                    if (deferred == result) {
+                        task.run();
+                    }
+                }
+            });
+    }
 
+    /**
+     * Relays the exchange as a whole: the request body is read up to the limit, and the response is written
+     * once the CLI has returned it completely.
+     *
+     * @return how the exchange ended
+     */
+    private IngressMetrics.Outcome bufferViaTunnel(final String subdomain,
+                                 final HttpTunnelMessage msg,
+                                 final long limit,
+                                 final IngressCache.Lookup cached,
+                                 final HttpServletRequest request,
+                                 final HttpServletResponse response) throws IOException {
         final byte[] bodyBytes;
         try (final var inputStream = request.getInputStream()) {
             if (limit >= 0) {
                 // Read up to limit + 1 bytes to detect if the body is too large
                 final var result = inputStream.readNBytes((int) limit + 1);
                 if (result.length > limit) {
-                    log.warn("Payload Too Large: subdomain {} exceeded max body size of {} (actual length > {})",
-                        subdomain, maxRequestBodySize, limit);
-                    response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
-                        "Payload Too Large: max %s allowed".formatted(maxRequestBodySize));
-                    return;
+                    rejectTooLarge(subdomain, limit, response);
+                    return IngressMetrics.Outcome.TOO_LARGE;
                 }
                 bodyBytes = result;
             } else {
                 bodyBytes = inputStream.readAllBytes();
             }
         }
-        final var bodyB64 = bodyBytes.length == 0 ? null : Base64.getEncoder().encodeToString(bodyBytes);
-
-        final var msg = new HttpTunnelMessage();
-        msg.setMethod(method);
-        msg.setPath(path);
-        msg.setQuery(query);
-        msg.setHeaders(headers);
-        msg.setBodyB64(bodyB64);
-        msg.setBodyContentType(request.getContentType());
+        msg.setBody(bodyBytes);
 
         try {
             final var resp = registry.forwardRequest(subdomain, msg, Duration.ofSeconds(30)).join();
-            final var status = resp.getStatus() == null ? 502 : resp.getStatus();
-            response.setStatus(status);
-            if (resp.getRespHeaders() != null) {
-                for (final var header : resp.getRespHeaders().entrySet()) {
-                    final var name = header.getKey();
-                    final var values = header.getValue();
-                    if (name == null || values == null) {
-                        continue;
-                    }
-                    final var nameLc = name.toLowerCase();
-                    if (HOP_BY_HOP_RESPONSE_HEADERS.contains(nameLc)) {
-                        // Skip hop-by-hop or conflicting headers
-                        continue;
-                    }
-                    values.stream()
-                        .filter(Objects::nonNull)
-                        .forEach(value ->
-                            response.addHeader(name, value));
-                }
+            final var revalidated = cached == null ? null : cached.revalidated(resp);
+            if (revalidated != null) {
+                writeCached(revalidated, cached.notModified(revalidated), response);
+                return IngressMetrics.Outcome.RELAYED;
+            }
+            writeResponseHead(resp, response);
+            final var body = resp.getRespBody() == null ? new byte[0] : resp.getRespBody();
+            if (body.length > 0) {
+                response.getOutputStream().write(body);
             }
-            if (resp.getRespBodyB64() != null) {
-                final var bytes = Base64.getDecoder().decode(resp.getRespBodyB64());
-                response.getOutputStream().write(bytes);
+            final var capture = cached == null ? null : cached.capture(resp);
+            if (capture != null) {
+                capture.write(body, 0, body.length);
+                capture.complete();
             }
+            return IngressMetrics.Outcome.RELAYED;
+        } catch (final Exception ex) {
+            log.warn("Tunnel forward failed for subdomain={}: {}", subdomain, ex.toString());
+            response.setStatus(HttpServletResponse.SC_BAD_GATEWAY);
+            response.getWriter().write("Bad Gateway: tunnel unavailable");
+            return failure(ex);
+        }
+    }
+
+    /**
+     * Relays the exchange in chunks: the request body is read with a bounded buffer and sent as it is
+     * read, and the response body is written to the servlet output as soon as chunks arrive from the CLI.
+     *
+     * @return how the exchange ended
+     */
+    private IngressMetrics.Outcome streamViaTunnel(final String subdomain,
+                                 final HttpTunnelMessage msg,
+                                 final long limit,
+                                 final IngressCache.Lookup cached,
+                                 final HttpServletRequest request,
+                                 final HttpServletResponse response) throws IOException {
+        if (limit >= 0 && request.getContentLengthLong() > limit) {
+            rejectTooLarge(subdomain, limit, response);
+            return IngressMetrics.Outcome.TOO_LARGE;
+        }
+
+        final HttpTunnelStream stream;
+        try {
+            stream = registry.openStream(subdomain, msg);
         } catch (final Exception ex) {
             log.warn("Tunnel forward failed for subdomain={}: {}", subdomain, ex.toString());
             response.setStatus(HttpServletResponse.SC_BAD_GATEWAY);
             response.getWriter().write("Bad Gateway: tunnel unavailable");
+            return IngressMetrics.Outcome.FAILED;
+        }
+
+        try {
+            final var buffer = new byte[HttpStreamFrame.CHUNK_SIZE];
+            var total = 0L;
+            try (final var inputStream = request.getInputStream()) {
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    total += read;
+                    if (limit >= 0 && total > limit) {
+                        stream.abort("Payload Too Large");
+                        rejectTooLarge(subdomain, limit, response);
+                        return IngressMetrics.Outcome.TOO_LARGE;
+                    }
+                    if (read > 0) {
+                        stream.sendBody(buffer, 0, read);
+                    }
+                }
+            }
+            stream.endBody();
+
+            final var head = stream.awaitHead(TunnelRegistry.DEFAULT_TIMEOUT);
+            final var revalidated = cached == null ? null : cached.revalidated(head);
+            if (revalidated != null) {
+                // A 304 has no body; wait for the end of the exchange
+                var ignored = stream.nextChunk(TunnelRegistry.DEFAULT_TIMEOUT);
+                while (ignored != null) {
+                    ignored = stream.nextChunk(TunnelRegistry.DEFAULT_TIMEOUT);
+                }
+                writeCached(revalidated, cached.notModified(revalidated), response);
+                return IngressMetrics.Outcome.RELAYED;
+            }
+            writeResponseHead(head, response);
+            final var capture = cached == null ? null : cached.capture(head);
+            final var out = response.getOutputStream();
+            byte[] chunk;
+            while ((chunk = stream.nextChunk(TunnelRegistry.DEFAULT_TIMEOUT)) != null) {
+                out.write(chunk);
+                if (capture != null) {
+                    capture.write(chunk, 0, chunk.length);
+                }
+                // Coalesce writes of chunks that are already buffered; flush once caught up
+                if (!stream.hasBufferedChunks()) {
+                    out.flush();
+                }
+            }
+            if (capture != null) {
+                capture.complete();
+            }
+            return IngressMetrics.Outcome.RELAYED;
+        } catch (final Exception ex) {
+            stream.abort(ex.toString());
+            log.warn("Tunnel stream failed for subdomain={}: {}", subdomain, ex.toString());
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpServletResponse.SC_BAD_GATEWAY);
+                response.getWriter().write("Bad Gateway: tunnel unavailable");
+            }
+            return failure(ex);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static IngressMetrics.Outcome failure(final Throwable error) {
+        for (var cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException) {
+                return IngressMetrics.Outcome.TIMEOUT;
+            }
+        }
+        return IngressMetrics.Outcome.FAILED;
+    }
+
+    private void rejectTooLarge(final String subdomain,
+                                final long limit,
+                                final HttpServletResponse response) throws IOException {
+        final var maxRequestBodySize = properties.gateway().maxRequestBodySize();
+        log.warn("Payload Too Large: subdomain {} exceeded max body size of {} (actual length > {})",
+            subdomain, maxRequestBodySize, limit);
+        response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+            "Payload Too Large: max %s allowed".formatted(maxRequestBodySize));
+    }
+
+    /**
+     * Writes a response from the cache, or a 304 if the requester already holds it.
+     */
+    private void writeCached(final IngressCache.Entry entry,
+                             final boolean notModified,
+                             final HttpServletResponse response) throws IOException {
+        final var head = new HttpTunnelMessage();
+        head.setStatus(notModified ? HttpServletResponse.SC_NOT_MODIFIED : entry.status());
+        head.setRespHeaders(entry.headers());
+        writeResponseHead(head, response);
+        response.setHeader(HttpHeaders.AGE, Long.toString(entry.age(System.nanoTime())));
+        if (!notModified) {
+            response.setContentLength(entry.body().length);
+            response.getOutputStream().write(entry.body());
+        }
+    }
+
+    private void writeResponseHead(final HttpTunnelMessage resp, final HttpServletResponse response) {
+        final var status = resp.getStatus() == null ? 502 : resp.getStatus();
+        response.setStatus(status);
+        if (resp.getRespHeaders() == null) {
+            return;
+        }
+        for (final var header : resp.getRespHeaders().entrySet()) {
+            final var name = header.getKey();
+            final var values = header.getValue();
+            if (name == null || values == null) {
+                continue;
+            }
+            final var nameLc = name.toLowerCase();
+            if (HOP_BY_HOP_RESPONSE_HEADERS.contains(nameLc)) {
+                // Skip hop-by-hop or conflicting headers
+                continue;
+            }
+            values.stream()
+                .filter(Objects::nonNull)
+                .forEach(value ->
+                    response.addHeader(name, value));
         }
     }
 
     private boolean isAuthorized(final String subdomain,
-                                 final UUID tunnelId,
+                                 final String passcodeHash,
                                  final HttpServletRequest request,
                                  final HttpServletResponse response) {
 
-        final var passcodeHash = tunnelService.getTempPasscodeHash(tunnelId)
-            .or(() -> domainRepository.findBySubdomain(subdomain)
-                .map(DomainEntity::getPasscodeHash))
-            .orElse(null);
-
         // If there is no passcode configured for either the domain or the tunnel — allow access
         if (passcodeHash == null) {
             return true;
@@ -281,16 +529,27 @@ public class IngressController {
         // If passcode provided via header or query, validate and set cookie on success
         if (passcode != null) {
             if (matches(passcode, passcodeHash)) {
-                issueCookie(response, subdomain, passcode);
+                issueCookie(response, subdomain, passcodeSessions.issue(subdomain, passcodeHash, PASSCODE_SESSION_TTL));
                 return true;
             }
             return false;
         }
 
-        return findCookie(request, PASSCODE_COOKIE_NAME)
+        final var cookieValue = findCookie(request, PASSCODE_COOKIE_NAME)
             .map(Cookie::getValue)
-            .map(cookiePasscode -> matches(cookiePasscode, passcodeHash))
-            .orElse(false);
+            .orElse(null);
+        if (cookieValue == null) {
+            return false;
+        }
+        if (passcodeSessions.isSession(cookieValue)) {
+            return passcodeSessions.verify(cookieValue, subdomain, passcodeHash);
+        }
+        // Cookies issued before sessions were signed carry the passcode itself; replace them on first use
+        if (matches(cookieValue, passcodeHash)) {
+            issueCookie(response, subdomain, passcodeSessions.issue(subdomain, passcodeHash, PASSCODE_SESSION_TTL));
+            return true;
+        }
+        return false;
     }
 
     private boolean matches(final String raw, final String hash) {
@@ -335,7 +594,7 @@ public class IngressController {
             cookie.setDomain(fullDomain);
         }
 
-        cookie.setMaxAge(60 * 60 * 12); // 12 hours
+        cookie.setMaxAge((int) PASSCODE_SESSION_TTL.toSeconds());
         response.addCookie(cookie);
 
         // Compose manual Set-Cookie with SameSite=Lax; add Domain only when it is valid
@@ -343,7 +602,9 @@ public class IngressController {
         sb.append(PASSCODE_COOKIE_NAME)
             .append("=")
             .append(value)
-            .append("; Path=/; Max-Age=43200; HttpOnly; SameSite=Lax");
+            .append("; Path=/; Max-Age=")
+            .append(PASSCODE_SESSION_TTL.toSeconds())
+            .append("; HttpOnly; SameSite=Lax");
         if (shouldSetDomain) {
             sb.append("; Domain=").append(fullDomain);
         }
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.web;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import tech.amak.portbuddy.server.tunnel.TunnelRegistry;
+
+/**
+ * Times HTTP requests relayed through tunnels, from arrival to the end of the response, including the wait
+ * for a slot of the tunnel. Tagged by relay mode and outcome only, never by tunnel, and published as a
+ * histogram so percentiles can be aggregated across instances.
+ */
+@Component
+public class IngressMetrics {
+
+    /**
+     * How the exchange is relayed.
+     */
+    public enum Mode {
+        BUFFERED,
+        STREAMED
+    }
+
+    /**
+     * How the exchange ended.
+     */
+    public enum Outcome {
+        /**
+         * The response of the client was relayed, whatever its status.
+         */
+        RELAYED,
+        /**
+         * The response was served from the ingress cache without reaching the client.
+         */
+        CACHED,
+        /**
+         * The tunnel was at its concurrency limit for too long.
+         */
+        SHED,
+        /**
+         * The client did not answer in time.
+         */
+        TIMEOUT,
+        /**
+         * The tunnel failed or went away.
+         */
+        FAILED,
+        /**
+         * The request body exceeded the limit.
+         */
+        TOO_LARGE
+    }
+
+    private final Map<Mode, Map<Outcome, Timer>> timers = new EnumMap<>(Mode.class);
+
+    /**
+     * Registers a timer per mode and outcome.
+     *
+     * @param meterRegistry the registry to publish to
+     */
+    public IngressMetrics(final MeterRegistry meterRegistry) {
+        for (final var mode : Mode.values()) {
+            final var byOutcome = new EnumMap<Outcome, Timer>(Outcome.class);
+            for (final var outcome : Outcome.values()) {
+                byOutcome.put(outcome, Timer.builder("portbuddy.ingress.requests")
+                    .description("HTTP requests relayed through tunnels")
+                    .tag("mode", mode.name().toLowerCase(Locale.ROOT))
+                    .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(TunnelRegistry.DEFAULT_TIMEOUT)
+                    .register(meterRegistry));
+            }
+            timers.put(mode, byOutcome);
+        }
+    }
+
+    /**
+     * Records a finished exchange.
+     *
+     * @param mode       how the exchange was relayed
+     * @param outcome    how it ended
+     * @param startNanos {@link System#nanoTime()} when the request arrived
+     */
+    public void record(final Mode mode, final Outcome outcome, final long startNanos) {
+        timers.get(mode).get(outcome).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -14,16 +14,19 @@
 
 package tech.amak.portbuddy.server.web;
 
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import lombok.RequiredArgsConstructor;
-import tech.amak.portbuddy.server.db.repo.AccountRepository;
 import tech.amak.portbuddy.server.db.repo.DomainRepository;
+import tech.amak.portbuddy.server.tunnel.TunnelAccessCache;
 import tech.amak.portbuddy.server.tunnel.TunnelRegistry;
+import tech.amak.portbuddy.server.tunnel.TunnelRouteBroadcaster;
 
 /**
  * Lightweight, instance-local endpoint for the API Gateway to resolve which server instance
@@ -31,7 +34,8 @@ import tech.amak.portbuddy.server.tunnel.TunnelRegistry;
  * this instance has an open tunnel for the subdomain, otherwise 404.
  * This endpoint is intentionally placed under "/ingress/**" which is already permitted in
  * {@link tech.amak.portbuddy.server.security.SecurityConfig} so the gateway can probe it
- * without authentication.
+ * without authentication. The gateway normally routes from the {@code /ingress/routes} event stream and
+ * only probes the resolve endpoints for hosts missing from its routing table.
  */
 @RestController
 @RequestMapping("/ingress")
@@ -39,8 +43,9 @@ import tech.amak.portbuddy.server.tunnel.TunnelRegistry;
 public class IngressResolveController {
 
     private final TunnelRegistry registry;
+    private final TunnelRouteBroadcaster routeBroadcaster;
     private final DomainRepository domainRepository;
-    private final AccountRepository accountRepository;
+    private final TunnelAccessCache accessCache;
 
     /**
      * Checks if the given subdomain is owned by an active tunnel.
@@ -76,12 +81,18 @@ public class IngressResolveController {
             .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    /**
+     * Streams the tunnels owned by this instance and their changes as server-sent events.
+     *
+     * @return the event stream
+     */
+    @GetMapping(path = "/routes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter routes() {
+        return routeBroadcaster.subscribe();
+    }
+
     private boolean isSubscriptionActive(final TunnelRegistry.Tunnel tunnel) {
-        return accountRepository.findById(tunnel.accountId())
-            .map(account -> {
-                final var status = account.getSubscriptionStatus();
-                return status == null || "active".equals(status);
-            })
-            .orElse(false);
+        final var access = accessCache.get(tunnel);
+        return access.accountFound() && access.subscriptionActive();
     }
 }
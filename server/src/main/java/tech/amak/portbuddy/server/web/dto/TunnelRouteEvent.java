@@ -0,0 +1,33 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.web.dto;
+
+/**
+ * Tunnel ownership change of a server instance, streamed to the API Gateway routing table.
+ * A {@link Type#RESET} event starts every stream and is followed by an {@link Type#UP} event
+ * for each tunnel the instance currently holds.
+ */
+public record TunnelRouteEvent(
+    Type type,
+    String subdomain,
+    String customDomain
+) {
+
+    public enum Type {
+        RESET,
+        UP,
+        DOWN
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.security;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.Test;
+
+class PasscodeSessionsTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+    private static final Duration TTL = Duration.ofHours(12);
+
+    private final PasscodeSessions sessions = new PasscodeSessions("secret", Clock.fixed(NOW, ZoneOffset.UTC));
+
+    @Test
+    void verify_acceptsIssuedSession() {
+        final var value = sessions.issue("demo", "hash", TTL);
+
+        assertTrue(sessions.isSession(value));
+        assertTrue(sessions.verify(value, "demo", "hash"));
+    }
+
+    @Test
+    void verify_rejectsOtherSubdomainOrChangedPasscode() {
+        final var value = sessions.issue("demo", "hash", TTL);
+
+        assertFalse(sessions.verify(value, "other", "hash"));
+        assertFalse(sessions.verify(value, "demo", "new-hash"));
+    }
+
+    @Test
+    void verify_rejectsExpiredSession() {
+        final var value = sessions.issue("demo", "hash", TTL);
+        final var later = new PasscodeSessions("secret", Clock.fixed(NOW.plus(TTL), ZoneOffset.UTC));
+
+        assertFalse(later.verify(value, "demo", "hash"));
+    }
+
+    @Test
+    void verify_rejectsTamperedOrForeignSession() {
+        final var value = sessions.issue("demo", "hash", TTL);
+        final var parts = value.split("\\.");
+        final var extended = parts[0] + "." + (Long.parseLong(parts[1]) + 3600) + "." + parts[2];
+        final var otherKey = new PasscodeSessions("other-secret", Clock.fixed(NOW, ZoneOffset.UTC));
+
+        assertFalse(sessions.verify(extended, "demo", "hash"));
+        assertFalse(sessions.verify("v1.garbage", "demo", "hash"));
+        assertFalse(otherKey.verify(value, "demo", "hash"));
+        assertFalse(sessions.isSession("plain-passcode"));
+    }
+}
@@ -30,12 +30,14 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import com.stripe.exception.ApiConnectionException;
 import com.stripe.exception.StripeException;
 
 import tech.amak.portbuddy.server.db.entity.AccountEntity;
 import tech.amak.portbuddy.server.db.repo.AccountRepository;
+import tech.amak.portbuddy.server.tunnel.TunnelAccessChangedEvent;
 
 @ExtendWith(MockitoExtension.class)
 class AccountBlockingServiceTest {
@@ -48,6 +50,8 @@ class AccountBlockingServiceTest {
     private IpBlacklistService ipBlacklistService;
     @Mock
     private StripeService stripeService;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
 
     @InjectMocks
     private AccountBlockingService service;
@@ -65,6 +69,7 @@ class AccountBlockingServiceTest {
         verify(accountRepository).save(account);
         verify(tunnelService).closeAllTunnels(account);
         verify(ipBlacklistService).blacklistAccountIps(accountId);
+        verify(eventPublisher).publishEvent(TunnelAccessChangedEvent.forAccount(accountId));
     }
 
     @Test
@@ -37,6 +37,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.util.unit.DataSize;
 import org.springframework.web.server.ResponseStatusException;
@@ -69,6 +70,8 @@ class DomainServiceTest {
     private SslServiceClient sslServiceClient;
     @Mock
     private AccountRepository accountRepository;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
 
     private DomainService domainService;
     private AccountEntity account;
@@ -81,7 +84,8 @@ class DomainServiceTest {
             "https",
             "https://portbuddy.dev/404",
             "https://portbuddy.dev/passcode",
-            DataSize.ofMegabytes(10));
+            DataSize.ofMegabytes(10),
+            null);
         final var mail = new AppProperties.Mail("no-reply@localhost", "Port Buddy");
         final var portReservations =
             new AppProperties.PortReservations(new AppProperties.PortReservations.Range(40000, 60000));
@@ -102,7 +106,8 @@ class DomainServiceTest {
             passwordEncoder,
             sslServiceClient,
             userRepository,
-            accountRepository);
+            accountRepository,
+            eventPublisher);
         account = new AccountEntity();
         account.setId(UUID.randomUUID());
         lenient().when(accountRepository.findByIdForUpdate(account.getId())).thenReturn(Optional.of(account));
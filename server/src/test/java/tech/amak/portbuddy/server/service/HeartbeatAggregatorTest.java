@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.service;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import tech.amak.portbuddy.common.Plan;
+import tech.amak.portbuddy.server.db.entity.AccountEntity;
+import tech.amak.portbuddy.server.db.entity.TunnelEntity;
+import tech.amak.portbuddy.server.db.repo.AccountRepository;
+import tech.amak.portbuddy.server.db.repo.TunnelRepository;
+import tech.amak.portbuddy.server.exception.SubscriptionException;
+import tech.amak.portbuddy.server.tunnel.TunnelAccessChangedEvent;
+
+@ExtendWith(MockitoExtension.class)
+class HeartbeatAggregatorTest {
+
+    @Mock
+    private TunnelRepository tunnelRepository;
+    @Mock
+    private AccountRepository accountRepository;
+
+    private HeartbeatAggregator aggregator;
+    private AccountEntity account;
+    private UUID tunnelId;
+
+    @BeforeEach
+    void setUp() {
+        aggregator = new HeartbeatAggregator(tunnelRepository, accountRepository);
+        account = new AccountEntity();
+        account.setId(UUID.randomUUID());
+        account.setPlan(Plan.PRO);
+        account.setSubscriptionStatus("active");
+        tunnelId = UUID.randomUUID();
+        final var tunnel = new TunnelEntity();
+        tunnel.setId(tunnelId);
+        tunnel.setAccountId(account.getId());
+        when(tunnelRepository.findById(tunnelId)).thenReturn(Optional.of(tunnel));
+        when(accountRepository.findById(account.getId())).thenReturn(Optional.of(account));
+    }
+
+    @Test
+    void flush_writesRepeatedHeartbeatsOnceAndChecksSubscriptionOnce() {
+        for (var i = 0; i < 100; i++) {
+            aggregator.record(tunnelId);
+        }
+
+        aggregator.flush();
+        aggregator.flush();
+
+        verify(tunnelRepository, times(1)).updateHeartbeats(eq(List.of(tunnelId)), any());
+        verify(accountRepository, times(1)).findById(account.getId());
+    }
+
+    @Test
+    void record_rechecksSubscriptionAfterAccountChange() {
+        aggregator.record(tunnelId);
+        account.setSubscriptionStatus("past_due");
+        assertDoesNotThrow(() -> aggregator.record(tunnelId));
+
+        aggregator.onAccessChanged(TunnelAccessChangedEvent.forAccount(account.getId()));
+
+        assertThrows(SubscriptionException.class, () -> aggregator.record(tunnelId));
+    }
+
+    @Test
+    void flush_keepsHeartbeatsOfFailedWriteAndDropsForgottenOnes() {
+        aggregator.record(tunnelId);
+        when(tunnelRepository.updateHeartbeats(anyCollection(), any()))
+            .thenThrow(new DataAccessResourceFailureException("db down"))
+            .thenReturn(1);
+
+        aggregator.flush();
+        aggregator.flush();
+        verify(tunnelRepository, times(2)).updateHeartbeats(anyCollection(), any());
+
+        aggregator.record(tunnelId);
+        aggregator.forget(tunnelId);
+        aggregator.flush();
+        verify(tunnelRepository, times(2)).updateHeartbeats(anyCollection(), any());
+    }
+
+    @Test
+    void flush_doesNotRetryHeartbeatOfTunnelClosedWhileWriting() {
+        aggregator.record(tunnelId);
+        when(tunnelRepository.updateHeartbeats(anyCollection(), any())).thenAnswer(invocation -> {
+            aggregator.forget(tunnelId);
+            throw new DataAccessResourceFailureException("db down");
+        });
+
+        aggregator.flush();
+        aggregator.flush();
+
+        verify(tunnelRepository, times(1)).updateHeartbeats(anyCollection(), any());
+    }
+}
@@ -84,7 +84,7 @@ class TunnelServiceTest {
         );
         tunnelService = new TunnelService(
             tunnelRepository, accountRepository, properties, Optional.empty(), tunnelRegistry, netProxyClient,
-            ipBlacklistService);
+            ipBlacklistService, new HeartbeatAggregator(tunnelRepository, accountRepository));
         account = new AccountEntity();
         account.setId(UUID.randomUUID());
         account.setPlan(Plan.PRO);
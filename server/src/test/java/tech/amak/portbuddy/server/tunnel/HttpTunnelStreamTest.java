@@ -0,0 +1,209 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import tech.amak.portbuddy.common.tunnel.HttpStreamFrame;
+import tech.amak.portbuddy.common.tunnel.HttpTunnelMessage;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
+import tech.amak.portbuddy.server.db.entity.DomainEntity;
+import tech.amak.portbuddy.server.db.entity.TunnelEntity;
+
+class HttpTunnelStreamTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private TunnelRegistry registry;
+    private WebSocketSession session;
+    private UUID tunnelId;
+
+    @BeforeEach
+    void setUp() {
+        registry = new TunnelRegistry(mapper);
+        tunnelId = UUID.randomUUID();
+        final var domain = new DomainEntity();
+        domain.setSubdomain("test");
+        final var tunnelEntity = new TunnelEntity();
+        tunnelEntity.setId(tunnelId);
+        tunnelEntity.setAccountId(UUID.randomUUID());
+        tunnelEntity.setDomain(domain);
+
+        final var headers = new HttpHeaders();
+        headers.add(TunnelFeatures.HEADER, TunnelFeatures.HTTP_STREAM);
+        session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getHandshakeHeaders()).thenReturn(headers);
+        registry.register(tunnelEntity, session);
+    }
+
+    @Test
+    void shouldNegotiateStreamingFromHandshakeHeader() {
+        assertThat(registry.getByTunnelId(tunnelId).supportsStreaming()).isTrue();
+    }
+
+    @Test
+    void shouldRelayResponseChunksInOrder() throws Exception {
+        // Given
+        final var request = new HttpTunnelMessage();
+        request.setMethod("GET");
+        request.setPath("/file");
+        final var stream = registry.openStream("test", request);
+        final var requestId = stream.requestId();
+
+        final var captor = ArgumentCaptor.forClass(BinaryMessage.class);
+        verify(session, timeout(1000)).sendMessage(captor.capture());
+        final var start = HttpStreamFrame.decode(captor.getValue().getPayload());
+        assertThat(start.type()).isEqualTo(HttpStreamFrame.Type.REQUEST_START);
+        assertThat(start.requestId()).isEqualTo(requestId);
+
+        final var head = new HttpTunnelMessage();
+        head.setStatus(200);
+        head.setRespHeaders(Map.of("Content-Type", List.of("application/octet-stream")));
+
+        // When
+        registry.onStreamFrame(tunnelId, frame(HttpStreamFrame.Type.RESPONSE_START, requestId,
+            mapper.writeValueAsBytes(head)));
+        registry.onStreamFrame(tunnelId, frame(HttpStreamFrame.Type.RESPONSE_DATA, requestId, bytes("a")));
+        registry.onStreamFrame(tunnelId, frame(HttpStreamFrame.Type.RESPONSE_DATA, requestId, bytes("b")));
+        registry.onStreamFrame(tunnelId, frame(HttpStreamFrame.Type.RESPONSE_END, requestId, null));
+
+        // Then
+        assertThat(stream.awaitHead(Duration.ofSeconds(1)).getStatus()).isEqualTo(200);
+        assertThat(stream.nextChunk(Duration.ofSeconds(1))).isEqualTo(bytes("a"));
+        assertThat(stream.nextChunk(Duration.ofSeconds(1))).isEqualTo(bytes("b"));
+        assertThat(stream.nextChunk(Duration.ofSeconds(1))).isNull();
+
+        stream.close();
+        assertThat(registry.getByTunnelId(tunnelId).streams()).isEmpty();
+    }
+
+    @Test
+    void shouldFailStreamWhenTunnelCloses() throws Exception {
+        // Given
+        final var stream = registry.openStream("test", new HttpTunnelMessage());
+
+        // When
+        registry.closeTunnel(tunnelId);
+
+        // Then
+        assertThatThrownBy(() -> stream.awaitHead(Duration.ofSeconds(1)))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("Tunnel closed");
+        assertThat(registry.getByTunnelId(tunnelId)).isNull();
+    }
+
+    @Test
+    void shouldFailOnlyTheStreamThatExceedsItsWindow() throws Exception {
+        // Given
+        final var overrun = registry.openStream("test", new HttpTunnelMessage());
+        final var other = registry.openStream("test", new HttpTunnelMessage());
+
+        // When: the reader never waits, even for a stream whose consumer takes nothing
+        for (var i = 0; i <= HttpStreamFrame.WINDOW_CHUNKS; i++) {
+            registry.onStreamFrame(tunnelId, frame(HttpStreamFrame.Type.RESPONSE_DATA, overrun.requestId(),
+                bytes("x")));
+        }
+        registry.onStreamFrame(tunnelId, frame(HttpStreamFrame.Type.RESPONSE_DATA, other.requestId(), bytes("y")));
+
+        // Then
+        assertThatThrownBy(() -> overrun.nextChunk(Duration.ofSeconds(1)))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("window");
+        assertThat(other.nextChunk(Duration.ofSeconds(1))).isEqualTo(bytes("y"));
+    }
+
+    @Test
+    void shouldWaitForCreditBeforeSendingRequestChunks() throws Exception {
+        // Given
+        final var stream = registry.openStream("test", new HttpTunnelMessage());
+        final var chunk = bytes("x");
+        for (var i = 0; i < HttpStreamFrame.WINDOW_CHUNKS; i++) {
+            stream.sendBody(chunk, 0, chunk.length);
+        }
+
+        // When
+        final var beyondWindow = CompletableFuture.runAsync(() -> {
+            try {
+                stream.sendBody(chunk, 0, chunk.length);
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        final var sentBeforeCredit = beyondWindow.isDone();
+        registry.onStreamFrame(tunnelId, HttpStreamFrame.decode(
+            HttpStreamFrame.encodeCredit(stream.requestId(), 1)));
+
+        // Then
+        assertThat(sentBeforeCredit).isFalse();
+        beyondWindow.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void shouldReturnCreditForTakenResponseChunks() throws Exception {
+        // Given
+        final var stream = registry.openStream("test", new HttpTunnelMessage());
+        for (var i = 0; i < HttpTunnelStream.CREDIT_BATCH; i++) {
+            registry.onStreamFrame(tunnelId, frame(HttpStreamFrame.Type.RESPONSE_DATA, stream.requestId(),
+                bytes("x")));
+        }
+
+        // When
+        for (var i = 0; i < HttpTunnelStream.CREDIT_BATCH; i++) {
+            stream.nextChunk(Duration.ofSeconds(1));
+        }
+
+        // Then
+        final var captor = ArgumentCaptor.forClass(BinaryMessage.class);
+        verify(session, timeout(1000).atLeast(2)).sendMessage(captor.capture());
+        final var credit = HttpStreamFrame.decode(captor.getAllValues().get(captor.getAllValues().size() - 1)
+            .getPayload());
+        assertThat(credit.type()).isEqualTo(HttpStreamFrame.Type.CREDIT);
+        assertThat(HttpStreamFrame.credit(credit)).isEqualTo(HttpTunnelStream.CREDIT_BATCH);
+    }
+
+    private static HttpStreamFrame.Decoded frame(final HttpStreamFrame.Type type,
+                                                 final String requestId,
+                                                 final byte[] data) {
+        return HttpStreamFrame.decode(HttpStreamFrame.encode(type, requestId, data));
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
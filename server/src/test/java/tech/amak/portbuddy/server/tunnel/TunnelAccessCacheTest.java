@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import tech.amak.portbuddy.server.db.entity.DomainEntity;
+import tech.amak.portbuddy.server.db.entity.TunnelEntity;
+import tech.amak.portbuddy.server.service.TunnelAccessService;
+
+class TunnelAccessCacheTest {
+
+    private final TunnelRegistry registry = new TunnelRegistry(new ObjectMapper());
+    private final TunnelAccessService accessService = mock(TunnelAccessService.class);
+    private final TunnelAccessCache cache = new TunnelAccessCache(registry, accessService);
+
+    private final UUID tunnelId = UUID.randomUUID();
+    private final UUID accountId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        cache.init();
+        when(accessService.load(accountId, tunnelId, "demo"))
+            .thenAnswer(invocation -> new TunnelAccess(true, "active", null, System.nanoTime()));
+
+        final var domain = new DomainEntity();
+        domain.setSubdomain("demo");
+        final var tunnelEntity = new TunnelEntity();
+        tunnelEntity.setId(tunnelId);
+        tunnelEntity.setAccountId(accountId);
+        tunnelEntity.setDomain(domain);
+        final var session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        registry.register(tunnelEntity, session);
+    }
+
+    @Test
+    void shouldLoadOnceAtRegisterAndServeFromTunnel() {
+        final var tunnel = registry.getByTunnelId(tunnelId);
+
+        final var first = cache.get(tunnel);
+        final var second = cache.get(tunnel);
+
+        assertSame(first, second);
+        verify(accessService, times(1)).load(accountId, tunnelId, "demo");
+    }
+
+    @Test
+    void shouldReloadAfterAccountOrSubdomainChange() {
+        final var tunnel = registry.getByTunnelId(tunnelId);
+
+        cache.onAccessChanged(TunnelAccessChangedEvent.forAccount(accountId));
+        assertNull(tunnel.access());
+        cache.get(tunnel);
+
+        cache.onAccessChanged(TunnelAccessChangedEvent.forSubdomain("demo"));
+        assertNull(tunnel.access());
+        cache.get(tunnel);
+
+        cache.onAccessChanged(TunnelAccessChangedEvent.forAccount(UUID.randomUUID()));
+        cache.get(tunnel);
+
+        verify(accessService, times(3)).load(accountId, tunnelId, "demo");
+    }
+
+    @Test
+    void shouldDiscardLoadThatRacedWithInvalidation() {
+        final var tunnel = registry.getByTunnelId(tunnelId);
+        final var version = tunnel.accessVersion();
+
+        tunnel.invalidateAccess();
+        tunnel.setAccess(version, new TunnelAccess(true, "past_due", null, System.nanoTime()));
+
+        assertNull(tunnel.access());
+        assertEquals("active", cache.get(tunnel).subscriptionStatus());
+    }
+}
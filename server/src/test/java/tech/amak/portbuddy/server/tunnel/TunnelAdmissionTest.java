@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
+import tech.amak.portbuddy.server.db.entity.DomainEntity;
+import tech.amak.portbuddy.server.db.entity.TunnelEntity;
+
+class TunnelAdmissionTest {
+
+    private final TunnelRegistry registry = new TunnelRegistry(new ObjectMapper());
+
+    @Test
+    void shouldAdmitUpToReportedLimitAndShedAfterTimeout() throws Exception {
+        final var tunnel = register("2");
+        assertThat(tunnel.maxInFlight()).isEqualTo(2);
+
+        final var first = tunnel.admit(Duration.ZERO);
+        final var second = tunnel.admit(Duration.ZERO);
+        assertThat(first).isNotNull();
+        assertThat(second).isNotNull();
+        assertThat(tunnel.admit(Duration.ofMillis(10))).isNull();
+
+        first.run();
+        assertThat(tunnel.admit(Duration.ZERO)).isNotNull();
+    }
+
+    @Test
+    void shouldNotLimitClientsThatReportNoLimit() throws Exception {
+        final var tunnel = register(null);
+
+        assertThat(tunnel.maxInFlight()).isZero();
+        for (var i = 0; i < 100; i++) {
+            assertThat(tunnel.admit(Duration.ZERO)).isNotNull();
+        }
+    }
+
+    private TunnelRegistry.Tunnel register(final String maxInFlight) {
+        final var domain = new DomainEntity();
+        domain.setSubdomain("test");
+        final var tunnelEntity = new TunnelEntity();
+        tunnelEntity.setId(UUID.randomUUID());
+        tunnelEntity.setAccountId(UUID.randomUUID());
+        tunnelEntity.setDomain(domain);
+
+        final var headers = new HttpHeaders();
+        if (maxInFlight != null) {
+            headers.add(TunnelFeatures.MAX_IN_FLIGHT_HEADER, maxInFlight);
+        }
+        final var session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getHandshakeHeaders()).thenReturn(headers);
+        registry.register(tunnelEntity, session);
+        return registry.getByTunnelId(tunnelEntity.getId());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+class TunnelOutboundWriterTest {
+
+    private final List<WebSocketMessage<?>> sent = new CopyOnWriteArrayList<>();
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private TunnelOutboundWriter writer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        final var session = mock(WebSocketSession.class);
+        // The first write blocks until the gate opens, simulating a slow tunnel
+        doAnswer(invocation -> {
+            gate.await(5, TimeUnit.SECONDS);
+            sent.add(invocation.getArgument(0));
+            return null;
+        }).when(session).sendMessage(any());
+        writer = new TunnelOutboundWriter("test", session);
+        writer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        gate.countDown();
+        writer.close();
+    }
+
+    @Test
+    void shouldInterleaveInteractiveMessagesWithBulkTransfer() throws Exception {
+        // Given - a bulk lane with one chunk in flight and three queued
+        final var chunks = new BinaryMessage[4];
+        for (var i = 0; i < chunks.length; i++) {
+            final var chunk = new byte[TunnelOutboundWriter.QUANTUM_BYTES];
+            Arrays.fill(chunk, (byte) i);
+            chunks[i] = new BinaryMessage(chunk);
+            writer.send("bulk", chunks[i]);
+        }
+        final var interactive = new TextMessage("ping");
+
+        // When
+        writer.send("interactive", interactive);
+        gate.countDown();
+
+        // Then - the interactive message does not wait for the whole bulk transfer
+        awaitSent(5);
+        assertThat(sent.indexOf(interactive)).isLessThan(sent.indexOf(chunks[3]));
+        assertThat(sent).containsSubsequence(chunks[0], chunks[1], chunks[2], chunks[3]);
+    }
+
+    @Test
+    void shouldBlockSenderWhenLaneRunsOutOfCredit() throws Exception {
+        // Given - the lane holds its full credit of unsent bytes
+        writer.send("bulk", new BinaryMessage(new byte[TunnelOutboundWriter.LANE_CREDIT_BYTES]));
+
+        // When
+        final var blocked = CompletableFuture.runAsync(() -> send("bulk", new BinaryMessage(new byte[1])));
+        writer.send("other", new TextMessage("not blocked"));
+        writer.send(TunnelOutboundWriter.CONTROL_LANE, new TextMessage("pong"));
+
+        // Then - only the exhausted lane waits, and it resumes once the writer catches up
+        Thread.sleep(100);
+        assertThat(blocked).isNotDone();
+        assertThat(writer.queueDepth()).isEqualTo(3);
+
+        gate.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+        awaitSent(4);
+    }
+
+    @Test
+    void shouldRejectSendsAfterClose() {
+        writer.close();
+
+        assertThatThrownBy(() -> writer.send("lane", new TextMessage("late")))
+            .isInstanceOf(IOException.class);
+    }
+
+    private void send(final String lane, final WebSocketMessage<?> message) {
+        try {
+            writer.send(lane, message);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void awaitSent(final int count) throws InterruptedException {
+        final var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (writer.sentMessages() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(sent).hasSize(count);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.tunnel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import tech.amak.portbuddy.common.tunnel.FrameCompression;
+import tech.amak.portbuddy.common.tunnel.HttpTunnelMessage;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
+import tech.amak.portbuddy.common.tunnel.TunnelMessageCodec;
+import tech.amak.portbuddy.common.tunnel.WsTunnelMessage;
+import tech.amak.portbuddy.server.db.entity.DomainEntity;
+import tech.amak.portbuddy.server.db.entity.TunnelEntity;
+
+class TunnelRegistryBinaryCodecTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void shouldRelayHttpExchangeWithBinaryCodec() throws Exception {
+        // Given
+        final var registry = new TunnelRegistry(mapper);
+        final var tunnelId = UUID.randomUUID();
+        final var session = register(registry, tunnelId, TunnelFeatures.BINARY_CODEC);
+
+        final var request = new HttpTunnelMessage();
+        request.setMethod("POST");
+        request.setPath("/upload");
+        request.setHeaders(Map.of("X-Test", List.of("a", "b")));
+        request.setBody(bytes("payload"));
+
+        // When
+        final var future = registry.forwardRequest("test", request, Duration.ofSeconds(1));
+
+        // Then - the request went out binary with a numeric id and a raw body
+        final var captor = ArgumentCaptor.forClass(BinaryMessage.class);
+        verify(session, timeout(1000)).sendMessage(captor.capture());
+        final var sent = TunnelMessageCodec.decode(captor.getValue().getPayload()).http();
+        assertThat(sent.getId()).isEqualTo(request.getId()).containsOnlyDigits();
+        assertThat(sent.getMethod()).isEqualTo("POST");
+        assertThat(sent.getHeaders()).containsEntry("X-Test", List.of("a", "b"));
+        assertThat(sent.getBody()).isEqualTo(bytes("payload"));
+
+        // And the binary response completes the pending request
+        final var response = new HttpTunnelMessage();
+        response.setId(sent.getId());
+        response.setType(HttpTunnelMessage.Type.RESPONSE);
+        response.setStatus(201);
+        response.setRespBody(bytes("done"));
+        registry.onResponse(tunnelId, TunnelMessageCodec.decode(TunnelMessageCodec.encode(response)).http());
+
+        final var result = future.get(1, TimeUnit.SECONDS);
+        assertThat(result.getStatus()).isEqualTo(201);
+        assertThat(result.getRespBody()).isEqualTo(bytes("done"));
+    }
+
+    @Test
+    void shouldFallBackToJsonForClientsWithoutCodec() throws Exception {
+        // Given
+        final var registry = new TunnelRegistry(mapper);
+        final var tunnelId = UUID.randomUUID();
+        final var session = register(registry, tunnelId, null);
+
+        final var message = new WsTunnelMessage();
+        message.setConnectionId("conn-1");
+        message.setWsType(WsTunnelMessage.Type.BINARY);
+        message.setData(bytes("ws"));
+
+        // When
+        registry.sendWsToClient(tunnelId, message);
+
+        // Then
+        final var captor = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session, timeout(1000)).sendMessage(captor.capture());
+        final var sent = mapper.readValue(captor.getValue().getPayload(), WsTunnelMessage.class);
+        assertThat(sent.getDataB64()).isEqualTo("d3M=");
+    }
+
+    @Test
+    void shouldRelayBrowserDataFramesAsCodecFramesWithoutBase64() throws Exception {
+        // Given
+        final var registry = new TunnelRegistry(mapper);
+        final var tunnelId = UUID.randomUUID();
+        final var session = register(registry, tunnelId, TunnelFeatures.BINARY_CODEC);
+        final var ids = new TunnelRegistry.Ids(tunnelId, "conn-1");
+        final var payload = ByteBuffer.wrap(new byte[] {0, 1, 2, (byte) 0xFF});
+
+        // When
+        registry.sendWsDataToClient(ids, WsTunnelMessage.Type.BINARY, payload);
+        registry.sendWsDataToClient(ids, WsTunnelMessage.Type.TEXT, ByteBuffer.wrap(bytes("héllo")));
+
+        // Then - the payload buffer is left untouched and both frames decode without a JSON detour
+        assertThat(payload.remaining()).isEqualTo(4);
+        final var captor = ArgumentCaptor.forClass(BinaryMessage.class);
+        verify(session, timeout(1000).times(2)).sendMessage(captor.capture());
+        final var binary = TunnelMessageCodec.decodeWsData(captor.getAllValues().get(0).getPayload());
+        assertThat(binary.type()).isEqualTo(WsTunnelMessage.Type.BINARY);
+        assertThat(binary.connectionId()).isEqualTo("conn-1");
+        assertThat(binary.payload()).isEqualTo(ByteBuffer.wrap(new byte[] {0, 1, 2, (byte) 0xFF}));
+        final var text = TunnelMessageCodec.decodeWsData(captor.getAllValues().get(1).getPayload());
+        assertThat(text.type()).isEqualTo(WsTunnelMessage.Type.TEXT);
+        assertThat(text.text()).isEqualTo("héllo");
+
+        // And the generic decoder still understands the frame
+        final var decoded = TunnelMessageCodec.decode(captor.getAllValues().get(0).getPayload().rewind()).ws();
+        assertThat(decoded.getData()).containsExactly(0, 1, 2, 0xFF);
+    }
+
+    @Test
+    void shouldDeflateCompressibleBodiesOnlyForClientsThatNegotiatedIt() throws Exception {
+        // Given
+        final var registry = new TunnelRegistry(mapper);
+        final var tunnelId = UUID.randomUUID();
+        final var session = register(registry, tunnelId, TunnelFeatures.BINARY_CODEC + "," + TunnelFeatures.DEFLATE);
+        final var body = bytes("<p>hello</p>".repeat(500));
+
+        final var text = new HttpTunnelMessage();
+        text.setMethod("POST");
+        text.setPath("/text");
+        text.setHeaders(Map.of("Content-Type", List.of("text/html")));
+        text.setBody(body);
+        final var gzipped = new HttpTunnelMessage();
+        gzipped.setMethod("POST");
+        gzipped.setPath("/gzipped");
+        gzipped.setHeaders(Map.of("Content-Encoding", List.of("gzip")));
+        gzipped.setBody(body);
+
+        // When
+        registry.forwardRequest("test", text, Duration.ofSeconds(1));
+        registry.forwardRequest("test", gzipped, Duration.ofSeconds(1));
+
+        // Then - only the plain text body was compressed, and it restores to the codec frame
+        final var captor = ArgumentCaptor.forClass(BinaryMessage.class);
+        verify(session, timeout(1000).times(2)).sendMessage(captor.capture());
+        final var frames = captor.getAllValues().stream().map(BinaryMessage::getPayload).toList();
+        final var compressed = frames.stream().filter(FrameCompression::isCompressed).toList();
+        assertThat(compressed).hasSize(1);
+        assertThat(compressed.getFirst().remaining()).isLessThan(body.length / 10);
+        final var restored = TunnelMessageCodec.decode(FrameCompression.unwrap(compressed.getFirst(), 1024 * 1024))
+            .http();
+        assertThat(restored.getPath()).isEqualTo("/text");
+        assertThat(restored.getBody()).isEqualTo(body);
+    }
+
+    private WebSocketSession register(final TunnelRegistry registry, final UUID tunnelId, final String features) {
+        final var domain = new DomainEntity();
+        domain.setSubdomain("test");
+        final var tunnelEntity = new TunnelEntity();
+        tunnelEntity.setId(tunnelId);
+        tunnelEntity.setAccountId(UUID.randomUUID());
+        tunnelEntity.setDomain(domain);
+
+        final var headers = new HttpHeaders();
+        if (features != null) {
+            headers.add(TunnelFeatures.HEADER, features);
+        }
+        final var session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getHandshakeHeaders()).thenReturn(headers);
+        registry.register(tunnelEntity, session);
+        return session;
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
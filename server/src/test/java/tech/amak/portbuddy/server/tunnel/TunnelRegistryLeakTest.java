@@ -14,6 +14,7 @@
 
 package tech.amak.portbuddy.server.tunnel;
 
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -67,6 +68,7 @@ class TunnelRegistryLeakTest {
         // And it should be removed from maps
         assert registry.getByTunnelId(tunnelId) == null;
         assert registry.getBySubdomain("test") == null;
+        assert registry.findIdsByBrowserSession(browserSession) == null;
     }
 
     @Test
@@ -131,6 +133,7 @@ class TunnelRegistryLeakTest {
         final var tunnel = registry.getByTunnelId(tunnelId);
         assert tunnel.browserByConnection().containsKey(connectionId);
         assert tunnel.browserReverse().containsKey(browserSession);
+        assert registry.findIdsByBrowserSession(browserSession).getConnectionId().equals(connectionId);
 
         // When
         registry.unregisterBrowserWs(browserSession);
@@ -138,5 +141,47 @@ class TunnelRegistryLeakTest {
         // Then
         assert !tunnel.browserByConnection().containsKey(connectionId);
         assert !tunnel.browserReverse().containsKey(browserSession);
+        assert registry.findIdsByBrowserSession(browserSession) == null;
+        assert registry.unregisterBrowserWs(browserSession) == null;
+    }
+
+    @Test
+    void shouldKeepReconnectedTunnelWhenPreviousSessionCloses() throws Exception {
+        // Given
+        final var registry = new TunnelRegistry(new ObjectMapper());
+        final var tunnelId = UUID.randomUUID();
+        final var domain = new DomainEntity();
+        domain.setSubdomain("test");
+        final var tunnelEntity = new TunnelEntity();
+        tunnelEntity.setId(tunnelId);
+        tunnelEntity.setAccountId(UUID.randomUUID());
+        tunnelEntity.setDomain(domain);
+
+        final var previousSession = mock(WebSocketSession.class);
+        when(previousSession.isOpen()).thenReturn(true);
+        registry.register(tunnelEntity, previousSession);
+        final var previous = registry.getByTunnelId(tunnelId);
+        final var request = new tech.amak.portbuddy.common.tunnel.HttpTunnelMessage();
+        request.setId("req-1");
+        final var pending = registry.forwardRequest("test", request, java.time.Duration.ofSeconds(30));
+
+        final var session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+
+        // When - the client reconnects before the close of its previous session is handled
+        registry.register(tunnelEntity, session);
+        final var closed = registry.closeTunnel(tunnelId, previousSession);
+
+        // Then - the previous tunnel is released, the new one stays registered
+        assert !closed;
+        assert pending.isCompletedExceptionally();
+        assertThrows(java.io.IOException.class, () -> previous.writer().send(TunnelOutboundWriter.CONTROL_LANE,
+            new org.springframework.web.socket.TextMessage("{}")));
+        assert registry.getByTunnelId(tunnelId).session() == session;
+        assert registry.getBySubdomain("test").session() == session;
+
+        assert registry.closeTunnel(tunnelId, session);
+        assert registry.getByTunnelId(tunnelId) == null;
+        assert registry.getBySubdomain("test") == null;
     }
 }
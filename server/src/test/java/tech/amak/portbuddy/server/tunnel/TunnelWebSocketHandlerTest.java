@@ -14,27 +14,36 @@
 
 package tech.amak.portbuddy.server.tunnel;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.URI;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import tech.amak.portbuddy.common.tunnel.ControlMessage;
+import tech.amak.portbuddy.common.tunnel.TunnelFeatures;
+import tech.amak.portbuddy.server.config.AppProperties;
 import tech.amak.portbuddy.server.db.entity.TunnelEntity;
 import tech.amak.portbuddy.server.exception.SubscriptionException;
 import tech.amak.portbuddy.server.service.TunnelService;
@@ -55,7 +64,9 @@ class TunnelWebSocketHandlerTest {
 
     @BeforeEach
     void setUp() {
-        handler = new TunnelWebSocketHandler(registry, new ObjectMapper(), tunnelService);
+        final var webSocket = new AppProperties.WebSocket(DataSize.ofMegabytes(1), DataSize.ofMegabytes(1), null);
+        handler = new TunnelWebSocketHandler(registry, new ObjectMapper(), tunnelService,
+            new AppProperties(null, webSocket, null, null, null, null, null, null));
         tunnelId = UUID.randomUUID();
         tunnel = new TunnelEntity();
         tunnel.setId(tunnelId);
@@ -84,4 +95,41 @@ class TunnelWebSocketHandlerTest {
         verify(tunnelService).markConnected(tunnelId);
         verify(registry).register(tunnel, session);
     }
+
+    @Test
+    void afterConnectionEstablished_FeaturesAdvertised_AnnouncesAcceptedBeforeRegistering() throws Exception {
+        final var headers = new HttpHeaders();
+        headers.set(TunnelFeatures.HEADER, "deflate,binary-codec,unknown");
+        when(session.getHandshakeHeaders()).thenReturn(headers);
+        when(tunnelService.findByTunnelId(tunnelId)).thenReturn(Optional.of(tunnel));
+
+        handler.afterConnectionEstablished(session);
+
+        final var message = ArgumentCaptor.forClass(TextMessage.class);
+        final var order = inOrder(session, registry);
+        order.verify(session).sendMessage(message.capture());
+        order.verify(registry).register(tunnel, session);
+        final var features = new ObjectMapper().readValue(message.getValue().getPayload(), ControlMessage.class);
+        assertEquals(ControlMessage.Type.FEATURES, features.getType());
+        assertEquals(Set.of(TunnelFeatures.BINARY_CODEC, TunnelFeatures.DEFLATE),
+            TunnelFeatures.parse(features.getFeatures()));
+    }
+
+    @Test
+    void afterConnectionClosed_TunnelReconnected_KeepsItConnected() {
+        when(registry.closeTunnel(tunnelId, session)).thenReturn(false);
+
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+
+        verify(tunnelService, never()).markClosed(tunnelId);
+    }
+
+    @Test
+    void afterConnectionClosed_CurrentSession_MarksClosed() {
+        when(registry.closeTunnel(tunnelId, session)).thenReturn(true);
+
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+
+        verify(tunnelService).markClosed(tunnelId);
+    }
 }
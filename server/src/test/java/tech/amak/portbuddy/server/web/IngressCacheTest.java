@@ -0,0 +1,171 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.server.web;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tech.amak.portbuddy.common.tunnel.HttpTunnelMessage;
+import tech.amak.portbuddy.server.config.IngressCacheProperties;
+import tech.amak.portbuddy.server.tunnel.TunnelRegistry;
+
+class IngressCacheTest {
+
+    private static final byte[] BUNDLE = "console.log('bundle')".getBytes(StandardCharsets.UTF_8);
+
+    private final UUID accountId = UUID.randomUUID();
+    private final IngressCacheProperties properties = new IngressCacheProperties();
+    private TunnelRegistry.Tunnel tunnel;
+    private IngressCache cache;
+
+    @BeforeEach
+    void setUp() {
+        tunnel = mock(TunnelRegistry.Tunnel.class);
+        when(tunnel.subdomain()).thenReturn("demo");
+        when(tunnel.accountId()).thenReturn(accountId);
+        cache = new IngressCache(properties, mock(TunnelRegistry.class), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void shouldServeFreshResponseWithoutTheTunnel() {
+        // Given
+        relay(get("/app.js", Map.of()), response(200, Map.of("Cache-Control", List.of("public, max-age=600"))));
+
+        // When
+        final var lookup = cache.lookup(tunnel, get("/app.js", Map.of()));
+
+        // Then
+        final var fresh = lookup.fresh();
+        assertNotNull(fresh);
+        assertArrayEquals(BUNDLE, fresh.body());
+        assertNull(cache.lookup(tunnel, get("/other.js", Map.of())).fresh());
+    }
+
+    @Test
+    void shouldKeyResponsesByVaryHeaders() {
+        // Given
+        final var headers = Map.of(
+            "Cache-Control", List.of("max-age=600"),
+            "Vary", List.of("Accept-Encoding"));
+        relay(get("/app.js", Map.of("Accept-Encoding", List.of("gzip"))), response(200, headers));
+
+        // When
+        final var sameEncoding = cache.lookup(tunnel, get("/app.js", Map.of("Accept-Encoding", List.of("gzip"))));
+        final var otherEncoding = cache.lookup(tunnel, get("/app.js", Map.of("Accept-Encoding", List.of("br"))));
+
+        // Then
+        assertNotNull(sameEncoding.fresh());
+        assertNull(otherEncoding.fresh());
+    }
+
+    @Test
+    void shouldRevalidateStaleResponseThroughTheTunnel() {
+        // Given
+        relay(get("/app.js", Map.of()), response(200, Map.of(
+            "Cache-Control", List.of("no-cache"),
+            "ETag", List.of("\"v1\""))));
+        final var lookup = cache.lookup(tunnel, get("/app.js", Map.of()));
+        assertNull(lookup.fresh());
+        final var request = get("/app.js", Map.of());
+
+        // When
+        lookup.addValidators(request);
+        final var revalidated = lookup.revalidated(response(304, Map.of("ETag", List.of("\"v1\""))));
+
+        // Then
+        assertEquals(List.of("\"v1\""), request.getHeaders().get("If-None-Match"));
+        assertNotNull(revalidated);
+        assertEquals(200, revalidated.status());
+        assertArrayEquals(BUNDLE, revalidated.body());
+        assertFalse(lookup.notModified(revalidated));
+        assertTrue(cache.lookup(tunnel, get("/app.js", Map.of("If-None-Match", List.of("\"v1\""))))
+            .notModified(revalidated));
+    }
+
+    @Test
+    void shouldNotKeepPrivateOrUnmarkedResponses() {
+        // Given
+        relay(get("/me", Map.of()), response(200, Map.of("Cache-Control", List.of("private, max-age=600"))));
+        relay(get("/page", Map.of()), response(200, Map.of()));
+        relay(get("/login", Map.of()), response(200, Map.of(
+            "Cache-Control", List.of("max-age=600"),
+            "Set-Cookie", List.of("session=1"))));
+
+        // When / Then
+        assertNull(cache.lookup(tunnel, get("/me", Map.of())).fresh());
+        assertNull(cache.lookup(tunnel, get("/page", Map.of())).fresh());
+        assertNull(cache.lookup(tunnel, get("/login", Map.of())).fresh());
+        assertNull(cache.lookup(tunnel, get("/page", Map.of("Authorization", List.of("Bearer token")))));
+        assertEquals(0, cache.usage(accountId));
+    }
+
+    @Test
+    void shouldKeepAccountWithinItsQuota() {
+        // Given
+        properties.setAccountQuota(DataSize.ofBytes(1024));
+        cache = new IngressCache(properties, mock(TunnelRegistry.class), new SimpleMeterRegistry());
+        final var headers = Map.of("Cache-Control", List.of("max-age=600"));
+
+        // When
+        for (var i = 0; i < 10; i++) {
+            relay(get("/asset-" + i, Map.of()), response(200, headers));
+        }
+
+        // Then
+        assertTrue(cache.usage(accountId) <= 1024);
+        assertNotNull(cache.lookup(tunnel, get("/asset-0", Map.of())).fresh());
+        assertNull(cache.lookup(tunnel, get("/asset-9", Map.of())).fresh());
+    }
+
+    private void relay(final HttpTunnelMessage request, final HttpTunnelMessage response) {
+        final var capture = cache.lookup(tunnel, request).capture(response);
+        if (capture != null) {
+            capture.write(BUNDLE, 0, BUNDLE.length);
+            capture.complete();
+        }
+    }
+
+    private static HttpTunnelMessage get(final String path, final Map<String, List<String>> headers) {
+        final var message = new HttpTunnelMessage();
+        message.setMethod("GET");
+        message.setPath(path);
+        message.setHeaders(new HashMap<>(headers));
+        return message;
+    }
+
+    private static HttpTunnelMessage response(final int status, final Map<String, List<String>> headers) {
+        final var message = new HttpTunnelMessage();
+        message.setStatus(status);
+        message.setRespHeaders(headers);
+        return message;
+    }
+}
@@ -14,16 +14,29 @@
 
 package tech.amak.portbuddy.server.web;
 
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-import java.util.Optional;
-import java.util.UUID;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -32,17 +45,20 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.http.MediaType;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.util.unit.DataSize;
 
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
 import tech.amak.portbuddy.common.tunnel.HttpTunnelMessage;
 import tech.amak.portbuddy.server.config.AppProperties;
-import tech.amak.portbuddy.server.db.entity.AccountEntity;
-import tech.amak.portbuddy.server.db.repo.AccountRepository;
 import tech.amak.portbuddy.server.db.repo.DomainRepository;
+import tech.amak.portbuddy.server.security.PasscodeSessions;
 import tech.amak.portbuddy.server.service.ApiTokenService;
-import tech.amak.portbuddy.server.service.TunnelService;
+import tech.amak.portbuddy.server.tunnel.TunnelAccess;
+import tech.amak.portbuddy.server.tunnel.TunnelAccessCache;
 import tech.amak.portbuddy.server.tunnel.TunnelRegistry;
 import tech.amak.portbuddy.server.tunnel.TunnelRegistry.Tunnel;
 
@@ -53,6 +69,9 @@ class IngressControllerTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private IngressController controller;
+
     @MockitoBean
     private TunnelRegistry registry;
 
@@ -63,10 +82,10 @@ class IngressControllerTest {
     private DomainRepository domainRepository;
 
     @MockitoBean
-    private AccountRepository accountRepository;
+    private TunnelAccessCache accessCache;
 
     @MockitoBean
-    private TunnelService tunnelService;
+    private PasscodeSessions passcodeSessions;
 
     @MockitoBean
     private ApiTokenService apiTokenService;
@@ -74,11 +93,17 @@ class IngressControllerTest {
     @MockitoBean
     private PasswordEncoder passwordEncoder;
 
+    @MockitoBean
+    private IngressMetrics ingressMetrics;
+
+    @MockitoBean
+    private IngressCache ingressCache;
+
     @BeforeEach
     void setUp() {
         final var gateway = new AppProperties.Gateway(
             "http://localhost", "portbuddy.dev", "https://%s.portbuddy.dev",
-            "http://localhost/404", "http://localhost/passcode", DataSize.ofKilobytes(1)
+            "http://localhost/404", "http://localhost/passcode", DataSize.ofKilobytes(1), null
         );
         when(properties.gateway()).thenReturn(gateway);
     }
@@ -86,45 +111,37 @@ class IngressControllerTest {
     @Test
     void forwardViaTunnel_shouldRejectLargeRequest() throws Exception {
         final var subdomain = "test";
-        final var tunnelId = UUID.randomUUID();
-        final var accountId = UUID.randomUUID();
 
         final var mockTunnel = mock(Tunnel.class);
         when(mockTunnel.isOpen()).thenReturn(true);
-        when(mockTunnel.tunnelId()).thenReturn(tunnelId);
-        when(mockTunnel.accountId()).thenReturn(accountId);
+        when(mockTunnel.admit(any())).thenReturn(() -> { });
         when(registry.getBySubdomain(subdomain)).thenReturn(mockTunnel);
 
-        final var account = new AccountEntity();
-        account.setId(accountId);
-        account.setSubscriptionStatus("active");
-        when(accountRepository.findById(accountId)).thenReturn(Optional.of(account));
+        when(accessCache.get(mockTunnel)).thenReturn(new TunnelAccess(true, "active", null, System.nanoTime()));
 
         // Content-Length = 2KB (exceeds 1KB limit)
         final var largeBody = new byte[2048];
 
-        mockMvc.perform(post("/_/" + subdomain + "/some-path")
+        final var result = mockMvc.perform(post("/_/" + subdomain + "/some-path")
                 .content(largeBody)
                 .contentType(MediaType.APPLICATION_OCTET_STREAM))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
             .andExpect(status().is(413));
     }
 
     @Test
     void forwardViaTunnel_shouldAcceptSmallRequest() throws Exception {
         final var subdomain = "test";
-        final var tunnelId = UUID.randomUUID();
-        final var accountId = UUID.randomUUID();
 
         final var mockTunnel = mock(Tunnel.class);
         when(mockTunnel.isOpen()).thenReturn(true);
-        when(mockTunnel.tunnelId()).thenReturn(tunnelId);
-        when(mockTunnel.accountId()).thenReturn(accountId);
+        when(mockTunnel.admit(any())).thenReturn(() -> { });
         when(registry.getBySubdomain(subdomain)).thenReturn(mockTunnel);
 
-        final var account = new AccountEntity();
-        account.setId(accountId);
-        account.setSubscriptionStatus("active");
-        when(accountRepository.findById(accountId)).thenReturn(Optional.of(account));
+        when(accessCache.get(mockTunnel)).thenReturn(new TunnelAccess(true, "active", null, System.nanoTime()));
 
         final var responseMsg = new HttpTunnelMessage();
         responseMsg.setStatus(200);
@@ -134,9 +151,166 @@ class IngressControllerTest {
         // Content-Length = 512B (within 1KB limit)
         final var smallBody = new byte[512];
 
-        mockMvc.perform(post("/_/" + subdomain + "/some-path")
+        final var result = mockMvc.perform(post("/_/" + subdomain + "/some-path")
                 .content(smallBody)
                 .contentType(MediaType.APPLICATION_OCTET_STREAM))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    void forwardViaTunnel_shouldReleaseServletThreadUntilTunnelResponds() throws Exception {
+        final var subdomain = "test";
+
+        final var mockTunnel = mock(Tunnel.class);
+        when(mockTunnel.isOpen()).thenReturn(true);
+        when(mockTunnel.admit(any())).thenReturn(() -> { });
+        when(registry.getBySubdomain(subdomain)).thenReturn(mockTunnel);
+        when(accessCache.get(mockTunnel)).thenReturn(new TunnelAccess(true, "active", null, System.nanoTime()));
+
+        final var pending = new CompletableFuture<HttpTunnelMessage>();
+        when(registry.forwardRequest(anyString(), any(), any())).thenReturn(pending);
+
+        // The handler returns while the tunnel response is still outstanding
+        final var result = mockMvc.perform(get("/_/" + subdomain + "/some-path"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        final var responseMsg = new HttpTunnelMessage();
+        responseMsg.setStatus(201);
+        responseMsg.setRespHeaders(Map.of("X-Upstream", List.of("yes")));
+        responseMsg.setRespBody("created".getBytes(StandardCharsets.UTF_8));
+        pending.complete(responseMsg);
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isCreated())
+            .andExpect(header().string("X-Upstream", "yes"))
+            .andExpect(content().string("created"));
+    }
+
+    @Test
+    void forwardViaTunnel_shouldStartRelayOnlyOnceRequestIsAsync() throws Exception {
+        final var subdomain = "test";
+        final var servletRequest = new AtomicReference<HttpServletRequest>();
+        final var asyncWhenRelayed = new CompletableFuture<Boolean>();
+
+        final var mockTunnel = mock(Tunnel.class);
+        when(mockTunnel.isOpen()).thenReturn(true);
+        when(mockTunnel.admit(any())).thenAnswer(invocation -> {
+            asyncWhenRelayed.complete(servletRequest.get().isAsyncStarted());
+            return (Runnable) () -> { };
+        });
+        when(registry.getBySubdomain(subdomain)).thenReturn(mockTunnel);
+        when(accessCache.get(mockTunnel)).thenReturn(new TunnelAccess(true, "active", null, System.nanoTime()));
+        final var responseMsg = new HttpTunnelMessage();
+        responseMsg.setStatus(200);
+        when(registry.forwardRequest(anyString(), any(), any()))
+            .thenReturn(CompletableFuture.completedFuture(responseMsg));
+
+        final var result = mockMvc.perform(get("/_/" + subdomain + "/some-path")
+                .with(request -> {
+                    servletRequest.set(request);
+                    return request;
+                }))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        assertTrue(asyncWhenRelayed.get(5, TimeUnit.SECONDS));
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    @DirtiesContext
+    void shutdown_shouldDrainRelaysInFlight() throws Exception {
+        final var subdomain = "test";
+
+        final var mockTunnel = mock(Tunnel.class);
+        when(mockTunnel.isOpen()).thenReturn(true);
+        when(mockTunnel.admit(any())).thenReturn(() -> { });
+        when(registry.getBySubdomain(subdomain)).thenReturn(mockTunnel);
+        when(accessCache.get(mockTunnel)).thenReturn(new TunnelAccess(true, "active", null, System.nanoTime()));
+
+        final var pending = new CompletableFuture<HttpTunnelMessage>();
+        when(registry.forwardRequest(anyString(), any(), any())).thenReturn(pending);
+        final var result = mockMvc.perform(get("/_/" + subdomain + "/some-path"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        // Shutdown waits for the relay in flight
+        final var shutdown = CompletableFuture.runAsync(controller::shutdown);
+        assertThrows(TimeoutException.class, () -> shutdown.get(200, TimeUnit.MILLISECONDS));
+
+        final var responseMsg = new HttpTunnelMessage();
+        responseMsg.setStatus(201);
+        pending.complete(responseMsg);
+        shutdown.get(5, TimeUnit.SECONDS);
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isCreated());
+    }
+
+    @Test
+    void forwardViaTunnel_shouldRejectInactiveSubscriptionWithoutRelaying() throws Exception {
+        final var subdomain = "test";
+
+        final var mockTunnel = mock(Tunnel.class);
+        when(mockTunnel.isOpen()).thenReturn(true);
+        when(registry.getBySubdomain(subdomain)).thenReturn(mockTunnel);
+        when(accessCache.get(mockTunnel)).thenReturn(new TunnelAccess(true, "past_due", null, System.nanoTime()));
+
+        mockMvc.perform(get("/_/" + subdomain + "/some-path"))
+            .andExpect(request().asyncNotStarted())
+            .andExpect(status().isPaymentRequired());
+    }
+
+    @Test
+    void forwardViaTunnel_shouldShedRequestWhenTunnelIsBusy() throws Exception {
+        final var subdomain = "test";
+
+        final var mockTunnel = mock(Tunnel.class);
+        when(mockTunnel.isOpen()).thenReturn(true);
+        when(mockTunnel.admit(any())).thenReturn(null);
+        when(registry.getBySubdomain(subdomain)).thenReturn(mockTunnel);
+        when(accessCache.get(mockTunnel)).thenReturn(new TunnelAccess(true, "active", null, System.nanoTime()));
+
+        final var result = mockMvc.perform(get("/_/" + subdomain + "/some-path"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string("Retry-After", "1"));
+        verify(registry, never()).forwardRequest(anyString(), any(), any());
+    }
+
+    @Test
+    void forwardViaTunnel_shouldAdmitSignedPasscodeSessionWithoutPasswordMatch() throws Exception {
+        final var subdomain = "test";
+
+        final var mockTunnel = mock(Tunnel.class);
+        when(mockTunnel.isOpen()).thenReturn(true);
+        when(mockTunnel.admit(any())).thenReturn(() -> { });
+        when(registry.getBySubdomain(subdomain)).thenReturn(mockTunnel);
+        when(accessCache.get(mockTunnel)).thenReturn(new TunnelAccess(true, "active", "hash", System.nanoTime()));
+        when(passcodeSessions.isSession("v1.session")).thenReturn(true);
+        when(passcodeSessions.verify("v1.session", subdomain, "hash")).thenReturn(true);
+
+        final var responseMsg = new HttpTunnelMessage();
+        responseMsg.setStatus(200);
+        when(registry.forwardRequest(anyString(), any(), any()))
+            .thenReturn(CompletableFuture.completedFuture(responseMsg));
+
+        final var result = mockMvc.perform(get("/_/" + subdomain + "/some-path")
+                .cookie(new Cookie("pbp", "v1.session")))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
             .andExpect(status().isOk());
+        verify(passwordEncoder, never()).matches(any(), any());
     }
 }
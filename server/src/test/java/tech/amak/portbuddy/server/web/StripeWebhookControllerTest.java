@@ -95,7 +95,7 @@ class StripeWebhookControllerTest {
     @BeforeEach
     void setUp() {
         when(appProperties.gateway()).thenReturn(new AppProperties.Gateway(
-            "http://localhost:8080", "localhost", "http", "/404", "/passcode", DataSize.ofMegabytes(10)
+            "http://localhost:8080", "localhost", "http", "/404", "/passcode", DataSize.ofMegabytes(10), null
         ));
         when(appProperties.stripe()).thenReturn(new AppProperties.Stripe(
             "whsec_test", "sk_test", new AppProperties.Stripe.PriceIds("pro", "team", "extra")
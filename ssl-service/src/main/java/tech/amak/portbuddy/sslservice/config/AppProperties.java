@@ -14,13 +14,17 @@
 
 package tech.amak.portbuddy.sslservice.config;
 
+import java.time.Duration;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 @ConfigurationProperties(prefix = "app")
 public record AppProperties(
     Jwt jwt,
     Acme acme,
-    Storage storage
+    Storage storage,
+    SessionTickets sessionTickets,
+    Internal internal
 ) {
     public record Jwt(
         String issuer,
@@ -28,11 +32,22 @@ public record AppProperties(
     ) {
     }
 
+    /**
+     * ACME account and issuance.
+     *
+     * @param serverUrl       directory of the ACME server
+     * @param accountKeyPath  key pair of the account
+     * @param contactEmail    contact of the account
+     * @param accountLocation URL of an existing account, if any
+     * @param ecdsa           whether an ECDSA certificate is issued along with the RSA one of every domain
+     * @param retry           retries of calls to the ACME server
+     */
     public record Acme(
         String serverUrl,
         String accountKeyPath,
         String contactEmail,
         String accountLocation,
+        boolean ecdsa,
         Retry retry
     ) {
     }
@@ -50,4 +65,29 @@ public record AppProperties(
         String certificatesDir
     ) {
     }
+
+    /**
+     * TLS session ticket keys shared by the gateways.
+     *
+     * @param rotation        how often a new key is created
+     * @param ringSize        how many keys are kept; tickets stay valid for about {@code rotation * (ringSize - 1)}
+     * @param activationDelay how long a new key is only accepted before tickets are issued with it, so every
+     *                        gateway has it before any ticket needs it
+     */
+    public record SessionTickets(
+        Duration rotation,
+        int ringSize,
+        Duration activationDelay
+    ) {
+    }
+
+    /**
+     * Access to {@code /internal/api}, which serves private keys and session ticket keys to the gateways.
+     *
+     * @param token shared secret the gateways send; when blank, every internal request is refused
+     */
+    public record Internal(
+        String token
+    ) {
+    }
 }
@@ -92,6 +92,29 @@ public class CertificateEntity {
     @Column(name = "full_chain_path", length = 1024)
     private String fullChainPath;
 
+    /**
+     * ECDSA certificate issued along with the RSA one above, for clients that support it. Paths are null when
+     * none could be issued, in which case every client gets the RSA certificate.
+     */
+    @Column(name = "ecdsa_certificate_path", length = 1024)
+    private String ecdsaCertificatePath;
+
+    @Column(name = "ecdsa_private_key_path", length = 1024)
+    private String ecdsaPrivateKeyPath;
+
+    @Column(name = "ecdsa_chain_path", length = 1024)
+    private String ecdsaChainPath;
+
+    @Column(name = "ecdsa_full_chain_path", length = 1024)
+    private String ecdsaFullChainPath;
+
+    /**
+     * Position of the last change of this certificate in the feed followed by the gateways. Assigned by the
+     * database on every write.
+     */
+    @Column(name = "version", insertable = false, updatable = false)
+    private Long version;
+
     @CreatedBy
     @Column(name = "created_by", length = 100, updatable = false)
     private String createdBy;
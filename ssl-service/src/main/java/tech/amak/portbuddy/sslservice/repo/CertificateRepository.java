@@ -20,8 +20,10 @@ import java.util.Optional;
 import java.util.UUID;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import tech.amak.portbuddy.sslservice.domain.CertificateEntity;
+import tech.amak.portbuddy.sslservice.domain.CertificateStatus;
 
 public interface CertificateRepository extends JpaRepository<CertificateEntity, UUID> {
 
@@ -55,4 +57,28 @@ public interface CertificateRepository extends JpaRepository<CertificateEntity,
      * @return list of expiring certificates
      */
     List<CertificateEntity> findAllByManagedTrueAndExpiresAtBefore(OffsetDateTime dateTime);
+
+    /**
+     * Returns all certificates in the given status.
+     *
+     * @param status the status
+     * @return list of certificates
+     */
+    List<CertificateEntity> findAllByStatus(CertificateStatus status);
+
+    /**
+     * Returns the oldest certificates changed after the given version.
+     *
+     * @param version version already seen
+     * @return up to 500 certificates, in version order
+     */
+    List<CertificateEntity> findTop500ByVersionGreaterThanOrderByVersionAsc(long version);
+
+    /**
+     * Returns the version of the last change of any certificate.
+     *
+     * @return the latest version, or 0 if there are no certificates
+     */
+    @Query("select coalesce(max(c.version), 0) from CertificateEntity c")
+    long findLatestVersion();
 }
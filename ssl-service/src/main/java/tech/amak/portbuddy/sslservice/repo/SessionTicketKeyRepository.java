@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.sslservice.repo;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import tech.amak.portbuddy.sslservice.domain.SessionTicketKeyEntity;
+
+public interface SessionTicketKeyRepository extends JpaRepository<SessionTicketKeyEntity, UUID> {
+
+    /**
+     * Returns the newest keys.
+     *
+     * @param limit maximum number of keys
+     * @return keys, newest first
+     */
+    List<SessionTicketKeyEntity> findAllByOrderByCreatedAtDesc(Limit limit);
+
+    /**
+     * Deletes the keys created before the given time.
+     *
+     * @param dateTime creation threshold
+     */
+    void deleteAllByCreatedAtBefore(OffsetDateTime dateTime);
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.sslservice.security;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Authenticates the gateways on {@code /internal/api}, which serves private keys and session ticket keys, by the
+ * token shared through {@code app.internal.token} and sent in {@link #TOKEN_HEADER}. A request with a matching
+ * token gets {@link #ROLE}; any other is left unauthenticated and refused by the security chain. With no token
+ * configured, no request matches.
+ */
+public class InternalTokenAuthFilter extends OncePerRequestFilter {
+
+    /**
+     * Header carrying the token.
+     */
+    public static final String TOKEN_HEADER = "X-PortBuddy-Internal-Token";
+
+    /**
+     * Role of requests carrying the token.
+     */
+    public static final String ROLE = "INTERNAL";
+
+    private static final String INTERNAL_PATH = "/internal/api/";
+
+    private final byte[] token;
+
+    /**
+     * Creates the filter.
+     *
+     * @param token the shared token, null or blank to refuse every internal request
+     */
+    public InternalTokenAuthFilter(final String token) {
+        this.token = StringUtils.hasText(token) ? token.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(final HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(INTERNAL_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request,
+                                    final HttpServletResponse response,
+                                    final FilterChain filterChain)
+        throws ServletException, IOException {
+        final var presented = request.getHeader(TOKEN_HEADER);
+        if (token != null && presented != null
+            && MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8))) {
+            SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "internal", null, List.of(new SimpleGrantedAuthority("ROLE_" + ROLE))));
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -27,12 +27,16 @@ import org.springframework.security.oauth2.jwt.JwtIssuerValidator;
 import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
 import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.web.authentication.BearerTokenAuthenticationFilter;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestTemplate;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import tech.amak.portbuddy.sslservice.config.AppProperties;
 
+@Slf4j
 @Configuration
 @EnableWebSecurity
 @RequiredArgsConstructor
@@ -57,11 +61,13 @@ public class SecurityConfig {
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers("/actuator/health**").permitAll()
                 .requestMatchers(HttpMethod.GET, "/.well-known/acme-challenge/**").permitAll()
-                .requestMatchers("/internal/api/**").permitAll()
+                // Serves private keys and session ticket keys, so only to the gateways
+                .requestMatchers("/internal/api/**").hasRole(InternalTokenAuthFilter.ROLE)
                 .requestMatchers("/api/**").authenticated()
                 .anyRequest().permitAll()
             )
             .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+            .addFilterBefore(internalTokenAuthFilter(), BearerTokenAuthenticationFilter.class)
             .oauth2ResourceServer(oauth2 -> oauth2
                 .jwt(jwt -> jwt
                     .decoder(jwtDecoder)
@@ -71,6 +77,15 @@ public class SecurityConfig {
         return http.build();
     }
 
+    private InternalTokenAuthFilter internalTokenAuthFilter() {
+        final var internal = appProperties.internal();
+        final var token = internal == null ? null : internal.token();
+        if (!StringUtils.hasText(token)) {
+            log.warn("No internal API token configured (app.internal.token). Gateways cannot fetch certificates.");
+        }
+        return new InternalTokenAuthFilter(token);
+    }
+
     /**
      * JWT decoder configured with remote JWK Set URI and issuer validation.
      *
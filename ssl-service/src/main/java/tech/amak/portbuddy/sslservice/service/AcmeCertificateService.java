@@ -19,6 +19,7 @@ import static org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers.pkcs_9_at_extensi
 import static org.bouncycastle.asn1.x509.GeneralName.dNSName;
 
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.KeyPair;
 import java.security.cert.X509Certificate;
 import java.time.OffsetDateTime;
@@ -57,6 +58,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import tech.amak.portbuddy.sslservice.client.ServerClient;
+import tech.amak.portbuddy.sslservice.config.AppProperties;
 import tech.amak.portbuddy.sslservice.domain.CertificateEntity;
 import tech.amak.portbuddy.sslservice.domain.CertificateJobEntity;
 import tech.amak.portbuddy.sslservice.domain.CertificateJobStatus;
@@ -81,6 +83,7 @@ public class AcmeCertificateService {
     private final EmailService emailService;
     private final ObjectMapper objectMapper;
     private final ServerClient serverClient;
+    private final AppProperties properties;
     private final ObjectProvider<AcmeCertificateService> self;
 
     /**
@@ -220,57 +223,15 @@ public class AcmeCertificateService {
             }
         }
 
-        // 4) Generate domain key and CSR
-        final KeyPair domainKeyPair = storageService.generateRsaKeyPair();
-        final var csr = buildCsrDer(domain, domainKeyPair);
-        updateJobMessage(job, "CSR generated");
+        // 4) Generate domain key and CSR, finalize the order, download and store the certificate
+        final var domains = List.of(domain);
+        final var rsa = finalizeAndStore(job, order, domains, KeyType.RSA, 120);
 
-        // 5) Finalize order
-        retryExecutor.callWithRetry("acme.order.finalize", () -> {
-            order.execute(csr);
-            return Boolean.TRUE;
-        });
-        updateJobMessage(job, "Order finalized, waiting for issuance");
-        pollOrderValidWithRetry(order, 120, 2_000);
+        // 5) Issue the ECDSA certificate under the authorizations validated above
+        final var ecdsa = issueEcdsa(job, account, domains, 120);
 
-        // 6) Download certificate: acme4j returns X509Certificate(s); convert to PEM strings
-        final var downloaded = retryExecutor.callWithRetry("acme.cert.download", order::getCertificate);
-        final var certChain = downloaded.getCertificateChain();
-
-        // Convert primary certificate to PEM string
-        final var leafCertPem = toPem(downloaded.getCertificate());
-        final var chainPem = certChain == null
-            ? ""
-            : certChain.stream()
-            .skip(1)
-            .map(this::toPem)
-            .reduce("", (a, b) -> a + b);
-
-        // 7) Store files
-        final var keyPath = storageService.writePrivateKeyPem(domain, domainKeyPair);
-        final var certPath = storageService.writeCertPem(domain, leafCertPem);
-        final var chainPath = storageService.writeChainPem(domain, chainPem);
-        final var fullChainPath = storageService.writeFullChainPem(domain, leafCertPem + chainPem);
-
-        // 8) Update DB
-        var certificate = certificateRepository.findByDomain(domain).orElse(null);
-        if (certificate == null) {
-            certificate = new CertificateEntity();
-            certificate.setDomain(domain);
-        }
-        certificate.setManaged(job.isManaged());
-        certificate.setContactEmail(job.getContactEmail());
-
-        // Try to extract validity from leaf certificate
-        final var x509 = downloaded.getCertificate();
-        certificate.setStatus(CertificateStatus.ACTIVE);
-        certificate.setIssuedAt(OffsetDateTime.ofInstant(x509.getNotBefore().toInstant(), UTC));
-        certificate.setExpiresAt(OffsetDateTime.ofInstant(x509.getNotAfter().toInstant(), UTC));
-        certificate.setPrivateKeyPath(keyPath.toAbsolutePath().toString());
-        certificate.setCertificatePath(certPath.toAbsolutePath().toString());
-        certificate.setChainPath(chainPath.toAbsolutePath().toString());
-        certificate.setFullChainPath(fullChainPath.toAbsolutePath().toString());
-        certificateRepository.save(certificate);
+        // 6) Update DB
+        saveCertificate(job, rsa, ecdsa);
 
         // Notify server module about successful issuance
         try {
@@ -424,56 +385,15 @@ public class AcmeCertificateService {
                 pollAuthorizationValidWithRetry(auth, 180, 2_000);
             }
 
-            // Generate key and CSR for apex + wildcard (or single domain)
+            // Certificates for apex + wildcard (or single domain)
             final var domain = job.getDomain();
-            final KeyPair domainKeyPair = storageService.generateRsaKeyPair();
-            final byte[] csr;
-            if (domain.startsWith("*.")) {
-                final var apex = domain.substring(2);
-                csr = buildCsrDer(List.of(apex, domain), domainKeyPair);
-            } else {
-                csr = buildCsrDer(List.of(domain), domainKeyPair);
-            }
+            final var domains = domain.startsWith("*.")
+                ? List.of(domain.substring(2), domain)
+                : List.of(domain);
+            final var rsa = finalizeAndStore(job, order, domains, KeyType.RSA, 180);
+            final var ecdsa = issueEcdsa(job, account, domains, 180);
 
-            retryExecutor.callWithRetry("acme.order.finalize", () -> {
-                order.execute(csr);
-                return Boolean.TRUE;
-            });
-            updateJobMessage(job, "Order finalized, waiting for issuance");
-            pollOrderValidWithRetry(order, 180, 2_000);
-
-            final var downloaded = retryExecutor.callWithRetry("acme.cert.download", order::getCertificate);
-            final var certChain = downloaded.getCertificateChain();
-            final var leafCertPem = toPem(downloaded.getCertificate());
-            final var chainPem = certChain == null
-                ? ""
-                : certChain.stream()
-                .skip(1)
-                .map(this::toPem)
-                .reduce("", (a, b) -> a + b);
-
-            final var keyPath = storageService.writePrivateKeyPem(domain, domainKeyPair);
-            final var certPath = storageService.writeCertPem(domain, leafCertPem);
-            final var chainPath = storageService.writeChainPem(domain, chainPem);
-            final var fullChainPath = storageService.writeFullChainPem(domain, leafCertPem + chainPem);
-
-            var certificate = certificateRepository.findByDomain(domain).orElse(null);
-            if (certificate == null) {
-                certificate = new CertificateEntity();
-                certificate.setDomain(domain);
-            }
-            certificate.setManaged(job.isManaged());
-            certificate.setContactEmail(job.getContactEmail());
-
-            final var x509 = downloaded.getCertificate();
-            certificate.setStatus(CertificateStatus.ACTIVE);
-            certificate.setIssuedAt(OffsetDateTime.ofInstant(x509.getNotBefore().toInstant(), UTC));
-            certificate.setExpiresAt(OffsetDateTime.ofInstant(x509.getNotAfter().toInstant(), UTC));
-            certificate.setPrivateKeyPath(keyPath.toAbsolutePath().toString());
-            certificate.setCertificatePath(certPath.toAbsolutePath().toString());
-            certificate.setChainPath(chainPath.toAbsolutePath().toString());
-            certificate.setFullChainPath(fullChainPath.toAbsolutePath().toString());
-            certificateRepository.save(certificate);
+            saveCertificate(job, rsa, ecdsa);
 
             // Notify server module about successful issuance
             try {
@@ -500,6 +420,105 @@ public class AcmeCertificateService {
         }
     }
 
+    /**
+     * Finalizes an order whose authorizations are valid with a new key of the given type, then downloads the
+     * certificate and stores it with its key.
+     *
+     * @return the stored certificate
+     */
+    private IssuedCertificate finalizeAndStore(final CertificateJobEntity job, final Order order,
+                                               final List<String> domains, final KeyType keyType,
+                                               final int maxSeconds) throws Exception {
+        final var domain = job.getDomain();
+        final KeyPair domainKeyPair = storageService.generateKeyPair(keyType);
+        final var csr = buildCsrDer(domains, domainKeyPair, keyType);
+        updateJobMessage(job, "%s CSR generated", keyType);
+
+        retryExecutor.callWithRetry("acme.order.finalize", () -> {
+            order.execute(csr);
+            return Boolean.TRUE;
+        });
+        updateJobMessage(job, "Order finalized, waiting for issuance");
+        pollOrderValidWithRetry(order, maxSeconds, 2_000);
+
+        // acme4j returns X509Certificate(s); convert to PEM strings
+        final var downloaded = retryExecutor.callWithRetry("acme.cert.download", order::getCertificate);
+        final var certChain = downloaded.getCertificateChain();
+        final var leafCertPem = toPem(downloaded.getCertificate());
+        final var chainPem = certChain == null
+            ? ""
+            : certChain.stream()
+            .skip(1)
+            .map(this::toPem)
+            .reduce("", (a, b) -> a + b);
+
+        return new IssuedCertificate(
+            downloaded.getCertificate(),
+            storageService.writeCertPem(domain, keyType, leafCertPem),
+            storageService.writePrivateKeyPem(domain, keyType, domainKeyPair),
+            storageService.writeChainPem(domain, keyType, chainPem),
+            storageService.writeFullChainPem(domain, keyType, leafCertPem + chainPem));
+    }
+
+    /**
+     * Issues the ECDSA certificate of the domains through a second order, as an order is finalized with a
+     * single key. The order reuses the authorizations just validated for the RSA certificate, so it needs no
+     * challenge. A failure leaves the domain with its RSA certificate only.
+     *
+     * @return the stored certificate, or null when disabled or failed
+     */
+    private IssuedCertificate issueEcdsa(final CertificateJobEntity job, final Account account,
+                                         final List<String> domains, final int maxSeconds) {
+        if (!properties.acme().ecdsa()) {
+            return null;
+        }
+        try {
+            final Order order = retryExecutor.callWithRetry("acme.order.create", () -> account
+                .newOrder().domains(domains.toArray(String[]::new)).create());
+            for (final Authorization auth : order.getAuthorizations()) {
+                if (auth.getStatus() != Status.VALID) {
+                    throw new IllegalStateException("Authorization is not valid: " + auth.getIdentifier());
+                }
+            }
+            return finalizeAndStore(job, order, domains, KeyType.ECDSA, maxSeconds);
+        } catch (final Exception e) {
+            log.warn("ECDSA certificate issuance failed, only the RSA certificate will be served", e);
+            return null;
+        }
+    }
+
+    private void saveCertificate(final CertificateJobEntity job, final IssuedCertificate rsa,
+                                 final IssuedCertificate ecdsa) {
+        final var domain = job.getDomain();
+        var certificate = certificateRepository.findByDomain(domain).orElse(null);
+        if (certificate == null) {
+            certificate = new CertificateEntity();
+            certificate.setDomain(domain);
+        }
+        certificate.setManaged(job.isManaged());
+        certificate.setContactEmail(job.getContactEmail());
+
+        // Validity of the RSA certificate, which is served to every client
+        final var x509 = rsa.certificate();
+        certificate.setStatus(CertificateStatus.ACTIVE);
+        certificate.setIssuedAt(OffsetDateTime.ofInstant(x509.getNotBefore().toInstant(), UTC));
+        certificate.setExpiresAt(OffsetDateTime.ofInstant(x509.getNotAfter().toInstant(), UTC));
+        certificate.setPrivateKeyPath(absolute(rsa.privateKeyPath()));
+        certificate.setCertificatePath(absolute(rsa.certificatePath()));
+        certificate.setChainPath(absolute(rsa.chainPath()));
+        certificate.setFullChainPath(absolute(rsa.fullChainPath()));
+        // Cleared when none was issued this time, rather than serving one that expires before the RSA one
+        certificate.setEcdsaPrivateKeyPath(ecdsa == null ? null : absolute(ecdsa.privateKeyPath()));
+        certificate.setEcdsaCertificatePath(ecdsa == null ? null : absolute(ecdsa.certificatePath()));
+        certificate.setEcdsaChainPath(ecdsa == null ? null : absolute(ecdsa.chainPath()));
+        certificate.setEcdsaFullChainPath(ecdsa == null ? null : absolute(ecdsa.fullChainPath()));
+        certificateRepository.save(certificate);
+    }
+
+    private static String absolute(final Path path) {
+        return path.toAbsolutePath().toString();
+    }
+
     private void pollAuthorizationValidWithRetry(final Authorization auth, final int maxSeconds, final long sleepMillis)
         throws InterruptedException {
         final long deadline = System.currentTimeMillis() + maxSeconds * 1000L;
@@ -549,7 +568,7 @@ public class AcmeCertificateService {
         throw new IllegalStateException("Order finalization timed out");
     }
 
-    private byte[] buildCsrDer(final List<String> domains, final KeyPair keyPair)
+    private byte[] buildCsrDer(final List<String> domains, final KeyPair keyPair, final KeyType keyType)
         throws OperatorCreationException, java.io.IOException {
         final var primary = domains.getFirst();
         final X500Name subject = new X500Name("CN=" + primary);
@@ -566,16 +585,12 @@ public class AcmeCertificateService {
         final var extensions = extGen.generate();
         p10Builder.addAttribute(pkcs_9_at_extensionRequest, extensions);
 
-        final ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate());
+        final ContentSigner signer = new JcaContentSignerBuilder(keyType.getSignatureAlgorithm())
+            .build(keyPair.getPrivate());
         final PKCS10CertificationRequest csr = p10Builder.build(signer);
         return csr.getEncoded();
     }
 
-    private byte[] buildCsrDer(final String domain, final KeyPair keyPair)
-        throws OperatorCreationException, java.io.IOException {
-        return buildCsrDer(List.of(domain), keyPair);
-    }
-
     private String toPem(final X509Certificate cert) {
         try {
             final var base64 = java.util.Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII))
@@ -592,4 +607,13 @@ public class AcmeCertificateService {
         jobRepository.save(job);
         log.info(message);
     }
+
+    private record IssuedCertificate(
+        X509Certificate certificate,
+        Path certificatePath,
+        Path privateKeyPath,
+        Path chainPath,
+        Path fullChainPath
+    ) {
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.sslservice.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import tech.amak.portbuddy.sslservice.domain.CertificateEntity;
+import tech.amak.portbuddy.sslservice.domain.CertificateStatus;
+import tech.amak.portbuddy.sslservice.repo.CertificateRepository;
+import tech.amak.portbuddy.sslservice.web.dto.CertificateFeed;
+import tech.amak.portbuddy.sslservice.web.dto.CertificateMaterial;
+
+/**
+ * Serves certificates to the gateways with their PEM material inline, so they neither share the certificates
+ * directory nor wait for a lookup on the first handshake of a host. A gateway loads a snapshot of the active
+ * certificates at startup and then long-polls the changes after the version of the snapshot. Versions are
+ * assigned by the database on every write of a certificate.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CertificateFeedService {
+
+    /**
+     * Longest time a request for changes is held open while there are none.
+     */
+    public static final Duration MAX_WAIT = Duration.ofSeconds(30);
+
+    // Changes may be written by another instance, so the database is polled rather than notified
+    private static final long POLL_INTERVAL_MS = 1000;
+
+    private final CertificateRepository certificateRepository;
+
+    /**
+     * Returns all active certificates with the version to follow changes from.
+     *
+     * @return the snapshot
+     */
+    public CertificateFeed snapshot() {
+        // Read first: a certificate changed meanwhile is both in the snapshot and in the next changes
+        final var version = certificateRepository.findLatestVersion();
+        final var certificates = certificateRepository.findAllByStatus(CertificateStatus.ACTIVE).stream()
+            .map(this::material)
+            .filter(CertificateMaterial::active)
+            .toList();
+        return new CertificateFeed(version, certificates);
+    }
+
+    /**
+     * Returns the certificates changed after the given version, waiting for a change if there is none yet.
+     *
+     * @param since version already seen
+     * @param wait  how long to wait for a change, capped at {@link #MAX_WAIT}
+     * @return the changes, empty with the same version if none happened in time
+     */
+    public CertificateFeed changesSince(final long since, final Duration wait) {
+        final var timeout = wait.isNegative() ? Duration.ZERO : wait.compareTo(MAX_WAIT) > 0 ? MAX_WAIT : wait;
+        final var deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (true) {
+                final var changed = certificateRepository.findTop500ByVersionGreaterThanOrderByVersionAsc(since);
+                if (!changed.isEmpty()) {
+                    return new CertificateFeed(changed.get(changed.size() - 1).getVersion(), changed.stream()
+                        .map(this::material)
+                        .toList());
+                }
+                final var remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    return new CertificateFeed(since, List.of());
+                }
+                Thread.sleep(Math.min(remainingMs, POLL_INTERVAL_MS));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new CertificateFeed(since, List.of());
+        }
+    }
+
+    /**
+     * Reads the PEM material of a certificate. A certificate that is not active, or whose RSA files cannot be
+     * read, is returned inactive without material; unreadable ECDSA files only leave out the ECDSA material.
+     *
+     * @param entity the certificate
+     * @return the certificate with its material
+     */
+    public CertificateMaterial material(final CertificateEntity entity) {
+        final var version = entity.getVersion() == null ? 0 : entity.getVersion();
+        if (entity.getStatus() == CertificateStatus.ACTIVE
+            && entity.getCertificatePath() != null && entity.getPrivateKeyPath() != null) {
+            try {
+                final String chain;
+                if (entity.getFullChainPath() != null) {
+                    chain = read(entity.getFullChainPath());
+                } else if (entity.getChainPath() != null && !entity.getChainPath().isBlank()) {
+                    chain = read(entity.getCertificatePath()) + read(entity.getChainPath());
+                } else {
+                    chain = read(entity.getCertificatePath());
+                }
+                final var privateKey = read(entity.getPrivateKeyPath());
+                final var ecdsa = readEcdsa(entity);
+                return new CertificateMaterial(entity.getDomain(), version, true, chain, privateKey,
+                    ecdsa.chain(), ecdsa.privateKey(), entity.getExpiresAt());
+            } catch (final IOException e) {
+                log.warn("Cannot read certificate files of {}: {}", entity.getDomain(), e.toString());
+            }
+        }
+        return new CertificateMaterial(entity.getDomain(), version, false, null, null, null, null,
+            entity.getExpiresAt());
+    }
+
+    /**
+     * Reads the ECDSA full chain and key of a certificate, both null if it has none or they cannot be read.
+     */
+    private static Pem readEcdsa(final CertificateEntity entity) {
+        if (entity.getEcdsaFullChainPath() == null || entity.getEcdsaPrivateKeyPath() == null) {
+            return Pem.NONE;
+        }
+        try {
+            return new Pem(read(entity.getEcdsaFullChainPath()), read(entity.getEcdsaPrivateKeyPath()));
+        } catch (final IOException e) {
+            log.warn("Cannot read ECDSA certificate files of {}: {}", entity.getDomain(), e.toString());
+            return Pem.NONE;
+        }
+    }
+
+    private static String read(final String path) throws IOException {
+        return Files.readString(Path.of(path), StandardCharsets.UTF_8);
+    }
+
+    private record Pem(
+        String chain,
+        String privateKey
+    ) {
+
+        private static final Pem NONE = new Pem(null, null);
+    }
+}
@@ -19,10 +19,11 @@ import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.security.spec.ECGenParameterSpec;
 
 import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
 import org.springframework.stereotype.Service;
@@ -38,19 +39,27 @@ import tech.amak.portbuddy.sslservice.config.AppProperties;
 public class CertificateStorageService {
 
     private final AppProperties properties;
+    // Seeded from the non-blocking system source; getInstanceStrong() may block on entropy on headless hosts
+    private final SecureRandom random = new SecureRandom();
 
     /**
-     * Generates a new RSA key pair.
+     * Generates a new key pair: RSA 2048 or ECDSA P-256.
      *
+     * @param keyType type of the key
      * @return generated key pair
      */
-    public KeyPair generateRsaKeyPair() {
+    public KeyPair generateKeyPair(final KeyType keyType) {
         try {
+            if (keyType == KeyType.ECDSA) {
+                final var kpg = KeyPairGenerator.getInstance("EC");
+                kpg.initialize(new ECGenParameterSpec("secp256r1"), random);
+                return kpg.generateKeyPair();
+            }
             final var kpg = KeyPairGenerator.getInstance("RSA");
-            kpg.initialize(2048, SecureRandom.getInstanceStrong());
+            kpg.initialize(2048, random);
             return kpg.generateKeyPair();
-        } catch (final NoSuchAlgorithmException e) {
-            throw new IllegalStateException("RSA not available", e);
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(keyType + " keys not available", e);
         }
     }
 
@@ -58,12 +67,12 @@ public class CertificateStorageService {
      * Writes a private key to PEM file.
      *
      * @param domain  domain name (used for file names)
+     * @param keyType type of the certificate
      * @param keyPair key pair
      * @return path to written private key file
      */
-    public Path writePrivateKeyPem(final String domain, final KeyPair keyPair) {
-        final var baseDir = resolveBaseDir();
-        final var file = baseDir.resolve(safe(domain) + ".key.pem");
+    public Path writePrivateKeyPem(final String domain, final KeyType keyType, final KeyPair keyPair) {
+        final var file = resolveFile(domain, keyType, ".key.pem");
         writePem(file, keyPair.getPrivate());
         return file;
     }
@@ -72,12 +81,12 @@ public class CertificateStorageService {
      * Writes certificate chain to PEM file.
      *
      * @param domain   domain
+     * @param keyType  type of the certificate
      * @param chainPem full chain in PEM string
      * @return path to chain file
      */
-    public Path writeChainPem(final String domain, final String chainPem) {
-        final var baseDir = resolveBaseDir();
-        final var file = baseDir.resolve(safe(domain) + ".chain.pem");
+    public Path writeChainPem(final String domain, final KeyType keyType, final String chainPem) {
+        final var file = resolveFile(domain, keyType, ".chain.pem");
         writeString(file, chainPem);
         return file;
     }
@@ -86,12 +95,12 @@ public class CertificateStorageService {
      * Writes leaf certificate to PEM file.
      *
      * @param domain  domain
+     * @param keyType type of the certificate
      * @param certPem certificate PEM
      * @return path to cert file
      */
-    public Path writeCertPem(final String domain, final String certPem) {
-        final var baseDir = resolveBaseDir();
-        final var file = baseDir.resolve(safe(domain) + ".cert.pem");
+    public Path writeCertPem(final String domain, final KeyType keyType, final String certPem) {
+        final var file = resolveFile(domain, keyType, ".cert.pem");
         writeString(file, certPem);
         return file;
     }
@@ -100,16 +109,20 @@ public class CertificateStorageService {
      * Writes full certificate chain to PEM file.
      *
      * @param domain       domain
+     * @param keyType      type of the certificate
      * @param fullChainPem full chain PEM
      * @return path to full chain file
      */
-    public Path writeFullChainPem(final String domain, final String fullChainPem) {
-        final var baseDir = resolveBaseDir();
-        final var file = baseDir.resolve(safe(domain) + ".fullchain.pem");
+    public Path writeFullChainPem(final String domain, final KeyType keyType, final String fullChainPem) {
+        final var file = resolveFile(domain, keyType, ".fullchain.pem");
         writeString(file, fullChainPem);
         return file;
     }
 
+    private Path resolveFile(final String domain, final KeyType keyType, final String extension) {
+        return resolveBaseDir().resolve(safe(domain) + keyType.getFileInfix() + extension);
+    }
+
     private Path resolveBaseDir() {
         final var resource = properties.storage().certificatesDir();
         // Expecting formats like "file:/abs/path" or just a directory. Normalize to Path.
@@ -0,0 +1,45 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.sslservice.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Key type of a domain certificate. Every domain gets an RSA certificate, which all clients support, and an
+ * ECDSA one, whose handshakes are several times cheaper for the gateway, for the clients that support it.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum KeyType {
+    /**
+     * RSA 2048.
+     */
+    RSA("", "SHA256withRSA"),
+    /**
+     * ECDSA on the P-256 curve.
+     */
+    ECDSA(".ecdsa", "SHA256withECDSA");
+
+    /**
+     * Inserted before the extension of the files of the certificate, so both types can be stored side by side.
+     */
+    private final String fileInfix;
+
+    /**
+     * Algorithm signing the certificate signing request.
+     */
+    private final String signatureAlgorithm;
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.sslservice.service;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import tech.amak.portbuddy.sslservice.config.AppProperties;
+import tech.amak.portbuddy.sslservice.domain.SessionTicketKeyEntity;
+import tech.amak.portbuddy.sslservice.repo.SessionTicketKeyRepository;
+
+/**
+ * Rotates the TLS session ticket keys shared by the gateways, so that a client resumes its session on any
+ * gateway instead of doing a full handshake. A new key is created every rotation and the newest keys are kept
+ * in a ring: tickets are issued with the primary key and accepted with any key of the ring. A new key only
+ * becomes primary after the activation delay, once every gateway has fetched it.
+ */
+@Slf4j
+@Service
+public class SessionTicketKeyService {
+
+    /**
+     * Size in bytes of a key: name, HMAC key and AES key of 16 bytes each.
+     */
+    public static final int KEY_SIZE = 48;
+
+    private static final Duration DEFAULT_ROTATION = Duration.ofHours(12);
+    private static final int DEFAULT_RING_SIZE = 3;
+    private static final Duration DEFAULT_ACTIVATION_DELAY = Duration.ofMinutes(5);
+
+    private final SessionTicketKeyRepository repository;
+    private final SecureRandom random = new SecureRandom();
+    private final Duration rotation;
+    private final int ringSize;
+    private final Duration activationDelay;
+
+    /**
+     * Creates the service.
+     *
+     * @param repository the key repository
+     * @param properties application properties holding the rotation settings
+     */
+    public SessionTicketKeyService(final SessionTicketKeyRepository repository, final AppProperties properties) {
+        this.repository = repository;
+        final var settings = properties.sessionTickets();
+        this.rotation = settings != null && settings.rotation() != null ? settings.rotation() : DEFAULT_ROTATION;
+        this.ringSize = settings != null && settings.ringSize() > 1 ? settings.ringSize() : DEFAULT_RING_SIZE;
+        this.activationDelay = settings != null && settings.activationDelay() != null
+            ? settings.activationDelay()
+            : DEFAULT_ACTIVATION_DELAY;
+    }
+
+    /**
+     * Returns the key ring, primary key first, each key encoded in Base64.
+     *
+     * @return the keys, empty until the first rotation
+     */
+    public List<String> keys() {
+        final var keys = new ArrayList<>(repository.findAllByOrderByCreatedAtDesc(Limit.of(ringSize)));
+        // The newest key stays behind the previous one until every gateway has had time to fetch it
+        final var activation = OffsetDateTime.now().minus(activationDelay);
+        if (keys.size() > 1 && keys.getFirst().getCreatedAt().isAfter(activation)) {
+            keys.add(1, keys.remove(0));
+        }
+        final var encoder = Base64.getEncoder();
+        return keys.stream()
+            .map(key -> encoder.encodeToString(key.getKeyMaterial()))
+            .toList();
+    }
+
+    /**
+     * Creates a new key once the newest one is older than the rotation, and deletes the keys that left the
+     * ring. Runs every 5 minutes on one instance at a time.
+     */
+    @Scheduled(initialDelay = 5_000, fixedDelay = 300_000)
+    @SchedulerLock(name = "SessionTicketKeyService_rotate", lockAtMostFor = "PT5M", lockAtLeastFor = "PT1M")
+    @Transactional
+    public void rotate() {
+        final var newest = repository.findAllByOrderByCreatedAtDesc(Limit.of(1));
+        final var now = OffsetDateTime.now();
+        if (!newest.isEmpty() && newest.getFirst().getCreatedAt().isAfter(now.minus(rotation))) {
+            return;
+        }
+        final var material = new byte[KEY_SIZE];
+        random.nextBytes(material);
+        final var key = new SessionTicketKeyEntity();
+        key.setKeyMaterial(material);
+        repository.save(key);
+        // Keeps the ring and a margin for keys created late by a delayed run
+        repository.deleteAllByCreatedAtBefore(now.minus(rotation.multipliedBy(ringSize + 1L)));
+        log.info("Rotated TLS session ticket keys");
+    }
+}
@@ -14,6 +14,7 @@
 
 package tech.amak.portbuddy.sslservice.web;
 
+import java.time.Duration;
 import java.util.UUID;
 
 import org.springframework.http.ResponseEntity;
@@ -21,12 +22,15 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import lombok.RequiredArgsConstructor;
-import tech.amak.portbuddy.sslservice.domain.CertificateEntity;
 import tech.amak.portbuddy.sslservice.repo.CertificateRepository;
 import tech.amak.portbuddy.sslservice.service.AcmeCertificateService;
+import tech.amak.portbuddy.sslservice.service.CertificateFeedService;
+import tech.amak.portbuddy.sslservice.web.dto.CertificateFeed;
+import tech.amak.portbuddy.sslservice.web.dto.CertificateMaterial;
 
 @RestController
 @RequestMapping("/internal/api/certificates")
@@ -35,18 +39,46 @@ public class InternalController {
 
     private final AcmeCertificateService acmeCertificateService;
     private final CertificateRepository certificateRepository;
+    private final CertificateFeedService certificateFeedService;
 
     /**
-     * Retrieves certificate metadata for a given domain.
+     * Returns all active certificates with their PEM material, and the version to follow changes from.
+     *
+     * @return the snapshot
+     */
+    @GetMapping("/snapshot")
+    public CertificateFeed getSnapshot() {
+        return certificateFeedService.snapshot();
+    }
+
+    /**
+     * Returns the certificates changed after a version, holding the request open until one changes or the
+     * wait elapses. Certificates that are no longer active come without material.
+     *
+     * @param since       version already seen
+     * @param waitSeconds how long to wait for a change, at most 30 seconds
+     * @return the changes, empty with the same version if none happened in time
+     */
+    @GetMapping("/changes")
+    public CertificateFeed getChanges(@RequestParam("since") final long since,
+                                      @RequestParam(name = "waitSeconds", defaultValue = "30")
+                                      final long waitSeconds) {
+        return certificateFeedService.changesSince(since, Duration.ofSeconds(waitSeconds));
+    }
+
+    /**
+     * Retrieves the certificate of a given domain with its PEM material.
      *
      * @param domain domain name
      * @return 200 with certificate or 404 if not found
      */
     @GetMapping("/{domain}")
-    public ResponseEntity<CertificateEntity> getCertificateByDomain(@PathVariable("domain") final String domain) {
+    public ResponseEntity<CertificateMaterial> getCertificateByDomain(@PathVariable("domain") final String domain) {
         final var normalized = domain.toLowerCase();
         final var entity = certificateRepository.findByDomainIgnoreCase(normalized);
-        return entity.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+        return entity.map(certificateFeedService::material)
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     /**
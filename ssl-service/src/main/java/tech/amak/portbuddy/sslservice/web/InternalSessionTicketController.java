@@ -0,0 +1,41 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.sslservice.web;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.RequiredArgsConstructor;
+import tech.amak.portbuddy.sslservice.service.SessionTicketKeyService;
+import tech.amak.portbuddy.sslservice.web.dto.SessionTicketKeys;
+
+@RestController
+@RequestMapping("/internal/api/session-ticket-keys")
+@RequiredArgsConstructor
+public class InternalSessionTicketController {
+
+    private final SessionTicketKeyService sessionTicketKeyService;
+
+    /**
+     * Returns the TLS session ticket key ring shared by the gateways.
+     *
+     * @return the keys, primary first
+     */
+    @GetMapping
+    public SessionTicketKeys getKeys() {
+        return new SessionTicketKeys(sessionTicketKeyService.keys());
+    }
+}
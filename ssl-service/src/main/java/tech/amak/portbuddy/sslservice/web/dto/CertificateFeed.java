@@ -0,0 +1,30 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.sslservice.web.dto;
+
+import java.util.List;
+
+/**
+ * A batch of certificates of the feed followed by the gateways: either a snapshot of all active certificates
+ * or the changes after a version.
+ *
+ * @param version      version to ask changes after next
+ * @param certificates the certificates, in version order for changes
+ */
+public record CertificateFeed(
+    long version,
+    List<CertificateMaterial> certificates
+) {
+}
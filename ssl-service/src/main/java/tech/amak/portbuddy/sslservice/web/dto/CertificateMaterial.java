@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.sslservice.web.dto;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Certificate of a domain with its PEM material inline, as served to the gateways.
+ *
+ * @param domain                   the domain, possibly a wildcard such as {@code *.example.com}
+ * @param version                  position of the last change of the certificate in the feed
+ * @param active                   whether the certificate can be served; when false the PEM fields are null
+ *                                 and the gateway must stop serving it
+ * @param certificateChainPem      the leaf RSA certificate followed by its chain
+ * @param privateKeyPem            the RSA private key
+ * @param ecdsaCertificateChainPem the leaf ECDSA certificate followed by its chain, null if the domain has none
+ * @param ecdsaPrivateKeyPem       the ECDSA private key, null if the domain has none
+ * @param expiresAt                when the certificate expires
+ */
+public record CertificateMaterial(
+    String domain,
+    long version,
+    boolean active,
+    String certificateChainPem,
+    String privateKeyPem,
+    String ecdsaCertificateChainPem,
+    String ecdsaPrivateKeyPem,
+    OffsetDateTime expiresAt
+) {
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2026 AMAK Inc. All rights reserved.
+ */
+
+-- Version certificates so that gateways can follow their changes
+
+CREATE SEQUENCE IF NOT EXISTS ssl_certificate_version_seq;
+
+ALTER TABLE ssl_certificates ADD COLUMN version BIGINT;
+UPDATE ssl_certificates SET version = nextval('ssl_certificate_version_seq');
+ALTER TABLE ssl_certificates ALTER COLUMN version SET NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_ssl_certificates_version ON ssl_certificates (version);
+
+-- Every write takes the next version. Writers are serialized until they commit, so versions become visible
+-- in order and a reader that has seen version N never sees a lower one appear later.
+CREATE OR REPLACE FUNCTION ssl_certificates_next_version() RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('ssl_certificates_version'));
+    NEW.version := nextval('${flyway:defaultSchema}.ssl_certificate_version_seq');
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER ssl_certificates_version
+    BEFORE INSERT OR UPDATE ON ssl_certificates
+    FOR EACH ROW EXECUTE FUNCTION ssl_certificates_next_version();
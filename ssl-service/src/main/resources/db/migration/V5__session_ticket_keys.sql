@@ -0,0 +1,13 @@
+/*
+ * Copyright (c) 2026 AMAK Inc. All rights reserved.
+ */
+
+-- TLS session ticket keys shared by all gateways, so that a session resumes on any of them
+
+CREATE TABLE IF NOT EXISTS ssl_session_ticket_keys (
+    id UUID PRIMARY KEY,
+    key_material BYTEA NOT NULL,
+    created_at TIMESTAMPTZ NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_ssl_session_ticket_keys_created_at ON ssl_session_ticket_keys (created_at);
@@ -0,0 +1,10 @@
+/*
+ * Copyright (c) 2026 AMAK Inc. All rights reserved.
+ */
+
+-- ECDSA certificate issued along with the RSA one of a domain
+
+ALTER TABLE ssl_certificates ADD COLUMN ecdsa_certificate_path VARCHAR(1024);
+ALTER TABLE ssl_certificates ADD COLUMN ecdsa_private_key_path VARCHAR(1024);
+ALTER TABLE ssl_certificates ADD COLUMN ecdsa_chain_path VARCHAR(1024);
+ALTER TABLE ssl_certificates ADD COLUMN ecdsa_full_chain_path VARCHAR(1024);
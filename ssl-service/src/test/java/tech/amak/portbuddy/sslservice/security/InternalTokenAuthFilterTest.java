@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.sslservice.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+class InternalTokenAuthFilterTest {
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void doFilter_MatchingToken_ShouldAuthenticateAsInternal() throws Exception {
+        // Given
+        final var request = request("/internal/api/certificates/snapshot", "s3cret");
+
+        // When
+        new InternalTokenAuthFilter("s3cret").doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        // Then
+        final var authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertEquals("ROLE_" + InternalTokenAuthFilter.ROLE,
+            authentication.getAuthorities().iterator().next().getAuthority());
+    }
+
+    @Test
+    void doFilter_WrongOrMissingToken_ShouldLeaveRequestUnauthenticated() throws Exception {
+        // When
+        new InternalTokenAuthFilter("s3cret").doFilter(request("/internal/api/session-ticket-keys", "guess"),
+            new MockHttpServletResponse(), new MockFilterChain());
+        new InternalTokenAuthFilter("s3cret").doFilter(request("/internal/api/session-ticket-keys", null),
+            new MockHttpServletResponse(), new MockFilterChain());
+
+        // Then
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void doFilter_NoTokenConfigured_ShouldRefuseEveryRequest() throws Exception {
+        // When
+        new InternalTokenAuthFilter("").doFilter(request("/internal/api/certificates/snapshot", ""),
+            new MockHttpServletResponse(), new MockFilterChain());
+
+        // Then
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void doFilter_OtherPath_ShouldIgnoreToken() throws Exception {
+        // When
+        new InternalTokenAuthFilter("s3cret").doFilter(request("/api/certificates", "s3cret"),
+            new MockHttpServletResponse(), new MockFilterChain());
+
+        // Then
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    private static MockHttpServletRequest request(final String path, final String token) {
+        final var request = new MockHttpServletRequest("GET", path);
+        if (token != null) {
+            request.addHeader(InternalTokenAuthFilter.TOKEN_HEADER, token);
+        }
+        return request;
+    }
+}
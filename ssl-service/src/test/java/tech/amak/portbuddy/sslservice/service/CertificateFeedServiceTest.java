@@ -0,0 +1,154 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.sslservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import tech.amak.portbuddy.sslservice.domain.CertificateEntity;
+import tech.amak.portbuddy.sslservice.domain.CertificateStatus;
+import tech.amak.portbuddy.sslservice.repo.CertificateRepository;
+
+@ExtendWith(MockitoExtension.class)
+class CertificateFeedServiceTest {
+
+    @Mock
+    private CertificateRepository certificateRepository;
+
+    @InjectMocks
+    private CertificateFeedService feedService;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void snapshot_ShouldInlineActiveCertificates() throws Exception {
+        // Given
+        final var active = certificate("example.com", CertificateStatus.ACTIVE, 7L);
+        when(certificateRepository.findLatestVersion()).thenReturn(9L);
+        when(certificateRepository.findAllByStatus(CertificateStatus.ACTIVE)).thenReturn(List.of(active));
+
+        // When
+        final var snapshot = feedService.snapshot();
+
+        // Then
+        assertEquals(9L, snapshot.version());
+        assertEquals(1, snapshot.certificates().size());
+        final var material = snapshot.certificates().getFirst();
+        assertTrue(material.active());
+        assertEquals(7L, material.version());
+        assertEquals("CERT\nCHAIN\n", material.certificateChainPem());
+        assertEquals("KEY\n", material.privateKeyPem());
+        assertNull(material.ecdsaCertificateChainPem());
+        assertNull(material.ecdsaPrivateKeyPem());
+    }
+
+    @Test
+    void material_ShouldInlineEcdsaCertificateWhenIssued() throws Exception {
+        // Given
+        final var entity = certificate("example.com", CertificateStatus.ACTIVE, 3L);
+        final var chain = Files.writeString(tempDir.resolve("example.com.ecdsa.fullchain.pem"), "EC CHAIN\n");
+        final var key = Files.writeString(tempDir.resolve("example.com.ecdsa.key.pem"), "EC KEY\n");
+        entity.setEcdsaFullChainPath(chain.toString());
+        entity.setEcdsaPrivateKeyPath(key.toString());
+
+        // When
+        final var material = feedService.material(entity);
+
+        // Then
+        assertTrue(material.active());
+        assertEquals("CERT\nCHAIN\n", material.certificateChainPem());
+        assertEquals("EC CHAIN\n", material.ecdsaCertificateChainPem());
+        assertEquals("EC KEY\n", material.ecdsaPrivateKeyPem());
+    }
+
+    @Test
+    void material_UnreadableEcdsaFiles_ShouldKeepRsaCertificate() throws Exception {
+        // Given
+        final var entity = certificate("example.com", CertificateStatus.ACTIVE, 3L);
+        entity.setEcdsaFullChainPath(tempDir.resolve("missing.ecdsa.fullchain.pem").toString());
+        entity.setEcdsaPrivateKeyPath(tempDir.resolve("missing.ecdsa.key.pem").toString());
+
+        // When
+        final var material = feedService.material(entity);
+
+        // Then
+        assertTrue(material.active());
+        assertEquals("KEY\n", material.privateKeyPem());
+        assertNull(material.ecdsaCertificateChainPem());
+        assertNull(material.ecdsaPrivateKeyPem());
+    }
+
+    @Test
+    void changesSince_ShouldReturnInactiveCertificatesWithoutMaterial() throws Exception {
+        // Given
+        final var expired = certificate("old.example.com", CertificateStatus.EXPIRED, 12L);
+        when(certificateRepository.findTop500ByVersionGreaterThanOrderByVersionAsc(10L))
+            .thenReturn(List.of(expired));
+
+        // When
+        final var changes = feedService.changesSince(10L, Duration.ofSeconds(30));
+
+        // Then
+        assertEquals(12L, changes.version());
+        final var material = changes.certificates().getFirst();
+        assertFalse(material.active());
+        assertNull(material.certificateChainPem());
+        assertNull(material.privateKeyPem());
+    }
+
+    @Test
+    void changesSince_NoChanges_ShouldReturnSameVersionAfterWait() {
+        // Given
+        when(certificateRepository.findTop500ByVersionGreaterThanOrderByVersionAsc(5L)).thenReturn(List.of());
+
+        // When
+        final var changes = feedService.changesSince(5L, Duration.ZERO);
+
+        // Then
+        assertEquals(5L, changes.version());
+        assertTrue(changes.certificates().isEmpty());
+    }
+
+    private CertificateEntity certificate(final String domain, final CertificateStatus status, final long version)
+        throws Exception {
+        final var cert = Files.writeString(tempDir.resolve(domain + ".cert.pem"), "CERT\n");
+        final var chain = Files.writeString(tempDir.resolve(domain + ".chain.pem"), "CHAIN\n");
+        final var key = Files.writeString(tempDir.resolve(domain + ".key.pem"), "KEY\n");
+        final var entity = new CertificateEntity();
+        entity.setDomain(domain);
+        entity.setStatus(status);
+        entity.setVersion(version);
+        entity.setCertificatePath(cert.toString());
+        entity.setChainPath(chain.toString());
+        entity.setPrivateKeyPath(key.toString());
+        return entity;
+    }
+}
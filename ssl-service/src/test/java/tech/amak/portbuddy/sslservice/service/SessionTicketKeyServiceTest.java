@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.amak.portbuddy.sslservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import tech.amak.portbuddy.sslservice.config.AppProperties;
+import tech.amak.portbuddy.sslservice.domain.SessionTicketKeyEntity;
+import tech.amak.portbuddy.sslservice.repo.SessionTicketKeyRepository;
+
+@ExtendWith(MockitoExtension.class)
+class SessionTicketKeyServiceTest {
+
+    @Mock
+    private SessionTicketKeyRepository repository;
+
+    private SessionTicketKeyService service;
+
+    @BeforeEach
+    void setUp() {
+        final var properties = new AppProperties(null, null, null,
+            new AppProperties.SessionTickets(Duration.ofHours(12), 3, Duration.ofMinutes(5)), null);
+        service = new SessionTicketKeyService(repository, properties);
+    }
+
+    @Test
+    void keys_ShouldKeepNewKeyBehindPreviousUntilActivated() {
+        // Given
+        final var fresh = key(1, OffsetDateTime.now().minusMinutes(1));
+        final var previous = key(2, OffsetDateTime.now().minusHours(12));
+        when(repository.findAllByOrderByCreatedAtDesc(Limit.of(3))).thenReturn(List.of(fresh, previous));
+
+        // When
+        final var keys = service.keys();
+
+        // Then
+        assertEquals(List.of(encoded(previous), encoded(fresh)), keys);
+    }
+
+    @Test
+    void keys_ShouldPutActivatedKeyFirst() {
+        // Given
+        final var newest = key(1, OffsetDateTime.now().minusMinutes(10));
+        final var previous = key(2, OffsetDateTime.now().minusHours(12));
+        when(repository.findAllByOrderByCreatedAtDesc(Limit.of(3))).thenReturn(List.of(newest, previous));
+
+        // When
+        final var keys = service.keys();
+
+        // Then
+        assertEquals(List.of(encoded(newest), encoded(previous)), keys);
+    }
+
+    @Test
+    void rotate_ShouldCreateKeyWhenNewestIsOlderThanRotation() {
+        // Given
+        when(repository.findAllByOrderByCreatedAtDesc(Limit.of(1)))
+            .thenReturn(List.of(key(1, OffsetDateTime.now().minusHours(13))));
+
+        // When
+        service.rotate();
+
+        // Then
+        final var saved = ArgumentCaptor.forClass(SessionTicketKeyEntity.class);
+        verify(repository).save(saved.capture());
+        assertEquals(SessionTicketKeyService.KEY_SIZE, saved.getValue().getKeyMaterial().length);
+        verify(repository).deleteAllByCreatedAtBefore(any());
+    }
+
+    @Test
+    void rotate_ShouldKeepRecentKey() {
+        // Given
+        when(repository.findAllByOrderByCreatedAtDesc(Limit.of(1)))
+            .thenReturn(List.of(key(1, OffsetDateTime.now().minusHours(1))));
+
+        // When
+        service.rotate();
+
+        // Then
+        verify(repository, never()).save(any());
+    }
+
+    private static SessionTicketKeyEntity key(final int seed, final OffsetDateTime createdAt) {
+        final var material = new byte[SessionTicketKeyService.KEY_SIZE];
+        material[0] = (byte) seed;
+        final var key = new SessionTicketKeyEntity();
+        key.setKeyMaterial(material);
+        key.setCreatedAt(createdAt);
+        return key;
+    }
+
+    private static String encoded(final SessionTicketKeyEntity key) {
+        return Base64.getEncoder().encodeToString(key.getKeyMaterial());
+    }
+}